@@ -0,0 +1,378 @@
+/**
+ * Name: AccessLog
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Writes one line per request to --access-log in Common or Combined Log Format (the Apache
+ *      formats that log tools already understand). Connection threads never touch the file:
+ *      they copy the few fields a line needs into a slot of a fixed ring buffer and go back to
+ *      serving. Claiming a slot is one compare-and-set, with no lock, so many threads can log at
+ *      the same time without waiting on each other. A single background thread empties the
+ *      ring, formats the lines into one big buffer and writes it with a single call, and can
+ *      roll the file over when it gets too big. If the ring fills up because the disk can't
+ *      keep up, entries are either dropped and counted (the default, so slow disks never slow
+ *      down responses) or the connection thread waits for room (--access-log-when-full=block).
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://httpd.apache.org/docs/current/logs.html#common
+ * https://httpd.apache.org/docs/current/logs.html#combined
+ * https://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue
+ * https://lmax-exchange.github.io/disruptor/
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/atomic/AtomicLongArray.html#lazySet-int-long-
+ */
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class AccessLog {
+    /** How many rotated files (access.log.1 ... access.log.N) are kept. */
+    private static final int KEEP_ROTATED = 5;
+    /** The writer sends the batch once this much is formatted, or when the ring runs dry. */
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final DateTimeFormatter CLF_TIME =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneOffset.UTC);
+
+    private final File file;
+    private final boolean combined;
+    private final boolean blockWhenFull;
+    private final long rotateBytes;
+
+    // the ring: a slot may be written by the producer that claimed ticket t when
+    // sequence == t, and read by the writer when sequence == t + 1
+    private final Entry[] slots;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // only the writer thread moves this
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private FileChannel out;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES + 16 * 1024);
+    private long cachedSecond = -1;
+    private byte[] cachedTime;
+
+    /**
+     * AccessLog()
+     * Opens (appends to) the log file and starts the writer thread. The ring size is rounded
+     * up to a power of two so a slot is found with a mask instead of a division.
+     * @param file
+     * @param format "common" or "combined"
+     * @param capacity
+     * @param blockWhenFull
+     * @param rotateBytes 0 for never
+     * @throws IOException
+    */
+    public AccessLog(File file, String format, int capacity, boolean blockWhenFull, long rotateBytes) throws IOException {
+        this.file = file;
+        this.combined = format.equals("combined");
+        this.blockWhenFull = blockWhenFull;
+        this.rotateBytes = rotateBytes;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Entry[size];
+        this.sequence = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Entry();
+            sequence.set(i, i);
+        }
+        this.out = open(file);
+        this.writer = new Thread(this::drainLoop, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * log()
+     * Records one finished request. Called on the connection's thread, so it only copies
+     * references and numbers into a slot; the line is formatted later by the writer. The
+     * request may be null when it couldn't be parsed.
+     * References:
+     * https://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue
+     * @param remote
+     * @param request
+     * @param response
+    */
+    void log(InetAddress remote, HTTPRequest request, HTTPResponse response) {
+        long ticket;
+        while (true) {
+            ticket = tail.get();
+            long seq = sequence.get((int) ticket & mask);
+            if (seq == ticket) {
+                if (tail.compareAndSet(ticket, ticket + 1)) {
+                    break; // the slot is ours
+                }
+            } else if (seq < ticket) {
+                if (!blockWhenFull) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.parkNanos(50_000); // full: wait for the writer to make room
+            }
+            // otherwise another thread just took this ticket; try the next one
+        }
+        int index = (int) ticket & mask;
+        Entry e = slots[index];
+        e.remote = remote;
+        e.time = System.currentTimeMillis();
+        e.status = Metrics.statusCode(response.getStatus());
+        e.bytes = response.getBodyBytes();
+        if (request != null) {
+            e.method = request.getMethod();
+            e.target = request.getTarget();
+            e.version = request.getVersion();
+            e.referer = combined ? request.getHeader("referer") : null;
+            e.agent = combined ? request.getHeader("user-agent") : null;
+        } else {
+            e.method = null;
+            e.target = null;
+            e.version = null;
+            e.referer = null;
+            e.agent = null;
+        }
+        sequence.lazySet(index, ticket + 1); // publish: the writer may read the slot now
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * drainLoop()
+     * The writer thread. Takes entries off the ring in order and formats them into the batch
+     * buffer; the batch is written when it is big or when the ring is empty. With nothing to do
+     * it naps for a millisecond rather than making the connection threads wake it up.
+    */
+    private void drainLoop() {
+        while (running) {
+            try {
+                if (!drainOnce()) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            } catch (IOException e) {
+                System.err.println("Access log write failed: " + e.getMessage());
+                LockSupport.parkNanos(1_000_000_000L); // don't spin on a full disk
+            }
+        }
+    }
+
+    /**
+     * drainOnce()
+     * Moves everything currently in the ring to the file. Returns false if the ring was empty.
+     * @return
+     * @throws IOException
+    */
+    private boolean drainOnce() throws IOException {
+        boolean any = false;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequence.get(index) != head + 1) {
+                break;
+            }
+            format(slots[index]);
+            slots[index].clear();
+            sequence.lazySet(index, head + slots.length); // free for the producer one lap later
+            head++;
+            any = true;
+            written.increment();
+            if (batch.position() >= BATCH_BYTES) {
+                writeBatch();
+            }
+        }
+        if (batch.position() > 0) {
+            writeBatch();
+        }
+        return any;
+    }
+
+    /**
+     * writeBatch()
+     * Writes the formatted lines with one call and rolls the file over if it grew past
+     * --access-log-rotate-bytes.
+     * @throws IOException
+    */
+    private void writeBatch() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            out.write(batch);
+        }
+        batch.clear();
+        if (rotateBytes > 0 && out.size() >= rotateBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * rotate()
+     * access.log becomes access.log.1, .1 becomes .2, and so on; the oldest is deleted.
+     * Only the writer thread writes the file, so nothing else has to stop while this happens.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Files.html#move-java.nio.file.Path-java.nio.file.Path-java.nio.file.CopyOption...-
+     * @throws IOException
+    */
+    private void rotate() throws IOException {
+        out.close();
+        Files.deleteIfExists(new File(file.getPath() + "." + KEEP_ROTATED).toPath());
+        for (int i = KEEP_ROTATED - 1; i >= 1; i--) {
+            File older = new File(file.getPath() + "." + i);
+            if (older.exists()) {
+                Files.move(older.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        out = open(file);
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * close()
+     * Stops the writer and writes whatever is still in the ring. ServerContext.close() calls it
+     * once the server has drained, so the last requests are in the file too.
+    */
+    void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(1000);
+            if (!writer.isAlive()) {
+                drainOnce();
+            }
+            out.close();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Access log not fully flushed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * format()
+     * One line: host - - [time] "request line" status bytes, plus "referer" "user agent" for
+     * the combined format. Quotes, backslashes and control characters inside the quoted parts
+     * are escaped (\" and \xhh) so a client can't forge extra lines or fields.
+     * @param e
+    */
+    private void format(Entry e) {
+        putAscii(e.remote != null ? e.remote.getHostAddress() : "-");
+        putAscii(" - - [");
+        long second = e.time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = CLF_TIME.format(Instant.ofEpochMilli(e.time)).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        batch.put(cachedTime);
+        putAscii("] \"");
+        if (e.method != null) {
+            putEscaped(e.method);
+            batch.put((byte) ' ');
+            putEscaped(e.target);
+            batch.put((byte) ' ');
+            putEscaped(e.version);
+        } else {
+            batch.put((byte) '-');
+        }
+        putAscii("\" ");
+        putNumber(e.status);
+        batch.put((byte) ' ');
+        if (e.bytes > 0) {
+            putNumber(e.bytes);
+        } else {
+            batch.put((byte) '-');
+        }
+        if (combined) {
+            putAscii(" \"");
+            putEscaped(e.referer != null ? e.referer : "-");
+            putAscii("\" \"");
+            putEscaped(e.agent != null ? e.agent : "-");
+            batch.put((byte) '"');
+        }
+        batch.put((byte) '\n');
+    }
+
+    private void putAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            batch.put((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * putEscaped()
+     * Copies a request field into the batch, escaped, and cut off at 4 KB so one huge header
+     * can't overflow the batch buffer.
+     * @param s
+    */
+    private void putEscaped(String s) {
+        int n = Math.min(s.length(), 4096);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                batch.put((byte) '\\').put((byte) c);
+            } else if (c < 0x20 || c >= 0x7f) {
+                batch.put((byte) '\\').put((byte) 'x').put(hex(c >> 4 & 0xf)).put(hex(c & 0xf));
+            } else {
+                batch.put((byte) c);
+            }
+        }
+    }
+
+    private static byte hex(int digit) {
+        return (byte) (digit < 10 ? '0' + digit : 'a' + digit - 10);
+    }
+
+    private void putNumber(long value) {
+        putAscii(Long.toString(value));
+    }
+
+    /**
+     * Entry
+     * One slot of the ring. Slots are made once and reused, so logging allocates nothing
+     * beyond the header Strings the combined format needs.
+     */
+    private static final class Entry {
+        InetAddress remote;
+        long time;
+        String method;
+        String target;
+        String version;
+        int status;
+        long bytes;
+        String referer;
+        String agent;
+
+        void clear() {
+            remote = null;
+            method = null;
+            target = null;
+            version = null;
+            referer = null;
+            agent = null;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Name: ByteRanges
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Handles "Range: bytes=..." requests so video/audio can seek and interrupted downloads can
+ *      resume. One range is answered with a plain 206, several with multipart/byteranges, and
+ *      ranges that are all past the end of the file with 416. Overlapping or nearly touching
+ *      ranges are merged first, and a request listing an absurd number of ranges is answered with
+ *      the whole file instead, so ranges can't be used to make the server send far more bytes
+ *      than the file holds.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7233
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Range_requests
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/If-Range
+ */
+import java.io.File;
+import java.util.Arrays;
+
+public class ByteRanges {
+    /** Returned by parse() when every range starts past the end of the file. */
+    static final long[] UNSATISFIABLE = new long[0];
+
+    /** More range specs than this and the header is ignored (the full file is sent). */
+    private static final int MAX_RANGE_SPECS = 32;
+    /** Ranges closer together than this are merged; a part header costs about as much. */
+    private static final long COALESCE_GAP = 80;
+
+    /**
+     * rangeResponse()
+     * Builds the 206 or 416 for a Range header against a file, or returns null when the
+     * header should be ignored and the whole file sent as a normal 200.
+     * @param file
+     * @param mime
+     * @param rangeHeader
+     * @return
+    */
+    static HTTPResponse rangeResponse(File file, String mime, String rangeHeader) {
+        long total = file.length();
+        long[] ranges = parse(rangeHeader, total);
+        if (ranges == null) {
+            return null;
+        }
+        if (ranges == UNSATISFIABLE) {
+            return HTTPHandler.simpleResponse("416 Range Not Satisfiable", "text/plain", "Requested range not satisfiable")
+                    .header("Content-Range", "bytes */" + total);
+        }
+        if (ranges.length == 2) {
+            return HTTPResponse.fileRange(file, mime, ranges[0], ranges[1], total);
+        }
+        return HTTPResponse.fileRanges(file, mime, ranges, total);
+    }
+
+    /**
+     * parse()
+     * Reads "bytes=0-99,200-,-500" against a file of the given length and returns the
+     * satisfiable ranges as offset/length pairs, sorted and merged. Returns null when the
+     * header is malformed, not in bytes, or lists too many ranges (all of which mean "ignore it"),
+     * and UNSATISFIABLE when none of the ranges overlap the file.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7233#section-2.1
+     * @param header
+     * @param length
+     * @return
+    */
+    static long[] parse(String header, long length) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = value.substring(6).split(",");
+        if (specs.length > MAX_RANGE_SPECS) {
+            return null;
+        }
+
+        long[][] found = new long[specs.length][];
+        int count = 0;
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1)); // "-500" = the last 500 bytes
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffix);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    boolean open = dash == spec.length() - 1; // "200-" = from 200 to the end
+                    last = open ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (last < first) {
+                        return null; // "500-100" is malformed, not just unsatisfiable
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first < 0 || first >= length) {
+                continue; // this one is past the end (an empty file has none); the others may still be fine
+            }
+            found[count++] = new long[] { first, Math.min(last, length - 1) };
+        }
+        if (count == 0) {
+            return UNSATISFIABLE;
+        }
+
+        long[][] sorted = Arrays.copyOf(found, count);
+        Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+        long[] merged = new long[count * 2];
+        int parts = 0;
+        long start = sorted[0][0];
+        long end = sorted[0][1];
+        for (int i = 1; i < count; i++) {
+            if (sorted[i][0] <= end + 1 + COALESCE_GAP) {
+                end = Math.max(end, sorted[i][1]);
+            } else {
+                merged[2 * parts] = start;
+                merged[2 * parts + 1] = end - start + 1;
+                parts++;
+                start = sorted[i][0];
+                end = sorted[i][1];
+            }
+        }
+        merged[2 * parts] = start;
+        merged[2 * parts + 1] = end - start + 1;
+        parts++;
+        return Arrays.copyOf(merged, parts * 2);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Name: CachePolicy
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Decides the Cache-Control header for a file from rules given with --cache-control.
+ *      A rule is "key=value"; rules are separated by ';'. A key starting with "/" is a URL path
+ *      prefix, anything else is a MIME type prefix. Path rules win over MIME rules, and the
+ *      longest matching prefix wins within each kind. Files no rule matches get no Cache-Control.
+ *      Example: --cache-control="/images/=max-age=86400;text/html=no-cache;text/css=max-age=3600"
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Cache-Control
+ * https://www.rfc-editor.org/rfc/rfc7234#section-5.2
+ */
+import java.util.ArrayList;
+import java.util.List;
+
+public class CachePolicy {
+    private final List<String[]> pathRules = new ArrayList<>();
+    private final List<String[]> mimeRules = new ArrayList<>();
+
+    /**
+     * parse()
+     * Builds a policy from the --cache-control option text. An empty string means no rules.
+     * @param spec
+     * @return
+    */
+    static CachePolicy parse(String spec) {
+        CachePolicy policy = new CachePolicy();
+        for (String rule : spec.split(";")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int eq = rule.indexOf('=');
+            if (eq <= 0 || eq == rule.length() - 1) {
+                throw new IllegalArgumentException("Cache-Control rules look like prefix=value: " + rule);
+            }
+            String[] pair = { rule.substring(0, eq).trim(), rule.substring(eq + 1).trim() };
+            (pair[0].startsWith("/") ? policy.pathRules : policy.mimeRules).add(pair);
+        }
+        return policy;
+    }
+
+    /**
+     * cacheControl()
+     * The Cache-Control value for a request path and MIME type, or null for none. When no
+     * rule matches, the type's own cache-control from the --mime-types file is used.
+     * @param path
+     * @param type
+     * @return
+    */
+    String cacheControl(String path, MimeTypes.Type type) {
+        String byPath = longestMatch(pathRules, path);
+        if (byPath != null) {
+            return byPath;
+        }
+        String byType = longestMatch(mimeRules, type.getName());
+        return byType != null ? byType : type.getCacheControl();
+    }
+
+    /**
+     * longestMatch()
+     * The value of the rule with the longest key that value starts with.
+     * @param rules
+     * @param value
+     * @return
+    */
+    private static String longestMatch(List<String[]> rules, String value) {
+        String best = null;
+        int bestLength = -1;
+        for (String[] rule : rules) {
+            if (value.startsWith(rule[0]) && rule[0].length() > bestLength) {
+                best = rule[1];
+                bestLength = rule[0].length();
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Name: ChunkedCoding
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: "Transfer-Encoding: chunked" both ways. Input reads a chunked body and hands back just
+ *      the data, for bodies whose length isn't known up front (a backend's response that the
+ *      proxy passes on). writeChunk() and LAST_CHUNK do the opposite, for responses this server
+ *      streams without knowing their length: each piece goes out as its size in hex, the
+ *      bytes, and a CRLF, and a zero-size chunk ends the body.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc9112#section-7.1
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Transfer-Encoding
+ */
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ChunkedCoding {
+    /** The zero-size chunk and the empty trailer section that end a chunked body. */
+    static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    /** Chunk size lines (with any extensions) and trailer lines longer than this are refused. */
+    private static final int MAX_LINE = 4096;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+    private ChunkedCoding() {}
+
+    /**
+     * writeChunk()
+     * Writes one chunk: the size in hex, CRLF, the bytes, CRLF. An empty piece is skipped,
+     * since a zero-size chunk would end the body.
+     * @param out
+     * @param b
+     * @param off
+     * @param len
+     * @throws IOException
+    */
+    static void writeChunk(OutputStream out, byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        byte[] size = new byte[10];
+        int start = 8;
+        size[8] = '\r';
+        size[9] = '\n';
+        for (int v = len; v != 0; v >>>= 4) {
+            size[--start] = HEX[v & 0xf];
+        }
+        out.write(size, start, size.length - start);
+        out.write(b, off, len);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    /**
+     * Input
+     * Reads a chunked body from the stream it wraps and returns only the data: -1 once the
+     * last chunk and its trailers have been read, which leaves the wrapped stream at the
+     * start of whatever comes next (so a kept-alive connection can be used again). Trailer
+     * fields are read and dropped, but no more than the limit it is given (--max-header-bytes,
+     * as for the head), so a sender can't keep it reading trailers forever. Closing it doesn't
+     * close the wrapped stream.
+     */
+    static final class Input extends InputStream {
+        private final InputStream in;
+        private final int maxTrailerBytes;
+        private long remaining;  // data left in the current chunk
+        private boolean started; // a chunk has been read, so a CRLF comes before the next size line
+        private boolean done;
+
+        /**
+         * Input()
+         * @param in
+         * @param maxTrailerBytes how many bytes of trailer lines (with their CRLFs) are read before
+         *        the body is refused with an IOException
+        */
+        Input(InputStream in, int maxTrailerBytes) {
+            this.in = in;
+            this.maxTrailerBytes = maxTrailerBytes;
+        }
+
+        /**
+         * isDone()
+         * True once the whole body, trailers included, has been read.
+         * @return
+        */
+        boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                nextChunk();
+                if (done) {
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("Chunked body ended in the middle of a chunk");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        /**
+         * available()
+         * What can be read without blocking, as far as the current chunk goes.
+         * @return
+         * @throws IOException
+        */
+        @Override
+        public int available() throws IOException {
+            return done ? 0 : (int) Math.min(remaining, in.available());
+        }
+
+        @Override
+        public void close() {}
+
+        /**
+         * nextChunk()
+         * Reads the CRLF that ends the previous chunk and the next size line. A size of zero
+         * means the body is over: the trailer lines are skipped up to the blank line, and an
+         * IOException is thrown once they add up to more than maxTrailerBytes.
+         * References:
+         * https://www.rfc-editor.org/rfc/rfc9112#section-7.1.2
+         * @throws IOException
+        */
+        private void nextChunk() throws IOException {
+            if (started && !readLine().isEmpty()) {
+                throw new IOException("Missing CRLF after a chunk");
+            }
+            started = true;
+            String line = readLine();
+            int semi = line.indexOf(';'); // chunk extensions are allowed and ignored
+            String hex = (semi >= 0 ? line.substring(0, semi) : line).trim();
+            if (hex.isEmpty() || hex.length() > 15) {
+                throw new IOException("Bad chunk size: " + line);
+            }
+            long size = 0;
+            for (int i = 0; i < hex.length(); i++) {
+                int digit = Character.digit(hex.charAt(i), 16);
+                if (digit < 0) {
+                    throw new IOException("Bad chunk size: " + line);
+                }
+                size = size << 4 | digit;
+            }
+            if (size == 0) {
+                long trailerBytes = 0;
+                for (String trailer = readLine(); !trailer.isEmpty(); trailer = readLine()) {
+                    trailerBytes += trailer.length() + 2; // trailer fields, not used
+                    if (trailerBytes > maxTrailerBytes) {
+                        throw new IOException("Chunked trailer section too large");
+                    }
+                }
+                done = true;
+            }
+            remaining = size;
+        }
+
+        /**
+         * readLine()
+         * One line up to CRLF (a bare LF is accepted too), without the line ending.
+         * @return
+         * @throws IOException
+        */
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                int c = in.read();
+                if (c < 0) {
+                    throw new EOFException("Chunked body ended early");
+                }
+                if (c == '\n') {
+                    int end = line.length();
+                    return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+                }
+                if (line.length() >= MAX_LINE) {
+                    throw new IOException("Chunk line too long");
+                }
+                line.append((char) c);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Name: ClientLimiter
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Per-client (per IP address) limits, so one client can't take the whole server for
+ *      itself: at most --max-connections-per-ip connections open at once, and at most
+ *      --rate-limit requests per second with bursts of up to --rate-burst. Every connection
+ *      looks its client up once when it is accepted and keeps the Client it gets back, so
+ *      checking a request doesn't touch the map at all.
+ *      Checking a connection or a request never takes a lock. The map is a ConcurrentHashMap,
+ *      which is split into many independently updated bins, and each Client's state is two
+ *      atomics changed with compare-and-set: the connection count, and the rate limit as one
+ *      "theoretical arrival time" (GCRA, the single-number form of a token bucket). Many
+ *      threads can check different clients, or even the same client, without waiting for each
+ *      other. Clients with no open connections and a full bucket are forgotten once the map
+ *      gets big.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://en.wikipedia.org/wiki/Generic_cell_rate_algorithm
+ * https://brandur.org/rate-limiting
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ConcurrentHashMap.html
+ */
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ClientLimiter {
+    private static final int SWEEP_ABOVE = 10_000;
+
+    /** Handed out when no limit is on: it allows everything and is never counted. */
+    static final Client UNLIMITED = new Client();
+
+    private final Map<InetAddress, Client> clients = new ConcurrentHashMap<>();
+    private final ReentrantLock sweeping = new ReentrantLock();
+    private volatile int maxConnectionsPerClient;
+    private volatile long emissionNanos; // time one request "costs", 0 = no rate limit
+    private volatile long burstNanos;    // how far ahead of now a client's arrival time may run
+
+    /**
+     * ClientLimiter()
+     * @param config
+    */
+    public ClientLimiter(ServerConfig config) {
+        setLimits(config);
+    }
+
+    /**
+     * setLimits()
+     * Takes the limits from config (at startup and on reload). Connections that were accepted
+     * while no limit was on stay unlimited until they close.
+     * @param config
+    */
+    void setLimits(ServerConfig config) {
+        maxConnectionsPerClient = config.getMaxConnectionsPerIp();
+        int rate = config.getRateLimit();
+        emissionNanos = rate > 0 ? 1_000_000_000L / rate : 0;
+        burstNanos = emissionNanos * Math.max(1, config.getRateBurst());
+    }
+
+    /**
+     * openConnection()
+     * Counts a new connection from address. Returns the Client to keep for the life of the
+     * connection, or null if the client already has as many connections as it may.
+     * @param address
+     * @return
+    */
+    Client openConnection(InetAddress address) {
+        if (maxConnectionsPerClient <= 0 && emissionNanos == 0) {
+            return UNLIMITED;
+        }
+        Client c = clients.computeIfAbsent(address, a -> new Client());
+        int max = maxConnectionsPerClient;
+        while (true) {
+            int n = c.connections.get();
+            if (max > 0 && n >= max) {
+                return null;
+            }
+            if (c.connections.compareAndSet(n, n + 1)) {
+                break;
+            }
+        }
+        if (clients.size() > SWEEP_ABOVE) {
+            sweep();
+        }
+        return c;
+    }
+
+    /**
+     * closeConnection()
+     * Undoes openConnection() when the connection ends.
+     * @param c
+    */
+    void closeConnection(Client c) {
+        if (c != UNLIMITED && c != null) {
+            c.connections.decrementAndGet();
+        }
+    }
+
+    /**
+     * tryRequest()
+     * GCRA: every request pushes the client's arrival time forward by one emission interval
+     * (starting from now if it is in the past). If that would put it more than a burst ahead
+     * of now the request is refused and nothing changes. Returns 0 when the request may go
+     * ahead, otherwise the whole seconds to wait, for Retry-After.
+     * References:
+     * https://en.wikipedia.org/wiki/Generic_cell_rate_algorithm#Virtual_scheduling_description
+     * @param c
+     * @return
+    */
+    long tryRequest(Client c) {
+        long emission = emissionNanos;
+        if (c == UNLIMITED || emission == 0) {
+            return 0;
+        }
+        long burst = burstNanos;
+        long now = System.nanoTime();
+        while (true) {
+            long tat = c.arrival.get();
+            long next = (tat - now < 0 ? now : tat) + emission;
+            long ahead = next - now;
+            if (ahead > burst) {
+                return Math.max(1, (ahead - burst + 999_999_999L) / 1_000_000_000L);
+            }
+            if (c.arrival.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * sweep()
+     * Forgets clients that have nothing open and whose bucket has refilled. Only one thread
+     * sweeps at a time; the others don't wait for it. A client removed just as it connects
+     * again simply gets a fresh entry.
+    */
+    private void sweep() {
+        if (!sweeping.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            for (Map.Entry<InetAddress, Client> e : clients.entrySet()) {
+                Client c = e.getValue();
+                if (c.connections.get() == 0 && c.arrival.get() - now <= 0) {
+                    clients.remove(e.getKey(), c);
+                }
+            }
+        } finally {
+            sweeping.unlock();
+        }
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    /**
+     * Client
+     * One client address's state.
+     */
+    static final class Client {
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicLong arrival = new AtomicLong(System.nanoTime()); // GCRA theoretical arrival time
+    }
+}
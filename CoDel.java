@@ -0,0 +1,95 @@
+/**
+ * Name: CoDel
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Decides when a connection has waited in the thread pool's queue so long that it should
+ *      get a quick 503 instead of service, following CoDel (Controlled Delay), the queue
+ *      manager routers use. A burst that fills the queue for a moment is fine and nothing is
+ *      dropped. Only when every connection has waited longer than the target for a whole
+ *      interval does it decide the queue is standing (the server can't keep up), and then it
+ *      turns away connections at a rate that rises until the waits fall back under the target.
+ *      Shedding the ones that have already waited too long keeps the wait for everyone else
+ *      short, instead of letting every client's latency collapse together.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://queue.acm.org/detail.cfm?id=2209336
+ * https://www.rfc-editor.org/rfc/rfc8289
+ * https://engineering.fb.com/2014/11/14/production-engineering/fail-at-scale/
+ */
+import java.util.concurrent.locks.ReentrantLock;
+
+public class CoDel {
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long firstAboveTime; // when the wait will have been above target for an interval, 0 = it isn't
+    private long dropNext;       // when to drop next while dropping
+    private int count;           // drops in the current dropping period
+    private int lastCount;
+    private boolean dropping;
+
+    /**
+     * CoDel()
+     * @param targetMillis the queue wait that is acceptable
+     * @param intervalMillis how long the wait must stay above target before anything is dropped
+    */
+    public CoDel(long targetMillis, long intervalMillis) {
+        this.targetNanos = targetMillis * 1_000_000L;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    /**
+     * shouldDrop()
+     * Called by a pool thread as it takes a connection off the queue, with how long that
+     * connection waited. True means answer it with a 503 and move on. This is RFC 8289's
+     * dequeue logic: the first drop comes an interval after the wait went above target, the
+     * next ones interval/sqrt(count) apart, and a new dropping period that starts soon after
+     * the last one picks up close to where that one left off.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc8289#section-5.5
+     * @param waitedNanos
+     * @param now System.nanoTime()
+     * @return
+    */
+    boolean shouldDrop(long waitedNanos, long now) {
+        lock.lock();
+        try {
+            if (waitedNanos < targetNanos) {
+                firstAboveTime = 0;
+                dropping = false;
+                return false;
+            }
+            if (firstAboveTime == 0) {
+                firstAboveTime = now + intervalNanos;
+                return false;
+            }
+            if (now - firstAboveTime < 0) {
+                return false;
+            }
+            if (!dropping) {
+                dropping = true;
+                int delta = count - lastCount;
+                count = delta > 1 && now - dropNext < 16 * intervalNanos ? delta : 1;
+                lastCount = count;
+                dropNext = controlLaw(now);
+                return true;
+            }
+            if (now - dropNext >= 0) {
+                count++;
+                dropNext = controlLaw(dropNext);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long controlLaw(long t) {
+        return t + (long) (intervalNanos / Math.sqrt(count));
+    }
+}
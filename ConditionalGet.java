@@ -0,0 +1,206 @@
+/**
+ * Name: ConditionalGet
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Lets browsers and CDNs skip downloading files they already have. Every file response
+ *      gets an ETag (built from the file's inode, modified time and size) and a Last-Modified
+ *      date. When a later request sends those back in If-None-Match or If-Modified-Since and the
+ *      file hasn't changed, the server answers "304 Not Modified" with no body, and the file
+ *      is never opened.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7232
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/ETag
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/If-None-Match
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/If-Modified-Since
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/file/attribute/BasicFileAttributes.html
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+public class ConditionalGet {
+    /** RFC 1123 dates, always two-digit days and always GMT. DateTimeFormatter is thread-safe. */
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private final String etag;
+    private final long lastModified;
+
+    /**
+     * ConditionalGet()
+     * Holds the validators for one version of one file.
+     * @param etag
+     * @param lastModified
+    */
+    private ConditionalGet(String etag, long lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * of()
+     * Reads the file's attributes (one stat, no open) and builds a strong ETag like
+     * "1a2b-18f3c0d2e40-3a2". The inode part is the file key's hash, since Java only exposes
+     * the inode through fileKey() (and it is null on some systems). A compressed version of
+     * the same file is a different set of bytes, so the encoding is added to its tag.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/attribute/BasicFileAttributes.html#fileKey--
+     * @param file
+     * @param encoding
+     * @return
+    */
+    static ConditionalGet of(File file, String encoding) {
+        try {
+            return of(Files.readAttributes(file.toPath(), BasicFileAttributes.class), encoding);
+        } catch (IOException e) {
+            return of(file.length(), file.lastModified(), null, encoding);
+        }
+    }
+
+    /**
+     * of()
+     * Same as above from attributes that were already read (PathCache keeps them).
+     * @param attrs
+     * @param encoding
+     * @return
+    */
+    static ConditionalGet of(BasicFileAttributes attrs, String encoding) {
+        return of(attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey(), encoding);
+    }
+
+    private static ConditionalGet of(long size, long modified, Object key, String encoding) {
+        StringBuilder tag = new StringBuilder(40).append('"');
+        if (key != null) {
+            tag.append(Integer.toHexString(key.hashCode())).append('-');
+        }
+        tag.append(Long.toHexString(modified)).append('-').append(Long.toHexString(size));
+        if (encoding != null) {
+            tag.append('-').append(encoding);
+        }
+        tag.append('"');
+        return new ConditionalGet(tag.toString(), modified);
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * getLastModified()
+     * The Last-Modified header value for this file.
+     * @return
+    */
+    public String getLastModified() {
+        return httpDate(lastModified);
+    }
+
+    /**
+     * isNotModified()
+     * True if the request's validators show the browser already has this version.
+     * If-None-Match wins when present (a match on any listed tag, or "*"); the W/ weak prefix is
+     * ignored because GET uses weak comparison. Otherwise If-Modified-Since is checked to the
+     * second, since HTTP dates have no milliseconds.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7232#section-6
+     * https://www.rfc-editor.org/rfc/rfc7232#section-2.3.2
+     * @param request
+     * @return
+    */
+    boolean isNotModified(HTTPRequest request) {
+        String ifNoneMatch = request.getHeader("if-none-match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*")) {
+                    return true;
+                }
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getHeader("if-modified-since");
+        if (ifModifiedSince != null) {
+            long since = parseHttpDate(ifModifiedSince);
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * matchesIfRange()
+     * If-Range says "only send the range if the file is still this version", given as an ETag
+     * or a date. It uses the strong comparison, so a weak W/ tag never matches; a date must be
+     * exactly the file's Last-Modified.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7233#section-3.2
+     * @param value
+     * @return
+    */
+    boolean matchesIfRange(String value) {
+        value = value.trim();
+        if (value.startsWith("W/")) {
+            return false;
+        }
+        if (value.startsWith("\"")) {
+            return value.equals(etag);
+        }
+        long date = parseHttpDate(value);
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * notModified()
+     * The 304 response: no body, just the validators (plus whatever the caller adds, such as
+     * Cache-Control and Vary) so the browser can refresh what it has stored.
+     * @return
+    */
+    HTTPResponse notModified() {
+        return HTTPResponse.notModified()
+                .header("ETag", etag)
+                .header("Last-Modified", getLastModified());
+    }
+
+    /**
+     * httpDate()
+     * Formats a time in milliseconds as an HTTP date ("Thu, 04 Feb 2010 18:50:12 GMT").
+     * @param millis
+     * @return
+    */
+    static String httpDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * parseHttpDate()
+     * Reads an HTTP date back into milliseconds, or -1 if it isn't a date we understand
+     * (an unreadable If-Modified-Since is simply ignored).
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/time/format/DateTimeFormatter.html#RFC_1123_DATE_TIME
+     * @param value
+     * @return
+    */
+    static long parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
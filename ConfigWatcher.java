@@ -0,0 +1,127 @@
+/**
+ * Name: ConfigWatcher
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Re-reads the --config file whenever it is saved and hands the new settings to
+ *      MyHTTPServer.reload(), so the document root, thread count, cache limits and the other
+ *      per-request settings can change without a restart and without dropping a connection.
+ *      The file's folder is watched with a WatchService (like PathCache does for the document
+ *      root), which works the same on Windows and Linux, unlike a SIGHUP handler. Editors often
+ *      save in several steps (truncate, write, rename), so it waits for things to settle for a
+ *      moment before reading. A file with a mistake in it is reported and the running settings
+ *      are kept.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/file/WatchService.html
+ * https://docs.oracle.com/javase/tutorial/essential/io/notification.html
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class ConfigWatcher {
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final String[] args;
+    private final MyHTTPServer server;
+    private final WatchService watcher;
+
+    /**
+     * ConfigWatcher()
+     * Starts watching the folder the config file is in. args are the original command line
+     * arguments, which are parsed again on every change so the command line still wins.
+     * @param file
+     * @param args
+     * @param server
+     * @throws IOException if the folder can't be watched
+    */
+    public ConfigWatcher(File file, String[] args, MyHTTPServer server) throws IOException {
+        this.file = file.getAbsoluteFile().toPath();
+        this.args = args;
+        this.server = server;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * start()
+     * Runs the watch loop on a daemon thread, so it never keeps the server from exiting.
+    */
+    public void start() {
+        Thread t = new Thread(this::watchLoop, "config-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * watchLoop()
+     * Waits for an event about the config file, lets the burst of events from one save pass,
+     * then reloads.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/WatchService.html#poll-long-java.util.concurrent.TimeUnit-
+    */
+    private void watchLoop() {
+        try {
+            while (true) {
+                if (!isAboutFile(watcher.take())) {
+                    continue;
+                }
+                WatchKey more;
+                while ((more = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            return;
+        }
+    }
+
+    /**
+     * isAboutFile()
+     * Empties the key's events and says whether any of them named the config file.
+     * @param key
+     * @return
+    */
+    private boolean isAboutFile(WatchKey key) {
+        boolean ours = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                ours = true;
+            }
+        }
+        key.reset();
+        return ours;
+    }
+
+    /**
+     * reload()
+     * Builds a fresh config the same way main() did and passes it on. Parse errors leave the
+     * server as it was.
+    */
+    private void reload() {
+        ServerConfig next;
+        try {
+            next = ServerConfig.fromArgs(args, new ArrayList<>());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Config not reloaded: " + e.getMessage());
+            return;
+        }
+        server.reload(next);
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * Name: ContentEncoding
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Compresses text responses (html, css, js, json, svg, xml) for browsers that say they can
+ *      handle it in their Accept-Encoding header. If a pre-compressed copy sits next to the file
+ *      in the document root (site.css.br or site.css.gz) and is at least as new as the file, that
+ *      copy is sent. Otherwise gzip or deflate is done on the fly once and the result is kept in
+ *      FileCache, tied to the file's modified time. Files too big for the cache (big JS/CSS/JSON
+ *      bundles, where compression saves the most) are compressed as they are sent instead, with
+ *      no Content-Length, at the default level so the CPU keeps up with the network; that needs
+ *      a streamed body, so --mode=nio sends them as they are. Images, video, zips and other formats that are
+ *      already compressed are left alone. Java has no built-in brotli compressor, so br is only
+ *      ever served from a pre-built .br file.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Accept-Encoding
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Content-Encoding
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Vary
+ * https://www.rfc-editor.org/rfc/rfc7231#section-5.3.4
+ * https://docs.oracle.com/javase/8/docs/api/java/util/zip/GZIPOutputStream.html
+ * https://www.rfc-editor.org/rfc/rfc1952
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ContentEncoding {
+    /** Encodings we can send, best first (used to break ties between equal q-values). */
+    static final String[] ENCODINGS = { "br", "gzip", "deflate" };
+    /** File name endings of pre-compressed siblings, matching ENCODINGS where one exists. */
+    static final String[] SIBLING_SUFFIXES = { ".br", ".gz" };
+
+    /** Files smaller than this aren't worth compressing (headers would eat the savings). */
+    private static final long MIN_COMPRESS_BYTES = 256;
+
+    /**
+     * choose()
+     * Picks the encoding to send: the browser's most preferred one that we can actually
+     * produce, either from a fresh pre-compressed sibling or by compressing (and caching)
+     * the file. Returns null for "send it as it is". Only looks at what PathCache already
+     * knows about the file, so it is cheap enough to run before deciding on a 304.
+     * @param resolved
+     * @param acceptEncoding
+     * @param cache
+     * @param streaming whether a file too big for the cache can be compressed as it is sent
+     * @return
+    */
+    static String choose(PathCache.Resolved resolved, String acceptEncoding, FileCache cache, boolean streaming) {
+        if (acceptEncoding == null || !resolved.getType().isCompressible()) {
+            return null;
+        }
+        long size = resolved.getSize();
+        for (String encoding : preferred(acceptEncoding)) {
+            if (resolved.sibling(encoding) != null) {
+                return encoding;
+            }
+            if (encoding.equals("br") || size < MIN_COMPRESS_BYTES || !(streaming || cache.canHold(size))) {
+                continue; // no brotli compressor in the JDK; tiny files stay as they are
+            }
+            return encoding;
+        }
+        return null;
+    }
+
+    /**
+     * isStreamed()
+     * Whether the response for an encoding picked by choose() is compressed while it is sent
+     * (no sibling, and too big for the cache) rather than a sibling or a cached copy. Its bytes
+     * differ from a cached copy's, so it has its own validators.
+     * @param resolved
+     * @param encoding
+     * @param cache
+     * @return
+    */
+    static boolean isStreamed(PathCache.Resolved resolved, String encoding, FileCache cache) {
+        return resolved.sibling(encoding) == null && !cache.canHold(resolved.getSize());
+    }
+
+    /**
+     * encodedResponse()
+     * Builds the compressed response for an encoding picked by choose(): the sibling, the
+     * cached compressed copy, or for a file the cache can't hold a body compressed as it is
+     * read (chunked, or close-delimited for HTTP/1.0). Returns null if it
+     * can't be produced after all (e.g. the file couldn't be read), and the caller falls back
+     * to the plain file. The caller adds "Vary: Accept-Encoding" either way, since the answer
+     * depends on the header.
+     * streamed is isStreamed() as the caller saw it when it picked the validators, so the
+     * body always matches its ETag even if a reload resizes the cache in between. For HEAD
+     * (bodyOmitted) a streamed response is just its headers; the file isn't opened.
+     * @param resolved
+     * @param encoding
+     * @param cache
+     * @param streamed
+     * @param bodyOmitted
+     * @return
+    */
+    static HTTPResponse encodedResponse(PathCache.Resolved resolved, String encoding, FileCache cache,
+                                        boolean streamed, boolean bodyOmitted) {
+        String mime = resolved.getMime();
+        File sibling = resolved.sibling(encoding);
+        if (sibling != null) {
+            FileCache.Entry entry = cache.getPrecompressed(sibling, mime, encoding);
+            if (entry != null) {
+                return HTTPResponse.cached(entry);
+            }
+            return HTTPResponse.file(sibling, resolved.getType()).header("Content-Encoding", encoding);
+        }
+        if (streamed) {
+            if (bodyOmitted) {
+                return HTTPResponse.streamed("200 OK", mime, -1, null).withoutBody().header("Content-Encoding", encoding);
+            }
+            try {
+                return HTTPResponse.streamed("200 OK", mime, -1, new CompressingInput(resolved.getFile(), encoding))
+                        .header("Content-Encoding", encoding);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        FileCache.Entry entry = cache.getCompressed(resolved.getFile(), mime, encoding);
+        return entry != null ? HTTPResponse.cached(entry) : null;
+    }
+
+    /**
+     * preferred()
+     * Reads an Accept-Encoding header like "gzip;q=0.8, br, *;q=0" and returns the encodings
+     * from ENCODINGS the browser will take, highest q-value first. A q of 0 means "never".
+     * "*" covers any encoding that isn't named.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7231#section-5.3.1
+     * @param acceptEncoding
+     * @return
+    */
+    static String[] preferred(String acceptEncoding) {
+        double[] q = new double[ENCODINGS.length];
+        boolean[] named = new boolean[ENCODINGS.length];
+        double star = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.split(";");
+            String token = pieces[0].trim().toLowerCase(Locale.ROOT);
+            double weight = 1.0;
+            for (int i = 1; i < pieces.length; i++) {
+                String param = pieces[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        weight = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        weight = 0;
+                    }
+                }
+            }
+            if (token.equals("*")) {
+                star = weight;
+                continue;
+            }
+            if (token.equals("x-gzip")) {
+                token = "gzip";
+            }
+            for (int i = 0; i < ENCODINGS.length; i++) {
+                if (ENCODINGS[i].equals(token)) {
+                    q[i] = weight;
+                    named[i] = true;
+                }
+            }
+        }
+
+        int count = 0;
+        String[] order = new String[ENCODINGS.length];
+        double[] weights = new double[ENCODINGS.length];
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            double weight = named[i] ? q[i] : star;
+            if (weight <= 0) {
+                continue;
+            }
+            // insertion sort by weight; equal weights keep the ENCODINGS order
+            int j = count++;
+            while (j > 0 && weights[j - 1] < weight) {
+                order[j] = order[j - 1];
+                weights[j] = weights[j - 1];
+                j--;
+            }
+            order[j] = ENCODINGS[i];
+            weights[j] = weight;
+        }
+        String[] result = new String[count];
+        System.arraycopy(order, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * freshSibling()
+     * The pre-compressed copy of file for this encoding (file.br or file.gz), if it exists and
+     * isn't older than the file itself. A stale copy is ignored so an edit is never hidden
+     * behind an old .gz. PathCache calls this once per file and keeps the answer.
+     * @param file
+     * @param encoding
+     * @return
+    */
+    static File freshSibling(File file, String encoding) {
+        String suffix;
+        if (encoding.equals("br")) {
+            suffix = ".br";
+        } else if (encoding.equals("gzip")) {
+            suffix = ".gz";
+        } else {
+            return null;
+        }
+        File sibling = new File(file.getPath() + suffix);
+        if (sibling.isFile() && sibling.lastModified() >= file.lastModified()) {
+            return sibling;
+        }
+        return null;
+    }
+
+    /**
+     * compress()
+     * Compresses the buffer's contents with gzip or deflate (zlib format, which is what
+     * "deflate" means in HTTP) at the best compression level; the work is only done once per
+     * file version because the result is cached.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/util/zip/Deflater.html
+     * https://www.rfc-editor.org/rfc/rfc9110#section-8.4.1
+     * @param body
+     * @param encoding
+     * @return
+     * @throws IOException
+    */
+    static byte[] compress(ByteBuffer body, String encoding) throws IOException {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(Math.max(64, body.remaining() / 3));
+        try (OutputStream out = encoding.equals("gzip") ? new GzipStream(packed) : new ZlibStream(packed)) {
+            byte[] chunk = new byte[8192];
+            ByteBuffer src = body.duplicate();
+            while (src.hasRemaining()) {
+                int n = Math.min(chunk.length, src.remaining());
+                src.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+        return packed.toByteArray();
+    }
+
+    /**
+     * CompressingInput
+     * A file read through a Deflater, giving gzip (header, raw deflate, CRC-32 and length
+     * trailer) or zlib "deflate" bytes as they are asked for, so a big file is compressed
+     * 8 KB at a time while it is sent and never held whole. The JDK only has gzip on the
+     * writing side, hence the framing here.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc1952#page-5
+     * https://docs.oracle.com/javase/8/docs/api/java/util/zip/Deflater.html#deflate-byte:A-int-int-
+     */
+    static final class CompressingInput extends InputStream {
+        private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+        private final InputStream in;
+        private final Deflater def;
+        private final CRC32 crc; // null for deflate
+        private final byte[] inBuf = new byte[8192];
+        private byte[] pending; // gzip header or trailer still to hand out
+        private int pendingAt;
+        private boolean trailerDone;
+
+        CompressingInput(File file, String encoding) throws IOException {
+            this.in = new FileInputStream(file);
+            boolean gzip = encoding.equals("gzip");
+            this.def = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip); // gzip wants raw deflate
+            this.crc = gzip ? new CRC32() : null;
+            this.pending = gzip ? GZIP_HEADER : null;
+            this.trailerDone = !gzip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (pending != null) {
+                    int n = Math.min(len, pending.length - pendingAt);
+                    System.arraycopy(pending, pendingAt, b, off, n);
+                    pendingAt += n;
+                    if (pendingAt == pending.length) {
+                        pending = null;
+                        pendingAt = 0;
+                    }
+                    return n;
+                }
+                if (def.finished()) {
+                    if (trailerDone) {
+                        return -1;
+                    }
+                    trailerDone = true;
+                    pending = trailer();
+                    continue;
+                }
+                if (def.needsInput()) {
+                    int n = in.read(inBuf);
+                    if (n < 0) {
+                        def.finish();
+                    } else {
+                        def.setInput(inBuf, 0, n);
+                        if (crc != null) {
+                            crc.update(inBuf, 0, n);
+                        }
+                    }
+                }
+                int n = def.deflate(b, off, len);
+                if (n > 0) {
+                    return n;
+                }
+            }
+        }
+
+        /** The gzip trailer: CRC-32 and length of the uncompressed data, little-endian. */
+        private byte[] trailer() {
+            long c = crc.getValue();
+            long size = def.getBytesRead();
+            byte[] t = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                t[i] = (byte) (c >>> (8 * i));
+                t[4 + i] = (byte) (size >>> (8 * i));
+            }
+            return t;
+        }
+
+        @Override
+        public void close() throws IOException {
+            def.end();
+            in.close();
+        }
+    }
+
+    /**
+     * GzipStream
+     * GZIPOutputStream at the best compression level instead of the default one, so the
+     * cached copy is as small as possible.
+     */
+    private static final class GzipStream extends GZIPOutputStream {
+        GzipStream(OutputStream out) throws IOException {
+            super(out, 8192);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+    /**
+     * ZlibStream
+     * Same idea for "deflate" (zlib wrapped) output.
+     */
+    private static final class ZlibStream extends DeflaterOutputStream {
+        ZlibStream(OutputStream out) {
+            super(out, new Deflater(Deflater.BEST_COMPRESSION), 8192);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end(); // we made this Deflater, so we have to free it
+            }
+        }
+    }
+}
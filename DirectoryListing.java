@@ -0,0 +1,696 @@
+/**
+ * Name: DirectoryListing
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: The --autoindex page for a directory without index.html, as HTML or (with ?format=json,
+ *      or an Accept header asking for JSON) as JSON. The listing is read with a DirectoryStream
+ *      one name at a time and rendered while it is being sent, chunked, so a directory with tens
+ *      of thousands of files never sits in memory as a File[] or as one big page.
+ *      ?sort=name|size|mtime|none, ?order=asc|desc and ?page=N pick what is shown,
+ *      --autoindex-page-size entries per page. A sorted page only keeps the best page*size
+ *      entries while it reads the directory (a heap), and sort=name only looks at the files on
+ *      the page. sort=none is the directory's own order and is sent as it is read.
+ *      Rendered pages are kept (up to --autoindex-cache-bytes, least recently used go first)
+ *      together with the directory's modified time, and are served from memory until that
+ *      changes, which happens when a file is created, deleted or renamed in it. A file rewritten
+ *      in place doesn't change it, so its size and date on a cached page can be behind.
+ *      Names starting with a dot aren't listed.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/file/DirectoryStream.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/PriorityQueue.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/LinkedHashMap.html#LinkedHashMap-int-float-boolean-
+ * https://nginx.org/en/docs/http/ngx_http_autoindex_module.html
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class DirectoryListing {
+    private static final String HTML = "text/html; charset=utf-8";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int RENDER_BYTES = 16 * 1024; // rendered per read() once the last batch is sent
+    // a directory changed this recently may change again within its modified time's granularity
+    // (whole seconds, or two on some file systems), so its page isn't kept
+    private static final long RACY_MILLIS = 2000;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneOffset.UTC);
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Page> pages = new LinkedHashMap<>(16, 0.75f, true); // oldest use first
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes;
+
+    /**
+     * DirectoryListing()
+     * @param maxBytes rendered pages kept in memory, 0 = render every time
+    */
+    public DirectoryListing(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * respond()
+     * The listing of dir for a request, or null if dir is gone. A path without its final "/"
+     * is sent there first (301), so the relative links on the page work. Bad query values get
+     * a 400. A kept page comes back whole with its Content-Length; otherwise the page is
+     * streamed as it is rendered, except in nio mode, which can only write whole bodies.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Files.html#getLastModifiedTime-java.nio.file.Path-java.nio.file.LinkOption...-
+     * @param dir the directory on disk, already checked to be inside the document root
+     * @param path the decoded URL path
+     * @param request
+     * @param context
+     * @return
+     * @throws IOException
+    */
+    HTTPResponse respond(File dir, String path, HTTPRequest request, ServerContext context) throws IOException {
+        String target = request.getTarget();
+        int q = target.indexOf('?');
+        if (!path.endsWith("/")) {
+            String location = (q >= 0 ? target.substring(0, q) : target) + "/" + (q >= 0 ? target.substring(q) : "");
+            return HTTPHandler.simpleResponse("301 Moved Permanently", "text/plain", "Moved to " + location)
+                    .header("Location", location);
+        }
+        Query query;
+        try {
+            query = Query.parse(q >= 0 ? target.substring(q + 1) : "", request.getHeader("accept"),
+                    context.getConfig().getAutoindexPageSize());
+        } catch (IllegalArgumentException e) {
+            return HTTPHandler.simpleResponse("400 Bad Request", "text/plain", e.getMessage());
+        }
+        Path dirPath = dir.toPath();
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(dirPath);
+        } catch (IOException e) {
+            return null;
+        }
+        Metrics metrics = context.getMetrics();
+        metrics.autoindexResponses.increment();
+        String key = dir.getPath() + '\0' + path + '\0' + query.key();
+        Page kept = get(key, modified);
+        if (kept != null) {
+            metrics.autoindexCacheHits.increment();
+            return HTTPResponse.bytes("200 OK", kept.contentType, kept.body).header("Vary", "Accept");
+        }
+        Renderer body = new Renderer(dirPath, path, query, maxBytes > 0 ? key : null, modified);
+        try {
+            body.open();
+        } catch (IOException e) {
+            body.close();
+            return null; // deleted, or no longer a directory
+        }
+        String type = query.json ? JSON : HTML;
+        if (context.isNio()) {
+            try (Renderer r = body) {
+                return HTTPResponse.bytes("200 OK", type, r.readAllBytes()).header("Vary", "Accept");
+            }
+        }
+        return HTTPResponse.streamed("200 OK", type, -1, body).header("Vary", "Accept");
+    }
+
+    /**
+     * get()
+     * The kept page for key if the directory hasn't changed since it was rendered.
+     * @param key
+     * @param modified the directory's modified time now
+     * @return
+    */
+    private Page get(String key, FileTime modified) {
+        if (maxBytes <= 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            Page p = pages.get(key);
+            if (p != null && !p.modified.equals(modified)) {
+                pages.remove(key);
+                bytes -= p.body.length;
+                return null;
+            }
+            return p;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * put()
+     * Keeps a fully rendered page, dropping the least recently used ones to stay within
+     * maxBytes. Not kept if the directory changed while it was read, or so recently that a
+     * change right after might not move its modified time.
+     * @param key
+     * @param page
+     * @param dir
+    */
+    private void put(String key, Page page, Path dir) {
+        try {
+            if (!Files.getLastModifiedTime(dir).equals(page.modified)
+                    || System.currentTimeMillis() - page.modified.toMillis() < RACY_MILLIS) {
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        lock.lock();
+        try {
+            Page old = pages.put(key, page);
+            bytes += page.body.length - (old != null ? old.body.length : 0);
+            Iterator<Page> oldest = pages.values().iterator();
+            while (bytes > maxBytes && oldest.hasNext()) {
+                bytes -= oldest.next().body.length;
+                oldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * getBytes()
+     * Bytes of rendered pages kept right now.
+     * @return
+    */
+    long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Page
+     * One rendered page and the directory's modified time when it was read.
+     */
+    private static final class Page {
+        final FileTime modified;
+        final String contentType;
+        final byte[] body;
+
+        Page(FileTime modified, String contentType, byte[] body) {
+            this.modified = modified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Query
+     * What the query string asked for: format, sort order and page (counted from 1).
+     */
+    static final class Query {
+        String sort = "name";
+        boolean descending;
+        boolean json;
+        int page = 1;
+        int pageSize;
+
+        /**
+         * parse()
+         * Reads format, sort, order and page from the query string; anything else is ignored.
+         * Without format=, JSON is sent when the Accept header asks for it and not for HTML.
+         * Throws IllegalArgumentException for a value it doesn't know.
+         * @param query
+         * @param accept
+         * @param pageSize
+         * @return
+        */
+        static Query parse(String query, String accept, int pageSize) {
+            Query q = new Query();
+            q.pageSize = pageSize;
+            q.json = accept != null && accept.contains("application/json") && !accept.contains("text/html");
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    continue;
+                }
+                String value;
+                try {
+                    value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Malformed query string");
+                }
+                switch (pair.substring(0, eq)) {
+                    case "format":
+                        if (!value.equals("html") && !value.equals("json")) {
+                            throw new IllegalArgumentException("format must be html or json");
+                        }
+                        q.json = value.equals("json");
+                        break;
+                    case "sort":
+                        if (!value.equals("name") && !value.equals("size") && !value.equals("mtime") && !value.equals("none")) {
+                            throw new IllegalArgumentException("sort must be name, size, mtime or none");
+                        }
+                        q.sort = value;
+                        break;
+                    case "order":
+                        if (!value.equals("asc") && !value.equals("desc")) {
+                            throw new IllegalArgumentException("order must be asc or desc");
+                        }
+                        q.descending = value.equals("desc");
+                        break;
+                    case "page":
+                        try {
+                            q.page = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            q.page = 0;
+                        }
+                        if (q.page < 1) {
+                            throw new IllegalArgumentException("page must be a number from 1");
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return q;
+        }
+
+        /** The same query, written the same way whatever order it came in (part of the cache key). */
+        String key() {
+            return (json ? "json" : "html") + ' ' + sort + ' ' + (descending ? "desc" : "asc") + ' ' + page + ' ' + pageSize;
+        }
+
+        /** The query string of another page of this listing (a relative link, escaped for HTML). */
+        String link(int otherPage) {
+            return "?" + (json ? "format=json&amp;" : "") + "sort=" + sort + "&amp;order=" + (descending ? "desc" : "asc")
+                    + "&amp;page=" + otherPage;
+        }
+
+        /**
+         * comparator()
+         * Order of the entries for sort; ties (same size or date) go by name.
+         * @return
+        */
+        Comparator<Entry> comparator() {
+            Comparator<Entry> byName = Comparator.comparing(e -> e.name);
+            Comparator<Entry> c = sort.equals("size") ? Comparator.<Entry>comparingLong(e -> e.size).thenComparing(byName)
+                    : sort.equals("mtime") ? Comparator.<Entry>comparingLong(e -> e.modified).thenComparing(byName)
+                    : byName;
+            return descending ? c.reversed() : c;
+        }
+    }
+
+    /**
+     * Entry
+     * One name in the directory. Its attributes are read when it is sorted by them, or
+     * otherwise only once it is rendered.
+     */
+    static final class Entry {
+        final String name;
+        boolean directory;
+        long size = -1; // -1: couldn't be read (a broken symbolic link)
+        long modified;
+        boolean read;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * stat()
+         * Reads the entry's attributes (following symbolic links) unless that was done already.
+         * @param dir
+         * @return this
+        */
+        Entry stat(Path dir) {
+            if (!read) {
+                read = true;
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(dir.resolve(name), BasicFileAttributes.class);
+                    directory = attrs.isDirectory();
+                    size = directory ? 0 : attrs.size();
+                    modified = attrs.lastModifiedTime().toMillis();
+                } catch (IOException | RuntimeException e) {
+                    size = -1;
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Renderer
+     * The page as a stream: the entries are rendered about RENDER_BYTES at a time as the
+     * response is written. With sort=none the DirectoryStream is read along with it; sorted
+     * pages are picked in open(). A page that is kept is copied aside while it is read, and
+     * stored when the end is reached (given up once it is bigger than a quarter of the cache).
+     */
+    private final class Renderer extends InputStream {
+        private final Path dir;
+        private final String path;
+        private final Query query;
+        private final String key; // null: not kept
+        private final FileTime modified;
+        private DirectoryStream<Path> stream;
+        private Iterator<Path> names;
+        private Iterator<Entry> entries;
+        private int shown;       // sort=none: entries taken for the page so far
+        private int written;     // entries rendered so far
+        private long total = -1; // visible entries in the directory, -1 if not counted (sort=none)
+        private boolean more;    // sort=none: the directory has entries after this page
+        private boolean started;
+        private boolean ended;
+        private byte[] batch = new byte[0];
+        private int at;
+        private ByteArrayOutputStream copy;
+
+        Renderer(Path dir, String path, Query query, String key, FileTime modified) {
+            this.dir = dir;
+            this.path = path;
+            this.query = query;
+            this.key = key;
+            this.modified = modified;
+            if (key != null) {
+                copy = new ByteArrayOutputStream();
+            }
+        }
+
+        /**
+         * open()
+         * Opens the directory. A sorted page reads it all now, keeping only the first
+         * page*size entries in a heap whose top is the worst of them, and closes it again;
+         * sort=none skips to the page and leaves the rest to read().
+         * References:
+         * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Files.html#newDirectoryStream-java.nio.file.Path-
+         * @throws IOException
+        */
+        void open() throws IOException {
+            stream = Files.newDirectoryStream(dir);
+            names = stream.iterator();
+            long skip = query.pageSize > 0 ? (long) (query.page - 1) * query.pageSize : 0;
+            if (query.sort.equals("none")) {
+                if (query.pageSize == 0 && query.page > 1) {
+                    skip = Long.MAX_VALUE; // everything is on page 1
+                }
+                for (long i = 0; i < skip && nextVisible() != null; i++) {
+                    // skipped
+                }
+                entries = new Iterator<Entry>() {
+                    private Entry next = advance();
+
+                    private Entry advance() {
+                        boolean room = query.pageSize == 0 || shown < query.pageSize;
+                        Entry e = room ? nextVisible() : null;
+                        if (!room) {
+                            more = nextVisible() != null;
+                        }
+                        return e;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry e = next;
+                        shown++;
+                        next = advance();
+                        return e;
+                    }
+                };
+                return;
+            }
+            boolean byAttributes = !query.sort.equals("name");
+            Comparator<Entry> order = query.comparator();
+            long keep = query.pageSize > 0 ? (long) query.page * query.pageSize : Long.MAX_VALUE;
+            PriorityQueue<Entry> best = new PriorityQueue<>(order.reversed()); // the worst one on top
+            long count = 0;
+            try {
+                Entry e;
+                while ((e = nextVisible()) != null) {
+                    count++;
+                    if (byAttributes) {
+                        e.stat(dir);
+                    }
+                    if (best.size() < keep) {
+                        best.add(e);
+                    } else if (order.compare(e, best.peek()) < 0) {
+                        best.poll();
+                        best.add(e);
+                    }
+                }
+            } finally {
+                closeStream();
+            }
+            total = count;
+            List<Entry> sorted = new ArrayList<>(best);
+            sorted.sort(order);
+            entries = skip < sorted.size() ? sorted.subList((int) skip, sorted.size()).iterator()
+                    : new ArrayList<Entry>().iterator();
+        }
+
+        /**
+         * nextVisible()
+         * The next name in the directory that isn't hidden, or null at the end. A directory that
+         * can't be read any further (it was deleted meanwhile) ends there too.
+         * References:
+         * https://docs.oracle.com/javase/8/docs/api/java/nio/file/DirectoryIteratorException.html
+         * @return
+        */
+        private Entry nextVisible() {
+            try {
+                while (names != null && names.hasNext()) {
+                    Path p = names.next().getFileName();
+                    String name = p != null ? p.toString() : "";
+                    if (!name.isEmpty() && name.charAt(0) != '.') {
+                        return new Entry(name);
+                    }
+                }
+            } catch (DirectoryIteratorException e) {
+                names = null;
+            }
+            return null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (at == batch.length) {
+                if (ended) {
+                    return -1;
+                }
+                render();
+                if (at == batch.length) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, batch.length - at);
+            System.arraycopy(batch, at, b, off, n);
+            at += n;
+            return n;
+        }
+
+        /**
+         * available()
+         * What is left of the batch rendered last, so the writer flushes it before the next
+         * one is rendered.
+         * @return
+        */
+        @Override
+        public int available() {
+            return batch.length - at;
+        }
+
+        @Override
+        public void close() {
+            closeStream();
+        }
+
+        private void closeStream() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {}
+                stream = null;
+                names = null;
+            }
+        }
+
+        /**
+         * render()
+         * Renders the next batch: the top of the page the first time, then entries until the
+         * batch is about RENDER_BYTES, and the bottom once they have run out. The last batch
+         * stores the page if it is being kept.
+         * @throws IOException
+        */
+        private void render() throws IOException {
+            StringBuilder sb = new StringBuilder(RENDER_BYTES + 1024);
+            if (!started) {
+                started = true;
+                top(sb);
+            }
+            while (sb.length() < RENDER_BYTES && entries.hasNext()) {
+                entry(sb, entries.next().stat(dir), written++ == 0);
+            }
+            if (!entries.hasNext()) {
+                bottom(sb);
+                ended = true;
+                closeStream();
+            }
+            batch = sb.toString().getBytes(StandardCharsets.UTF_8);
+            at = 0;
+            if (copy != null) {
+                if (copy.size() + batch.length > maxBytes / 4) {
+                    copy = null;
+                } else {
+                    copy.write(batch);
+                }
+            }
+            if (ended && copy != null) {
+                put(key, new Page(modified, query.json ? JSON : HTML, copy.toByteArray()), dir);
+                copy = null;
+            }
+        }
+
+        private void top(StringBuilder sb) {
+            if (query.json) {
+                sb.append("{\"path\":");
+                jsonString(sb, path);
+                sb.append(",\"sort\":\"").append(query.sort).append("\",\"order\":\"")
+                        .append(query.descending ? "desc" : "asc").append("\",\"page\":").append(query.page)
+                        .append(",\"pageSize\":").append(query.pageSize).append(",\"entries\":[");
+                return;
+            }
+            String title = "Index of " + html(path);
+            sb.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>").append(title)
+                    .append("</title></head><body><h1>").append(title).append("</h1>\n<table>\n<tr>");
+            header(sb, "name", "Name");
+            header(sb, "size", "Size");
+            header(sb, "mtime", "Modified (UTC)");
+            sb.append("</tr>\n");
+            if (!path.equals("/")) {
+                sb.append("<tr><td><a href=\"../\">../</a></td><td></td><td></td></tr>\n");
+            }
+        }
+
+        /** A column heading that sorts by it, the other way round if it already does. */
+        private void header(StringBuilder sb, String sort, String label) {
+            boolean flip = query.sort.equals(sort) && !query.descending;
+            sb.append("<th><a href=\"?sort=").append(sort).append("&amp;order=").append(flip ? "desc" : "asc")
+                    .append("\">").append(label).append("</a></th>");
+        }
+
+        private void entry(StringBuilder sb, Entry e, boolean first) {
+            if (query.json) {
+                sb.append(first ? "\n{\"name\":" : ",\n{\"name\":");
+                jsonString(sb, e.name);
+                sb.append(",\"type\":\"").append(e.size < 0 ? "unknown" : e.directory ? "directory" : "file")
+                        .append("\",\"size\":").append(Math.max(e.size, 0)).append(",\"mtime\":\"")
+                        .append(e.size < 0 ? "" : Instant.ofEpochMilli(e.modified).toString()).append("\"}");
+                return;
+            }
+            String shownName = html(e.name) + (e.directory ? "/" : "");
+            sb.append("<tr><td><a href=\"").append(html(URLEncoder.encode(e.name, StandardCharsets.UTF_8).replace("+", "%20")))
+                    .append(e.directory ? "/" : "").append("\">").append(shownName).append("</a></td><td>")
+                    .append(e.size < 0 || e.directory ? "-" : Long.toString(e.size)).append("</td><td>")
+                    .append(e.size < 0 ? "-" : DATE.format(Instant.ofEpochMilli(e.modified))).append("</td></tr>\n");
+        }
+
+        private void bottom(StringBuilder sb) {
+            boolean hasNext = total >= 0 ? query.pageSize > 0 && (long) query.page * query.pageSize < total : more;
+            if (query.json) {
+                sb.append(written == 0 ? "]" : "\n]").append(",\"total\":").append(total >= 0 ? Long.toString(total) : "null")
+                        .append(",\"next\":").append(hasNext ? "\"" + query.link(query.page + 1).replace("&amp;", "&") + "\"" : "null")
+                        .append("}\n");
+                return;
+            }
+            sb.append("</table>\n<p>");
+            if (query.page > 1) {
+                sb.append("<a href=\"").append(query.link(query.page - 1)).append("\">Previous</a> ");
+            }
+            if (hasNext) {
+                sb.append("<a href=\"").append(query.link(query.page + 1)).append("\">Next</a> ");
+            }
+            if (total >= 0) {
+                sb.append(total).append(total == 1 ? " entry" : " entries");
+            }
+            sb.append("</p>\n</body></html>\n");
+        }
+    }
+
+    /**
+     * html()
+     * Escapes text for an HTML page or attribute.
+     * @param s
+     * @return
+    */
+    private static String html(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&#39;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * jsonString()
+     * Appends s as a JSON string, quotes included.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc8259#section-7
+     * @param sb
+     * @param s
+    */
+    private static void jsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,497 @@
+/**
+ * Name: FileCache
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Keeps small, frequently requested files (index.html, site.css, thumbnails) in memory so
+ *      they don't have to be read from disk on every request. Each entry holds the file body in a
+ *      direct ByteBuffer (it can be written to a socket without another copy) plus its
+ *      Content-Type/Content-Length header lines already turned into bytes. The cache has a byte
+ *      budget; when it is over budget entries that haven't been used lately are dropped, picked
+ *      by a CLOCK sweep: a hit only sets the entry's reference bit, and eviction walks a ring of
+ *      entries giving each one with the bit set a second chance, so neither hits nor evictions
+ *      ever sort or copy the whole cache. Entries are
+ *      re-checked against the file's modified time and size at most once a second, so edits under
+ *      the document root show up without a restart. Compressed copies of text files (see
+ *      ContentEncoding) live in the same cache under the same budget. Requests that miss on the
+ *      same key at the same time share one load: the first one reads (and compresses) the file,
+ *      the others wait for its result instead of doing the same work next to it.
+ *      Bigger files can be memory-mapped instead (map(), used by Preloader at startup when
+ *      --mmap-bytes is set). A mapped entry's body is a MappedByteBuffer over the file, so it
+ *      lives in the OS page cache rather than the Java heap, has its own budget, and is never
+ *      evicted; if the file changes it is dropped and the file is served from disk again.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ConcurrentHashMap.html
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/ByteBuffer.html#allocateDirect-int-
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/locks/ReentrantLock.html
+ * https://en.wikipedia.org/wiki/Cache_replacement_policies#Least_recently_used_(LRU)
+ * https://en.wikipedia.org/wiki/Page_replacement_algorithm#Clock
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/MappedByteBuffer.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CompletableFuture.html
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class FileCache {
+    private static final long REVALIDATE_MILLIS = 1000;
+
+    private volatile long maxBytes;
+    private volatile long maxFileBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>(); // misses being loaded
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final long maxMappedBytes;
+    private final AtomicLong mappedBytes = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock(); // not synchronized: safe for virtual threads
+    // the CLOCK ring: every unmapped entry in insertion order, plus ones already replaced or
+    // removed, which the hand skips (and compact() clears out when they pile up)
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+
+    /**
+     * FileCache()
+     * maxBytes is the total budget for cached bodies (0 turns the cache off), maxFileBytes is the
+     * biggest single file worth caching; anything larger is streamed from disk as before,
+     * unless it was mapped. maxMappedBytes is the budget for map() (0 means nothing is mapped).
+     * @param maxBytes
+     * @param maxFileBytes
+     * @param maxMappedBytes
+    */
+    public FileCache(long maxBytes, long maxFileBytes, long maxMappedBytes) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = Math.min(maxFileBytes, maxBytes);
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * get()
+     * Returns the cached copy of a file, loading it if it isn't cached yet. Returns null if the
+     * file is too big to cache, can't be read, or the cache is turned off; the caller then
+     * sends it from disk. A cached entry that hasn't been checked in the last second is compared
+     * with the file's current modified time and size, and reloaded if either changed.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/io/File.html#lastModified--
+     * @param file
+     * @param contentType
+     * @return
+    */
+    public Entry get(File file, String contentType) {
+        return lookup(file.getPath(), file, contentType, null, false);
+    }
+
+    /**
+     * getPrecompressed()
+     * Same as get() for a pre-compressed sibling (e.g. site.css.gz served for site.css): the
+     * bytes are cached as they are, and the entry's headers carry Content-Encoding.
+     * @param sibling
+     * @param contentType
+     * @param encoding
+     * @return
+    */
+    public Entry getPrecompressed(File sibling, String contentType, String encoding) {
+        return lookup(sibling.getPath() + "|" + encoding, sibling, contentType, encoding, false);
+    }
+
+    /**
+     * getCompressed()
+     * A compressed copy of the file made on the fly (gzip or deflate) the first time it is
+     * asked for, then kept like any other entry. It is tied to the original file's modified
+     * time and size, so editing the file throws the compressed copy away too.
+     * @param file
+     * @param contentType
+     * @param encoding
+     * @return
+    */
+    public Entry getCompressed(File file, String contentType, String encoding) {
+        return lookup(file.getPath() + "|" + encoding, file, contentType, encoding, true);
+    }
+
+    /**
+     * lookup()
+     * The shared part of the three getters above.
+     * @param key
+     * @param file
+     * @param contentType
+     * @param encoding
+     * @param compress
+     * @return
+    */
+    private Entry lookup(String key, File file, String contentType, String encoding, boolean compress) {
+        if (maxBytes <= 0 && maxMappedBytes <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry e = entries.get(key);
+        if (e != null) {
+            if (now - e.checkedAt < REVALIDATE_MILLIS) {
+                e.touch();
+                return e;
+            }
+            if (file.lastModified() == e.lastModified && file.length() == e.sourceSize) {
+                e.checkedAt = now;
+                e.touch();
+                return e;
+            }
+            remove(key);
+        }
+
+        long size = file.length();
+        if (size > maxFileBytes || !file.isFile()) {
+            return null;
+        }
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> other = loading.putIfAbsent(key, mine);
+        if (other != null) {
+            return other.join(); // someone is loading it already
+        }
+        Entry fresh = null;
+        try {
+            fresh = insert(key, file, contentType, encoding, compress, now);
+        } finally {
+            loading.remove(key, mine);
+            mine.complete(fresh);
+        }
+        return fresh;
+    }
+
+    /**
+     * insert()
+     * Loads a missed entry, adds it to the cache and the CLOCK ring, and evicts if that went
+     * over budget. Returns null if the file couldn't be read.
+     * @param key
+     * @param file
+     * @param contentType
+     * @param encoding
+     * @param compress
+     * @param now
+     * @return
+    */
+    private Entry insert(String key, File file, String contentType, String encoding, boolean compress, long now) {
+        Entry fresh;
+        try {
+            fresh = load(key, file, contentType, encoding, compress, now);
+        } catch (IOException ex) {
+            return null;
+        }
+        Entry old = entries.put(key, fresh);
+        totalBytes.addAndGet(fresh.size);
+        if (old != null) {
+            release(old);
+        }
+        clock.add(fresh);
+        if (clockSize.incrementAndGet() > 2 * entries.size() + 64) {
+            compact();
+        }
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+        return fresh;
+    }
+
+    /**
+     * canHold()
+     * Whether a file of this size would be cached at all.
+     * @param size
+     * @return
+    */
+    public boolean canHold(long size) {
+        return maxBytes > 0 && size <= maxFileBytes;
+    }
+
+    /**
+     * hasRoomFor()
+     * Whether a file of this size fits in what is left of the budget without evicting anything.
+     * @param size
+     * @return
+    */
+    public boolean hasRoomFor(long size) {
+        return totalBytes.get() + size <= maxBytes;
+    }
+
+    /**
+     * setLimits()
+     * New limits from a config reload. Entries now bigger than maxFileBytes are dropped and,
+     * if the budget shrank, evict() drops more until it fits; everything else
+     * stays cached.
+     * @param maxBytes
+     * @param maxFileBytes
+    */
+    public void setLimits(long maxBytes, long maxFileBytes) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = Math.min(maxFileBytes, maxBytes);
+        for (Map.Entry<String, Entry> me : entries.entrySet()) {
+            Entry e = me.getValue();
+            if (!e.mapped && e.sourceSize > this.maxFileBytes && entries.remove(me.getKey(), e)) {
+                release(e);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * invalidate()
+     * Drops a file from the cache (used when it changed or was deleted), along with
+     * every compressed copy made from it or stored next to it.
+     * @param file
+    */
+    public void invalidate(File file) {
+        String path = file.getPath();
+        remove(path);
+        for (String encoding : ContentEncoding.ENCODINGS) {
+            remove(path + "|" + encoding);
+        }
+        for (String suffix : ContentEncoding.SIBLING_SUFFIXES) {
+            for (String encoding : ContentEncoding.ENCODINGS) {
+                remove(path + suffix + "|" + encoding);
+            }
+        }
+    }
+
+    /**
+     * remove()
+     * Removes one key and gives its bytes back to the budget.
+     * @param key
+    */
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            release(old);
+        }
+    }
+
+    /**
+     * release()
+     * Gives a removed entry's bytes back to the budget it came from.
+     * @param old
+    */
+    private void release(Entry old) {
+        (old.mapped ? mappedBytes : totalBytes).addAndGet(-old.size);
+    }
+
+    /**
+     * getTotalBytes()
+     * How many body bytes are held in the cache right now.
+     * @return
+    */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * getMappedBytes()
+     * How many bytes of files are memory-mapped right now.
+     * @return
+    */
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    /**
+     * map()
+     * Memory-maps a whole file read-only and keeps it as an entry, so get() hands out the
+     * mapping even though the file is bigger than --cache-max-file. load() touches every page
+     * once, so the file is in RAM before the first request for it. Returns null if it doesn't
+     * fit in what is left of the mapping budget (or can't be mapped); it is served from disk then.
+     * Mapping is meant for files that are replaced, not edited in place: a mapped file that
+     * shrinks under the server can fault a read before the change is noticed.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#map-java.nio.channels.FileChannel.MapMode-long-long-
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/MappedByteBuffer.html#load--
+     * @param file
+     * @param contentType
+     * @return
+    */
+    public Entry map(File file, String contentType) {
+        String key = file.getPath();
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        long lastModified = file.lastModified(); // before mapping, like load()
+        long size = file.length();
+        if (size == 0 || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        if (mappedBytes.addAndGet(size) > maxMappedBytes) {
+            mappedBytes.addAndGet(-size);
+            return null;
+        }
+        MappedByteBuffer mapped;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, size); // stays valid after the close
+        } catch (IOException e) {
+            mappedBytes.addAndGet(-size);
+            return null;
+        }
+        mapped.load();
+        Entry fresh = new Entry(key, contentType, null, lastModified, size, mapped, System.currentTimeMillis(), true);
+        Entry old = entries.putIfAbsent(key, fresh);
+        if (old != null) {
+            mappedBytes.addAndGet(-size);
+            return old;
+        }
+        return fresh;
+    }
+
+    /**
+     * load()
+     * Reads the whole file into a direct buffer, compressing it first if asked. The modified
+     * time is taken before reading so that a write racing with the load makes the entry look
+     * stale, not fresh.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#read-java.nio.ByteBuffer-
+     * @param key
+     * @param file
+     * @param contentType
+     * @param encoding
+     * @param compress
+     * @param now
+     * @return
+     * @throws IOException
+    */
+    private static Entry load(String key, File file, String contentType, String encoding, boolean compress, long now) throws IOException {
+        long lastModified = file.lastModified();
+        ByteBuffer body;
+        long sourceSize;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            sourceSize = fc.size();
+            body = ByteBuffer.allocateDirect((int) sourceSize);
+            while (body.hasRemaining() && fc.read(body) >= 0) {
+                // keep reading until full
+            }
+            body.flip();
+        }
+        if (compress) {
+            byte[] packed = ContentEncoding.compress(body, encoding);
+            body = ByteBuffer.allocateDirect(packed.length);
+            body.put(packed).flip();
+        }
+        return new Entry(key, contentType, encoding, lastModified, sourceSize, body.asReadOnlyBuffer(), now, false);
+    }
+
+    /**
+     * evict()
+     * Moves the CLOCK hand until the cache is back under its budget: an entry used since the
+     * hand last passed has its reference bit cleared and goes round again, one that wasn't is
+     * dropped. Each entry is passed at most twice per call, so an eviction costs O(1) amortized.
+     * Only one thread sweeps at a time. Others wait for the lock rather than skipping, since
+     * the sweep is short, and then look at the budget again themselves, so an insert that
+     * lands during another sweep (or a compact()) never leaves the cache over budget.
+     * References:
+     * https://en.wikipedia.org/wiki/Page_replacement_algorithm#Clock
+    */
+    private void evict() {
+        evictLock.lock();
+        try {
+            int budget = 2 * clockSize.get(); // enough to clear every bit once and come back
+            while (totalBytes.get() > maxBytes && budget-- > 0) {
+                Entry e = clock.poll();
+                if (e == null) {
+                    break;
+                }
+                if (entries.get(e.key) != e) {
+                    clockSize.decrementAndGet(); // replaced or removed already
+                    continue;
+                }
+                if (e.referenced) {
+                    e.referenced = false;
+                    clock.add(e); // second chance
+                    continue;
+                }
+                clockSize.decrementAndGet();
+                if (entries.remove(e.key, e)) {
+                    totalBytes.addAndGet(-e.size);
+                }
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * compact()
+     * Clears replaced and removed entries out of the CLOCK ring. Only needed when files keep
+     * changing while the cache has room, so the hand never comes round to skip them; it runs
+     * once the ring is twice the size of the cache, so its cost is spread over the inserts
+     * that made it grow.
+    */
+    private void compact() {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            int dropped = 0;
+            for (Iterator<Entry> it = clock.iterator(); it.hasNext(); ) {
+                Entry e = it.next();
+                if (entries.get(e.key) != e) {
+                    it.remove();
+                    dropped++;
+                }
+            }
+            clockSize.addAndGet(-dropped);
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * Entry
+     * One cached file. The body buffer is read-only and shared, so callers must write a
+     * duplicate() of it (each duplicate has its own position).
+     */
+    public static final class Entry {
+        final String contentType;
+        final long lastModified;
+        final long sourceSize;
+        final long size;
+        final ByteBuffer body;
+        final byte[] headerBytes;
+        final String key;
+        final boolean mapped;
+        volatile long checkedAt;
+        volatile boolean referenced; // set on a hit, cleared by the CLOCK hand
+
+        Entry(String key, String contentType, String encoding, long lastModified, long sourceSize, ByteBuffer body, long now, boolean mapped) {
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+            this.sourceSize = sourceSize;
+            this.size = body.remaining();
+            this.body = body;
+            this.headerBytes = ("Content-Type: " + contentType + "\r\n"
+                    + "Content-Length: " + size + "\r\n"
+                    + (encoding != null ? "Content-Encoding: " + encoding + "\r\n" : ""))
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            this.key = key;
+            this.mapped = mapped;
+            this.checkedAt = now;
+        }
+
+        /**
+         * touch()
+         * Marks the entry as used. Only writes when the bit is clear, so a hot entry's hits
+         * are plain reads.
+        */
+        void touch() {
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+}
@@ -16,34 +16,49 @@
  * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html
  * https://www.geeksforgeeks.org/java/java-net-urldecoder-class-java/
  * https://www.geeksforgeeks.org/java/java-nio-charset-charset-class-in-java/
- * https://docs.oracle.com/javase/8/docs/api/java/text/SimpleDateFormat.html
  * https://www.w3schools.com/java/java_packages.asp
 */
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.nio.file.StandardOpenOption;
 
 public class HTTPHandler implements Runnable {
+    private static final int READ_BUFFER_BYTES = 8 * 1024;
+
     private final Socket client;
-    private final File docRoot;
-    private final String serverName;
-    private static final String CRLF = "\r\n";
+    private final ServerContext context;
+    private final ServerConfig config;
+    private final Metrics metrics;
+    private final AccessLog accessLog; // null when --access-log is off
+    private ByteBuffer headerBuffer = ByteBuffer.allocate(512); // reused for every response's headers
+    private long parseNanos;
+    private final byte[] copyBuffer = new byte[8192];
+    private volatile boolean waiting; // blocked reading before any byte of the next request
+    private volatile Http2Connection http2; // set once the connection switches to HTTP/2
+    private final ClientLimiter.Client limits;
 
     /**
      * HTTPHandler()
      * Creates a new HTTPHandler object and stores the 
      * below values inside the object for future use.
      * @param client
-     * @param docRoot
-     * @param serverName
+     * @param context
+     * @param limits what ClientLimiter.openConnection() gave for this client
     */
-    public HTTPHandler(Socket client, File docRoot, String serverName) {
+    public HTTPHandler(Socket client, ServerContext context, ClientLimiter.Client limits) {
         this.client = client;
-        this.docRoot = docRoot;
-        this.serverName = serverName;
+        this.context = context;
+        this.limits = limits;
+        this.config = context.getConfig();
+        this.metrics = context.getMetrics();
+        this.accessLog = context.getAccessLog();
     }
 
     /**
@@ -53,7 +68,10 @@ public class HTTPHandler implements Runnable {
      * request, and locates the requested file. If the request is for a directory, it looks
      * for index.html. It checks if the requested file exists inside the docRoot. If the file
      * doesn't exist it prepares a "404 Not Found" error response. Then it writes back an HTTP 
-     * response to the browser (status line, headers, body). Finally, ir finishes a session
+     * response to the browser (status line, headers, body). This repeats for every request
+     * the browser sends on the same connection (keep-alive) until the browser asks to close,
+     * or switches the connection to HTTP/2 (see Http2Connection), or
+     * goes idle past the idle timeout, or hits the per-connection request limit. Finally, ir finishes a session
      * by closing the file stream, flushing the output stream, and closing the socket. 
      * References:
      * https://www.tutorialspoint.com/java/lang/process_getinputstream.htm
@@ -73,82 +91,424 @@ public class HTTPHandler implements Runnable {
     */
     @Override
     public void run() {
-        try (InputStream inRaw = client.getInputStream();
-             BufferedInputStream in = new BufferedInputStream(inRaw);
+        try (InputStream in = client.getInputStream();
              OutputStream out = client.getOutputStream();
              BufferedOutputStream bout = new BufferedOutputStream(out)) {
 
-            List<String> lines = readRequestLines(in);
-            if (lines.isEmpty()) {
-                return;
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            buf.flip(); // starts empty
+            RequestParser parser = new RequestParser(config);
+            int served = 0;
+            boolean keepAlive = true;
+            while (keepAlive) {
+                int result;
+                try {
+                    result = readRequest(in, buf, parser);
+                } catch (SocketTimeoutException idle) {
+                    break; // idle too long between requests, just hang up
+                }
+                if (result == RequestParser.NEED_MORE) {
+                    break; // browser closed its side
+                }
+                metrics.parseTime.record(parseNanos);
+                served++;
+                long t0 = System.nanoTime();
+                HTTPRequest request = result == RequestParser.DONE
+                        ? parser.toRequest().from(client.getInetAddress(), client instanceof TlsSocket) : null;
+                // over TLS, HTTP/2 is picked by ALPN and starts with the preface; h2c upgrades are cleartext only
+                if (request != null && config.isHttp2() && (Http2Connection.isPreface(request)
+                        || Http2Connection.wantsUpgrade(request) && !(client instanceof TlsSocket))) {
+                    // the rest of the connection is HTTP/2, starting with whatever is already in buf
+                    // (SequenceInputStream closes a stream when it runs dry, which would close the
+                    // socket before a GOAWAY could go out, so the socket's stream is shielded)
+                    InputStream rest = new SequenceInputStream(
+                            new ByteArrayInputStream(buf.array(), buf.position(), buf.remaining()),
+                            new FilterInputStream(in) {
+                                @Override
+                                public void close() {}
+                            });
+                    http2 = new Http2Connection(client, rest, bout, context, limits);
+                    if (http2.serve(request)) {
+                        break;
+                    }
+                    http2 = null;
+                }
+                HTTPResponse response = null;
+                RequestBody body = null;
+                if (request != null) {
+                    try {
+                        long length = RequestBody.framing(request);
+                        if (length != 0) {
+                            body = new RequestBody(new RequestBody.ConnectionInput(buf, in), length,
+                                    RequestBody.wantsContinue(request) ? bout : null, config.getMaxHeaderBytes());
+                            request.withBody(body);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        // can't tell where the body ends, so nothing after it can be read either
+                        response = simpleResponse("400 Bad Request", "text/plain", e.getMessage()).closeConnection();
+                    }
+                }
+                if (response == null) {
+                    response = request != null ? route(request, context, limits) : RequestParser.errorResponse(result);
+                }
+                if (body != null && !body.isDone()) {
+                    response.closeConnection(); // the rest of the body is still on the connection
+                }
+                long t1 = System.nanoTime();
+                keepAlive = keepConnectionOpen(request, response, served, context);
+                writeResponse(bout, response, keepAlive);
+                metrics.recordResponse(response, headerBuffer.limit());
+                if (accessLog != null) {
+                    accessLog.log(client.getInetAddress(), request, response);
+                }
+                // Only flush once there are no more pipelined requests waiting to be read,
+                // so back-to-back requests go out in as few packets as possible.
+                if (!keepAlive || !buf.hasRemaining() && in.available() == 0) {
+                    bout.flush();
+                }
+                metrics.routeTime.record(t1 - t0);
+                metrics.sendTime.record(System.nanoTime() - t1);
             }
+            bout.flush();
+        } catch (IOException e) {
+            metrics.ioErrors.increment(); // reset by the browser, broken pipe, ...
+        } finally { 
+            try { client.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * closeIfWaiting()
+     * Called by MyHTTPServer.stop() after ServerContext.startDraining(): if this connection is
+     * only waiting for the next request (or an HTTP/2 connection has no streams open), shuts
+     * down its input so the blocked read returns and the connection ends. Connections in the
+     * middle of a request or response are left alone; they close by themselves when done.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html#shutdownInput--
+    */
+    void closeIfWaiting() {
+        Http2Connection h2 = http2;
+        if (h2 != null ? h2.isWaiting() : waiting) {
+            try {
+                client.shutdownInput();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * sendBusy()
+     * Used when the server is already at its connection limit: answers with a short
+     * "503 Service Unavailable" (and Retry-After so the browser knows to come back) and
+     * closes the socket straight away instead of letting the connection wait in a queue.
+     * References:
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Status/503
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Retry-After
+     * @param client
+     * @param context
+    */
+    static void sendBusy(Socket client, ServerContext context) {
+        refuse(client, context, simpleResponse("503 Service Unavailable", "text/plain", "Server busy, try again shortly")
+                .header("Retry-After", "1"));
+    }
+
+    /**
+     * sendTooMany()
+     * Like sendBusy(), for a client that already has --max-connections-per-ip connections open:
+     * "429 Too Many Requests", because the limit is on this client rather than the server.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc6585#section-4
+     * @param client
+     * @param context
+    */
+    static void sendTooMany(Socket client, ServerContext context) {
+        refuse(client, context, simpleResponse("429 Too Many Requests", "text/plain", "Too many connections from your address")
+                .header("Retry-After", "1"));
+    }
 
-            String requestLine = lines.get(0).trim();
-            String[] parts = requestLine.split("\\s+");
-            if (parts.length < 3) { 
-                sendSimpleResponse(bout, "400 Bad Request", "text/plain", "Malformed request");
+    /**
+     * refuse()
+     * Writes a short response to a connection that won't be served and closes it. An HTTPS
+     * connection is just closed: the answer would cost a whole TLS handshake, which is the
+     * last thing an overloaded server should spend its time on.
+     * @param client
+     * @param context
+     * @param response
+    */
+    private static void refuse(Socket client, ServerContext context, HTTPResponse response) {
+        context.getMetrics().connectionsRejected.increment();
+        try (Socket s = client) {
+            if (s instanceof TlsSocket) {
                 return;
             }
+            OutputStream out = s.getOutputStream();
+            ByteBuffer head = context.getHeaderWriter().encode(response, false, ByteBuffer.allocate(256));
+            out.write(head.array(), 0, head.limit());
+            out.write(response.getBody());
+            out.flush();
+        } catch (IOException ignored) {}
+    }
 
-            String method = parts[0];
-            String rawPath = parts[1]; 
-            if (!"GET".equalsIgnoreCase(method)) { 
-                sendSimpleResponse(bout, "501 Not Implemented", "text/plain", "Only GET supported");
+    /**
+     * route()
+     * Same as below, after checking the client's request rate (see rateLimited()), and with
+     * the CORS header added for an allowed Origin (see cors()). All three connection types
+     * (threads, nio, HTTP/2 streams) come through here. A body the connection couldn't read
+     * (nio mode) is still in front of the next request, so that connection closes.
+     * @param request
+     * @param context
+     * @param limits
+     * @return
+     * @throws IOException
+    */
+    static HTTPResponse route(HTTPRequest request, ServerContext context, ClientLimiter.Client limits) throws IOException {
+        HTTPResponse response = request != null ? rateLimited(context, limits) : null;
+        if (response == null) {
+            response = route(request, context);
+        }
+        if (request != null) {
+            cors(request, response, context.getConfig());
+            if (request.getBody() == null && request.hasBody()) {
+                response.closeConnection();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * rateLimited()
+     * Over the client's request rate (--rate-limit) the answer is "429 Too Many Requests"
+     * with Retry-After, and the connection stays open; otherwise null.
+     * @param context
+     * @param limits
+     * @return
+    */
+    static HTTPResponse rateLimited(ServerContext context, ClientLimiter.Client limits) {
+        long wait = context.getClientLimiter().tryRequest(limits);
+        if (wait > 0) {
+            context.getMetrics().requestsRateLimited.increment();
+            return simpleResponse("429 Too Many Requests", "text/plain", "Too many requests, slow down")
+                    .header("Retry-After", Long.toString(wait));
+        }
+        return null;
+    }
+
+    /**
+     * cors()
+     * Lets pages from the --cors-origins sites read the response: a request whose Origin is
+     * one of them gets it back in Access-Control-Allow-Origin ("*" when any origin is
+     * allowed), with "Vary: Origin" so caches keep the answers apart.
+     * References:
+     * https://fetch.spec.whatwg.org/#http-cors-protocol
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Origin
+     * @param request
+     * @param response
+     * @param config
+    */
+    static void cors(HTTPRequest request, HTTPResponse response, ServerConfig config) {
+        String allowed = config.getCorsOrigins();
+        String origin = request.getHeader("origin");
+        if (allowed.isEmpty() || origin == null) {
+            return;
+        }
+        if (allowed.equals("*")) {
+            response.header("Access-Control-Allow-Origin", "*");
+            return;
+        }
+        for (String candidate : allowed.split(",")) {
+            if (candidate.trim().equals(origin)) {
+                response.header("Access-Control-Allow-Origin", origin).header("Vary", "Origin");
                 return;
             }
+        }
+    }
 
-            String path = urlDecodePath(rawPath);
-            File requestedFile = resolvePath(docRoot, path); 
-            if (requestedFile == null || !requestedFile.exists() || requestedFile.isDirectory() && !tryServeIndex(requestedFile)) { 
-                sendNotFound(bout);
-            } else {
-                if (requestedFile.isDirectory()) {
-                    requestedFile = new File(requestedFile, "index.html");
-                    if (!requestedFile.exists()) { 
-                        sendNotFound(bout); 
-                        return;
-                    }
+    /**
+     * route()
+     * Decides the answer to one request. Shared by both server modes: the blocking loop in
+     * run() and the selector loop in NioServer both call this and then write the result.
+     * A null request means the request line couldn't be parsed (400). Paths under a --proxy
+     * prefix go to their backend (see ReverseProxy), whatever the method. OPTIONS says which
+     * methods a path takes (see options()), PUT and POST are uploads (see Uploads), HEAD is
+     * answered like GET without the body, and any other method gets a 501. GET finds the file,
+     * serving index.html for directories, or a 404. With --autoindex a directory without
+     * index.html gets a listing instead (see DirectoryListing).
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7231#section-6
+     * @param request
+     * @param context
+     * @return
+     * @throws IOException
+    */
+    static HTTPResponse route(HTTPRequest request, ServerContext context) throws IOException {
+        if (request == null) {
+            // can't trust where the next request starts
+            return simpleResponse("400 Bad Request", "text/plain", "Malformed request").closeConnection();
+        }
+        String path = urlDecodePath(request.getTarget());
+        if (path == null) {
+            return simpleResponse("400 Bad Request", "text/plain", "Malformed request path").closeConnection();
+        }
+        String metricsPath = context.getConfig().getMetricsPath();
+        ReverseProxy proxy = context.getProxy();
+        ReverseProxy.Route upstreams = proxy != null ? proxy.match(path) : null;
+        if (upstreams != null && !path.equals(metricsPath)) {
+            return proxy.forward(request, upstreams, context);
+        }
+        String method = request.getMethod();
+        if ("OPTIONS".equalsIgnoreCase(method)) {
+            return options(path, request, context);
+        }
+        if ("PUT".equalsIgnoreCase(method) || "POST".equalsIgnoreCase(method)) {
+            return Uploads.handle(path, request, context);
+        }
+        if ("HEAD".equalsIgnoreCase(method)) {
+            return get(path, request, context).withoutBody();
+        }
+        if (!"GET".equalsIgnoreCase(method)) {
+            return simpleResponse("501 Not Implemented", "text/plain", "Method not supported");
+        }
+        return get(path, request, context);
+    }
+
+    /**
+     * get()
+     * The answer to a GET: the metrics page, a file, a directory listing or a 404.
+     * @param path the decoded URL path
+     * @param request
+     * @param context
+     * @return
+     * @throws IOException
+    */
+    private static HTTPResponse get(String path, HTTPRequest request, ServerContext context) throws IOException {
+        String metricsPath = context.getConfig().getMetricsPath();
+        if (!metricsPath.isEmpty() && path.equals(metricsPath)) {
+            byte[] text = context.getMetrics().prometheus().getBytes(StandardCharsets.UTF_8);
+            return HTTPResponse.bytes("200 OK", "text/plain; version=0.0.4; charset=utf-8", text)
+                    .header("Cache-Control", "no-store");
+        }
+        PathCache.Resolved resolved = context.getPathCache().resolve(path); // index.html for directories
+        if (resolved == null) { 
+            File dir = context.getConfig().isAutoindex() ? context.getPathCache().directory(path) : null;
+            HTTPResponse listing = dir != null ? context.getListings().respond(dir, path, request, context) : null;
+            return listing != null ? listing : notFound();
+        }
+        return fileResponse(resolved, path, request, context); 
+    }
+
+    /**
+     * options()
+     * The answer to OPTIONS: "204 No Content" with the methods the path takes in Allow
+     * ("OPTIONS *" asks about the server as a whole). A CORS preflight from an allowed origin
+     * (see cors()) also gets the methods and the headers it asked to use, which the browser
+     * may remember for a day.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9110#section-9.3.7
+     * https://developer.mozilla.org/en-US/docs/Glossary/Preflight_request
+     * @param path
+     * @param request
+     * @param context
+     * @return
+    */
+    private static HTTPResponse options(String path, HTTPRequest request, ServerContext context) {
+        String allow = Uploads.allow(path, context);
+        HTTPResponse response = HTTPResponse.empty("204 No Content").header("Allow", allow);
+        String asked = request.getHeader("access-control-request-method");
+        if (asked != null && !context.getConfig().getCorsOrigins().isEmpty()) {
+            response.header("Access-Control-Allow-Methods", allow);
+            String headers = request.getHeader("access-control-request-headers");
+            if (headers != null) {
+                response.header("Access-Control-Allow-Headers", headers);
+            }
+            response.header("Access-Control-Max-Age", "86400");
+        }
+        return response;
+    }
+
+    /**
+     * keepConnectionOpen()
+     * Puts together everything that decides if the connection stays open after a response:
+     * what the browser asked for, whether the response forces a close, the
+     * per-connection request limit, and whether the server is shutting down. A body of
+     * unknown length can only be chunked for HTTP/1.1; older clients find its end by the close.
+     * @param request
+     * @param response
+     * @param served
+     * @param context
+     * @return
+    */
+    static boolean keepConnectionOpen(HTTPRequest request, HTTPResponse response, int served, ServerContext context) {
+        if (request == null || response.mustClose() || !request.wantsKeepAlive() || context.isDraining()) {
+            return false;
+        }
+        if (response.getContentLength() < 0 && !"HTTP/1.1".equalsIgnoreCase(request.getVersion())) {
+            return false;
+        }
+        int maxRequests = context.getConfig().getMaxRequestsPerConnection();
+        return maxRequests <= 0 || served < maxRequests;
+    }
+
+    /**
+     * wantsKeepAlive()
+     * HTTP/1.1 connections stay open unless the client says "Connection: close".
+     * HTTP/1.0 connections close unless the client says "Connection: keep-alive".
+     * The header can hold a comma separated list, so each token is checked.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7230#section-6.1
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Connection
+     * @param version
+     * @param connection
+     * @return
+    */
+    static boolean wantsKeepAlive(String version, String connection) {
+        boolean http11 = "HTTP/1.1".equalsIgnoreCase(version);
+        if (connection != null) {
+            for (String token : connection.split(",")) {
+                token = token.trim();
+                if (token.equalsIgnoreCase("close")) {
+                    return false;
+                }
+                if (token.equalsIgnoreCase("keep-alive")) {
+                    return true;
                 }
-                sendFile(bout, requestedFile); 
             }
-        } catch (IOException e) { 
-        } finally { 
-            try { client.close(); } catch (IOException ignored) {}
         }
+        return http11;
     }
 
     /**
-     * readRequestLines()
-     * Reads from the socket's input stream, looks atht he data the browser sent when connected.
-     * Collects all the request lines until it reaches a blank line (\r\n).
-     * Finally, it stores these lines in a list or array; the very first line is the request
-     * line, which tells us the method, resource, and version- the headers are usually ignored, but 
-     * still read in. 
+     * readRequest()
+     * Feeds the parser from buf, refilling buf from the socket whenever the parser has used
+     * it all up, until a whole request head has been read (or rejected). Bytes after the head
+     * stay in buf for the next call, so pipelined requests aren't lost. Returns NEED_MORE if
+     * the browser closed the connection first.
      * References:
-     * https://docs.oracle.com/javase/8/docs/api/java/io/InputStream.html
-     * https://www.w3schools.com/java/java_bufferedreader.asp
-     * https://www.geeksforgeeks.org/java/inputstreamreader-class-in-java/
-     * https://docs.oracle.com/javase/8/docs/api/java/nio/charset/StandardCharsets.html
-     * https://www.geeksforgeeks.org/java/console-readline-method-in-java-with-examples/
-     * https://www.w3schools.com/java/ref_arraylist_add.asp
+     * https://docs.oracle.com/javase/8/docs/api/java/io/InputStream.html#read-byte:A-int-int-
      * @param in
+     * @param buf
+     * @param parser
      * @return
      * @throws IOException
     */
-    private static List<String> readRequestLines(InputStream in) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.ISO_8859_1)); 
-        List<String> lines = new ArrayList<>();
-        String line; 
-        String requestLine = reader.readLine(); 
-        if (requestLine == null) {
-            return lines;
-        } 
-        lines.add(requestLine);
-        while ((line = reader.readLine()) != null) {
-            if (line.isEmpty()) break; 
-            lines.add(line);
-        }
-        return lines;
+    private int readRequest(InputStream in, ByteBuffer buf, RequestParser parser) throws IOException {
+        parseNanos = 0;
+        while (true) {
+            long t0 = System.nanoTime();
+            int result = parser.parse(buf);
+            parseNanos += System.nanoTime() - t0; // only time spent parsing, not waiting for bytes
+            if (result != RequestParser.NEED_MORE) {
+                return result;
+            }
+            waiting = parser.isBetweenRequests();
+            if (waiting && context.isDraining()) {
+                return RequestParser.NEED_MORE; // shutting down: don't wait for another request
+            }
+            int n = in.read(buf.array(), 0, buf.capacity());
+            waiting = false;
+            if (n < 0) {
+                return RequestParser.NEED_MORE;
+            }
+            buf.position(0).limit(n);
+        }
     }
 
     /**
@@ -156,7 +516,7 @@ public class HTTPHandler implements Runnable {
      * Turns a URL path into a normal file path for the server to use.
      * Strips query parameters, decodes URL-encoded characters and converts
      * these back to normal chararacter so the server can locate the actual file.
-     * It then returns a clean path.
+     * It then returns a clean path, or null if the escapes are broken.
      * Resources:
      * https://www.w3schools.com/java/ref_string_indexof.asp
      * https://www.w3schools.com/java/ref_string_substring.asp
@@ -166,13 +526,15 @@ public class HTTPHandler implements Runnable {
      * @param rawPath
      * @return
     */
-    private static String urlDecodePath(String rawPath) {
+    static String urlDecodePath(String rawPath) {
         try {
             int q = rawPath.indexOf('?'); 
             String onlyPath = (q >= 0) ? rawPath.substring(0, q) : rawPath; 
             return URLDecoder.decode(onlyPath, StandardCharsets.UTF_8.name()); 
         } catch (UnsupportedEncodingException e) { 
             return rawPath;
+        } catch (IllegalArgumentException e) {
+            return null; // broken %-escape like "%zz"
         }
     }
 
@@ -180,173 +542,349 @@ public class HTTPHandler implements Runnable {
      * resolvePath()
      * Used to turn the URL path into a safe dile on disk while preventing
      * directory traversal problems. It first combines the path with the docRoot,
-     * then gets the cononical path by converting the docRoot and the requested file
-     * to cononical paths. Then it conducts a security check by making sure the requested file's
+     * then gets the cononical path of the requested file (the docRoot's cononical path is
+     * worked out once by PathCache and passed in). Then it conducts a security check by making sure the requested file's
      * cononical path starts with the document root's cononical path. In the end, the method
      * returns the safe file. It checks the passes and if the check fails, returns null ("404 Not Found").
      * References:
      * https://www.w3schools.com/java/ref_string_startswith.asp
      * https://www.geeksforgeeks.org/java/file-getcanonicalpath-method-in-java-with-examples/
      * @param root
+     * @param canonicalRoot
      * @param path
      * @return
      * @throws IOException
     */
-    private static File resolvePath(File root, String path) throws IOException {
+    static File resolvePath(File root, String canonicalRoot, String path) throws IOException {
         if (path.startsWith("/")) {
              path = path.substring(1);
         }
 
         File f = new File(root, path); 
-        String canonicalRoot = root.getCanonicalPath();
         String canonicalTarget;
         try {
             canonicalTarget = f.getCanonicalPath();
         } catch (IOException e) {
             return null;
         }
-        if (!canonicalTarget.startsWith(canonicalRoot)) {
+        // a whole-name match, so a sibling like "www-private" doesn't pass for "www"
+        if (!canonicalTarget.equals(canonicalRoot) && !canonicalTarget.startsWith(canonicalRoot + File.separator)) {
             return null;
         }
         return new File(canonicalTarget);
     }
 
     /**
-     * tryServeIndex()
-     * Used to handle requests to directories. Checks if the requested path IS a directory,
-     * then looks for "index.html" inside that directory to see if it exists. Finally, it 
-     * serbes the file if it exists by returning a File object so it can be sent to the browser.
-     * If it doesn't exists the method returns null which triggers a "404 Not Found" error response.
-     * References:
-     * https://www.geeksforgeeks.org/java/file-isfile-method-in-java-with-examples/
-     * @param dir
-     * @return
-    */
-    private static boolean tryServeIndex(File dir) {
-        if (!dir.exists() || !dir.isDirectory()) return false;
-        File index = new File(dir, "index.html");
-        return index.exists() && index.isFile();
-    }
-
-    /**
-     * sendNotFound()
-     * Used to tell the browser that the requested file does not exist. Does so by writing 
-     * to the HTTP status line that the server couldn't find the requested file. Then it sends
-     * the required HTTP headers. sends a message body, and finally flushes the close streams. 
-     * This means it ensures all data is sent to the browser and then closes the connection if needed. 
+     * notFound()
+     * Used to tell the browser that the requested file does not exist. Builds a response whose
+     * status line says the server couldn't find the requested file, with a small HTML message body.
      * References:
      * https://www.geeksforgeeks.org/java/string-getbyte-method-in-java/
-     * https://www.geeksforgeeks.org/java/bufferedwriter-write-method-in-java-with-examples/
-     * https://www.geeksforgeeks.org/java/writer-flush-method-in-java-with-examples/
-     * @param out
-     * @throws IOException
+     * @return
     */
-    private void sendNotFound(BufferedOutputStream out) throws IOException {
+    private static HTTPResponse notFound() {
         String body = "<html><head><title>404 Not Found</title></head><body><h1>404 Not Found</h1></body></html>";
-        sendResponseHeaders(out, "404 Not Found", "text/html; charset=utf-8", body.getBytes(StandardCharsets.UTF_8).length); 
-        out.write(body.getBytes(StandardCharsets.UTF_8)); 
-        out.flush();
+        return HTTPResponse.bytes("404 Not Found", "text/html; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
-     * sendSimpleResponse
-     * A helper method used to send small, text-based HTTP responses (error messages, etc.)
-     * First it writes the HTTP status line, the standard headers, and the body. Then it flushes
-     * the stream, ensuring all headers and content are sent to the browser immediately. 
-     * @param out
+     * simpleResponse
+     * A helper method used to build small, text-based HTTP responses (error messages, etc.)
      * @param status
      * @param contentType
      * @param message
-     * @throws IOException
+     * @return
     */
-    private void sendSimpleResponse(BufferedOutputStream out, String status, String contentType, String message) throws IOException {
+    static HTTPResponse simpleResponse(String status, String contentType, String message) {
         byte[] body = message.getBytes(StandardCharsets.UTF_8); 
-        sendResponseHeaders(out, status, contentType + "; charset=utf-8", body.length);
-        out.write(body);
-        out.flush();
+        return HTTPResponse.bytes(status, contentType + "; charset=utf-8", body);
     } 
 
     /**
-     * sendFile()
-     * Used to send an actual file from a server to the browser. First it opens the
-     * file in an input stream to read the file's contents. Then, it determines the MIME type
-     * (eventually, not built yet). This checks the file extension and tells the browser how 
-     * to handle the file. It then wriptes the HTTP headers by sending the status line. Finally it sends the 
-     * data using BufferedOutputStream and reads the file in chunks, finishing out by flushing and closing the streams. 
+     * fileResponse()
+     * Used to answer with an actual file. Determines the MIME type, which checks the file
+     * extension and tells the browser how to handle the file. Text files are sent compressed
+     * when the browser's Accept-Encoding allows it (see ContentEncoding), and get
+     * "Vary: Accept-Encoding" so caches keep the versions apart. Every file gets an ETag and
+     * Last-Modified, and if the browser's copy is still current it gets a 304 instead, without
+     * the file being opened (see ConditionalGet). A Range header gets just the asked-for bytes
+     * (see ByteRanges), unless If-Range says the browser's copy is out of date.
+     * Cache-Control comes from --cache-control.
+     * Small files come out of the FileCache (already in memory); anything else is read when the
+     * response is written. The MIME type, ETag and pre-compressed copies come from the PathCache
+     * record, so a path seen before needs no file system calls to decide what to send.
      * References:
      * https://www.baeldung.com/java-file-mime-type
      * https://www.geeksforgeeks.org/java/file-getname-method-in-java-with-examples/
-     * https://www.geeksforgeeks.org/java/java-io-fileinputstream-class-java/
-     * https://www.geeksforgeeks.org/java/reader-read-method-in-java-with-examples/
+     * @param resolved
+     * @param path
+     * @param request
+     * @param context
+     * @return
+    */
+    private static HTTPResponse fileResponse(PathCache.Resolved resolved, String path, HTTPRequest request, ServerContext context) {
+        FileCache cache = context.getFileCache();
+        File file = resolved.getFile();
+        String mime = resolved.getMime();
+        boolean compressible = resolved.getType().isCompressible();
+        String range = request.getHeader("range");
+        // ranges are always counted in the plain file's bytes, so a range request skips compression
+        String encoding = range != null ? null
+                : ContentEncoding.choose(resolved, request.getHeader("accept-encoding"), cache, !context.isNio());
+
+        boolean streamed = encoding != null && ContentEncoding.isStreamed(resolved, encoding, cache);
+        ConditionalGet validators = streamed ? resolved.streamedValidators(encoding) : resolved.validators(encoding);
+        HTTPResponse response = null;
+        if (validators.isNotModified(request)) {
+            response = validators.notModified();
+        } else {
+            if (encoding != null) {
+                response = ContentEncoding.encodedResponse(resolved, encoding, cache, streamed,
+                        "HEAD".equalsIgnoreCase(request.getMethod()));
+                if (response == null) {
+                    encoding = null;
+                    validators = resolved.validators(null); // fell back to the plain file
+                }
+            }
+            if (range != null) {
+                String ifRange = request.getHeader("if-range");
+                if (ifRange == null || validators.matchesIfRange(ifRange)) {
+                    response = ByteRanges.rangeResponse(file, mime, range);
+                }
+            }
+            if (response == null) {
+                FileCache.Entry cached = cache.get(file, mime);
+                response = cached != null ? HTTPResponse.cached(cached) : HTTPResponse.file(file, resolved.getType());
+            }
+            response.header("ETag", validators.getETag())
+                    .header("Last-Modified", validators.getLastModified());
+            if (encoding == null) {
+                response.header("Accept-Ranges", "bytes");
+            }
+        }
+
+        String cacheControl = context.getConfig().getCachePolicy().cacheControl(path, resolved.getType());
+        if (cacheControl != null) {
+            response.header("Cache-Control", cacheControl);
+        }
+        if (compressible) {
+            response.header("Vary", "Accept-Encoding");
+        }
+        return response;
+    }
+
+    /**
+     * writeResponse()
+     * Writes a response to the socket: the status line and headers first, then the body.
+     * Big cached bodies are written straight from FileCache's direct buffer; small ones are
+     * copied in behind the headers so both leave in one write.
+     * A file body is one or more regions of the file (several for multipart ranges, each with its
+     * part header in front). Big regions (at least --zero-copy-threshold bytes) are handed to
+     * transferRegion() so the kernel copies them straight from the page cache to the socket
+     * (sendfile). Small ones, or sockets that don't have a channel, go through copyRegion()
+     * instead, where they can share one write with their headers.
+     * A streamed body (see copyStream()) is copied as it is read. An answer to HEAD stops
+     * after the headers.
+     * The flush is left to run() so pipelined responses can share a write.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html#getChannel--
      * @param out
-     * @param file
+     * @param response
+     * @param keepAlive
      * @throws IOException
     */
-    private void sendFile(BufferedOutputStream out, File file) throws IOException {
-        String mime = MimeTypes.getMimeType(file.getName()); // doesn't exist yet, theoretical.
-        long length = file.length(); 
-        sendResponseHeaders(out, "200 OK", mime, length);
+    private void writeResponse(BufferedOutputStream out, HTTPResponse response, boolean keepAlive) throws IOException {
+        InputStream stream = response.getStream();
+        if (stream != null) {
+            try (InputStream body = stream) {
+                headerBuffer = context.getHeaderWriter().encode(response, keepAlive, headerBuffer);
+                out.write(headerBuffer.array(), 0, headerBuffer.limit());
+                if (!response.isBodyOmitted()) {
+                    copyStream(body, out, response, keepAlive && response.getContentLength() < 0);
+                }
+            }
+            return;
+        }
+        headerBuffer = context.getHeaderWriter().encode(response, keepAlive, headerBuffer);
+        out.write(headerBuffer.array(), 0, headerBuffer.limit());
+        if (response.isBodyOmitted()) {
+            return;
+        }
+        if (response.getBody() != null) {
+            out.write(response.getBody());
+            return;
+        }
 
-        try (FileInputStream fis = new FileInputStream(file); 
-             BufferedInputStream bis = new BufferedInputStream(fis)) {
-            byte[] buffer = new byte[8192];
-            int r; 
-            while ((r = bis.read(buffer)) != -1) {
-                out.write(buffer, 0, r); 
+        SocketChannel channel = client.getChannel();
+        ByteBuffer buffer = response.getBodyBuffer();
+        if (buffer != null) {
+            if (channel != null && buffer.remaining() >= config.getZeroCopyThreshold()) {
+                out.flush(); // keep the order: everything before this response goes first
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer); // the cached direct buffer goes to the socket without a copy
+                }
+            } else {
+                // small bodies join their headers in the output buffer: one write, one packet
+                while (buffer.hasRemaining()) {
+                    int n = Math.min(copyBuffer.length, buffer.remaining());
+                    buffer.get(copyBuffer, 0, n);
+                    out.write(copyBuffer, 0, n);
+                }
             }
-            out.flush();
+            return;
+        }
+
+        long[] regions = response.getRegions();
+        byte[][] partHeaders = response.getPartHeaders();
+        try (FileChannel fc = FileChannel.open(response.getFile().toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < regions.length / 2; i++) {
+                if (partHeaders != null) {
+                    out.write(partHeaders[i]);
+                }
+                long offset = regions[2 * i];
+                long length = regions[2 * i + 1];
+                if (channel != null && length >= config.getZeroCopyThreshold()) {
+                    out.flush(); // the headers have to be on the wire before the file bytes
+                    transferRegion(fc, offset, length, channel);
+                } else {
+                    copyRegion(fc, offset, length, out);
+                }
+            }
+        }
+        if (partHeaders != null) {
+            out.write(partHeaders[partHeaders.length - 1]);
         }
     }
 
     /**
-     * sendResponseHeaders()
-     * Builds and sends the HTTP headers before the file data is sent. Does this by
-     * sending the statis line and then adding required headers. The Date is the current server time. 
-     * The Server is the server name's string. Content Type tells the browser what find of file it is
-     * (html, css, etc.). Content Length is the number of bytes the browser should expect (to know
-     * when the file ends). It ends headers with a blank line (CRLF) and this signals to the browser
-     * that the headers are done, file/body to follow. In the end, the method returns the stream
-     * so that the file data can be written immediately after.
+     * copyStream()
+     * Copies a streamed body to the client as it arrives, chunked if asked. Whatever has been
+     * read is flushed whenever the stream has nothing more ready, so a slow source (a backend
+     * still working) doesn't hold back what it has already sent. If the stream ends before its
+     * Content-Length the connection can't be used any more, so that throws.
      * References:
-     * https://docs.oracle.com/javase/8/docs/api/java/lang/StringBuilder.html
-     * https://www.geeksforgeeks.org/java/stringbuilder-append-method-in-java-with-examples/
+     * https://www.rfc-editor.org/rfc/rfc9112#section-7.1
+     * @param body
      * @param out
-     * @param status
-     * @param contentType
-     * @param contentLength
+     * @param response
+     * @param chunked
      * @throws IOException
     */
-    private void sendResponseHeaders(BufferedOutputStream out, String status, String contentType, long contentLength) throws IOException { 
-        StringBuilder sb = new StringBuilder(); 
-        sb.append("HTTP/1.1 ").append(status).append(CRLF);
-        sb.append("Date: ").append(rfc1123Date()).append(CRLF);
-        sb.append("Server: ").append(serverName).append(CRLF);
-        sb.append("Content-Type: ").append(contentType).append(CRLF);
-        sb.append("Content-Length: ").append(contentLength).append(CRLF);
-        sb.append("Connection: close").append(CRLF);
-        sb.append(CRLF);
-        out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+    private void copyStream(InputStream body, BufferedOutputStream out, HTTPResponse response, boolean chunked) throws IOException {
+        long sent = 0;
+        int n;
+        while ((n = body.read(copyBuffer)) >= 0) {
+            if (chunked) {
+                ChunkedCoding.writeChunk(out, copyBuffer, 0, n);
+            } else {
+                out.write(copyBuffer, 0, n);
+            }
+            sent += n;
+            if (body.available() == 0) {
+                out.flush();
+            }
+        }
+        if (chunked) {
+            out.write(ChunkedCoding.LAST_CHUNK);
+        }
+        response.setStreamedBytes(sent);
+        if (response.getContentLength() >= 0 && sent != response.getContentLength()) {
+            throw new EOFException("Streamed body ended early");
+        }
     }
 
     /**
-     * rfc1123Date()
-     * Generates the current date and time in the ecact format required by HTTP spec (RFC 1123).
-     * This took forever...
-     * Gets the current system time (with new Date()) and then uses the data formatter (RFC 1123)
-     * to always output in GMT/UTC timezone. It then returns the format as a string. 
+     * transferRegion()
+     * Zero-copy send of one region of an open file: FileChannel.transferTo lets the operating
+     * system move the bytes to the socket itself (sendfile on Linux), so they never get copied
+     * into a Java byte[]. Positional, so it doesn't matter where the channel's own position is.
      * References:
-     * https://docs.oracle.com/javase/8/docs/api/java/text/SimpleDateFormat.html
-     * https://docs.oracle.com/javase/8/docs/api/java/time/format/DateTimeFormatter.html
-     * https://docs.oracle.com/javase/8/docs/api/java/util/Locale.html
-     * https://stackoverflow.com/questions/2891361/how-to-set-time-zone-of-a-java-util-date
-     * https://docs.oracle.com/javase/8/docs/api/java/util/TimeZone.html
-     * https://www.geeksforgeeks.org/java/java-string-format-method-with-examples/
-     * https://www.geeksforgeeks.org/java/date-class-java-examples/
-     * @return
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#transferTo-long-long-java.nio.channels.WritableByteChannel-
+     * https://developer.ibm.com/articles/j-zerocopy/
+     * @param fc
+     * @param offset
+     * @param length
+     * @param target
+     * @throws IOException
     */
-    private static String rfc1123Date() { 
-        SimpleDateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US); 
-        df.setTimeZone(TimeZone.getTimeZone("GMT")); 
-        return df.format(new Date()); 
+    static void transferRegion(FileChannel fc, long offset, long length, WritableByteChannel target) throws IOException {
+        long end = offset + length;
+        long position = offset;
+        while (position < end) {
+            long n = fc.transferTo(position, end - position, target);
+            if (n <= 0 && position >= fc.size()) {
+                throw new EOFException("File shrank while sending");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * copyRegion()
+     * The buffered way to send one region of an open file: positional reads into a small
+     * array that goes through the output buffer (for small regions, or sockets without a channel).
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#read-java.nio.ByteBuffer-long-
+     * @param fc
+     * @param offset
+     * @param length
+     * @param out
+     * @throws IOException
+    */
+    static void copyRegion(FileChannel fc, long offset, long length, OutputStream out) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(8192, Math.max(1, length)));
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), end - position));
+            int n = fc.read(chunk, position);
+            if (n < 0) {
+                throw new EOFException("File shrank while sending");
+            }
+            out.write(chunk.array(), 0, n);
+            position += n;
+        }
+    }
+
+    /**
+     * transferFile()
+     * Zero-copy send: FileChannel.transferTo lets the operating system move the file's bytes
+     * to the socket itself (sendfile on Linux), so they never get copied into a Java byte[].
+     * Sends exactly length bytes (the Content-Length already promised to the browser).
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#transferTo-long-long-java.nio.channels.WritableByteChannel-
+     * https://developer.ibm.com/articles/j-zerocopy/
+     * @param file
+     * @param target
+     * @param length
+     * @throws IOException
+    */
+    static void transferFile(File file, WritableByteChannel target, long length) throws IOException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            transferRegion(fc, 0, length, target);
+        }
+    }
+
+    /**
+     * copyBuffered()
+     * The plain way to send a file: opens the file in an input stream and sends the data using 
+     * BufferedOutputStream, reading the file in chunks, finishing out by closing the file stream.
+     * References:
+     * https://www.geeksforgeeks.org/java/java-io-fileinputstream-class-java/
+     * https://www.geeksforgeeks.org/java/reader-read-method-in-java-with-examples/
+     * @param file
+     * @param out
+     * @throws IOException
+    */
+    static void copyBuffered(File file, OutputStream out) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file); 
+             BufferedInputStream bis = new BufferedInputStream(fis)) {
+            byte[] buffer = new byte[8192];
+            int r; 
+            while ((r = bis.read(buffer)) != -1) {
+                out.write(buffer, 0, r); 
+            }
+        }
     }
 }
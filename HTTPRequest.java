@@ -0,0 +1,200 @@
+/**
+ * Name: HTTPRequest
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Holds one parsed request: the method, the path the browser asked for, the HTTP
+ *      version, and the headers. Both the thread-per-connection HTTPHandler and the
+ *      selector based NioServer build one of these and hand it to HTTPHandler.route().
+ *      Requests read by RequestParser keep their headers in the parser's buffer, so they are
+ *      only good until the connection reads its next request. The connection also notes who
+ *      sent the request and whether it came over TLS, for the reverse proxy's X-Forwarded-* headers,
+ *      and hands over the body if it can be read (see RequestBody).
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7230#section-3.1.1
+ * https://www.w3schools.com/java/java_hashmap.asp
+ */
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+public class HTTPRequest {
+    private final String method;
+    private final String target;
+    private final String version;
+    private final Map<String, String> headers;
+    private final RequestParser parsed;
+    private InetAddress remoteAddress;
+    private boolean secure;
+    private InputStream body;    // null: no body, or one this connection can't read
+    private boolean bodyPending; // HTTP/2: DATA frames follow the HEADERS
+
+    /**
+     * HTTPRequest()
+     * Stores the pieces of the request line and the headers (names already lower case).
+     * @param method
+     * @param target
+     * @param version
+     * @param headers
+    */
+    public HTTPRequest(String method, String target, String version, Map<String, String> headers) {
+        this.method = method;
+        this.target = target;
+        this.version = version;
+        this.headers = headers;
+        this.parsed = null;
+    }
+
+    /**
+     * HTTPRequest()
+     * A request whose headers are looked up in the parser that read it.
+     * @param method
+     * @param target
+     * @param version
+     * @param parsed
+    */
+    HTTPRequest(String method, String target, String version, RequestParser parsed) {
+        this.method = method;
+        this.target = target;
+        this.version = version;
+        this.headers = null;
+        this.parsed = parsed;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * getTarget()
+     * The raw request target from the request line, still URL encoded and with any query string.
+     * @return
+    */
+    public String getTarget() {
+        return target;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * getHeader()
+     * Looks up a header by name (any case). Returns null if the browser didn't send it.
+     * @param name
+     * @return
+    */
+    public String getHeader(String name) {
+        if (parsed != null) {
+            return parsed.header(name);
+        }
+        return headers.get(name.toLowerCase(java.util.Locale.ROOT));
+    }
+
+    /**
+     * forEachHeader()
+     * Calls action with every header's name and value, in the order they came (names as sent
+     * over HTTP/1.1, lower case over HTTP/2).
+     * @param action
+    */
+    public void forEachHeader(BiConsumer<String, String> action) {
+        if (parsed != null) {
+            for (int i = 0; i < parsed.getHeaderCount(); i++) {
+                action.accept(parsed.headerName(i), parsed.headerValue(i));
+            }
+        } else {
+            headers.forEach(action);
+        }
+    }
+
+    /**
+     * from()
+     * Notes the client's address and whether the connection is TLS.
+     * @param address
+     * @param secure
+     * @return this request
+    */
+    HTTPRequest from(InetAddress address, boolean secure) {
+        this.remoteAddress = address;
+        this.secure = secure;
+        return this;
+    }
+
+    /**
+     * getRemoteAddress()
+     * The client's address, or null if the connection didn't say.
+     * @return
+    */
+    public InetAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * withBody()
+     * Hands over the stream the body is read from.
+     * @param body
+     * @return this request
+    */
+    HTTPRequest withBody(InputStream body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * bodyFollows()
+     * For HTTP/2: notes that the request's body comes in DATA frames after its HEADERS.
+     * @return this request
+    */
+    HTTPRequest bodyFollows() {
+        this.bodyPending = true;
+        return this;
+    }
+
+    /**
+     * getBody()
+     * The body, read as it arrives, or null if there is none or the connection can't read
+     * it (--mode=nio, and HTTP/2 outside uploads).
+     * @return
+    */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * hasBody()
+     * Whether the request has a body after its head: a Transfer-Encoding, a Content-Length
+     * other than 0, or HTTP/2 DATA frames.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9112#section-6.3
+     * @return
+    */
+    public boolean hasBody() {
+        if (body != null || bodyPending) {
+            return true;
+        }
+        if (parsed == null) {
+            return false;
+        }
+        String length = getHeader("content-length");
+        return getHeader("transfer-encoding") != null || length != null && RequestBody.parseLength(length) != 0;
+    }
+
+    /**
+     * wantsKeepAlive()
+     * Whether the browser wants to keep the connection open after this request,
+     * based on the HTTP version and the Connection header.
+     * @return
+    */
+    public boolean wantsKeepAlive() {
+        return HTTPHandler.wantsKeepAlive(version, getHeader("connection"));
+    }
+}
@@ -0,0 +1,375 @@
+/**
+ * Name: HTTPResponse
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Describes the answer to one request without writing it anywhere yet: the status line,
+ *      content type and length, and where the body comes from (a small byte array, a file
+ *      on disk, one or more byte ranges of a file, a buffer held by FileCache, or a stream that
+ *      is copied out as it is read, such as a proxied backend's response). HTTPHandler writes it to a socket stream, NioServer writes it to a
+ *      non-blocking channel, so the routing logic only has to be written once.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7230#section-3
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/StringBuilder.html
+ */
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HTTPResponse {
+    private static final String CRLF = "\r\n";
+
+    private final String status;
+    private final String contentType;
+    private final long contentLength;
+    private final byte[] body;
+    private final File file;
+    private final ByteBuffer bodyBuffer;
+    private InputStream stream;
+    private long streamedBytes;
+    private final byte[] entityHeaders;
+    private byte[] contentTypeLine;
+    private long[] regions;
+    private byte[][] partHeaders;
+    private final List<String> extraHeaders = new ArrayList<>();
+    private boolean closeConnection;
+    private boolean noEntityHeaders;
+    private boolean bodyOmitted;
+
+    /**
+     * HTTPResponse()
+     * Private, use one of the factory methods below.
+     * @param status
+     * @param contentType
+     * @param contentLength
+     * @param body
+     * @param file
+     * @param bodyBuffer
+     * @param entityHeaders
+    */
+    private HTTPResponse(String status, String contentType, long contentLength, byte[] body, File file,
+                         ByteBuffer bodyBuffer, byte[] entityHeaders) {
+        this.status = status;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.body = body;
+        this.file = file;
+        this.bodyBuffer = bodyBuffer;
+        this.entityHeaders = entityHeaders;
+    }
+
+    /**
+     * bytes()
+     * A response whose whole body is already in memory (error pages, short messages).
+     * @param status
+     * @param contentType
+     * @param body
+     * @return
+    */
+    public static HTTPResponse bytes(String status, String contentType, byte[] body) {
+        return new HTTPResponse(status, contentType, body.length, body, null, null, null);
+    }
+
+    /**
+     * file()
+     * A "200 OK" response whose body is the contents of a file on disk.
+     * The file isn't opened until the response is written.
+     * @param file
+     * @param contentType
+     * @return
+    */
+    public static HTTPResponse file(File file, String contentType) {
+        long length = file.length();
+        HTTPResponse r = new HTTPResponse("200 OK", contentType, length, null, file, null, null);
+        r.regions = new long[] { 0, length };
+        return r;
+    }
+
+    /**
+     * file()
+     * Like file(File, String), but also takes the type's ready-made Content-Type line, so
+     * HeaderWriter copies it instead of looking one up.
+     * @param file
+     * @param type
+     * @return
+    */
+    public static HTTPResponse file(File file, MimeTypes.Type type) {
+        HTTPResponse r = file(file, type.getContentType());
+        r.contentTypeLine = type.getContentTypeLine();
+        return r;
+    }
+
+    /**
+     * fileRange()
+     * A "206 Partial Content" response carrying one byte range of a file.
+     * References:
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Status/206
+     * @param file
+     * @param contentType
+     * @param offset
+     * @param length
+     * @param total
+     * @return
+    */
+    public static HTTPResponse fileRange(File file, String contentType, long offset, long length, long total) {
+        HTTPResponse r = new HTTPResponse("206 Partial Content", contentType, length, null, file, null, null);
+        r.regions = new long[] { offset, length };
+        r.header("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + total);
+        return r;
+    }
+
+    /**
+     * fileRanges()
+     * A "206 Partial Content" response with several byte ranges of a file, as
+     * multipart/byteranges: each range gets a little header block (boundary, type and
+     * Content-Range) in front of it, and a closing boundary goes at the end.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7233#appendix-A
+     * @param file
+     * @param contentType
+     * @param ranges offset/length pairs
+     * @param total
+     * @return
+    */
+    public static HTTPResponse fileRanges(File file, String contentType, long[] ranges, long total) {
+        String boundary = Long.toHexString(System.nanoTime()) + Long.toHexString(total);
+        int parts = ranges.length / 2;
+        byte[][] headers = new byte[parts + 1][];
+        long length = 0;
+        for (int i = 0; i < parts; i++) {
+            long offset = ranges[2 * i];
+            long count = ranges[2 * i + 1];
+            headers[i] = ((i == 0 ? "" : CRLF) + "--" + boundary + CRLF
+                    + "Content-Type: " + contentType + CRLF
+                    + "Content-Range: bytes " + offset + "-" + (offset + count - 1) + "/" + total + CRLF
+                    + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+            length += headers[i].length + count;
+        }
+        headers[parts] = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+        length += headers[parts].length;
+
+        HTTPResponse r = new HTTPResponse("206 Partial Content", "multipart/byteranges; boundary=" + boundary,
+                length, null, file, null, null);
+        r.regions = ranges.clone();
+        r.partHeaders = headers;
+        return r;
+    }
+
+    /**
+     * notModified()
+     * A "304 Not Modified" response. It has no body and, unlike every other response, no
+     * Content-Type or Content-Length: those would describe the body the browser already has.
+     * @return
+    */
+    public static HTTPResponse notModified() {
+        return empty("304 Not Modified");
+    }
+
+    /**
+     * empty()
+     * A response with no body and no Content-Type or Content-Length, like 304 (or a proxied 204).
+     * @param status
+     * @return
+    */
+    public static HTTPResponse empty(String status) {
+        HTTPResponse r = new HTTPResponse(status, null, 0, new byte[0], null, null, null);
+        r.noEntityHeaders = true;
+        return r;
+    }
+
+    /**
+     * streamed()
+     * A response whose body is read from a stream while it is written, so it never has to be
+     * in memory at once. With a length of -1 it isn't known up front: HTTP/1.1 connections
+     * that stay open get it chunked, others just end it by closing. Whoever writes the
+     * response closes the stream, even if writing fails.
+     * @param status
+     * @param contentType null for none
+     * @param contentLength -1 if unknown
+     * @param body
+     * @return
+    */
+    public static HTTPResponse streamed(String status, String contentType, long contentLength, InputStream body) {
+        HTTPResponse r = new HTTPResponse(status, contentType, contentLength, null, null, null, null);
+        r.stream = body;
+        return r;
+    }
+
+    /**
+     * cached()
+     * A "200 OK" response served from FileCache: the body is a private duplicate of the cached
+     * buffer and the Content-Type/Content-Length lines are the entry's pre-built bytes.
+     * @param entry
+     * @return
+    */
+    public static HTTPResponse cached(FileCache.Entry entry) {
+        return new HTTPResponse("200 OK", entry.contentType, entry.size, null, null,
+                entry.body.duplicate(), entry.headerBytes);
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * getBody()
+     * The in-memory body, or null if the body is a file.
+     * @return
+    */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * getBodyBuffer()
+     * The cached body buffer (ready to write from its position), or null.
+     * @return
+    */
+    public ByteBuffer getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * getStream()
+     * The stream the body is read from, or null.
+     * @return
+    */
+    public InputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * withoutBody()
+     * Keeps the headers as they would be for the body, but sends no body (the answer to HEAD).
+     * @return
+    */
+    public HTTPResponse withoutBody() {
+        bodyOmitted = true;
+        return this;
+    }
+
+    public boolean isBodyOmitted() {
+        return bodyOmitted;
+    }
+
+    /**
+     * getBodyBytes()
+     * The body bytes actually sent: the Content-Length, or for a stream of unknown length
+     * what setStreamedBytes() recorded once it was copied.
+     * @return
+    */
+    public long getBodyBytes() {
+        if (bodyOmitted || noEntityHeaders) {
+            return 0;
+        }
+        return contentLength >= 0 ? contentLength : streamedBytes;
+    }
+
+    void setStreamedBytes(long n) {
+        streamedBytes = n;
+    }
+
+    /**
+     * getFile()
+     * The file to send as the body, or null if the body is in memory.
+     * @return
+    */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * getRegions()
+     * For a file body, the parts of the file to send as offset/length pairs
+     * (the whole file is just one pair). Null otherwise.
+     * @return
+    */
+    public long[] getRegions() {
+        return regions;
+    }
+
+    /**
+     * getPartHeaders()
+     * For multipart/byteranges, the bytes to send before each region, plus one more entry
+     * for after the last region. Null for a normal file body.
+     * @return
+    */
+    public byte[][] getPartHeaders() {
+        return partHeaders;
+    }
+
+    /**
+     * header()
+     * Adds one more header line (e.g. Retry-After) after the standard ones.
+     * @param name
+     * @param value
+     * @return
+    */
+    public HTTPResponse header(String name, String value) {
+        extraHeaders.add(name + ": " + value);
+        return this;
+    }
+
+    /**
+     * closeConnection()
+     * Marks that the connection must be closed after this response no matter what the
+     * browser asked for (e.g. a malformed request where we can't tell where the next one starts).
+     * @return
+    */
+    public HTTPResponse closeConnection() {
+        closeConnection = true;
+        return this;
+    }
+
+    public boolean mustClose() {
+        return closeConnection;
+    }
+
+    /** The encoded Content-Type line when the response came with one, otherwise null. */
+    public byte[] getContentTypeLine() {
+        return contentTypeLine;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * getEntityHeaders()
+     * Content-Type/Content-Length lines already encoded by FileCache, or null if
+     * HeaderWriter should build them from getContentType() and getContentLength().
+     * @return
+    */
+    byte[] getEntityHeaders() {
+        return entityHeaders;
+    }
+
+    /**
+     * getExtraHeaders()
+     * The lines added with header(), as "Name: value".
+     * @return
+    */
+    List<String> getExtraHeaders() {
+        return extraHeaders;
+    }
+
+    /**
+     * hasNoEntityHeaders()
+     * True for 304, which has no Content-Type or Content-Length of its own.
+     * @return
+    */
+    boolean hasNoEntityHeaders() {
+        return noEntityHeaders;
+    }
+}
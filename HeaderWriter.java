@@ -0,0 +1,217 @@
+/**
+ * Name: HeaderWriter
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Turns an HTTPResponse's status line and headers into bytes with as little work per
+ *      response as possible. The Date header only changes once a second, so a background ticker
+ *      thread formats it once a second and every response copies the same bytes. Status lines,
+ *      the Server line, the Connection/Keep-Alive lines and Content-Type lines are encoded once
+ *      and kept as byte arrays. Content-Length digits and any extra headers are written straight
+ *      into a buffer the connection keeps and reuses, so no StringBuilder or String is built
+ *      for a response.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7231#section-7.1.1.2
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/ByteBuffer.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ConcurrentHashMap.html#computeIfAbsent-K-java.util.function.Function-
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class HeaderWriter {
+    /** Content-Type lines are cached per type; past this many distinct types they are just encoded. */
+    private static final int MAX_CACHED_TYPES = 512;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] CONNECTION_CLOSE = ascii("Connection: close\r\n");
+    private static final byte[] CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+
+    private static final Map<String, byte[]> STATUS_LINES = new ConcurrentHashMap<>();
+    private static final Map<String, byte[]> CONTENT_TYPE_LINES = new ConcurrentHashMap<>();
+    private static volatile String date = ConditionalGet.httpDate(System.currentTimeMillis());
+    private static volatile byte[] dateLine = dateLine(date);
+
+    static {
+        Thread ticker = new Thread(HeaderWriter::tick, "date-ticker");
+        ticker.setDaemon(true); // never keeps the JVM alive on its own
+        ticker.start();
+    }
+
+    private final byte[] serverLine;
+    private final byte[] keepAliveLines;
+
+    /**
+     * HeaderWriter()
+     * Encodes the lines that are the same for every response this server sends.
+     * @param serverName
+     * @param idleTimeoutMillis
+    */
+    public HeaderWriter(String serverName, int idleTimeoutMillis) {
+        this.serverLine = ascii("Server: " + serverName + "\r\n");
+        this.keepAliveLines = ascii("Connection: keep-alive\r\nKeep-Alive: timeout="
+                + Math.max(1, idleTimeoutMillis / 1000) + "\r\n");
+    }
+
+    /**
+     * encode()
+     * Writes the full header block for a response (status line through the blank line) into
+     * buf, starting over from the beginning of it, and returns it flipped and ready to send.
+     * If buf is too small a bigger one is returned instead; callers keep whatever comes back
+     * and pass it in next time, so after the first few responses nothing is allocated.
+     * The order is: status line, Date, Server, entity headers (Content-Type and
+     * Content-Length, left out for 304), extra headers, Connection. A streamed body of unknown
+     * length is sent chunked when the connection stays open, and otherwise has no length at
+     * all: closing the connection ends it.
+     * References:
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Keep-Alive
+     * @param response
+     * @param keepAlive
+     * @param buf
+     * @return
+    */
+    ByteBuffer encode(HTTPResponse response, boolean keepAlive, ByteBuffer buf) {
+        buf.clear();
+        buf = put(buf, statusLine(response.getStatus()));
+        buf = put(buf, dateLine);
+        buf = put(buf, serverLine);
+        if (!response.hasNoEntityHeaders()) {
+            if (response.getEntityHeaders() != null) {
+                buf = put(buf, response.getEntityHeaders()); // already built once by FileCache
+            } else {
+                byte[] typeLine = response.getContentTypeLine();
+                if (typeLine != null) {
+                    buf = put(buf, typeLine);
+                } else if (response.getContentType() != null) {
+                    buf = put(buf, contentTypeLine(response.getContentType()));
+                }
+                if (response.getContentLength() >= 0) {
+                    buf = put(buf, CONTENT_LENGTH);
+                    buf = putLong(buf, response.getContentLength());
+                    buf = put(buf, CRLF);
+                } else if (keepAlive) {
+                    buf = put(buf, CHUNKED);
+                }
+            }
+        }
+        List<String> extra = response.getExtraHeaders();
+        for (int i = 0; i < extra.size(); i++) {
+            buf = putAscii(buf, extra.get(i));
+            buf = put(buf, CRLF);
+        }
+        buf = put(buf, keepAlive ? keepAliveLines : CONNECTION_CLOSE);
+        buf = put(buf, CRLF);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * tick()
+     * Runs on the ticker thread: wakes just after each second starts and swaps in the new
+     * Date line. Readers see either the old or the new array, never a half-written one.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/lang/Thread.html#setDaemon-boolean-
+    */
+    private static void tick() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            try {
+                Thread.sleep(1000 - now % 1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            String today = ConditionalGet.httpDate(System.currentTimeMillis());
+            date = today;
+            dateLine = dateLine(today);
+        }
+    }
+
+    private static byte[] dateLine(String date) {
+        return ascii("Date: " + date + "\r\n");
+    }
+
+    /**
+     * date()
+     * The current Date header value, refreshed by the ticker like the encoded line
+     * (Http2Connection puts it in its header blocks).
+     * @return
+    */
+    static String date() {
+        return date;
+    }
+
+    private static byte[] statusLine(String status) {
+        return STATUS_LINES.computeIfAbsent(status, s -> ascii("HTTP/1.1 " + s + "\r\n"));
+    }
+
+    private static byte[] contentTypeLine(String type) {
+        byte[] line = CONTENT_TYPE_LINES.get(type);
+        if (line == null) {
+            line = ascii("Content-Type: " + type + "\r\n");
+            if (CONTENT_TYPE_LINES.size() < MAX_CACHED_TYPES) {
+                CONTENT_TYPE_LINES.put(type, line);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * put()
+     * Appends bytes, swapping in a buffer twice as big first if they don't fit.
+     * @param buf
+     * @param bytes
+     * @return
+    */
+    private static ByteBuffer put(ByteBuffer buf, byte[] bytes) {
+        return ensure(buf, bytes.length).put(bytes);
+    }
+
+    private static ByteBuffer putAscii(ByteBuffer buf, String text) {
+        buf = ensure(buf, text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buf.put((byte) text.charAt(i));
+        }
+        return buf;
+    }
+
+    /**
+     * putLong()
+     * Writes a non-negative number as decimal digits without making a String of it.
+     * @param buf
+     * @param value
+     * @return
+    */
+    private static ByteBuffer putLong(ByteBuffer buf, long value) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        buf = ensure(buf, digits);
+        int end = buf.position() + digits;
+        for (int i = end - 1; i >= buf.position(); i--) {
+            buf.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buf.position(end);
+        return buf;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buf, int needed) {
+        if (buf.remaining() >= needed) {
+            return buf;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + needed));
+        buf.flip();
+        return bigger.put(buf);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
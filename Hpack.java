@@ -0,0 +1,551 @@
+/**
+ * Name: Hpack
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: HPACK, the header compression HTTP/2 uses (RFC 7541). Headers travel as numbers that point
+ *      into a table: the fixed static table below (":method GET", "content-type", ...), plus a
+ *      dynamic table each side fills with headers it has already sent, so a header repeated on
+ *      every request (user-agent, accept, cookie) costs one or two bytes after the first time.
+ *      Strings that aren't in a table can be Huffman coded. Each connection has one Decoder for
+ *      what the browser sends and one Encoder for the responses; both keep state between
+ *      header blocks, so they must see every block of their connection, in order.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7541
+ * https://www.rfc-editor.org/rfc/rfc7541#appendix-A
+ * https://www.rfc-editor.org/rfc/rfc7541#appendix-B
+ * https://www.rfc-editor.org/rfc/rfc7541#section-5.1
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class Hpack {
+    /** RFC 7541 Appendix A; index 1 is STATIC_TABLE[0]. */
+    private static final String[][] STATIC_TABLE = {
+            { ":authority", "" }, { ":method", "GET" }, { ":method", "POST" }, { ":path", "/" },
+            { ":path", "/index.html" }, { ":scheme", "http" }, { ":scheme", "https" }, { ":status", "200" },
+            { ":status", "204" }, { ":status", "206" }, { ":status", "304" }, { ":status", "400" },
+            { ":status", "404" }, { ":status", "500" }, { "accept-charset", "" }, { "accept-encoding", "gzip, deflate" },
+            { "accept-language", "" }, { "accept-ranges", "" }, { "accept", "" }, { "access-control-allow-origin", "" },
+            { "age", "" }, { "allow", "" }, { "authorization", "" }, { "cache-control", "" },
+            { "content-disposition", "" }, { "content-encoding", "" }, { "content-language", "" }, { "content-length", "" },
+            { "content-location", "" }, { "content-range", "" }, { "content-type", "" }, { "cookie", "" },
+            { "date", "" }, { "etag", "" }, { "expect", "" }, { "expires", "" },
+            { "from", "" }, { "host", "" }, { "if-match", "" }, { "if-modified-since", "" },
+            { "if-none-match", "" }, { "if-range", "" }, { "if-unmodified-since", "" }, { "last-modified", "" },
+            { "link", "" }, { "location", "" }, { "max-forwards", "" }, { "proxy-authenticate", "" },
+            { "proxy-authorization", "" }, { "range", "" }, { "referer", "" }, { "refresh", "" },
+            { "retry-after", "" }, { "server", "" }, { "set-cookie", "" }, { "strict-transport-security", "" },
+            { "transfer-encoding", "" }, { "user-agent", "" }, { "vary", "" }, { "via", "" },
+            { "www-authenticate", "" }
+    };
+
+    /** RFC 7541 Appendix B: the code for each byte value, and EOS (256), right-aligned. */
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+            0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+            0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+            0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+            0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+            0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+            0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+            0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+            0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+            0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+            0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+            0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+            0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+            0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+            0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+            0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+            0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+            0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+            0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+            0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+            0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee,
+            0x3fffffff
+    };
+
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+
+    /** The Huffman codes as a binary tree: node n's children are at 2n and 2n+1, leaves are -(symbol + 1). */
+    private static final int[] HUFFMAN_TREE = buildTree();
+
+    /** What we advertise in SETTINGS_HEADER_TABLE_SIZE, and the most our encoder will use. */
+    static final int DEFAULT_TABLE_SIZE = 4096;
+
+    /**
+     * buildTree()
+     * Turns the code table into the tree the decoder walks one bit at a time.
+     * @return
+    */
+    private static int[] buildTree() {
+        int[] tree = new int[2 * 2 * 257];
+        int next = 1; // node 0 is the root
+        for (int sym = 0; sym < 257; sym++) {
+            int node = 0;
+            int length = HUFFMAN_LENGTHS[sym];
+            for (int bit = length - 1; bit >= 0; bit--) {
+                int slot = 2 * node + ((HUFFMAN_CODES[sym] >>> bit) & 1);
+                if (bit == 0) {
+                    tree[slot] = -(sym + 1);
+                } else {
+                    if (tree[slot] == 0) {
+                        tree[slot] = next++;
+                    }
+                    node = tree[slot];
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * HpackException
+     * The header block can't be decoded; the connection has to end with COMPRESSION_ERROR
+     * because the two sides' tables no longer agree.
+     */
+    static final class HpackException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HpackException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * DynamicTable
+     * Newest entry first. An entry's size is its name and value lengths plus 32 (RFC 7541 4.1);
+     * old entries are dropped from the end to stay under the size limit.
+     */
+    private static final class DynamicTable {
+        private String[] names = new String[16];
+        private String[] values = new String[16];
+        private int head;  // where the next entry goes
+        private int count;
+        private int size;
+        private int maxSize;
+
+        DynamicTable(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        String name(int i) {
+            return names[(head - 1 - i) & (names.length - 1)];
+        }
+
+        String value(int i) {
+            return values[(head - 1 - i) & (names.length - 1)];
+        }
+
+        int count() {
+            return count;
+        }
+
+        void add(String name, String value) {
+            int entrySize = name.length() + value.length() + 32;
+            while (count > 0 && size + entrySize > maxSize) {
+                evictOldest();
+            }
+            if (entrySize > maxSize) {
+                return; // too big for the table: it ends up empty (RFC 7541 4.4)
+            }
+            if (count == names.length) {
+                grow();
+            }
+            names[head] = name;
+            values[head] = value;
+            head = (head + 1) & (names.length - 1);
+            count++;
+            size += entrySize;
+        }
+
+        void setMaxSize(int newMax) {
+            maxSize = newMax;
+            while (size > maxSize) {
+                evictOldest();
+            }
+        }
+
+        private void evictOldest() {
+            int oldest = (head - count) & (names.length - 1);
+            size -= names[oldest].length() + values[oldest].length() + 32;
+            names[oldest] = null;
+            values[oldest] = null;
+            count--;
+        }
+
+        private void grow() {
+            String[] n = new String[names.length * 2];
+            String[] v = new String[names.length * 2];
+            for (int i = 0; i < count; i++) {
+                int from = (head - count + i) & (names.length - 1);
+                n[i] = names[from];
+                v[i] = values[from];
+            }
+            names = n;
+            values = v;
+            head = count;
+        }
+    }
+
+    /**
+     * Decoder
+     * Reads the header blocks the browser sends on one connection.
+     */
+    static final class Decoder {
+        private final DynamicTable table = new DynamicTable(DEFAULT_TABLE_SIZE);
+        private byte[] block;
+        private int pos;
+        private int end;
+
+        /**
+         * decode()
+         * Decodes one complete header block (HEADERS plus any CONTINUATION payloads joined
+         * together) into out as name, value, name, value, ... in the order sent.
+         * References:
+         * https://www.rfc-editor.org/rfc/rfc7541#section-6
+         * @param data
+         * @param offset
+         * @param length
+         * @param out
+         * @throws HpackException
+        */
+        void decode(byte[] data, int offset, int length, List<String> out) throws HpackException {
+            block = data;
+            pos = offset;
+            end = offset + length;
+            boolean headerSeen = false;
+            while (pos < end) {
+                int b = block[pos] & 0xff;
+                if ((b & 0x80) != 0) { // indexed field
+                    int index = readInt(7);
+                    out.add(name(index));
+                    out.add(value(index));
+                    headerSeen = true;
+                } else if ((b & 0x40) != 0) { // literal, add to the table
+                    int index = readInt(6);
+                    String name = index == 0 ? readString() : name(index);
+                    String value = readString();
+                    table.add(name, value);
+                    out.add(name);
+                    out.add(value);
+                    headerSeen = true;
+                } else if ((b & 0x20) != 0) { // table size update, only before the first field
+                    int newSize = readInt(5);
+                    if (headerSeen || newSize > DEFAULT_TABLE_SIZE) {
+                        throw new HpackException("bad dynamic table size update");
+                    }
+                    table.setMaxSize(newSize);
+                } else { // literal without indexing (0000) or never indexed (0001)
+                    int index = readInt(4);
+                    String name = index == 0 ? readString() : name(index);
+                    out.add(name);
+                    out.add(readString());
+                    headerSeen = true;
+                }
+            }
+            block = null;
+        }
+
+        private String name(int index) throws HpackException {
+            if (index >= 1 && index <= STATIC_TABLE.length) {
+                return STATIC_TABLE[index - 1][0];
+            }
+            int i = index - STATIC_TABLE.length - 1;
+            if (index < 1 || i >= table.count()) {
+                throw new HpackException("header index out of range: " + index);
+            }
+            return table.name(i);
+        }
+
+        private String value(int index) throws HpackException {
+            if (index >= 1 && index <= STATIC_TABLE.length) {
+                return STATIC_TABLE[index - 1][1];
+            }
+            int i = index - STATIC_TABLE.length - 1;
+            if (index < 1 || i >= table.count()) {
+                throw new HpackException("header index out of range: " + index);
+            }
+            return table.value(i);
+        }
+
+        /**
+         * readInt()
+         * An integer with an N-bit prefix (RFC 7541 5.1): the low N bits of the first byte,
+         * and if they are all ones, 7 more bits from each following byte until one has its
+         * top bit clear.
+         * @param prefixBits
+         * @return
+         * @throws HpackException
+        */
+        private int readInt(int prefixBits) throws HpackException {
+            int max = (1 << prefixBits) - 1;
+            int value = block[pos++] & max;
+            if (value < max) {
+                return value;
+            }
+            int shift = 0;
+            while (true) {
+                if (pos >= end || shift > 21) {
+                    throw new HpackException("bad integer");
+                }
+                int b = block[pos++] & 0xff;
+                value += (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        private String readString() throws HpackException {
+            if (pos >= end) {
+                throw new HpackException("header block cut short");
+            }
+            boolean huffman = (block[pos] & 0x80) != 0;
+            int length = readInt(7);
+            if (length > end - pos) {
+                throw new HpackException("string runs past the header block");
+            }
+            String s = huffman ? huffmanDecode(block, pos, length)
+                    : new String(block, pos, length, StandardCharsets.ISO_8859_1);
+            pos += length;
+            return s;
+        }
+    }
+
+    /**
+     * huffmanDecode()
+     * Walks the code tree bit by bit. What is left at the end must be fewer than 8 bits of
+     * ones (the start of EOS); anything else, or EOS itself, is an error (RFC 7541 5.2).
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     * @throws HpackException
+    */
+    static String huffmanDecode(byte[] data, int offset, int length) throws HpackException {
+        StringBuilder sb = new StringBuilder(length * 8 / 5);
+        int node = 0;
+        int pendingBits = 0;
+        boolean pendingAllOnes = true;
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xff;
+            for (int bit = 7; bit >= 0; bit--) {
+                int one = (b >>> bit) & 1;
+                int next = HUFFMAN_TREE[2 * node + one];
+                pendingBits++;
+                pendingAllOnes &= one == 1;
+                if (next < 0) {
+                    int sym = -next - 1;
+                    if (sym == 256) {
+                        throw new HpackException("EOS inside a Huffman string");
+                    }
+                    sb.append((char) sym);
+                    node = 0;
+                    pendingBits = 0;
+                    pendingAllOnes = true;
+                } else if (next == 0) {
+                    throw new HpackException("bad Huffman code");
+                } else {
+                    node = next;
+                }
+            }
+        }
+        if (pendingBits > 7 || !pendingAllOnes) {
+            throw new HpackException("bad Huffman padding");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Encoder
+     * Writes the response header blocks for one connection. Headers that repeat across
+     * responses (server, content-type, vary, ...) go into the dynamic table so later responses
+     * send just an index. Per-file values (content-length, etag, last-modified, content-range)
+     * would only push useful entries out, so they are sent as literals without indexing.
+     */
+    static final class Encoder {
+        private final DynamicTable table = new DynamicTable(DEFAULT_TABLE_SIZE);
+        private int pendingSizeUpdate = -1;
+
+        /**
+         * setMaxTableSize()
+         * The browser's SETTINGS_HEADER_TABLE_SIZE. We use at most our default, and tell the
+         * browser about the change at the start of the next header block.
+         * @param size
+        */
+        void setMaxTableSize(int size) {
+            int newSize = Math.min(size, DEFAULT_TABLE_SIZE);
+            if (newSize == table.maxSize && pendingSizeUpdate < 0) {
+                return; // e.g. the browser repeating the default
+            }
+            table.setMaxSize(newSize);
+            pendingSizeUpdate = newSize;
+        }
+
+        /**
+         * startBlock()
+         * Call before the first header of each block.
+         * @param out
+        */
+        void startBlock(ByteArrayOutputStream out) {
+            if (pendingSizeUpdate >= 0) {
+                writeInt(out, 0x20, 5, pendingSizeUpdate);
+                pendingSizeUpdate = -1;
+            }
+        }
+
+        /**
+         * encode()
+         * One header: an index if the same name and value is in a table, otherwise a literal
+         * that reuses a table entry's name where it can.
+         * @param out
+         * @param name lower case
+         * @param value
+        */
+        void encode(ByteArrayOutputStream out, String name, String value) {
+            int nameIndex = 0;
+            for (int i = 0; i < STATIC_TABLE.length; i++) {
+                if (STATIC_TABLE[i][0].equals(name)) {
+                    if (STATIC_TABLE[i][1].equals(value)) {
+                        writeInt(out, 0x80, 7, i + 1);
+                        return;
+                    }
+                    if (nameIndex == 0) {
+                        nameIndex = i + 1;
+                    }
+                }
+            }
+            for (int i = 0; i < table.count(); i++) {
+                if (table.name(i).equals(name)) {
+                    if (table.value(i).equals(value)) {
+                        writeInt(out, 0x80, 7, STATIC_TABLE.length + 1 + i);
+                        return;
+                    }
+                    if (nameIndex == 0) {
+                        nameIndex = STATIC_TABLE.length + 1 + i;
+                    }
+                }
+            }
+            boolean index = !perResource(name);
+            writeInt(out, index ? 0x40 : 0x00, index ? 6 : 4, nameIndex);
+            if (nameIndex == 0) {
+                writeString(out, name);
+            }
+            writeString(out, value);
+            if (index) {
+                table.add(name, value);
+            }
+        }
+
+        private static boolean perResource(String name) {
+            switch (name) {
+                case "content-length":
+                case "etag":
+                case "last-modified":
+                case "content-range":
+                case "location":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * writeInt()
+     * The encoding readInt() reads: flags are the bits above the prefix in the first byte.
+     * @param out
+     * @param flags
+     * @param prefixBits
+     * @param value
+    */
+    private static void writeInt(ByteArrayOutputStream out, int flags, int prefixBits, int value) {
+        int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * writeString()
+     * Huffman codes the string when that makes it shorter, which it almost always does for
+     * header values like dates and MIME types.
+     * @param out
+     * @param s
+    */
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        long bits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            bits += HUFFMAN_LENGTHS[s.charAt(i) & 0xff];
+        }
+        int huffmanLength = (int) ((bits + 7) / 8);
+        if (huffmanLength >= s.length()) {
+            writeInt(out, 0x00, 7, s.length());
+            for (int i = 0; i < s.length(); i++) {
+                out.write(s.charAt(i));
+            }
+            return;
+        }
+        writeInt(out, 0x80, 7, huffmanLength);
+        long acc = 0;
+        int accBits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int sym = s.charAt(i) & 0xff;
+            acc = (acc << HUFFMAN_LENGTHS[sym]) | HUFFMAN_CODES[sym];
+            accBits += HUFFMAN_LENGTHS[sym];
+            while (accBits >= 8) {
+                accBits -= 8;
+                out.write((int) (acc >>> accBits));
+            }
+        }
+        if (accBits > 0) { // pad with the high bits of EOS, i.e. ones
+            out.write((int) ((acc << (8 - accBits)) | (0xff >>> accBits)));
+        }
+    }
+}
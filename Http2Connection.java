@@ -0,0 +1,1514 @@
+/**
+ * Name: Http2Connection
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Serves one connection with cleartext HTTP/2 (h2c) once HTTPHandler has seen it ask for it,
+ *      either by starting with the HTTP/2 preface ("prior knowledge") or with an HTTP/1.1
+ *      request carrying "Upgrade: h2c". Every request becomes a stream: the browser can have up
+ *      to 100 going at once on the one connection, so a page's CSS, scripts and images no longer
+ *      queue behind each other or need six connections. Each request still goes through
+ *      HTTPHandler.route(), so caching, compression, ranges and 304s work exactly as in HTTP/1.1;
+ *      only the framing differs. Headers are compressed with HPACK (see Hpack).
+ *      A proxied stream is answered on a thread of its own (see proxyStream()): waiting for a
+ *      backend, and then for each piece of its body, would otherwise hold up every other
+ *      stream on the connection, PING answers included. Its thread writes HEADERS and DATA
+ *      itself under the connection's lock, which the connection's thread holds at all times
+ *      except while it waits for the next frame.
+ *      An upload (PUT/POST under --upload-dir) is answered once its body has arrived: each
+ *      DATA frame is written to the upload's temp file as it is read (see Uploads). A body for
+ *      a proxied path is collected the same way (see RequestBody.Spool) and the request goes to
+ *      the backend with it once it is complete. Other request bodies are thrown away.
+ *      Runs on the connection's own thread and does one thing at a time: send DATA frames for
+ *      the streams that have something to send, taking turns a frame each (round robin) for
+ *      as long as the flow control windows allow and the browser isn't sending anything, then
+ *      read and act on the next frame the browser sent.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc9113
+ * https://www.rfc-editor.org/rfc/rfc7540#section-3.2
+ * https://www.rfc-editor.org/rfc/rfc9113#section-4.1
+ * https://www.rfc-editor.org/rfc/rfc9113#section-5.2
+ * https://www.rfc-editor.org/rfc/rfc9113#section-6
+ */
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Http2Connection {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    /** What is left of the preface once RequestParser has read "PRI * HTTP/2.0" and the blank line. */
+    private static final int PREFACE_AFTER_HEAD = 6;
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int PRIORITY_FLAG = 0x20;
+
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int INTERNAL_ERROR = 0x2;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int STREAM_CLOSED = 0x5;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int REFUSED_STREAM = 0x7;
+    private static final int COMPRESSION_ERROR = 0x9;
+    private static final int ENHANCE_YOUR_CALM = 0xb;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int MAX_CONCURRENT_STREAMS = 100;
+    /** Largest frame either side sends: the protocol default, which we never raise. */
+    private static final int MAX_FRAME_SIZE = 16 * 1024;
+    private static final int DEFAULT_WINDOW = 65_535;
+    private static final long MAX_WINDOW = 0x7fffffffL;
+
+    private final Socket client;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final ServerContext context;
+    private final ClientLimiter.Client limits;
+    private final Metrics metrics;
+    private final AccessLog accessLog; // null when --access-log is off
+    private final int maxHeaderBytes;
+
+    private final Hpack.Decoder decoder = new Hpack.Decoder();
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Map<Integer, Stream> streams = new HashMap<>(); // streams we are still answering
+    private final Map<Integer, Receiving> bodies = new HashMap<>(); // requests whose body is still arriving
+    private final ArrayDeque<Stream> sending = new ArrayDeque<>(); // the ones with DATA left, in turn order
+    private final byte[] frameIn = new byte[MAX_FRAME_SIZE];
+    private final byte[] frameOut = new byte[9 + MAX_FRAME_SIZE];
+    private final byte[] frameHeader = new byte[9];    // the frame being read
+    private final byte[] frameHeaderOut = new byte[9]; // the frame being written
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream(1024);
+    private final ByteArrayOutputStream headerOut = new ByteArrayOutputStream(256);
+    private final List<String> fields = new ArrayList<>();
+
+    private int lastStreamId;
+    private int continuationStream; // the stream whose header block is still arriving, or 0
+    private int continuationFlags;
+    private long sendWindow = DEFAULT_WINDOW;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+    private int peerMaxFrameSize = MAX_FRAME_SIZE;
+    private boolean settingsSeen;
+    private boolean goAwayReceived;
+    private volatile boolean waiting; // blocked reading with no streams open
+    private boolean closed;           // serve() has returned; proxied streams stop
+    // guards everything below the socket's input: the connection's thread holds it except while
+    // reading a frame, proxied streams' threads take it to write (not synchronized, for virtual threads)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition windowOpened = lock.newCondition(); // after each frame read, for proxied streams
+
+    /**
+     * Stream
+     * One request being answered: its response's body pieces still to send (ByteBuffers and
+     * file regions as offset/length pairs, like NioServer) and how much the browser will let
+     * us send on it.
+     */
+    private static final class Stream {
+        final int id;
+        final ArrayDeque<Object> pieces = new ArrayDeque<>();
+        final long started = System.nanoTime();
+        FileChannel file;
+        InputStream body; // a streamed body, read as DATA frames go out
+        long window;
+        boolean remoteClosed; // the browser has sent END_STREAM
+        boolean proxied;      // answered by proxyStream() on its own thread, never in sending
+
+        Stream(int id, long window) {
+            this.id = id;
+            this.window = window;
+        }
+    }
+
+    /**
+     * Receiving
+     * A request whose body is still coming in DATA frames: an upload, or a proxied request
+     * collecting its body in a spool.
+     */
+    private static final class Receiving {
+        final HTTPRequest request;
+        final Uploads.Upload upload;     // null for a proxied request
+        final RequestBody.Spool spool;   // null for an upload
+
+        Receiving(HTTPRequest request, Uploads.Upload upload, RequestBody.Spool spool) {
+            this.request = request;
+            this.upload = upload;
+            this.spool = spool;
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            if (upload != null) {
+                upload.write(b, off, len);
+            } else {
+                spool.write(b, off, len);
+            }
+        }
+
+        void abort() {
+            if (upload != null) {
+                upload.abort();
+            } else {
+                spool.discard();
+            }
+        }
+    }
+
+    /**
+     * ConnectionError
+     * Something only closing the whole connection fixes; the code goes out in GOAWAY.
+     */
+    private static final class ConnectionError extends IOException {
+        private static final long serialVersionUID = 1L;
+        final int code;
+
+        ConnectionError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    /**
+     * Http2Connection()
+     * @param client the socket, for its address and timeout
+     * @param in everything still to be read, starting with any bytes HTTPHandler already buffered
+     * @param out buffered socket output; flushed whenever we are about to wait for the browser
+     * @param context
+     * @param limits the client's rate limit, checked for every stream
+    */
+    public Http2Connection(Socket client, InputStream in, OutputStream out, ServerContext context, ClientLimiter.Client limits) {
+        this.client = client;
+        this.limits = limits;
+        this.in = new DataInputStream(new BufferedInputStream(in, 16 * 1024));
+        this.out = out;
+        this.context = context;
+        this.metrics = context.getMetrics();
+        this.accessLog = context.getAccessLog();
+        this.maxHeaderBytes = context.getConfig().getMaxHeaderBytes();
+    }
+
+    /**
+     * isPreface()
+     * True if RequestParser just read the start of the HTTP/2 connection preface, i.e. a
+     * client that knows in advance the server speaks HTTP/2 (curl --http2-prior-knowledge).
+     * @param request
+     * @return
+    */
+    static boolean isPreface(HTTPRequest request) {
+        return "PRI".equals(request.getMethod()) && "*".equals(request.getTarget())
+                && "HTTP/2.0".equals(request.getVersion());
+    }
+
+    /**
+     * wantsUpgrade()
+     * True for an HTTP/1.1 request asking to switch to h2c (Upgrade: h2c plus an HTTP2-Settings
+     * header). Only GETs without a body are upgraded, so there is never a half-read request
+     * body to carry over; the rest are simply answered over HTTP/1.1, which the RFC allows.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7540#section-3.2
+     * @param request
+     * @return
+    */
+    static boolean wantsUpgrade(HTTPRequest request) {
+        String upgrade = request.getHeader("upgrade");
+        if (upgrade == null || request.getHeader("http2-settings") == null
+                || !"HTTP/1.1".equals(request.getVersion()) || !"GET".equals(request.getMethod())
+                || request.getHeader("transfer-encoding") != null) {
+            return false;
+        }
+        String length = request.getHeader("content-length");
+        if (length != null && !length.trim().equals("0")) {
+            return false;
+        }
+        for (String token : upgrade.split(",")) {
+            if (token.trim().equalsIgnoreCase("h2c")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * serve()
+     * Runs the connection until the browser closes it, sends GOAWAY and has nothing left to
+     * receive, goes idle past the idle timeout, or breaks the protocol, or the server is
+     * shutting down and every stream is finished (then we send GOAWAY and new streams are
+     * refused in the meantime). For an upgrade the first
+     * request is answered as stream 1. Returns false without writing anything if the
+     * HTTP2-Settings header can't be decoded; HTTPHandler then answers over HTTP/1.1.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-3.4
+     * https://www.rfc-editor.org/rfc/rfc7540#section-3.2.1
+     * @param request the PRI request, or the request asking to upgrade
+     * @return
+     * @throws IOException when the socket fails
+    */
+    boolean serve(HTTPRequest request) throws IOException {
+        boolean upgrade = !isPreface(request);
+        byte[] upgradeSettings = null;
+        if (upgrade) {
+            try {
+                upgradeSettings = Base64.getUrlDecoder().decode(request.getHeader("http2-settings").trim());
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            if (upgradeSettings.length % 6 != 0) {
+                return false;
+            }
+        }
+        metrics.http2Connections.increment();
+        lock.lock();
+        try {
+            if (upgrade) {
+                out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                        .getBytes(StandardCharsets.ISO_8859_1));
+            }
+            writeSettings(); // the server's preface
+            if (upgrade) {
+                applySettings(upgradeSettings, 0, upgradeSettings.length);
+                lastStreamId = 1;
+                startStream(1, request, true, null);
+                readPreface(0);
+            } else {
+                readPreface(PREFACE.length - PREFACE_AFTER_HEAD);
+            }
+            while (true) {
+                writeData();
+                out.flush();
+                if (goAwayReceived && streams.isEmpty() && bodies.isEmpty()) {
+                    break;
+                }
+                waiting = streams.isEmpty() && bodies.isEmpty();
+                if (waiting && context.isDraining()) {
+                    goAway(NO_ERROR); // shutting down and nothing in progress
+                    break;
+                }
+                boolean more;
+                lock.unlock();
+                try {
+                    more = readFrame();
+                } finally {
+                    lock.lock();
+                }
+                waiting = false;
+                if (!more) {
+                    if (context.isDraining()) {
+                        goAway(NO_ERROR); // our own shutdownInput() from HTTPHandler.closeIfWaiting()
+                    }
+                    break; // browser hung up
+                }
+            }
+        } catch (ConnectionError e) {
+            goAway(e.code);
+        } catch (SocketTimeoutException idle) {
+            goAway(NO_ERROR);
+        } finally {
+            for (Stream s : streams.values()) {
+                closeFile(s);
+            }
+            for (Receiving r : bodies.values()) {
+                r.abort();
+            }
+            bodies.clear();
+            streams.clear();
+            sending.clear();
+            closed = true;
+            windowOpened.signalAll(); // proxied streams waiting for window give up
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * isWaiting()
+     * True while the connection has no streams open and is only waiting for the browser to
+     * send something, so a shutdown can end it without cutting off a response.
+     * @return
+    */
+    boolean isWaiting() {
+        return waiting;
+    }
+
+    /**
+     * readPreface()
+     * Reads the client's connection preface, or the part of it not read yet, and checks it.
+     * @param from how much of PREFACE has already been read
+     * @throws IOException
+    */
+    private void readPreface(int from) throws IOException {
+        out.flush(); // the browser may wait for our SETTINGS (and stream 1) first
+        byte[] got = new byte[PREFACE.length - from];
+        in.readFully(got);
+        for (int i = 0; i < got.length; i++) {
+            if (got[i] != PREFACE[from + i]) {
+                throw new ConnectionError(PROTOCOL_ERROR, "bad connection preface");
+            }
+        }
+    }
+
+    /**
+     * readFrame()
+     * Blocks for the next frame and acts on it. Returns false at end of stream. Called
+     * without the lock: the frame is read without it, so proxied streams can write while the
+     * connection waits, and acted on with it.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-4.1
+     * https://www.rfc-editor.org/rfc/rfc9113#section-5.1
+     * @return
+     * @throws IOException
+    */
+    private boolean readFrame() throws IOException {
+        int first;
+        while (true) {
+            try {
+                first = in.read();
+                break;
+            } catch (SocketTimeoutException idle) {
+                if (!proxyWaiting()) {
+                    throw idle; // not idle while a backend is still answering
+                }
+            }
+        }
+        if (first < 0) {
+            return false;
+        }
+        frameHeader[0] = (byte) first;
+        in.readFully(frameHeader, 1, 8);
+        int length = (frameHeader[0] & 0xff) << 16 | (frameHeader[1] & 0xff) << 8 | (frameHeader[2] & 0xff);
+        int type = frameHeader[3] & 0xff;
+        int flags = frameHeader[4] & 0xff;
+        int id = ((frameHeader[5] & 0x7f) << 24) | (frameHeader[6] & 0xff) << 16 | (frameHeader[7] & 0xff) << 8 | (frameHeader[8] & 0xff);
+        if (length > MAX_FRAME_SIZE) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "frame larger than SETTINGS_MAX_FRAME_SIZE");
+        }
+        in.readFully(frameIn, 0, length);
+        lock.lock();
+        try {
+            onFrame(type, flags, id, length);
+        } finally {
+            windowOpened.signalAll(); // it may have opened a window, reset a stream or ended the connection
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * onFrame()
+     * Acts on a frame readFrame() has read.
+     * @param type
+     * @param flags
+     * @param id
+     * @param length
+     * @throws IOException
+    */
+    private void onFrame(int type, int flags, int id, int length) throws IOException {
+        if (!settingsSeen && type != SETTINGS) {
+            throw new ConnectionError(PROTOCOL_ERROR, "first frame must be SETTINGS");
+        }
+        if (continuationStream != 0 && (type != CONTINUATION || id != continuationStream)) {
+            throw new ConnectionError(PROTOCOL_ERROR, "header block interrupted");
+        }
+        switch (type) {
+            case DATA:
+                onData(id, flags, length);
+                break;
+            case HEADERS:
+                onHeaders(id, flags, length);
+                break;
+            case PRIORITY:
+                // the round robin in writeData() ignores priorities, as RFC 9113 lets servers do
+                if (length != 5) {
+                    resetStream(id, FRAME_SIZE_ERROR);
+                }
+                break;
+            case RST_STREAM:
+                if (length != 4) {
+                    throw new ConnectionError(FRAME_SIZE_ERROR, "RST_STREAM must be 4 bytes");
+                }
+                if (id == 0 || id > lastStreamId) {
+                    throw new ConnectionError(PROTOCOL_ERROR, "RST_STREAM on an idle stream");
+                }
+                Stream reset = streams.remove(id);
+                if (reset != null) {
+                    sending.remove(reset);
+                    closeFile(reset);
+                }
+                Receiving cancelled = bodies.remove(id);
+                if (cancelled != null) {
+                    cancelled.abort();
+                }
+                break;
+            case SETTINGS:
+                onSettings(id, flags, length);
+                break;
+            case PUSH_PROMISE:
+                throw new ConnectionError(PROTOCOL_ERROR, "clients can't push");
+            case PING:
+                if (length != 8) {
+                    throw new ConnectionError(FRAME_SIZE_ERROR, "PING must be 8 bytes");
+                }
+                if (id != 0) {
+                    throw new ConnectionError(PROTOCOL_ERROR, "PING on a stream");
+                }
+                if ((flags & ACK) == 0) {
+                    writeFrameHeader(8, PING, ACK, 0);
+                    out.write(frameIn, 0, 8);
+                }
+                break;
+            case GOAWAY:
+                if (id != 0) {
+                    throw new ConnectionError(PROTOCOL_ERROR, "GOAWAY on a stream");
+                }
+                goAwayReceived = true; // finish what's open, take nothing new
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(id, length);
+                break;
+            case CONTINUATION:
+                if (continuationStream == 0) {
+                    throw new ConnectionError(PROTOCOL_ERROR, "CONTINUATION without HEADERS");
+                }
+                addToHeaderBlock(0, length);
+                if ((flags & END_HEADERS) != 0) {
+                    continuationStream = 0;
+                    onHeaderBlock(id, continuationFlags);
+                }
+                break;
+            default:
+                break; // unknown frame types must be ignored
+        }
+    }
+
+    /**
+     * onHeaders()
+     * A HEADERS frame: strips padding and the priority fields, then either handles the block
+     * or waits for the CONTINUATION frames that finish it.
+     * @param id
+     * @param flags
+     * @param length
+     * @throws IOException
+    */
+    private void onHeaders(int id, int flags, int length) throws IOException {
+        if (id == 0 || (id & 1) == 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "HEADERS on stream " + id);
+        }
+        int start = 0;
+        int end = length;
+        if ((flags & PADDED) != 0) {
+            if (length < 1) {
+                throw new ConnectionError(PROTOCOL_ERROR, "bad padding");
+            }
+            start = 1;
+            end -= frameIn[0] & 0xff;
+        }
+        if ((flags & PRIORITY_FLAG) != 0) {
+            start += 5;
+        }
+        if (end < start) {
+            throw new ConnectionError(PROTOCOL_ERROR, "bad padding");
+        }
+        headerBlock.reset();
+        addToHeaderBlock(start, end - start);
+        if ((flags & END_HEADERS) != 0) {
+            onHeaderBlock(id, flags);
+        } else {
+            continuationStream = id;
+            continuationFlags = flags;
+        }
+    }
+
+    private void addToHeaderBlock(int start, int length) throws ConnectionError {
+        if (headerBlock.size() + length > maxHeaderBytes) {
+            throw new ConnectionError(ENHANCE_YOUR_CALM, "header block larger than --max-header-bytes");
+        }
+        headerBlock.write(frameIn, start, length);
+    }
+
+    /**
+     * onHeaderBlock()
+     * A whole header block has arrived. It is always decoded, even for a stream that will be
+     * refused, because the HPACK tables have to stay in step with the browser's. A new stream
+     * is routed and its response started straight away; a block on a stream already open is
+     * trailers, which only end the request.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-5.1.1
+     * https://www.rfc-editor.org/rfc/rfc9113#section-8.3.1
+     * @param id
+     * @param flags
+     * @throws IOException
+    */
+    private void onHeaderBlock(int id, int flags) throws IOException {
+        fields.clear();
+        long t0 = System.nanoTime();
+        byte[] block = headerBlock.toByteArray();
+        try {
+            decoder.decode(block, 0, block.length, fields);
+        } catch (Hpack.HpackException e) {
+            throw new ConnectionError(COMPRESSION_ERROR, e.getMessage());
+        }
+        metrics.parseTime.record(System.nanoTime() - t0);
+        boolean endStream = (flags & END_STREAM) != 0;
+        if (id <= lastStreamId) {
+            Receiving r = bodies.get(id);
+            if (r != null) {
+                if (!endStream) {
+                    throw new ConnectionError(PROTOCOL_ERROR, "trailers without END_STREAM");
+                }
+                finishBody(id, r);
+                return;
+            }
+            Stream s = streams.get(id);
+            if (s != null && s.remoteClosed) {
+                resetStream(id, STREAM_CLOSED);
+            } else if (s != null) {
+                if (!endStream) {
+                    throw new ConnectionError(PROTOCOL_ERROR, "trailers without END_STREAM");
+                }
+                s.remoteClosed = true;
+            }
+            return; // otherwise a stream we already finished and reset; frames in flight are ignored
+        }
+        lastStreamId = id;
+        if (goAwayReceived || context.isDraining() || streams.size() + bodies.size() >= MAX_CONCURRENT_STREAMS) {
+            resetStream(id, REFUSED_STREAM); // safe for the browser to retry
+            return;
+        }
+        HTTPRequest request = toRequest(fields);
+        if (request == null) {
+            resetStream(id, PROTOCOL_ERROR);
+            return;
+        }
+        request.from(client.getInetAddress(), client instanceof TlsSocket);
+        if (!endStream) {
+            request.bodyFollows();
+            String path = HTTPHandler.urlDecodePath(request.getTarget());
+            if (path != null && Uploads.accepts(path, request, context)) {
+                startUpload(id, path, request);
+                return;
+            }
+            if (isProxied(path)) {
+                startProxied(id, request);
+                return;
+            }
+        }
+        startStream(id, request, endStream, null);
+    }
+
+    /**
+     * startProxied()
+     * A request for a backend whose body follows: collects the body before routing it, since
+     * the backend gets it as one stream. A Content-Length over --max-body-bytes is refused
+     * with a 413 straight away.
+     * @param id
+     * @param request
+     * @throws IOException
+    */
+    private void startProxied(int id, HTTPRequest request) throws IOException {
+        long max = context.getConfig().getMaxBodyBytes();
+        String declared = request.getHeader("content-length");
+        if (max > 0 && declared != null && RequestBody.parseLength(declared) > max) {
+            HTTPResponse refused = Uploads.tooLarge(context);
+            HTTPHandler.cors(request, refused, context.getConfig());
+            respond(id, request, refused, false);
+            return;
+        }
+        bodies.put(id, new Receiving(request, null, new RequestBody.Spool(max)));
+    }
+
+    /**
+     * startUpload()
+     * A PUT/POST into the upload area whose body follows: opens the upload and waits for its
+     * DATA frames. A refused upload (rate limit, too big, wrong place) is answered right away,
+     * and the body that follows is thrown away as for any finished stream.
+     * @param id
+     * @param path
+     * @param request
+     * @throws IOException
+    */
+    private void startUpload(int id, String path, HTTPRequest request) throws IOException {
+        long t0 = System.nanoTime();
+        HTTPResponse refused = HTTPHandler.rateLimited(context, limits);
+        Uploads.Upload upload = refused == null ? Uploads.begin(path, request, context) : null;
+        if (upload != null) {
+            refused = upload.refusal();
+        }
+        metrics.routeTime.record(System.nanoTime() - t0);
+        if (refused != null) {
+            HTTPHandler.cors(request, refused, context.getConfig());
+            respond(id, request, refused, false);
+            return;
+        }
+        bodies.put(id, new Receiving(request, upload, null));
+    }
+
+    /**
+     * finishBody()
+     * The browser has sent END_STREAM on a request with a body. An upload is committed and
+     * answered (a disk error becomes a 500); a proxied request is routed with its spooled body,
+     * which is thrown away once the backend has it.
+     * @param id
+     * @param r
+     * @throws IOException
+    */
+    private void finishBody(int id, Receiving r) throws IOException {
+        bodies.remove(id);
+        if (r.spool != null) {
+            RequestBody body;
+            try {
+                body = r.spool.body();
+            } catch (IOException e) {
+                r.spool.discard();
+                throw e;
+            }
+            startStream(id, r.request.withBody(body), true, r.spool);
+            return;
+        }
+        HTTPResponse response;
+        try {
+            response = r.upload.commit(context);
+        } catch (IOException e) {
+            System.err.println("Upload to " + r.request.getTarget() + " failed: " + e.getMessage());
+            response = HTTPHandler.simpleResponse("500 Internal Server Error", "text/plain", "The upload couldn't be stored");
+        } finally {
+            r.upload.abort(); // nothing left to do once committed
+        }
+        HTTPHandler.cors(r.request, response, context.getConfig());
+        respond(id, r.request, response, true);
+    }
+
+    /**
+     * toRequest()
+     * Turns decoded header fields into an HTTPRequest with version "HTTP/2.0". :authority
+     * stands in for Host. Returns null for a malformed request: missing or unknown
+     * pseudo-headers, pseudo-headers after regular ones, upper case names, or HTTP/1.1
+     * connection headers, which have no meaning in HTTP/2.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-8.2
+     * https://www.rfc-editor.org/rfc/rfc9113#section-8.3.1
+     * @param fields
+     * @return
+    */
+    private static HTTPRequest toRequest(List<String> fields) {
+        String method = null;
+        String path = null;
+        String scheme = null;
+        String authority = null;
+        Map<String, String> headers = new HashMap<>();
+        boolean regularSeen = false;
+        for (int i = 0; i < fields.size(); i += 2) {
+            String name = fields.get(i);
+            String value = fields.get(i + 1);
+            if (name.startsWith(":")) {
+                if (regularSeen) {
+                    return null;
+                }
+                switch (name) {
+                    case ":method": method = value; break;
+                    case ":path": path = value; break;
+                    case ":scheme": scheme = value; break;
+                    case ":authority": authority = value; break;
+                    default: return null;
+                }
+                continue;
+            }
+            regularSeen = true;
+            if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+                return null;
+            }
+            switch (name) {
+                case "connection":
+                case "keep-alive":
+                case "proxy-connection":
+                case "transfer-encoding":
+                case "upgrade":
+                    return null;
+                case "te":
+                    if (!value.equals("trailers")) {
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            String previous = headers.get(name);
+            if (previous == null) {
+                headers.put(name, value);
+            } else {
+                // browsers split cookies into one field each so they compress better
+                headers.put(name, previous + (name.equals("cookie") ? "; " : ", ") + value);
+            }
+        }
+        if (method == null || scheme == null || path == null || path.isEmpty()) {
+            return null;
+        }
+        if (authority != null) {
+            headers.putIfAbsent("host", authority);
+        }
+        return new HTTPRequest(method, path, "HTTP/2.0", headers);
+    }
+
+    /**
+     * startStream()
+     * Routes a request and starts its response. A proxied request is handed to proxyStream()
+     * on a thread of its own instead.
+     * @param id
+     * @param request
+     * @param remoteClosed true if the request had no body (END_STREAM on its HEADERS)
+     * @param spool the spooled body the request reads from, thrown away once routed; or null
+     * @throws IOException
+    */
+    private void startStream(int id, HTTPRequest request, boolean remoteClosed, RequestBody.Spool spool) throws IOException {
+        ReverseProxy proxy = context.getProxy();
+        if (proxy != null && isProxied(HTTPHandler.urlDecodePath(request.getTarget()))) {
+            Stream s = new Stream(id, peerInitialWindow);
+            s.remoteClosed = remoteClosed;
+            s.proxied = true;
+            try {
+                proxy.execute(() -> proxyStream(s, request, spool));
+                streams.put(id, s);
+                return;
+            } catch (RejectedExecutionException e) {
+                // the proxy was just replaced by a reload; answer it here as before
+            }
+        }
+        long t0 = System.nanoTime();
+        HTTPResponse response;
+        try {
+            response = HTTPHandler.route(request, context, limits);
+        } finally {
+            if (spool != null) {
+                spool.discard();
+            }
+        }
+        metrics.routeTime.record(System.nanoTime() - t0);
+        respond(id, request, response, remoteClosed);
+    }
+
+    /**
+     * isProxied()
+     * Whether a path goes to a backend (see HTTPHandler.route()).
+     * @param path the decoded URL path, or null
+     * @return
+    */
+    private boolean isProxied(String path) {
+        ReverseProxy proxy = context.getProxy();
+        return path != null && proxy != null && proxy.match(path) != null
+                && !path.equals(context.getConfig().getMetricsPath());
+    }
+
+    /**
+     * proxyStream()
+     * Answers a proxied stream on a proxy thread: routes it (the backend round trip happens
+     * here, without the lock), then takes the lock to send HEADERS and each DATA frame, waiting
+     * for window when the browser has none to give. Reading the backend's body is also done
+     * without the lock, so a slow backend only holds up its own stream. A stream reset by the
+     * browser, or a connection that ends, stops it at the next frame: closeFile() closes the
+     * body, which the read here notices.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-5.2.2
+     * @param s
+     * @param request
+     * @param spool the spooled body the request reads from, or null
+    */
+    private void proxyStream(Stream s, HTTPRequest request, RequestBody.Spool spool) {
+        long t0 = System.nanoTime();
+        HTTPResponse response;
+        try {
+            response = HTTPHandler.route(request, context, limits);
+        } catch (IOException e) {
+            response = HTTPHandler.simpleResponse("502 Bad Gateway", "text/plain", "The upstream server didn't answer");
+        } finally {
+            if (spool != null) {
+                spool.discard();
+            }
+        }
+        metrics.routeTime.record(System.nanoTime() - t0);
+        InputStream body = response.isBodyOmitted() ? null
+                : response.getStream() != null ? response.getStream()
+                : response.getBody() != null && response.getBody().length > 0 ? new ByteArrayInputStream(response.getBody())
+                : null;
+        byte[] frame = new byte[9 + MAX_FRAME_SIZE];
+        try {
+            lock.lock();
+            try {
+                if (!open(s)) {
+                    closeQuietly(response.getStream());
+                    return;
+                }
+                s.body = response.getStream() != null ? response.getStream() : body;
+                int headerBytes = writeHeaders(s.id, response, body == null);
+                metrics.recordResponse(response, headerBytes);
+                if (accessLog != null) {
+                    accessLog.log(client.getInetAddress(), request, response);
+                }
+                if (body == null) {
+                    finish(s);
+                    out.flush();
+                    return;
+                }
+                out.flush();
+            } finally {
+                lock.unlock();
+            }
+            while (true) {
+                int n;
+                try {
+                    n = body.read(frame, 9, MAX_FRAME_SIZE);
+                } catch (IOException e) {
+                    n = -2; // the backend failed part way, or the stream was reset under us
+                }
+                lock.lock();
+                try {
+                    if (!open(s)) {
+                        return;
+                    }
+                    if (n == -2) {
+                        streams.remove(s.id);
+                        closeFile(s);
+                        resetStream(s.id, INTERNAL_ERROR);
+                        out.flush();
+                        return;
+                    }
+                    if (n < 0) {
+                        putFrameHeader(frame, 0, DATA, END_STREAM, s.id);
+                        out.write(frame, 0, 9);
+                        finish(s);
+                        out.flush();
+                        return;
+                    }
+                    for (int off = 0; off < n; ) {
+                        while (open(s) && (sendWindow <= 0 || s.window <= 0)) {
+                            windowOpened.await();
+                        }
+                        if (!open(s)) {
+                            return;
+                        }
+                        int k = (int) Math.min(Math.min(n - off, peerMaxFrameSize), Math.min(sendWindow, s.window));
+                        putFrameHeader(frameHeaderOut, k, DATA, 0, s.id);
+                        out.write(frameHeaderOut, 0, 9);
+                        out.write(frame, 9 + off, k);
+                        sendWindow -= k;
+                        s.window -= k;
+                        off += k;
+                    }
+                    out.flush();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // the connection is gone; serve() cleans up
+        } finally {
+            lock.lock();
+            try {
+                if (streams.get(s.id) == s) {
+                    streams.remove(s.id);
+                }
+                closeFile(s);
+                if (context.isDraining() && streams.isEmpty() && bodies.isEmpty() && !closed) {
+                    try {
+                        client.shutdownInput(); // the connection thread is blocked reading; let it end
+                    } catch (IOException ignored) {}
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * proxyWaiting()
+     * Whether a proxied stream is still open, so the browser's silence isn't idleness.
+     * @return
+    */
+    private boolean proxyWaiting() {
+        lock.lock();
+        try {
+            for (Stream s : streams.values()) {
+                if (s.proxied) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * open()
+     * Whether a proxied stream is still wanted: not reset, and the connection still serving.
+     * @param s
+     * @return
+    */
+    private boolean open(Stream s) {
+        return !closed && streams.get(s.id) == s;
+    }
+
+    /**
+     * closeQuietly()
+     * Closes a backend's body nobody will read.
+     * @param in may be null
+    */
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try { in.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * respond()
+     * Sends a response's HEADERS frame and queues its body. A response with no body ends the
+     * stream right there. If the file can't be opened (it vanished after routing) the stream
+     * is reset before any headers go out.
+     * @param id
+     * @param request
+     * @param response
+     * @param remoteClosed true if the browser has sent all of the request
+     * @throws IOException
+    */
+    private void respond(int id, HTTPRequest request, HTTPResponse response, boolean remoteClosed) throws IOException {
+        Stream s = new Stream(id, peerInitialWindow);
+        s.remoteClosed = remoteClosed;
+        if (response.getBodyBuffer() != null) {
+            s.pieces.add(response.getBodyBuffer());
+        } else if (response.getBody() != null) {
+            if (response.getBody().length > 0) {
+                s.pieces.add(ByteBuffer.wrap(response.getBody()));
+            }
+        } else if (response.getStream() != null) {
+            s.body = response.getStream();
+            if (!response.isBodyOmitted()) {
+                s.pieces.add(s.body);
+            }
+        } else if (response.getFile() != null) {
+            try {
+                s.file = FileChannel.open(response.getFile().toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                resetStream(id, INTERNAL_ERROR);
+                return;
+            }
+            long[] regions = response.getRegions();
+            byte[][] partHeaders = response.getPartHeaders();
+            for (int i = 0; i < regions.length / 2; i++) {
+                if (partHeaders != null) {
+                    s.pieces.add(ByteBuffer.wrap(partHeaders[i]));
+                }
+                if (regions[2 * i + 1] > 0) {
+                    s.pieces.add(new long[] { regions[2 * i], regions[2 * i + 1] });
+                }
+            }
+            if (partHeaders != null) {
+                s.pieces.add(ByteBuffer.wrap(partHeaders[partHeaders.length - 1]));
+            }
+        }
+
+        int headerBytes;
+        try {
+            headerBytes = writeHeaders(id, response, s.pieces.isEmpty());
+        } catch (IOException e) {
+            closeFile(s);
+            throw e;
+        }
+        metrics.recordResponse(response, headerBytes);
+        if (accessLog != null) {
+            accessLog.log(client.getInetAddress(), request, response);
+        }
+        if (s.pieces.isEmpty()) {
+            finish(s);
+        } else {
+            streams.put(id, s);
+            sending.add(s);
+        }
+    }
+
+    /**
+     * writeHeaders()
+     * HPACK encodes the response's headers and sends them as a HEADERS frame, plus
+     * CONTINUATION frames if the block is bigger than the browser's frame size. The headers
+     * are the same ones HeaderWriter sends over HTTP/1.1, in lower case, minus the
+     * connection-level ones HTTP/2 doesn't allow.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-8.2.2
+     * @param id
+     * @param response
+     * @param endStream
+     * @return the size of the encoded block
+     * @throws IOException
+    */
+    private int writeHeaders(int id, HTTPResponse response, boolean endStream) throws IOException {
+        headerOut.reset();
+        encoder.startBlock(headerOut);
+        encoder.encode(headerOut, ":status", response.getStatus().substring(0, 3));
+        encoder.encode(headerOut, "date", HeaderWriter.date());
+        encoder.encode(headerOut, "server", context.getServerName());
+        if (!response.hasNoEntityHeaders()) {
+            byte[] entity = response.getEntityHeaders();
+            if (entity != null) {
+                for (String line : new String(entity, StandardCharsets.ISO_8859_1).split("\r\n")) {
+                    encodeLine(line);
+                }
+            } else {
+                if (response.getContentType() != null) {
+                    encoder.encode(headerOut, "content-type", response.getContentType());
+                }
+                if (response.getContentLength() >= 0) {
+                    encoder.encode(headerOut, "content-length", Long.toString(response.getContentLength()));
+                }
+            }
+        }
+        List<String> extra = response.getExtraHeaders();
+        for (int i = 0; i < extra.size(); i++) {
+            encodeLine(extra.get(i));
+        }
+
+        byte[] block = headerOut.toByteArray();
+        int offset = 0;
+        int type = HEADERS;
+        do {
+            int n = Math.min(peerMaxFrameSize, block.length - offset);
+            int flags = offset + n == block.length ? END_HEADERS : 0;
+            if (type == HEADERS && endStream) {
+                flags |= END_STREAM;
+            }
+            writeFrameHeader(n, type, flags, id);
+            out.write(block, offset, n);
+            offset += n;
+            type = CONTINUATION;
+        } while (offset < block.length);
+        return block.length;
+    }
+
+    /**
+     * encodeLine()
+     * Encodes one "Name: value" header line, skipping the ones that are about the HTTP/1.1
+     * connection rather than the response.
+     * @param line
+    */
+    private void encodeLine(String line) {
+        int colon = line.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "connection":
+            case "keep-alive":
+            case "proxy-connection":
+            case "transfer-encoding":
+            case "upgrade":
+                return;
+            default:
+                encoder.encode(headerOut, name, line.substring(colon + 1).trim());
+        }
+    }
+
+    /**
+     * writeData()
+     * Sends DATA frames, one per stream per turn, until every stream is done, the connection
+     * window or every stream's own window is used up, or the browser has sent something we
+     * should read first (a new request, a WINDOW_UPDATE, a reset). Checking for input after
+     * each frame keeps a big download from holding up the small requests behind it.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-5.2
+     * @throws IOException
+    */
+    private void writeData() throws IOException {
+        boolean progress = true;
+        while (progress && sendWindow > 0 && !sending.isEmpty()) {
+            progress = false;
+            for (int turns = sending.size(); turns > 0 && sendWindow > 0; turns--) {
+                Stream s = sending.poll();
+                if (s.window > 0) {
+                    try {
+                        writeDataFrame(s);
+                    } catch (EOFException shrank) {
+                        streams.remove(s.id);
+                        closeFile(s);
+                        resetStream(s.id, INTERNAL_ERROR); // the promised length can't be met
+                        continue;
+                    }
+                    progress = true;
+                }
+                if (s.pieces.isEmpty()) {
+                    finish(s);
+                } else {
+                    sending.add(s);
+                }
+            }
+            if (in.available() > 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * writeDataFrame()
+     * Fills one DATA frame from the front of the stream's pieces, as much as the frame size and
+     * both windows allow, and sends it, with END_STREAM if that was the last of the body.
+     * File regions are read with positional reads, so several streams can share a file. A
+     * streamed body gets one read per frame, of whatever it has ready (a backend that fails
+     * part way resets the stream like a file that shrank).
+     * @param s
+     * @throws IOException
+    */
+    private void writeDataFrame(Stream s) throws IOException {
+        int limit = (int) Math.min(Math.min(peerMaxFrameSize, MAX_FRAME_SIZE), Math.min(sendWindow, s.window));
+        int length = 0;
+        while (length < limit && !s.pieces.isEmpty()) {
+            Object piece = s.pieces.peek();
+            if (piece instanceof ByteBuffer) {
+                ByteBuffer buffer = (ByteBuffer) piece;
+                int n = Math.min(buffer.remaining(), limit - length);
+                buffer.get(frameOut, 9 + length, n);
+                length += n;
+                if (!buffer.hasRemaining()) {
+                    s.pieces.poll();
+                }
+            } else if (piece instanceof InputStream) {
+                int n;
+                try {
+                    n = s.body.read(frameOut, 9 + length, limit - length);
+                } catch (IOException e) {
+                    throw new EOFException("Streamed body failed: " + e.getMessage());
+                }
+                if (n < 0) {
+                    s.pieces.poll();
+                } else {
+                    length += n;
+                }
+                break; // send what it had rather than wait for more
+            } else {
+                long[] region = (long[]) piece;
+                int n = (int) Math.min(region[1], limit - length);
+                ByteBuffer target = ByteBuffer.wrap(frameOut, 9 + length, n);
+                while (target.hasRemaining()) {
+                    if (s.file.read(target, region[0] + (n - target.remaining())) < 0) {
+                        throw new EOFException("File shrank while sending");
+                    }
+                }
+                length += n;
+                region[0] += n;
+                region[1] -= n;
+                if (region[1] == 0) {
+                    s.pieces.poll();
+                }
+            }
+        }
+        boolean end = s.pieces.isEmpty();
+        putFrameHeader(frameOut, length, DATA, end ? END_STREAM : 0, s.id);
+        out.write(frameOut, 0, 9 + length);
+        sendWindow -= length;
+        s.window -= length;
+    }
+
+    /**
+     * finish()
+     * The whole response has been sent. If the browser is still sending a request body we
+     * don't need, RST_STREAM(NO_ERROR) tells it to stop.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-8.1
+     * @param s
+     * @throws IOException
+    */
+    private void finish(Stream s) throws IOException {
+        streams.remove(s.id);
+        closeFile(s);
+        metrics.sendTime.record(System.nanoTime() - s.started);
+        if (!s.remoteClosed) {
+            resetStream(s.id, NO_ERROR);
+        }
+    }
+
+    /**
+     * onData()
+     * DATA for an upload or a proxied request is written to its temp file or spool (a body
+     * over --max-body-bytes gets a 413 and the rest is dropped); any other request body is
+     * thrown away. Either way the bytes
+     * count against our windows and are handed straight back with WINDOW_UPDATE once dealt
+     * with, so the browser never stalls, and an upload goes as fast as the disk takes it.
+     * @param id
+     * @param flags
+     * @param length
+     * @throws IOException
+    */
+    private void onData(int id, int flags, int length) throws IOException {
+        if (id == 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        if ((flags & PADDED) != 0 && (length < 1 || (frameIn[0] & 0xff) >= length)) {
+            throw new ConnectionError(PROTOCOL_ERROR, "bad padding");
+        }
+        if (id > lastStreamId) {
+            throw new ConnectionError(PROTOCOL_ERROR, "DATA on an idle stream");
+        }
+        if (length > 0) {
+            writeWindowUpdate(0, length);
+        }
+        Receiving r = bodies.get(id);
+        if (r != null) {
+            int start = (flags & PADDED) != 0 ? 1 : 0;
+            int end = length - (start == 1 ? frameIn[0] & 0xff : 0);
+            try {
+                r.write(frameIn, start, end - start);
+            } catch (IOException e) {
+                bodies.remove(id);
+                r.abort();
+                HTTPResponse response = e instanceof Uploads.TooLarge ? Uploads.tooLarge(context)
+                        : HTTPHandler.simpleResponse("500 Internal Server Error", "text/plain", "The request body couldn't be stored");
+                HTTPHandler.cors(r.request, response, context.getConfig());
+                respond(id, r.request, response, (flags & END_STREAM) != 0);
+                return;
+            }
+            if ((flags & END_STREAM) != 0) {
+                finishBody(id, r);
+            } else if (length > 0) {
+                writeWindowUpdate(id, length);
+            }
+            return;
+        }
+        Stream s = streams.get(id);
+        if (s == null || s.remoteClosed) {
+            return; // finished (and reset) by us; the browser may not have seen that yet
+        }
+        if ((flags & END_STREAM) != 0) {
+            s.remoteClosed = true;
+        } else if (length > 0) {
+            writeWindowUpdate(id, length);
+        }
+    }
+
+    /**
+     * onSettings()
+     * Applies the browser's settings and acknowledges them.
+     * @param id
+     * @param flags
+     * @param length
+     * @throws IOException
+    */
+    private void onSettings(int id, int flags, int length) throws IOException {
+        if (id != 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "SETTINGS on a stream");
+        }
+        if ((flags & ACK) != 0) {
+            if (length != 0) {
+                throw new ConnectionError(FRAME_SIZE_ERROR, "SETTINGS ACK with a payload");
+            }
+            return;
+        }
+        if (length % 6 != 0) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "SETTINGS length not a multiple of 6");
+        }
+        settingsSeen = true;
+        applySettings(frameIn, 0, length);
+        writeFrameHeader(0, SETTINGS, ACK, 0);
+    }
+
+    /**
+     * applySettings()
+     * Each setting is a 16-bit id and a 32-bit value. A new initial window size moves every
+     * open stream's window by the difference (RFC 9113 6.9.2); unknown settings are ignored.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9113#section-6.5.2
+     * @param payload
+     * @param offset
+     * @param length
+     * @throws ConnectionError
+    */
+    private void applySettings(byte[] payload, int offset, int length) throws ConnectionError {
+        for (int i = offset; i < offset + length; i += 6) {
+            int setting = (payload[i] & 0xff) << 8 | (payload[i + 1] & 0xff);
+            long value = (payload[i + 2] & 0xffL) << 24 | (payload[i + 3] & 0xff) << 16
+                    | (payload[i + 4] & 0xff) << 8 | (payload[i + 5] & 0xff);
+            switch (setting) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    encoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value > 1) {
+                        throw new ConnectionError(PROTOCOL_ERROR, "bad SETTINGS_ENABLE_PUSH");
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > MAX_WINDOW) {
+                        throw new ConnectionError(FLOW_CONTROL_ERROR, "bad SETTINGS_INITIAL_WINDOW_SIZE");
+                    }
+                    long delta = value - peerInitialWindow;
+                    for (Stream s : streams.values()) {
+                        s.window += delta;
+                        if (s.window > MAX_WINDOW) {
+                            throw new ConnectionError(FLOW_CONTROL_ERROR, "stream window overflow");
+                        }
+                    }
+                    peerInitialWindow = (int) value;
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < MAX_FRAME_SIZE || value > 0xffffff) {
+                        throw new ConnectionError(PROTOCOL_ERROR, "bad SETTINGS_MAX_FRAME_SIZE");
+                    }
+                    peerMaxFrameSize = (int) value;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * onWindowUpdate()
+     * The browser has room for more: adds to the connection window (stream 0) or a stream's.
+     * A window pushed past 2^31-1 is a flow control error.
+     * @param id
+     * @param length
+     * @throws IOException
+    */
+    private void onWindowUpdate(int id, int length) throws IOException {
+        if (length != 4) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "WINDOW_UPDATE must be 4 bytes");
+        }
+        long increment = (frameIn[0] & 0x7fL) << 24 | (frameIn[1] & 0xff) << 16 | (frameIn[2] & 0xff) << 8 | (frameIn[3] & 0xff);
+        if (id == 0) {
+            if (increment == 0) {
+                throw new ConnectionError(PROTOCOL_ERROR, "WINDOW_UPDATE of 0");
+            }
+            sendWindow += increment;
+            if (sendWindow > MAX_WINDOW) {
+                throw new ConnectionError(FLOW_CONTROL_ERROR, "connection window overflow");
+            }
+            return;
+        }
+        Stream s = streams.get(id);
+        if (s == null) {
+            return; // closed already
+        }
+        if (increment == 0 || s.window + increment > MAX_WINDOW) {
+            streams.remove(id);
+            sending.remove(s);
+            closeFile(s);
+            resetStream(id, increment == 0 ? PROTOCOL_ERROR : FLOW_CONTROL_ERROR);
+            return;
+        }
+        s.window += increment;
+    }
+
+    /**
+     * writeSettings()
+     * Our SETTINGS: how many streams the browser may open at once and the most header bytes
+     * we accept. Everything else stays at the protocol default.
+     * @throws IOException
+    */
+    private void writeSettings() throws IOException {
+        writeFrameHeader(12, SETTINGS, 0, 0);
+        writeSetting(SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+        writeSetting(SETTINGS_MAX_HEADER_LIST_SIZE, maxHeaderBytes);
+    }
+
+    private void writeSetting(int setting, int value) throws IOException {
+        out.write(setting >>> 8);
+        out.write(setting);
+        writeInt(value);
+    }
+
+    private void writeWindowUpdate(int id, int increment) throws IOException {
+        writeFrameHeader(4, WINDOW_UPDATE, 0, id);
+        writeInt(increment);
+    }
+
+    private void resetStream(int id, int code) throws IOException {
+        writeFrameHeader(4, RST_STREAM, 0, id);
+        writeInt(code);
+    }
+
+    /**
+     * goAway()
+     * Tells the browser the connection is ending and which streams were (or may have been)
+     * processed, then flushes. Errors writing it are ignored: the connection is closing anyway.
+     * @param code
+    */
+    private void goAway(int code) {
+        try {
+            writeFrameHeader(8, GOAWAY, 0, 0);
+            writeInt(lastStreamId);
+            writeInt(code);
+            out.flush();
+        } catch (IOException ignored) {}
+    }
+
+    private void writeFrameHeader(int length, int type, int flags, int id) throws IOException {
+        putFrameHeader(frameHeaderOut, length, type, flags, id);
+        out.write(frameHeaderOut, 0, 9);
+    }
+
+    private static void putFrameHeader(byte[] b, int length, int type, int flags, int id) {
+        b[0] = (byte) (length >>> 16);
+        b[1] = (byte) (length >>> 8);
+        b[2] = (byte) length;
+        b[3] = (byte) type;
+        b[4] = (byte) flags;
+        b[5] = (byte) (id >>> 24);
+        b[6] = (byte) (id >>> 16);
+        b[7] = (byte) (id >>> 8);
+        b[8] = (byte) id;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /** Closes the stream's file or streamed body, if it has one. */
+    private static void closeFile(Stream s) {
+        if (s.file != null) {
+            try { s.file.close(); } catch (IOException ignored) {}
+            s.file = null;
+        }
+        if (s.body != null) {
+            try { s.body.close(); } catch (IOException ignored) {}
+            s.body = null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Name: LatencyHistogram
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Counts how long something took (in nanoseconds) in buckets the way HdrHistogram does:
+ *      every power of two is split into 8 equal buckets, so any recorded time is known to within
+ *      about 12.5%, from 1 ns up to centuries, in a fixed 496 slots. Recording is one bit
+ *      trick to find the bucket plus a LongAdder increment, so many threads can record at
+ *      once without fighting over one counter. Percentiles are read from the bucket counts.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://github.com/HdrHistogram/HdrHistogram
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/atomic/LongAdder.html
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/Long.html#numberOfLeadingZeros-long-
+ */
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * LatencyHistogram()
+     * Creates every bucket up front so record() never has to.
+    */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * record()
+     * Adds one measurement. Negative times (the clock can't go backwards, but just in case)
+     * count as zero.
+     * @param nanos
+    */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[index(nanos)].increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * snapshot()
+     * A copy of the bucket counts at one moment, so a report adds up even while other
+     * threads keep recording.
+     * @return
+    */
+    long[] snapshot() {
+        long[] snap = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snap[i] = counts[i].sum();
+        }
+        return snap;
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * percentile()
+     * The upper edge of the bucket holding the p-th percentile (p from 0 to 100) of a
+     * snapshot, in nanoseconds. Zero if nothing was recorded.
+     * @param snap
+     * @param p
+     * @return
+    */
+    static long percentile(long[] snap, double p) {
+        long total = 0;
+        for (long c : snap) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < snap.length; i++) {
+            seen += snap[i];
+            if (seen >= target) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(snap.length - 1);
+    }
+
+    /**
+     * index()
+     * The bucket for a value: values below 8 get their own bucket, above that the top bit
+     * picks the power of two and the next three bits pick one of its 8 slices.
+     * @param value
+     * @return
+    */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * upperBound()
+     * The largest value that lands in a bucket.
+     * @param index
+     * @return
+    */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long bound = ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound; // the very last bucket runs to the top
+    }
+
+    static int bucketCount() {
+        return BUCKETS;
+    }
+}
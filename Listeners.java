@@ -0,0 +1,107 @@
+/**
+ * Name: Listeners
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Opens the listening sockets and applies the socket options, for both MyHTTPServer and
+ *      NioServer. With --acceptors=N each acceptor thread gets its own listening socket on the
+ *      same port, all opened with SO_REUSEPORT, so the kernel spreads new connections between
+ *      them (by a hash of the client address) and no single accept() loop has to take every
+ *      connection during a burst. Where the OS has no SO_REUSEPORT (Windows), one socket is
+ *      opened and the acceptor threads share it, which still overlaps accepting with the
+ *      per-connection setup but doesn't split the kernel's accept queue.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://lwn.net/Articles/542629/
+ * https://man7.org/linux/man-pages/man7/socket.7.html
+ * https://man7.org/linux/man-pages/man7/tcp.7.html
+ * https://docs.oracle.com/javase/9/docs/api/java/net/StandardSocketOptions.html#SO_REUSEPORT
+ */
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Listeners {
+
+    private Listeners() {}
+
+    /**
+     * open()
+     * Binds the listening sockets for port: one per acceptor when SO_REUSEPORT is available,
+     * otherwise just one. The receive buffer is set before bind so accepted connections
+     * inherit it. If any bind fails the ones already open are closed again.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/ServerSocketChannel.html#bind-java.net.SocketAddress-int-
+     * @param port
+     * @param config
+     * @return
+     * @throws IOException
+    */
+    static List<ServerSocketChannel> open(int port, ServerConfig config) throws IOException {
+        List<ServerSocketChannel> listeners = new ArrayList<>();
+        try {
+            do {
+                ServerSocketChannel listener = ServerSocketChannel.open();
+                listeners.add(listener);
+                boolean reusePort = config.getAcceptors() > 1
+                        && listener.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+                if (reusePort) {
+                    listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                } else if (config.getAcceptors() > 1) {
+                    System.out.println("SO_REUSEPORT isn't available here, so the " + config.getAcceptors()
+                            + " acceptors share one listening socket");
+                }
+                if (config.getReceiveBuffer() > 0) {
+                    listener.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBuffer());
+                }
+                listener.bind(new InetSocketAddress(port), config.getBacklog());
+                if (!reusePort) {
+                    break;
+                }
+            } while (listeners.size() < config.getAcceptors());
+        } catch (IOException e) {
+            close(listeners);
+            throw e;
+        }
+        return listeners;
+    }
+
+    /**
+     * tune()
+     * Applies the per-connection options to a freshly accepted socket: TCP_NODELAY (on by
+     * default: the server decides when to flush, so Nagle would only hold back the last
+     * packet of a response), the send buffer and SO_KEEPALIVE.
+     * @param channel
+     * @param config
+     * @throws IOException
+    */
+    static void tune(SocketChannel channel, ServerConfig config) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+        if (config.getSendBuffer() > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSendBuffer());
+        }
+        if (config.isSoKeepAlive()) {
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        }
+    }
+
+    /**
+     * close()
+     * Closes every listener, ignoring errors (used when stopping).
+     * @param listeners
+    */
+    static void close(List<ServerSocketChannel> listeners) {
+        for (ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/**
+ * Name: Metrics
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Counts what the server is doing so it can be watched while it runs: requests, bytes sent,
+ *      responses per status code and per content type, I/O errors, accepted and turned-away
+ *      connections, and how long parsing, routing and sending take (LatencyHistogram). Gauges
+ *      such as open connections, the thread pool's queue and the cache size are read only when
+ *      someone asks. Counters are LongAdders, which spread increments from different threads
+ *      over separate cells, so recording costs a few nanoseconds and threads don't slow each
+ *      other down. The numbers are served in Prometheus text format on --metrics-path and are
+ *      also registered with JMX (as MyHTTPServer:type=Metrics) for jconsole/VisualVM.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://prometheus.io/docs/instrumenting/exposition_formats/
+ * https://prometheus.io/docs/practices/naming/
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/atomic/LongAdder.html
+ * https://docs.oracle.com/javase/8/docs/api/javax/management/DynamicMBean.html
+ */
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+
+public class Metrics implements DynamicMBean {
+    /** Content types are counted separately up to this many; the rest are lumped together. */
+    private static final int MAX_TYPES = 256;
+    /** Histogram bucket edges reported to Prometheus, in seconds. */
+    private static final String[] PROMETHEUS_BUCKETS = {
+        "0.00001", "0.000025", "0.00005", "0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005",
+        "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"
+    };
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder bytesSent = new LongAdder();
+    final LongAdder ioErrors = new LongAdder();
+    final LongAdder connectionsAccepted = new LongAdder();
+    final LongAdder connectionsRejected = new LongAdder();
+    final LongAdder http2Connections = new LongAdder();
+    final LongAdder configReloads = new LongAdder();
+    final LongAdder connectionsShed = new LongAdder();
+    final LongAdder requestsRateLimited = new LongAdder();
+    final LongAdder tlsFullHandshakes = new LongAdder();
+    final LongAdder tlsResumed = new LongAdder();
+    final LongAdder tlsFailures = new LongAdder();
+    final LongAdder proxyRequests = new LongAdder();
+    final LongAdder proxyConnects = new LongAdder();
+    final LongAdder proxyRetries = new LongAdder();
+    final LongAdder proxyFailures = new LongAdder();
+    final LongAdder autoindexResponses = new LongAdder();
+    final LongAdder autoindexCacheHits = new LongAdder();
+    final LongAdder uploads = new LongAdder();
+    final LongAdder uploadBytes = new LongAdder();
+    final LatencyHistogram parseTime = new LatencyHistogram();
+    final LatencyHistogram routeTime = new LatencyHistogram();
+    final LatencyHistogram sendTime = new LatencyHistogram();
+    final LatencyHistogram queueTime = new LatencyHistogram();
+    final LatencyHistogram tlsHandshakeTime = new LatencyHistogram();
+    final LatencyHistogram proxyUpstreamTime = new LatencyHistogram();
+    final LatencyHistogram proxyAddedTime = new LatencyHistogram();
+
+    private final LongAdder[] byStatus = new LongAdder[600];
+    private final Map<String, LongAdder> byType = new ConcurrentHashMap<>();
+    private final LongAdder otherTypes = new LongAdder();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    /**
+     * Metrics()
+     * Creates a counter for every possible status code up front, so counting one is just
+     * an array index.
+    */
+    public Metrics() {
+        for (int i = 0; i < byStatus.length; i++) {
+            byStatus[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * recordResponse()
+     * Counts one response that is about to be sent: its status, its content type and its size
+     * (headers plus body).
+     * @param response
+     * @param headerBytes
+    */
+    void recordResponse(HTTPResponse response, int headerBytes) {
+        requests.increment();
+        bytesSent.add(headerBytes + response.getBodyBytes());
+        byStatus[statusCode(response.getStatus())].increment();
+        String type = response.getContentType();
+        if (type != null) {
+            LongAdder count = byType.get(type);
+            if (count == null) {
+                count = byType.size() < MAX_TYPES ? byType.computeIfAbsent(type, t -> new LongAdder()) : otherTypes;
+            }
+            count.increment();
+        }
+    }
+
+    /**
+     * gauge()
+     * Adds a value that is read when the metrics are reported (e.g. open connections).
+     * @param name
+     * @param help
+     * @param value
+    */
+    void gauge(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, "gauge", value));
+    }
+
+    /**
+     * functionCounter()
+     * Like gauge(), for a count kept somewhere else that only goes up (e.g. dropped
+     * access log entries), so Prometheus treats it as a counter.
+     * @param name
+     * @param help
+     * @param value
+    */
+    void functionCounter(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, "counter", value));
+    }
+
+    /**
+     * statusCode()
+     * The number at the front of a status like "404 Not Found", without making a String.
+     * Anything unreadable counts as 0.
+     * @param status
+     * @return
+    */
+    static int statusCode(String status) {
+        if (status.length() < 3) {
+            return 0;
+        }
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = status.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code < 600 ? code : 0;
+    }
+
+    /**
+     * prometheus()
+     * Everything in the Prometheus text exposition format.
+     * References:
+     * https://prometheus.io/docs/concepts/metric_types/#histogram
+     * @return
+    */
+    String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        counter(sb, "http_requests_total", "Requests answered.", requests.sum());
+        counter(sb, "http_sent_bytes_total", "Response bytes sent, headers included.", bytesSent.sum());
+        counter(sb, "http_io_errors_total", "Connections that ended with an I/O error.", ioErrors.sum());
+        counter(sb, "http_connections_accepted_total", "Connections accepted.", connectionsAccepted.sum());
+        counter(sb, "http_connections_rejected_total", "Connections turned away with 503 or 429 before being served.", connectionsRejected.sum());
+        counter(sb, "http_connections_shed_total", "Connections turned away by CoDel after waiting too long in the queue.", connectionsShed.sum());
+        counter(sb, "http_requests_rate_limited_total", "Requests answered with 429 by the per-client rate limit.", requestsRateLimited.sum());
+        counter(sb, "http2_connections_total", "Connections switched to HTTP/2.", http2Connections.sum());
+        counter(sb, "http_tls_handshakes_total", "Full TLS handshakes.", tlsFullHandshakes.sum());
+        counter(sb, "http_tls_resumed_total", "TLS handshakes that resumed an earlier session (cache or ticket).", tlsResumed.sum());
+        counter(sb, "http_tls_failures_total", "TLS handshakes that failed.", tlsFailures.sum());
+        counter(sb, "http_proxy_requests_total", "Requests sent on to a backend by the reverse proxy.", proxyRequests.sum());
+        counter(sb, "http_proxy_connects_total", "New backend connections opened (the rest reused a pooled one).", proxyConnects.sum());
+        counter(sb, "http_proxy_retries_total", "Proxied requests tried again after a backend failed.", proxyRetries.sum());
+        counter(sb, "http_proxy_failures_total", "Proxied requests answered with 502, 503 or 504.", proxyFailures.sum());
+        counter(sb, "http_autoindex_responses_total", "Directory listings sent by --autoindex.", autoindexResponses.sum());
+        counter(sb, "http_autoindex_cache_hits_total", "Directory listings sent from a page kept in memory.", autoindexCacheHits.sum());
+        counter(sb, "http_uploads_total", "PUT/POST uploads stored under --upload-dir.", uploads.sum());
+        counter(sb, "http_upload_bytes_total", "Bytes of uploads stored.", uploadBytes.sum());
+        counter(sb, "http_config_reloads_total", "Times the config file was read again and applied.", configReloads.sum());
+
+        sb.append("# HELP http_responses_total Responses by status code.\n");
+        sb.append("# TYPE http_responses_total counter\n");
+        for (int code = 0; code < byStatus.length; code++) {
+            long n = byStatus[code].sum();
+            if (n > 0) {
+                sb.append("http_responses_total{code=\"").append(code).append("\"} ").append(n).append('\n');
+            }
+        }
+        sb.append("# HELP http_responses_by_type_total Responses by content type.\n");
+        sb.append("# TYPE http_responses_by_type_total counter\n");
+        Map<String, Long> types = new LinkedHashMap<>(); // "text/html" and "text/html; charset=utf-8" are one series
+        for (Map.Entry<String, LongAdder> e : byType.entrySet()) {
+            types.merge(mediaType(e.getKey()), e.getValue().sum(), Long::sum);
+        }
+        for (Map.Entry<String, Long> e : types.entrySet()) {
+            sb.append("http_responses_by_type_total{type=\"").append(e.getKey()).append("\"} ").append(e.getValue()).append('\n');
+        }
+        if (otherTypes.sum() > 0) {
+            sb.append("http_responses_by_type_total{type=\"other\"} ").append(otherTypes.sum()).append('\n');
+        }
+
+        histogram(sb, "http_parse_seconds", "Time spent parsing request heads.", parseTime);
+        histogram(sb, "http_route_seconds", "Time spent in route(): resolving the path, checking the file, building the response.", routeTime);
+        histogram(sb, "http_send_seconds", "Time spent writing responses.", sendTime);
+        histogram(sb, "http_queue_seconds", "Time accepted connections waited for a pool thread.", queueTime);
+        histogram(sb, "http_tls_handshake_seconds", "Time TLS handshakes took, waiting for the client included.", tlsHandshakeTime);
+        histogram(sb, "http_proxy_upstream_seconds", "Time from sending a proxied request until the backend started answering.", proxyUpstreamTime);
+        histogram(sb, "http_proxy_added_seconds", "Time the proxy added to a request before its response head was ready: getting a connection, writing the request, reading the head.", proxyAddedTime);
+
+        for (Gauge g : gauges) {
+            sb.append("# HELP ").append(g.name).append(' ').append(g.help).append('\n');
+            sb.append("# TYPE ").append(g.name).append(' ').append(g.type).append('\n');
+            sb.append(g.name).append(' ').append(g.value.getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * histogram()
+     * Writes one histogram as cumulative buckets. A LatencyHistogram bucket is counted under
+     * an edge when all of it is at or below the edge, so the counts can be up to one
+     * bucket (about 12.5%) early.
+     * @param sb
+     * @param name
+     * @param help
+     * @param h
+    */
+    private static void histogram(StringBuilder sb, String name, String help, LatencyHistogram h) {
+        long[] snap = h.snapshot();
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        int i = 0;
+        long cumulative = 0;
+        for (String edge : PROMETHEUS_BUCKETS) {
+            long edgeNanos = Math.round(Double.parseDouble(edge) * 1e9);
+            while (i < snap.length && LatencyHistogram.upperBound(i) <= edgeNanos) {
+                cumulative += snap[i++];
+            }
+            sb.append(name).append("_bucket{le=\"").append(edge).append("\"} ").append(cumulative).append('\n');
+        }
+        while (i < snap.length) {
+            cumulative += snap[i++];
+        }
+        sb.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        sb.append(name).append("_sum ").append(h.getSum() / 1e9).append('\n');
+        sb.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    private static String mediaType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim();
+    }
+
+    /**
+     * values()
+     * A flat name -> number view for JMX: the counters, the gauges, and p50/p99/p99.9 of each
+     * histogram in microseconds.
+     * @return
+    */
+    Map<String, Long> values() {
+        Map<String, Long> v = new LinkedHashMap<>();
+        v.put("Requests", requests.sum());
+        v.put("BytesSent", bytesSent.sum());
+        v.put("IoErrors", ioErrors.sum());
+        v.put("ConnectionsAccepted", connectionsAccepted.sum());
+        v.put("ConnectionsRejected", connectionsRejected.sum());
+        v.put("Http2Connections", http2Connections.sum());
+        v.put("ConfigReloads", configReloads.sum());
+        v.put("ConnectionsShed", connectionsShed.sum());
+        v.put("RequestsRateLimited", requestsRateLimited.sum());
+        v.put("TlsHandshakes", tlsFullHandshakes.sum());
+        v.put("TlsResumed", tlsResumed.sum());
+        v.put("TlsFailures", tlsFailures.sum());
+        v.put("ProxyRequests", proxyRequests.sum());
+        v.put("ProxyConnects", proxyConnects.sum());
+        v.put("ProxyRetries", proxyRetries.sum());
+        v.put("ProxyFailures", proxyFailures.sum());
+        v.put("AutoindexResponses", autoindexResponses.sum());
+        v.put("AutoindexCacheHits", autoindexCacheHits.sum());
+        v.put("Uploads", uploads.sum());
+        v.put("UploadBytes", uploadBytes.sum());
+        for (int code = 0; code < byStatus.length; code++) {
+            long n = byStatus[code].sum();
+            if (n > 0) {
+                v.put("Status" + code, n);
+            }
+        }
+        percentiles(v, "Parse", parseTime);
+        percentiles(v, "Route", routeTime);
+        percentiles(v, "Send", sendTime);
+        percentiles(v, "Queue", queueTime);
+        percentiles(v, "TlsHandshake", tlsHandshakeTime);
+        percentiles(v, "ProxyUpstream", proxyUpstreamTime);
+        percentiles(v, "ProxyAdded", proxyAddedTime);
+        for (Gauge g : gauges) {
+            v.put(g.name, g.value.getAsLong());
+        }
+        return v;
+    }
+
+    private static void percentiles(Map<String, Long> v, String name, LatencyHistogram h) {
+        long[] snap = h.snapshot();
+        v.put(name + "P50Micros", LatencyHistogram.percentile(snap, 50) / 1000);
+        v.put(name + "P99Micros", LatencyHistogram.percentile(snap, 99) / 1000);
+        v.put(name + "P999Micros", LatencyHistogram.percentile(snap, 99.9) / 1000);
+    }
+
+    /**
+     * registerJmx()
+     * Registers these metrics with the platform MBean server. Failing to do so (e.g. a second
+     * server in the same JVM) only costs the JMX view, so it is reported and otherwise ignored.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/lang/management/ManagementFactory.html#getPlatformMBeanServer--
+    */
+    void registerJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("MyHTTPServer:type=Metrics"));
+        } catch (JMException e) {
+            System.err.println("Metrics not registered with JMX: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = values().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> v = values();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            if (v.containsKey(name)) {
+                list.add(new Attribute(name, v.get(name)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    /**
+     * getMBeanInfo()
+     * Lists the attributes that exist right now (status codes appear once they are seen).
+     * @return
+    */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for (String name : values().keySet()) {
+            attrs.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+        }
+        return new MBeanInfo(Metrics.class.getName(), "HTTP server metrics",
+                attrs.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    /**
+     * Gauge
+     * A named value read on demand, reported as a gauge or a counter.
+     */
+    private static final class Gauge {
+        final String name;
+        final String help;
+        final String type;
+        final LongSupplier value;
+
+        Gauge(String name, String help, String type, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -2,100 +2,464 @@
  * Name: MimeTypes
  * Author: esthergreene
  * Project: Program 2
- * Version: 10/05/2025
+ * Version: 10/17/2026
  * Use: A lookup helper that matches file extensions to their correct content type values
- *      so browsers know what kind of file they are receiving. Keeps a list of file extensions and 
- *      their matching MIME types. 
+ *      so browsers know what kind of file they are receiving. Keeps a list of file extensions and
+ *      their matching MIME types, plus what the rest of the server wants to know about each
+ *      type: the charset that goes on the Content-Type (utf-8 for text), whether it is worth
+ *      compressing, an optional default Cache-Control, and the whole "Content-Type: ...\r\n"
+ *      line already encoded.
+ *      The built-in table covers the usual web files. --mime-types=<file> adds a standard
+ *      mime.types file (the Apache / /etc/mime.types format, or nginx's "types { }" block) on
+ *      top of it, so new extensions don't need a code change.
+ *      A lookup doesn't cut the extension out of the file name or lower-case it: it hashes the
+ *      characters after the last "." in place, folding case as it goes, into a table that was
+ *      laid out once when it was built, and compares in place too, so it allocates nothing.
  * Note: Sources have been cited and appear above respective code (e.g., "References:")
  */
 
- /**
-  * Resources:
-  * https://www.w3schools.com/java/java_hashmap.asp
-  * https://www.geeksforgeeks.org/java/map-interface-in-java/
-  */
- import java.util.HashMap;
- import java.util.Map;
-
- /**
-  * MimeTypes
-  * A lookup helper that matches file extensions to their correct content type values
-  * so browsers know what kind of file they are receiving. Keeps a list of file extensions and their matching MIME types.
-  * Resources: 
-  * https://www.w3schools.com/java/java_hashmap.asp
-  */
- public class MimeTypes  {
-    private static final Map<String, String> types = new HashMap<>();
+/**
+ * References:
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Guides/MIME_types/Common_types
+ * https://www.iana.org/assignments/media-types/media-types.xhtml
+ * https://httpd.apache.org/docs/2.4/mod/mod_mime.html#typesconfig
+ * https://nginx.org/en/docs/http/ngx_http_core_module.html#types
+ * https://en.wikipedia.org/wiki/Open_addressing
+ */
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+public class MimeTypes {
+    /** Tried when laying out the table; the one with the shortest longest probe wins. */
+    private static final int SEEDS = 64;
+    /** Biggest table grown in search of a perfect layout (a few KB). */
+    private static final int PERFECT_SLOTS = 1024;
+
+    /** Sent for anything we don't know. */
+    static final Type OCTET_STREAM = new Type("application/octet-stream", null, false, null);
+
+    /** The built-in table, used when there is no --mime-types file. */
+    static final MimeTypes DEFAULT = builtIn();
+
+    private final String[] keys;  // lower-case extensions, null = empty slot
+    private final Type[] values;
+    private final int mask;
+    private final int seed;
+    private final int maxProbe;   // no key sits further than this from its home slot
+    private final Map<String, Type> byExtension;
 
     /**
-     * static class
-     * Shared helper function. Lets the server quickly find the correct content type for a file. Hopefully
-     * it should create a new MimeTypes object each time. 
-     * Resources:
-     * https://www.w3schools.com/java/ref_hashmap_put.asp
-     * https://stackoverflow.com/questions/27402992/java-a-way-to-match-mime-content-type-to-file-extension-from-commonsmultipart
-     * https://www.baeldung.com/java-mime-type-file-extension
-     * https://www.reddit.com/r/html5/comments/1i8dvxj/guidance_on_using_mime_types_vs_file_extensions/
-     * https://docs.oracle.com/cd/E19957-01/817-7306/mimetypes-0/index.html
+     * MimeTypes()
+     * Lays the extensions out in an open-addressing table at least twice the size of the list.
+     * Several hash seeds are tried and the layout whose worst key is the fewest steps from its
+     * home slot is kept. A small table (like the built-in one) is grown, up to eight times the
+     * list or PERFECT_SLOTS, until some seed puts every key in its home slot, which makes it a
+     * perfect hash: every lookup is one hash and one compare. A big mime.types file ends up
+     * with a few keys a step or two away, which lookups follow.
+     * References:
+     * https://en.wikipedia.org/wiki/Perfect_hash_function
+     * @param byExtension lower-case extension to type
+    */
+    private MimeTypes(Map<String, Type> byExtension) {
+        this.byExtension = byExtension;
+        int size = Integer.highestOneBit(Math.max(8, byExtension.size() * 2) - 1) << 1;
+        String[] bestKeys = null;
+        Type[] bestValues = null;
+        int bestSeed = 0;
+        int bestProbe = Integer.MAX_VALUE;
+        while (true) {
+            for (int s = 0; s < SEEDS && bestProbe > 0; s++) {
+                int candidate = 0x9E3779B9 * (s + 1);
+                String[] k = new String[size];
+                Type[] v = new Type[size];
+                int worst = 0;
+                for (Map.Entry<String, Type> e : byExtension.entrySet()) {
+                    String ext = e.getKey();
+                    int slot = hash(candidate, ext, 0, ext.length()) & (size - 1);
+                    int probe = 0;
+                    while (k[slot] != null) {
+                        slot = (slot + 1) & (size - 1);
+                        probe++;
+                    }
+                    k[slot] = ext;
+                    v[slot] = e.getValue();
+                    worst = Math.max(worst, probe);
+                }
+                if (worst < bestProbe) {
+                    bestKeys = k;
+                    bestValues = v;
+                    bestSeed = candidate;
+                    bestProbe = worst;
+                }
+            }
+            if (bestProbe == 0 || size >= PERFECT_SLOTS || size >= 8 * byExtension.size()) {
+                break;
+            }
+            size <<= 1;
+        }
+        this.keys = bestKeys;
+        this.values = bestValues;
+        this.mask = bestKeys.length - 1;
+        this.seed = bestSeed;
+        this.maxProbe = bestProbe;
+    }
+
+    /**
+     * builtIn()
+     * The extensions the server knows without a --mime-types file.
+     * References:
      * https://developer.mozilla.org/en-US/docs/Web/HTTP/Guides/MIME_types/Common_types
-     * https://www.iana.org/assignments/media-types/media-types.xhtml
-     * https://www.sitepoint.com/mime-types-complete-list/
-     * 
-     */
-    static {
-        types.put("html", "text/html");
-        types.put("htm", "text/html");
-        types.put("txt", "text/plain");
-        types.put("css", "text/css");
-        types.put("js", "application/javascript");
-        types.put("png", "image/png");
-        types.put("jpg", "image/jpeg");
-        types.put("jpeg", "image/jpeg");
-        types.put("gif", "image/gif");
-        types.put("svg", "image/svg+xml");
-        types.put("ico", "image/x-icon");
-        types.put("mp3", "audio/mpeg");
-        types.put("wav", "audio/wav");
-        types.put("mp4", "video/mp4");
-        types.put("json", "application/json");
-        types.put("pdf", "application/pdf");
-        types.put("zip", "application/zip");
-        types.put("xml", "application/xml");
+     * https://developer.mozilla.org/en-US/docs/Web/Manifest
+     * @return
+    */
+    private static MimeTypes builtIn() {
+        Map<String, Type> table = new LinkedHashMap<>();
+        String[][] types = {
+            { "text/html", "html", "htm" },
+            { "text/plain", "txt", "text", "log" },
+            { "text/css", "css" },
+            { "text/csv", "csv" },
+            { "text/markdown", "md", "markdown" },
+            { "application/javascript", "js", "mjs" },
+            { "application/json", "json", "map" },
+            { "application/manifest+json", "webmanifest" },
+            { "application/xml", "xml" },
+            { "application/rss+xml", "rss" },
+            { "application/atom+xml", "atom" },
+            { "application/wasm", "wasm" },
+            { "image/png", "png" },
+            { "image/jpeg", "jpg", "jpeg" },
+            { "image/gif", "gif" },
+            { "image/webp", "webp" },
+            { "image/avif", "avif" },
+            { "image/svg+xml", "svg" },
+            { "image/x-icon", "ico" },
+            { "image/bmp", "bmp" },
+            { "font/woff", "woff" },
+            { "font/woff2", "woff2" },
+            { "font/ttf", "ttf" },
+            { "font/otf", "otf" },
+            { "audio/mpeg", "mp3" },
+            { "audio/wav", "wav" },
+            { "audio/ogg", "ogg", "oga" },
+            { "video/mp4", "mp4" },
+            { "video/webm", "webm" },
+            { "video/ogg", "ogv" },
+            { "application/pdf", "pdf" },
+            { "application/zip", "zip" },
+            { "application/gzip", "gz" },
+            { "application/x-tar", "tar" },
+        };
+        for (String[] row : types) {
+            Type type = Type.of(row[0], Map.of());
+            for (int i = 1; i < row.length; i++) {
+                table.put(row[i], type);
+            }
+        }
+        return new MimeTypes(table);
+    }
+
+    /**
+     * load()
+     * Reads a mime.types file and returns the built-in table with its entries added (the
+     * file wins for an extension both have). Each line is a type followed by its extensions:
+     *     text/html   html htm
+     * Lines starting with "#" are comments. nginx's form ("types {", "text/html html;", "}")
+     * reads the same. Words with an "=" in them are settings for the type instead of
+     * extensions: charset=utf-8 (or none), compressible=true|false and
+     * cache-control=max-age=86400,immutable (no spaces). A type without them gets
+     * charset=utf-8 if it is text, and is compressible if it is text-like.
+     * Throws IllegalArgumentException naming file:line if something can't be read, so a bad
+     * file at reload keeps the running settings.
+     * References:
+     * https://httpd.apache.org/docs/2.4/mod/mod_mime.html#typesconfig
+     * @param file
+     * @return
+    */
+    static MimeTypes load(File file) {
+        Map<String, Type> table = new LinkedHashMap<>(DEFAULT.byExtension);
+        int number = 0;
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                number++;
+                int hash = line.indexOf('#');
+                if (hash >= 0) {
+                    line = line.substring(0, hash);
+                }
+                line = line.replace(';', ' ').replace('{', ' ').replace('}', ' ').trim();
+                if (line.isEmpty() || line.equals("types")) {
+                    continue;
+                }
+                String[] words = line.split("\\s+");
+                String name = words[0].toLowerCase(Locale.ROOT);
+                if (name.indexOf('/') <= 0 || name.indexOf('/') == name.length() - 1) {
+                    throw new IllegalArgumentException(file + ":" + number + ": not a MIME type: " + words[0]);
+                }
+                Map<String, String> settings = new LinkedHashMap<>();
+                List<String> extensions = new ArrayList<>();
+                for (int i = 1; i < words.length; i++) {
+                    int eq = words[i].indexOf('=');
+                    if (eq > 0) {
+                        settings.put(words[i].substring(0, eq).toLowerCase(Locale.ROOT), words[i].substring(eq + 1));
+                    } else {
+                        extensions.add(lower(words[i]));
+                    }
+                }
+                Type type;
+                try {
+                    type = Type.of(name, settings);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + ":" + number + ": " + e.getMessage());
+                }
+                for (String ext : extensions) {
+                    table.put(ext.startsWith(".") ? ext.substring(1) : ext, type);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read MIME types file " + file + ": " + e.getMessage());
+        }
+        return new MimeTypes(table);
+    }
+
+    /**
+     * lookup()
+     * The type for a file name, by the extension after its last "." (any case), or
+     * application/octet-stream when there is none or it isn't known. Allocates nothing.
+     * @param filename
+     * @return
+    */
+    Type lookup(String filename) {
+        int dot = filename.lastIndexOf('.');
+        int from = dot + 1;
+        int length = filename.length() - from;
+        if (dot < 0 || length == 0) {
+            return OCTET_STREAM;
+        }
+        int slot = hash(seed, filename, from, filename.length()) & mask;
+        for (int probe = 0; probe <= maxProbe; probe++) {
+            String key = keys[slot];
+            if (key == null) {
+                break;
+            }
+            if (key.length() == length && matches(key, filename, from)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return OCTET_STREAM;
+    }
+
+    /**
+     * hash()
+     * FNV-1a over s[from, to), lower-casing each character first, then mixed so the low bits
+     * (the ones the mask keeps) depend on every character.
+     * References:
+     * https://en.wikipedia.org/wiki/Fowler%E2%80%93Noll%E2%80%93Vo_hash_function
+     * @param seed
+     * @param s
+     * @param from
+     * @param to
+     * @return
+    */
+    private static int hash(int seed, String s, int from, int to) {
+        int h = seed ^ 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ fold(s.charAt(i))) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * matches()
+     * Whether s, from index from to its end, is key (which is lower case) ignoring case.
+     * @param key
+     * @param s
+     * @param from
+     * @return
+    */
+    private static boolean matches(String key, String s, int from) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != fold(s.charAt(from + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String lower(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * fold()
+     * Lower case for one character, with ASCII (nearly every extension) done without a table.
+     * @param c
+     * @return
+    */
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * sameAs()
+     * Whether other maps every extension to the same type, so a reload can tell if the
+     * cached responses (which carry the Content-Type) are still right.
+     * @param other
+     * @return
+    */
+    boolean sameAs(MimeTypes other) {
+        return byExtension.equals(other.byExtension);
+    }
+
+    int size() {
+        return byExtension.size();
     }
 
     /**
      * getMimeType
-     * Looks at a file's extension (.html, .jpg, etc.) and returns the correct MIME type. It takes the
-     * file name, finds the file extension (looking for the ".") and then looks up the extension. It then 
-     * returns the matching MIME type. If not found, default is a generic binary file.
-     * Resources:
-     * https://www.geeksforgeeks.org/java/java-lang-string-lastindexof-method/
-     * https://www.w3schools.com/java/ref_string_length.asp
-     * https://www.w3schools.com/java/ref_string_substring.asp
-     * https://www.w3schools.com/java/ref_string_tolowercase.asp
+     * Looks at a file's extension (.html, .jpg, etc.) and returns the Content-Type value for it
+     * from the built-in table, with "; charset=utf-8" on text types. If not found, default is a
+     * generic binary file.
+     * References:
      * https://stackoverflow.com/questions/20508788/do-i-need-content-type-application-octet-stream-for-file-download
      * https://developer.mozilla.org/en-US/docs/Web/HTTP/Guides/MIME_types
      * @param filename
      * @return
      */
     public static String getMimeType(String filename) {
-        String ext = "";
-        int i = filename.lastIndexOf('.');
+        return DEFAULT.lookup(filename).getContentType();
+    }
+
+    /**
+     * Type
+     * One MIME type and what the server does with it. Immutable and shared by every extension
+     * that maps to it.
+     */
+    static final class Type {
+        private final String name;
+        private final String charset;
+        private final String contentType;
+        private final boolean compressible;
+        private final String cacheControl;
+        private final byte[] contentTypeLine;
 
-        if (i >= 0 && i < filename.length() - 1) {
-            ext = filename.substring(i + 1).toLowerCase();
+        private Type(String name, String charset, boolean compressible, String cacheControl) {
+            this.name = name;
+            this.charset = charset;
+            this.contentType = charset != null ? name + "; charset=" + charset : name;
+            this.compressible = compressible;
+            this.cacheControl = cacheControl;
+            this.contentTypeLine = ("Content-Type: " + contentType + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
         }
 
-        String t = types.get(ext);
-    
-        if (t != null) {
-            return t;
+        /**
+         * of()
+         * A type with the defaults for its name, changed by any settings from a mime.types line.
+         * @param name lower case
+         * @param settings
+         * @return
+        */
+        static Type of(String name, Map<String, String> settings) {
+            boolean text = name.startsWith("text/") || name.equals("application/javascript");
+            String charset = text ? "utf-8" : null;
+            boolean compressible = text || isTextLike(name);
+            String cacheControl = null;
+            for (Map.Entry<String, String> s : settings.entrySet()) {
+                String value = s.getValue();
+                switch (s.getKey()) {
+                    case "charset":
+                        charset = value.isEmpty() || value.equalsIgnoreCase("none") ? null : value.toLowerCase(Locale.ROOT);
+                        break;
+                    case "compressible":
+                        if (!value.equals("true") && !value.equals("false")) {
+                            throw new IllegalArgumentException("compressible is true or false, not " + value);
+                        }
+                        compressible = value.equals("true");
+                        break;
+                    case "cache-control":
+                        cacheControl = value.isEmpty() ? null : value.replace(",", ", ");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown setting " + s.getKey());
+                }
+            }
+            return new Type(name, charset, compressible, cacheControl);
         }
 
-        if ("txt".equals(ext)) {
-            return "text/plain";
+        /**
+         * isTextLike()
+         * Types that aren't text/ but shrink well: JSON, XML and anything built on them
+         * (+json, +xml), WebAssembly, and fonts and images that aren't compressed already.
+         * References:
+         * https://www.rfc-editor.org/rfc/rfc6839#section-3
+         * @param name
+         * @return
+        */
+        private static boolean isTextLike(String name) {
+            return name.equals("application/json") || name.equals("application/xml")
+                    || name.endsWith("+json") || name.endsWith("+xml")
+                    || name.equals("application/wasm") || name.equals("font/ttf") || name.equals("font/otf")
+                    || name.equals("image/x-icon") || name.equals("image/bmp");
         }
 
-        return "application/octet-stream";
+        /** The bare type, e.g. "text/html". */
+        String getName() {
+            return name;
+        }
+
+        /** What goes in Content-Type, e.g. "text/html; charset=utf-8". */
+        String getContentType() {
+            return contentType;
+        }
+
+        String getCharset() {
+            return charset;
+        }
+
+        boolean isCompressible() {
+            return compressible;
+        }
+
+        /** The Cache-Control from the mime.types file, or null. --cache-control rules come first. */
+        String getCacheControl() {
+            return cacheControl;
+        }
+
+        /** "Content-Type: ...\r\n", encoded once. Callers must not change it. */
+        byte[] getContentTypeLine() {
+            return contentTypeLine;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Type)) {
+                return false;
+            }
+            Type t = (Type) o;
+            return contentType.equals(t.contentType) && compressible == t.compressible
+                    && Objects.equals(cacheControl, t.cacheControl);
+        }
+
+        @Override
+        public int hashCode() {
+            return contentType.hashCode();
+        }
     }
- }
\ No newline at end of file
+}
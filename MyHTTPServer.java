@@ -6,6 +6,9 @@
  * Use: The main class used to start the web server. Reads port number and doc root
  *      from the command line. Opens a ServerSocket to listen for incoming browser connections.
  *      When a client connects it will hand the socket off to an HTTPHandler (eventually).
+ *      On Ctrl + C or a kill (SIGTERM) it stops accepting, lets the responses in progress
+ *      finish (up to --drain-timeout) and flushes the access log before exiting. With --config
+ *      the settings file is watched and re-applied while the server runs.
  * Note: Sources have been cited and appear above respective code (e.g., "References:")
  */
 
@@ -20,10 +23,26 @@
  */
  import java.io.File;
  import java.io.IOException;
- import java.net.ServerSocket;
  import java.net.Socket;
+ import java.nio.channels.ClosedChannelException;
+ import java.nio.channels.ServerSocketChannel;
+ import java.nio.channels.SocketChannel;
+ import java.util.ArrayList;
+ import java.util.List;
+ import java.util.Set;
+ import java.util.concurrent.ArrayBlockingQueue;
+ import java.util.concurrent.BlockingQueue;
+ import java.util.concurrent.ConcurrentHashMap;
  import java.util.concurrent.ExecutorService;
  import java.util.concurrent.Executors;
+ import java.util.concurrent.LinkedBlockingQueue;
+ import java.util.concurrent.RejectedExecutionException;
+ import java.util.concurrent.Semaphore;
+ import java.util.concurrent.ThreadPoolExecutor;
+ import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.atomic.AtomicBoolean;
+ import java.util.concurrent.atomic.AtomicInteger;
+ import javax.net.ssl.SSLContext;
 
  /**
   * References:
@@ -31,9 +50,18 @@
   */
  public class MyHTTPServer {
     private final int port;
-    private final File docRoot;
     private final ExecutorService threadPool;
+    private final ServerConfig config; // as started; reloads go to context.getConfig()
+    private final Semaphore connectionPermits;
+    private final ServerContext context;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final Set<HTTPHandler> openHandlers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean stopping = new AtomicBoolean();
     private volatile boolean serverRunning = true;
+    private volatile List<ServerSocketChannel> listeners;
+    private volatile NioServer nioServer;
+    private volatile CoDel codel; // null when --queue-target=0
+    private final SSLContext tlsContext; // null without --tls-port
     private final String serverName = "MyJavaHTTPServer/1.0";
 
     /**
@@ -47,47 +75,337 @@
      * @param numThreads
      */
     public MyHTTPServer(int port, File docRoot, int numThreads) {
+        this(port, docRoot, numThreads, new ServerConfig());
+    }
+
+    /**
+     * MyHTTPServer
+     * Same as above, but also takes the extra settings (idle timeout, requests per connection, etc.)
+     * In "--mode=virtual" numThreads is ignored: every connection gets its own virtual thread,
+     * and --max-connections is what keeps the server from taking on more than it can handle.
+     * @param port
+     * @param docRoot
+     * @param numThreads
+     * @param config
+     */
+    public MyHTTPServer(int port, File docRoot, int numThreads, ServerConfig config) {
         this.port = port;
-        this.docRoot = docRoot;
-        this.threadPool = Executors.newFixedThreadPool(numThreads);
+        // Like Executors.newFixedThreadPool(), but typed so reload() can resize it, and with a
+        // bounded queue (--queue-size): when it is full, submit() throws and the client gets a 503
+        BlockingQueue<Runnable> queue = config.getQueueSize() > 0
+                ? new ArrayBlockingQueue<>(config.getQueueSize())
+                : new LinkedBlockingQueue<>();
+        this.threadPool = "virtual".equals(config.getMode())
+                ? newVirtualThreadExecutor()
+                : new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, queue);
+        this.codel = newCoDel(config);
+        this.config = config;
+        if (config.getTlsPort() > 0 && "nio".equals(config.getMode())) {
+            throw new IllegalStateException("--tls-port needs --mode=threads or --mode=virtual");
+        }
+        if (!config.getProxy().isEmpty() && "nio".equals(config.getMode())) {
+            throw new IllegalStateException("--proxy needs --mode=threads or --mode=virtual");
+        }
+        if (!config.getUploadDir().isEmpty() && "nio".equals(config.getMode())) {
+            throw new IllegalStateException("--upload-dir needs --mode=threads or --mode=virtual");
+        }
+        this.tlsContext = config.getTlsPort() > 0 ? TlsSocket.newContext(config) : null;
+        this.context = new ServerContext(docRoot, serverName, config);
+        this.connectionPermits = config.getMaxConnections() > 0 ? new Semaphore(config.getMaxConnections()) : null;
+        if (!"nio".equals(config.getMode())) {
+            Metrics metrics = context.getMetrics();
+            metrics.gauge("http_active_connections", "Connections currently open.", activeConnections::get);
+            if (threadPool instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor pool = (ThreadPoolExecutor) threadPool;
+                metrics.gauge("http_pool_queue_depth", "Accepted connections waiting for a pool thread.", () -> pool.getQueue().size());
+                metrics.gauge("http_pool_active_threads", "Pool threads busy with a connection.", pool::getActiveCount);
+            }
+        }
+    }
+
+    /**
+     * newCoDel()
+     * The queue delay controller for --queue-target/--queue-interval, or null if it is off.
+     * @param config
+     * @return
+    */
+    private static CoDel newCoDel(ServerConfig config) {
+        return config.getQueueTargetMillis() > 0
+                ? new CoDel(config.getQueueTargetMillis(), config.getQueueIntervalMillis())
+                : null;
+    }
+
+    /**
+     * newVirtualThreadExecutor()
+     * Executors.newVirtualThreadPerTaskExecutor() only exists on Java 21+, so it is looked up by
+     * name. That way the project still compiles with older JDKs and only "--mode=virtual" needs 21.
+     * Pinning check for virtual threads: nothing in HTTPHandler holds a synchronized lock
+     * while doing socket I/O (keep it that way, use a ReentrantLock if a lock is ever needed),
+     * and on 21 the plain BufferedInputStream/BufferedOutputStream use internal locks that
+     * don't pin the carrier thread.
+     * References:
+     * https://docs.oracle.com/en/java/javase/21/docs/api/java.base/java/util/concurrent/Executors.html#newVirtualThreadPerTaskExecutor()
+     * https://openjdk.org/jeps/444
+     * @return
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("--mode=virtual needs Java 21 or newer (this is Java "
+                    + System.getProperty("java.version") + ")");
+        }
     }
 
     /*
      * start()
      * Opens a door to the network for connection purposes. Waits for client to answer.
      * Should keep running until the server is exited. 
+     * With --acceptors=N, N-1 extra threads accept too, each on its own listening socket
+     * (see Listeners); this thread is the first of them. With --tls-port, the same number of
+     * acceptor threads take HTTPS connections on that port.
+     * With "--mode=nio" the work is handed to NioServer (selector event loops) instead.
      * References:
      * https://www.geeksforgeeks.org/java/file-getabsolutepath-method-in-java-with-examples/
      * https://docs.oracle.com/javase/8/docs/api/java/net/ServerSocket.html
      * https://www.geeksforgeeks.org/java/java-net-serversocket-class-in-java/
-     * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html
-     * https://www.geeksforgeeks.org/java/difference-between-executorservice-execute-and-submit-method-in-java/
      * https://www.w3schools.com/java/ref_keyword_finally.asp
      */
     public void start() throws IOException {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("Server started. Listening on port " + port + "...");
-            System.out.println("Document Root: " + docRoot.getAbsolutePath());
-            
-            while (serverRunning) {
-            Socket client = serverSocket.accept();
-            client.setSoTimeout(30_000);
-            threadPool.submit(new HTTPHandler(client, docRoot, serverName)); // won't work cuz doesn't exist yet. in theory.
-            } 
+        context.getMetrics().registerJmx();
+        if ("nio".equals(config.getMode())) {
+            nioServer = new NioServer(port, context);
+            nioServer.start();
+            return;
+        }
+        // Opened as ServerSocketChannels (in blocking mode) rather than plain ServerSockets so each
+        // accepted Socket has a channel, which HTTPHandler needs for zero-copy file sends.
+        try {
+            List<ServerSocketChannel> listeners = new ArrayList<>(Listeners.open(port, config));
+            this.listeners = listeners;
+            List<ServerSocketChannel> secure = new ArrayList<>();
+            if (tlsContext != null) {
+                secure.addAll(Listeners.open(config.getTlsPort(), config));
+                listeners.addAll(secure);
+            }
+            int plain = listeners.size() - secure.size();
+            System.out.println("Server started. Listening on port " + port + " (" + config.getAcceptors()
+                    + (config.getAcceptors() == 1 ? " acceptor" : " acceptors") + ")"
+                    + (tlsContext != null ? ", HTTPS on port " + config.getTlsPort() : "") + "...");
+            System.out.println("Document Root: " + context.getDocRoot().getAbsolutePath());
+            for (int i = 1; i < config.getAcceptors(); i++) {
+                startAcceptor(listeners.get(i % plain), null, "acceptor-" + i);
+            }
+            for (int i = 0; i < config.getAcceptors() && tlsContext != null; i++) {
+                startAcceptor(secure.get(i % secure.size()), tlsContext, "tls-acceptor-" + i);
+            }
+            acceptLoop(listeners.get(0), null);
         } finally {
             stop(); 
         }
     }
 
+    /**
+     * startAcceptor()
+     * Runs acceptLoop() for one listening socket on a daemon thread of its own.
+     * @param listener
+     * @param tls
+     * @param name
+    */
+    private void startAcceptor(ServerSocketChannel listener, SSLContext tls, String name) {
+        Thread t = new Thread(() -> {
+            try {
+                acceptLoop(listener, tls);
+            } catch (IOException e) {
+                System.err.println("Acceptor failed: " + e.getMessage());
+            }
+        }, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * acceptLoop()
+     * Accepts clients from one listening socket until the server stops, and hands each one
+     * to the thread pool. A client gets a 503 right away when --max-connections is reached or
+     * the pool's queue is full, and a 429 when it already has --max-connections-per-ip open.
+     * On an HTTPS listener (tls not null) each connection is wrapped in a TlsSocket first;
+     * the handshake happens later, on the pool thread.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html
+     * https://www.geeksforgeeks.org/java/difference-between-executorservice-execute-and-submit-method-in-java/
+     * @param listener
+     * @param tls
+     * @throws IOException
+    */
+    private void acceptLoop(ServerSocketChannel listener, SSLContext tls) throws IOException {
+        try {
+            while (serverRunning) {
+                SocketChannel channel = listener.accept();
+                Socket client;
+                try {
+                    client = tls != null
+                            ? new TlsSocket(channel.socket(), tls, context.getConfig().isHttp2(), context.getMetrics())
+                            : channel.socket();
+                } catch (IOException e) {
+                    channel.close(); // gone before it could be set up
+                    continue;
+                }
+                if (connectionPermits != null && !connectionPermits.tryAcquire()) {
+                    HTTPHandler.sendBusy(client, context); // at the limit: say so now rather than queue forever
+                    continue;
+                }
+                ClientLimiter limiter = context.getClientLimiter();
+                ClientLimiter.Client limits = limiter.openConnection(client.getInetAddress());
+                if (limits == null) {
+                    HTTPHandler.sendTooMany(client, context);
+                    releasePermit();
+                    continue;
+                }
+                ServerConfig current = context.getConfig();
+                client.setSoTimeout(current.getIdleTimeoutMillis());
+                Listeners.tune(channel, current);
+                context.getMetrics().connectionsAccepted.increment();
+                HTTPHandler handler = new HTTPHandler(client, context, limits);
+                long queuedAt = System.nanoTime();
+                try {
+                    threadPool.submit(() -> {
+                        activeConnections.incrementAndGet();
+                        openHandlers.add(handler);
+                        try {
+                            if (!shed(client, queuedAt)) {
+                                handler.run();
+                            }
+                        } finally {
+                            openHandlers.remove(handler);
+                            activeConnections.decrementAndGet();
+                            limiter.closeConnection(limits);
+                            releasePermit();
+                        }
+                    });
+                } catch (RejectedExecutionException full) {
+                    HTTPHandler.sendBusy(client, context); // queue full (or stopping): fail fast, don't pile up
+                    limiter.closeConnection(limits);
+                    releasePermit();
+                }
+            }
+        } catch (ClosedChannelException e) {
+            if (serverRunning) {
+                throw e;
+            } // closed by stop()
+        }
+    }
+
+    /**
+     * shed()
+     * Runs on the pool thread before a connection is served. Records how long it waited in the
+     * queue and asks CoDel whether the queue is standing; if so the connection gets a 503 now,
+     * rather than every connection behind it waiting even longer.
+     * @param client
+     * @param queuedAt
+     * @return true if the connection was turned away
+    */
+    private boolean shed(Socket client, long queuedAt) {
+        long now = System.nanoTime();
+        Metrics metrics = context.getMetrics();
+        metrics.queueTime.record(now - queuedAt);
+        CoDel c = codel;
+        if (c == null || !c.shouldDrop(now - queuedAt, now)) {
+            return false;
+        }
+        metrics.connectionsShed.increment();
+        HTTPHandler.sendBusy(client, context);
+        return true;
+    }
+
+    private void releasePermit() {
+        if (connectionPermits != null) {
+            connectionPermits.release();
+        }
+    }
+
     /**
      * stop()
-     * Stops the server loop for accepting new clients and shuts down all worker threads. In case of any active handlers.
+     * Shuts the server down without cutting off responses in progress. Stops accepting new
+     * clients, tells every connection to close once its current response is sent (idle
+     * kept-alive connections are closed straight away), and waits up to --drain-timeout for
+     * the worker threads to finish. Whatever is still running after that is interrupted and
+     * its socket closed. Last, the access log is flushed. Runs from the shutdown hook on
+     * Ctrl + C or SIGTERM; only the first call does anything.
      * References: 
      * https://docs.oracle.com/javase/7/docs/api/java/util/concurrent/ExecutorService.html
+     * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ExecutorService.html#awaitTermination-long-java.util.concurrent.TimeUnit-
      */
     public void stop() {
+        if (!stopping.compareAndSet(false, true)) {
+            return;
+        }
         serverRunning = false;
-        threadPool.shutdownNow();
+        try {
+            if (nioServer != null) {
+                nioServer.stop(); // drains its own event loops
+                return;
+            }
+            context.startDraining();
+            if (listeners != null) {
+                Listeners.close(listeners); // the accept() in each acceptLoop() throws and the loop ends
+            }
+            for (HTTPHandler handler : openHandlers) {
+                handler.closeIfWaiting();
+            }
+            threadPool.shutdown();
+            boolean drained = false;
+            try {
+                drained = threadPool.awaitTermination(context.getConfig().getDrainTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!drained) {
+                System.err.println("Drain timeout: closing " + activeConnections.get() + " connections still open");
+                threadPool.shutdownNow();
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * reload()
+     * Applies a config that was read again (see ConfigWatcher): the document root, the cache
+     * limits, the idle timeout and per-request settings change for the next request, and the
+     * pool is resized to the new thread count. Busy threads finish their connection before a
+     * smaller pool lets them go. Settings that need a restart are reported and left as they were.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ThreadPoolExecutor.html#setCorePoolSize-int-
+     * @param next
+    */
+    void reload(ServerConfig next) {
+        File nextRoot = new File(next.getDocRoot());
+        if (!nextRoot.isDirectory()) {
+            System.err.println("Reload skipped, document root must be an existing directory: " + next.getDocRoot());
+            return;
+        }
+        List<String> restart = context.getConfig().needsRestart(next);
+        if (!restart.isEmpty()) {
+            System.out.println("Restart the server to change: " + String.join(", ", restart));
+        }
+        ServerConfig old = context.getConfig();
+        if (next.getQueueTargetMillis() != old.getQueueTargetMillis() || next.getQueueIntervalMillis() != old.getQueueIntervalMillis()) {
+            codel = newCoDel(next);
+        }
+        context.reload(next, nextRoot);
+        if (threadPool instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) threadPool;
+            int threads = next.getThreads();
+            if (threads > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(threads); // core can never be above max, so grow max first
+                pool.setCorePoolSize(threads);
+            } else if (threads < pool.getMaximumPoolSize()) {
+                pool.setCorePoolSize(threads);
+                pool.setMaximumPoolSize(threads);
+            }
+        }
+        System.out.println("Configuration reloaded. Document Root: " + nextRoot.getAbsolutePath());
     }
 
     /**
@@ -95,8 +413,68 @@
     * Print statements on how to run the program from the command line. Shows the format and gives an example.
     */
     private static void usage() {
-        System.out.println("Usage: java MyHTTPServer <port> <document_root> [threads]");
-        System.out.println("Example: java MyHTTPServer 8080 ./www 50");
+        System.out.println("Usage: java MyHTTPServer <port> <document_root> [threads] [--option=value ...]");
+        System.out.println("       java MyHTTPServer <port> --config=<file> [--option=value ...]");
+        System.out.println("Options:");
+        System.out.println("  --config=<file>       read settings from a file of name=value lines (any option below,");
+        System.out.println("                        plus docroot= and threads=); re-read when it changes");
+        System.out.println("  --drain-timeout=<ms>  on shutdown, how long responses in progress get to finish (default 10000)");
+        System.out.println("  --idle-timeout=<ms>   close kept-alive connections idle this long (default 30000)");
+        System.out.println("  --max-requests=<n>    requests served per connection before closing, 0 = no limit (default 100)");
+        System.out.println("  --mode=threads|virtual|nio  thread pool, virtual thread per connection (Java 21+),");
+        System.out.println("                        or selector event loops (default threads)");
+        System.out.println("  --max-connections=<n> open connections allowed before new ones get a 503, 0 = no limit (default 10000)");
+        System.out.println("  --zero-copy-threshold=<bytes>  files this big or bigger are sent with transferTo (default 32768)");
+        System.out.println("  --cache-bytes=<bytes>  memory for caching small files, 0 = off (default 33554432)");
+        System.out.println("  --cache-max-file=<bytes>  biggest file the cache will hold (default 262144)");
+        System.out.println("  --cache-control=<rules>   Cache-Control per path or MIME prefix, e.g. \"/images/=max-age=86400;text/html=no-cache\"");
+        System.out.println("  --mime-types=<file>       mime.types file to add to the built-in MIME types (default none)");
+        System.out.println("  --path-cache-entries=<n>  URL paths remembered with their file details, 0 = off (default 10000)");
+        System.out.println("  --preload=true|false  fill the caches from the document root before accepting connections (default false)");
+        System.out.println("  --mmap-bytes=<bytes>  while preloading, memory-map files too big for the cache up to this total (default 0)");
+        System.out.println("  --http2=true|false    accept cleartext HTTP/2 (prior knowledge or Upgrade: h2c) in threads/virtual mode (default true)");
+        System.out.println("  --max-request-line=<bytes>  longest request line before a 414 (default 8192)");
+        System.out.println("  --max-header-bytes=<bytes>  most header bytes before a 431 (default 65536)");
+        System.out.println("  --metrics-path=<path>  where Prometheus metrics are served, empty = off (default /metrics)");
+        System.out.println("  --access-log=<file>   append an access log line per request, empty = off (default off)");
+        System.out.println("  --access-log-format=common|combined  combined adds Referer and User-Agent (default combined)");
+        System.out.println("  --access-log-buffer=<n>  entries waiting to be written before the buffer is full (default 16384)");
+        System.out.println("  --access-log-when-full=drop|block  drop and count entries, or make the connection wait (default drop)");
+        System.out.println("  --access-log-rotate-bytes=<bytes>  roll the log over to <file>.1 at this size, 0 = never (default 0)");
+        System.out.println("  --event-loops=<n>     selector threads for --mode=nio (default: number of CPUs)");
+        System.out.println("  --acceptors=<n>       threads accepting connections, each on its own SO_REUSEPORT socket (default 1)");
+        System.out.println("  --backlog=<n>         connections the kernel queues for each listening socket (default 1024)");
+        System.out.println("  --tcp-nodelay=true|false  turn off Nagle's algorithm on connections (default true)");
+        System.out.println("  --send-buffer=<bytes>  SO_SNDBUF for connections, 0 = OS default (default 0)");
+        System.out.println("  --receive-buffer=<bytes>  SO_RCVBUF for connections, 0 = OS default (default 0)");
+        System.out.println("  --so-keepalive=true|false  TCP keepalive probes on connections (default false)");
+        System.out.println("  --queue-size=<n>      connections that can wait for a pool thread before new ones get a 503, 0 = no limit (default 1000)");
+        System.out.println("  --queue-target=<ms>   queue wait CoDel accepts before shedding connections with a 503, 0 = off (default 100)");
+        System.out.println("  --queue-interval=<ms> how long waits must stay above the target before shedding starts (default 1000)");
+        System.out.println("  --rate-limit=<n>      requests per second allowed per client IP, past that 429, 0 = no limit (default 0)");
+        System.out.println("  --rate-burst=<n>      requests a client IP can send at once above the rate (default 20)");
+        System.out.println("  --max-connections-per-ip=<n>  open connections allowed per client IP, past that 429, 0 = no limit (default 0)");
+        System.out.println("  --tls-port=<port>     also serve HTTPS on this port (threads/virtual mode), 0 = off (default 0)");
+        System.out.println("  --keystore=<file>     PKCS12 (or .jks) file with the certificate and key for --tls-port");
+        System.out.println("  --keystore-password=<pw>  password of the keystore (default changeit)");
+        System.out.println("  --tls-session-cache=<n>  TLS sessions kept for resumption, 0 = no limit (default 20480)");
+        System.out.println("  --tls-session-timeout=<s>  how long a TLS session can be resumed (default 86400)");
+        System.out.println("  --tls-tickets=true|false  session tickets, so clients resume without server state (default true)");
+        System.out.println("  --proxy=<rules>       send path prefixes to backends (threads/virtual mode), e.g. \"/api/=127.0.0.1:9000;/app/=h1:80,h2:80\"");
+        System.out.println("  --proxy-connect-timeout=<ms>  time to connect to a backend (default 1000)");
+        System.out.println("  --proxy-read-timeout=<ms>  time a backend may go quiet before a 504 (default 30000)");
+        System.out.println("  --proxy-retries=<n>   extra tries when a backend can't be reached, idempotent methods only once sent (default 1)");
+        System.out.println("  --proxy-pool-size=<n> idle kept-alive connections per backend, 0 = none (default 32)");
+        System.out.println("  --proxy-idle-timeout=<ms>  how long a pooled backend connection may stay idle (default 30000)");
+        System.out.println("  --proxy-health-interval=<ms>  time between backend health checks, 0 = off (default 5000)");
+        System.out.println("  --proxy-health-path=<path>  what the health check asks for (default /)");
+        System.out.println("  --autoindex=true|false  list the files of a directory without index.html instead of a 404 (default false)");
+        System.out.println("  --autoindex-page-size=<n>  entries per page of a directory listing, 0 = all (default 1000)");
+        System.out.println("  --autoindex-cache-bytes=<bytes>  memory for rendered listings, 0 = none (default 8388608)");
+        System.out.println("  --upload-dir=<path>   URL path under which PUT/POST store files (threads/virtual mode), empty = off (default off)");
+        System.out.println("  --max-body-bytes=<bytes>  biggest request body accepted, 0 = no limit (default 104857600)");
+        System.out.println("  --cors-origins=<list> origins allowed to call the server from other sites, comma separated or *, empty = off");
+        System.out.println("Example: java MyHTTPServer 8080 ./www 50 --idle-timeout=5000");
     } // mostly for me, so I can remember how I set up my code HAHA
 
     /**
@@ -105,8 +483,11 @@
      * Checks arguments to make sure the port and docRoot are given; calls usage() if not.
      * Parses the port number to make sure it's valid (between 1 and 65535 = 2^16).
      * Checks if docRoot exists. 
-     * Parses thread count, defaulting to 50 if not explicity listed.
+     * Pulls out any "--name=value" options (and the --config file) into a ServerConfig first.
+     * The doc root and thread count (50 if not explicity listed) come from the config, which
+     * takes them from the arguments unless the config file names others.
      * Creates the server, building an instance of an MyHTTPSerber object.
+     * Adds the shutdown hook that drains the server, and starts watching the config file.
      * Starts the server by calling the start() method. 
      * References:
      * https://www.geeksforgeeks.org/java/system-exit-in-java/
@@ -123,7 +504,20 @@
      * @param args
     */
     public static void main(String[] args) {
-        if (args.length < 2) {
+        String[] originalArgs = args.clone(); // for re-reading the config later
+        List<String> positional = new ArrayList<>();
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args, positional);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(1);
+            return;
+        }
+        args = positional.toArray(new String[0]);
+
+        if (args.length < 1 || config.getDocRoot().isEmpty()) {
             usage();
             System.exit(1);
         }
@@ -141,22 +535,30 @@
             return;
         }
 
-        File docRoot = new File(args[1]);
+        File docRoot = new File(config.getDocRoot());
         if (!docRoot.exists() || !docRoot.isDirectory()) {
-            System.err.println("Document root must be an existing directory: " + args[1]);
+            System.err.println("Document root must be an existing directory: " + config.getDocRoot());
         }
 
-        int threads = 50;
-        if (args.length >= 3) {
+        MyHTTPServer server;
+        try {
+            server = new MyHTTPServer(port, docRoot, config.getThreads(), config);
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (config.isPreload()) {
+            System.out.println(new Preloader(server.context).run());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "drain"));
+        if (!config.getConfigFile().isEmpty()) {
             try {
-                threads = Integer.parseInt(args[2]);
-                if (threads <= 0) {
-                    threads = 50;
-                }
-            } catch (NumberFormatException ignored) {}
+                new ConfigWatcher(new File(config.getConfigFile()), originalArgs, server).start();
+            } catch (IOException e) {
+                System.err.println("Can't watch " + config.getConfigFile() + " for changes: " + e.getMessage());
+            }
         }
-
-        MyHTTPServer server = new MyHTTPServer(port, docRoot, threads);
         try {
             server.start();
         } catch (IOException e) {
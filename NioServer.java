@@ -0,0 +1,534 @@
+/**
+ * Name: NioServer
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: The second way to run the server ("--mode=nio"). Instead of tying up one pool thread per
+ *      connection, a handful of event loop threads each watch many connections with a Selector.
+ *      A loop only does work when a socket has bytes to read or room to write, so idle or slow
+ *      clients cost nothing but a little memory. Requests are collected from ByteBuffers as they
+ *      trickle in and are answered with the same HTTPHandler.route() the threaded mode uses.
+ *      With --acceptors=N, N threads accept (each on its own SO_REUSEPORT socket, see Listeners)
+ *      and share the round-robin over the loops. stop() drains: the loops keep running until every connection has finished its response
+ *      (or --drain-timeout runs out), closing each one as soon as it is between requests.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/Selector.html
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/ServerSocketChannel.html
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/SocketChannel.html
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/ByteBuffer.html
+ * https://www.baeldung.com/java-nio-selector
+ */
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NioServer {
+    private static final int READ_BUFFER_BYTES = 8 * 1024;
+
+    private final int port;
+    private final ServerContext context;
+    private final ServerConfig config;
+    private final EventLoop[] loops;
+    private final Thread[] loopThreads;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicBoolean stopping = new AtomicBoolean();
+    private volatile boolean serverRunning = true;
+    private volatile long drainDeadline;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile List<ServerSocketChannel> listeners;
+
+    /**
+     * NioServer()
+     * Stores the settings and opens one Selector per event loop. The loops don't start
+     * running until start() is called.
+     * @param port
+     * @param context
+     * @throws IOException
+    */
+    public NioServer(int port, ServerContext context) throws IOException {
+        this.port = port;
+        this.context = context;
+        this.config = context.getConfig();
+        this.loops = new EventLoop[config.getEventLoops()];
+        this.loopThreads = new Thread[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            loopThreads[i] = new Thread(loops[i], "nio-loop-" + i);
+        }
+        context.getMetrics().gauge("http_active_connections", "Connections currently open.", openConnections::get);
+    }
+
+    /**
+     * start()
+     * Starts the event loop threads, then accepts connections and deals them out to the loops
+     * round-robin, on this thread and on any extra acceptor threads. Past --max-connections a
+     * new client gets a 503 instead. Runs until stop() is called.
+     * @throws IOException
+    */
+    public void start() throws IOException {
+        try {
+            List<ServerSocketChannel> listeners = Listeners.open(port, config);
+            this.listeners = listeners;
+            System.out.println("Server started (nio, " + loops.length + " event loops, " + config.getAcceptors()
+                    + (config.getAcceptors() == 1 ? " acceptor" : " acceptors") + "). Listening on port " + port + "...");
+            System.out.println("Document Root: " + context.getDocRoot().getAbsolutePath());
+
+            for (Thread t : loopThreads) {
+                t.start();
+            }
+            for (int i = 1; i < config.getAcceptors(); i++) {
+                ServerSocketChannel listener = listeners.get(i % listeners.size());
+                Thread t = new Thread(() -> {
+                    try {
+                        acceptLoop(listener);
+                    } catch (IOException e) {
+                        System.err.println("Acceptor failed: " + e.getMessage());
+                    }
+                }, "acceptor-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+            acceptLoop(listeners.get(0));
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * acceptLoop()
+     * Accepts from one listening socket (in blocking mode) until it is closed.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/ServerSocketChannel.html#accept--
+     * @param listener
+     * @throws IOException
+    */
+    private void acceptLoop(ServerSocketChannel listener) throws IOException {
+        try {
+            while (serverRunning) {
+                SocketChannel client = listener.accept();
+                int limit = config.getMaxConnections();
+                if (limit > 0 && openConnections.get() >= limit) {
+                    HTTPHandler.sendBusy(client.socket(), context); // still in blocking mode here
+                    continue;
+                }
+                openConnections.incrementAndGet();
+                context.getMetrics().connectionsAccepted.increment();
+                loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].add(client);
+            }
+        } catch (ClosedChannelException e) {
+            if (serverRunning) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * stop()
+     * Stops accepting, then waits for the event loops to drain: each loop closes connections
+     * as they finish their current response and exits when it has none left, or closes whatever
+     * is still open once --drain-timeout has passed. Only the first call does anything.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/Selector.html#wakeup--
+    */
+    public void stop() {
+        if (!stopping.compareAndSet(false, true)) {
+            return;
+        }
+        drainDeadline = System.currentTimeMillis() + context.getConfig().getDrainTimeoutMillis();
+        context.startDraining();
+        serverRunning = false;
+        if (listeners != null) {
+            Listeners.close(listeners);
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        for (Thread t : loopThreads) {
+            try {
+                if (t.isAlive()) {
+                    t.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * EventLoop
+     * One selector thread. New connections are handed over through a queue (only the loop's
+     * own thread may register channels with its selector without blocking) and the loop wakes
+     * up at least once a second to close connections that went idle. While the server is
+     * stopping it keeps going until its connections are gone or the drain deadline passes.
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * add()
+         * Called from the accept thread. Queues the channel and wakes the selector up so the
+         * loop registers it right away.
+         * @param channel
+        */
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (serverRunning || !selector.keys().isEmpty() && System.currentTimeMillis() < drainDeadline) {
+                    selector.select(serverRunning ? 1000 : 100);
+                    registerPending();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection c = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                c.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                c.onWritable();
+                            }
+                        } catch (IOException e) {
+                            context.getMetrics().ioErrors.increment();
+                            c.close();
+                        } catch (RuntimeException e) {
+                            c.close(); // one bad connection must never take the loop down
+                        }
+                    }
+                    closeIdle();
+                    if (!serverRunning) {
+                        closeFinished();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Event loop failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                SocketChannel channel;
+                while ((channel = pending.poll()) != null) {
+                    openConnections.decrementAndGet();
+                    try { channel.close(); } catch (IOException ignored) {}
+                }
+                try { selector.close(); } catch (IOException ignored) {}
+            }
+        }
+
+        /**
+         * registerPending()
+         * Switches newly accepted channels to non-blocking mode and starts watching them for reads.
+         * A client that already has --max-connections-per-ip open gets a 429 instead (written
+         * while the channel is still blocking; it is a few bytes into an empty socket buffer).
+         * @throws IOException
+        */
+        private void registerPending() throws IOException {
+            SocketChannel channel;
+            ClientLimiter limiter = context.getClientLimiter();
+            while ((channel = pending.poll()) != null) {
+                ClientLimiter.Client limits = limiter.openConnection(channel.socket().getInetAddress());
+                if (limits == null) {
+                    openConnections.decrementAndGet();
+                    HTTPHandler.sendTooMany(channel.socket(), context);
+                    continue;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    Listeners.tune(channel, context.getConfig());
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(channel, key, limits));
+                } catch (IOException e) {
+                    openConnections.decrementAndGet();
+                    limiter.closeConnection(limits);
+                    try { channel.close(); } catch (IOException ignored) {}
+                }
+            }
+        }
+
+        /**
+         * closeFinished()
+         * While draining: closes every connection that isn't in the middle of a response or
+         * a request, since it would only be waiting for a request we won't answer.
+        */
+        private void closeFinished() {
+            for (SelectionKey key : selector.keys()) {
+                Connection c = (Connection) key.attachment();
+                if (c != null && !c.writing() && c.parser.isBetweenRequests()) {
+                    c.close();
+                }
+            }
+        }
+
+        /**
+         * closeIdle()
+         * Once a second, closes connections that have had no traffic for the idle timeout
+         * (the same --idle-timeout the threaded mode uses as its socket timeout).
+        */
+        private void closeIdle() {
+            long now = System.currentTimeMillis();
+            int timeout = context.getConfig().getIdleTimeoutMillis();
+            if (timeout <= 0 || now - lastIdleCheck < 1000) {
+                return;
+            }
+            lastIdleCheck = now;
+            for (SelectionKey key : selector.keys()) {
+                Connection c = (Connection) key.attachment();
+                if (c != null && now - c.lastActive > timeout) {
+                    c.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection
+     * Everything one client connection needs between events: the bytes read so far, the
+     * response still being written, and the keep-alive bookkeeping. Only its event loop's
+     * thread ever touches it, so nothing here needs locking.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ClientLimiter.Client limits;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private final RequestParser parser = new RequestParser(config);
+        private ByteBuffer headerBuffer = ByteBuffer.allocate(512);
+        private final ArrayDeque<Object> pending = new ArrayDeque<>(); // ByteBuffers and file regions, in send order
+        private FileChannel fileOut;
+        private boolean keepAlive = true;
+        private int served;
+        private long lastActive = System.currentTimeMillis();
+        private boolean closed;
+        private long parseNanos;   // time spent parsing the request that is still arriving
+        private long sendStarted;  // nanoTime when the current response was handed to startResponse()
+
+        Connection(SocketChannel channel, SelectionKey key, ClientLimiter.Client limits) {
+            this.channel = channel;
+            this.key = key;
+            this.limits = limits;
+        }
+
+        /**
+         * onReadable()
+         * Reads whatever bytes arrived and answers any requests that are now complete.
+         * @throws IOException
+        */
+        void onReadable() throws IOException {
+            if (!in.hasRemaining()) {
+                processInput(); // full of pipelined requests; answer some before reading more
+                return;
+            }
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            processInput();
+        }
+
+        /**
+         * onWritable()
+         * The socket has room again: keep writing the current response, and once it is done
+         * move on to any pipelined requests already sitting in the input buffer.
+         * @throws IOException
+        */
+        void onWritable() throws IOException {
+            writeOutput();
+            if (!writing() && channel.isOpen()) {
+                processInput();
+            }
+        }
+
+        /**
+         * processInput()
+         * Answers complete requests in the input buffer one at a time, in order. Stops when a
+         * response can't be written all at once (reading resumes after it drains), when the
+         * next request is only partly here, or when the connection is going to close.
+         * @throws IOException
+        */
+        private void processInput() throws IOException {
+            Metrics metrics = context.getMetrics();
+            while (!writing() && keepAlive && channel.isOpen()) {
+                long t0 = System.nanoTime();
+                in.flip();
+                int result = parser.parse(in); // the parser keeps partial heads itself
+                in.compact();
+                long t1 = System.nanoTime();
+                parseNanos += t1 - t0;
+                if (result == RequestParser.NEED_MORE) {
+                    return;
+                }
+                metrics.parseTime.record(parseNanos);
+                parseNanos = 0;
+                served++;
+                HTTPRequest request = result == RequestParser.DONE ? parser.toRequest() : null;
+                HTTPResponse response = request != null ? HTTPHandler.route(request, context, limits) : RequestParser.errorResponse(result);
+                sendStarted = System.nanoTime();
+                metrics.routeTime.record(sendStarted - t1);
+                keepAlive = HTTPHandler.keepConnectionOpen(request, response, served, context);
+                AccessLog accessLog = context.getAccessLog();
+                if (accessLog != null) {
+                    accessLog.log(channel.socket().getInetAddress(), request, response); // before the next parse reuses the request
+                }
+                startResponse(response);
+            }
+        }
+
+        /**
+         * startResponse()
+         * Lines up the header bytes and the body pieces in send order and starts writing. A body is
+         * an in-memory array, a cached buffer, or regions of a file (with multipart part headers
+         * between them) that are sent with transferTo so the file data never passes through our
+         * own buffers.
+         * References:
+         * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#transferTo-long-long-java.nio.channels.WritableByteChannel-
+         * @param response
+         * @throws IOException
+        */
+        private void startResponse(HTTPResponse response) throws IOException {
+            headerBuffer = context.getHeaderWriter().encode(response, keepAlive, headerBuffer);
+            pending.add(headerBuffer); // safe to reuse: a new response only starts once the last one is sent
+            context.getMetrics().recordResponse(response, headerBuffer.limit());
+            if (response.isBodyOmitted()) {
+                // an answer to HEAD: the headers are all there is
+            } else if (response.getBodyBuffer() != null) {
+                pending.add(response.getBodyBuffer()); // cached direct buffer, written without a copy
+            } else if (response.getBody() != null) {
+                pending.add(ByteBuffer.wrap(response.getBody()));
+            } else if (response.getFile() != null) {
+                try {
+                    fileOut = new RandomAccessFile(response.getFile(), "r").getChannel();
+                } catch (IOException e) {
+                    close(); // the file vanished after routing; nothing sensible left to send
+                    return;
+                }
+                long[] regions = response.getRegions();
+                byte[][] partHeaders = response.getPartHeaders();
+                for (int i = 0; i < regions.length / 2; i++) {
+                    if (partHeaders != null) {
+                        pending.add(ByteBuffer.wrap(partHeaders[i]));
+                    }
+                    pending.add(new long[] { regions[2 * i], regions[2 * i + 1] });
+                }
+                if (partHeaders != null) {
+                    pending.add(ByteBuffer.wrap(partHeaders[partHeaders.length - 1]));
+                }
+            }
+            writeOutput();
+        }
+
+        /**
+         * writeOutput()
+         * Writes as much of the pending response as the socket will take without blocking.
+         * Runs of buffers go out in one gathering write; file regions go out with positional
+         * transferTo. If the socket fills up, switches the key to OP_WRITE and returns; the loop
+         * calls back through onWritable() when there is room. When the response is done it either
+         * closes (Connection: close) or goes back to reading.
+         * References:
+         * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/GatheringByteChannel.html
+         * @throws IOException
+        */
+        private void writeOutput() throws IOException {
+            while (!pending.isEmpty()) {
+                if (pending.peek() instanceof ByteBuffer) {
+                    List<ByteBuffer> run = new ArrayList<>();
+                    for (Object piece : pending) {
+                        if (!(piece instanceof ByteBuffer)) {
+                            break;
+                        }
+                        run.add((ByteBuffer) piece);
+                    }
+                    channel.write(run.toArray(new ByteBuffer[0]));
+                    for (ByteBuffer buf : run) {
+                        if (buf.hasRemaining()) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        pending.poll();
+                    }
+                } else {
+                    long[] region = (long[]) pending.peek();
+                    while (region[1] > 0) {
+                        if (region[0] >= fileOut.size()) {
+                            close(); // file shrank under us, the promised length can't be met
+                            return;
+                        }
+                        long n = fileOut.transferTo(region[0], region[1], channel);
+                        if (n == 0) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        region[0] += n;
+                        region[1] -= n;
+                    }
+                    pending.poll();
+                }
+            }
+            if (fileOut != null) {
+                fileOut.close();
+                fileOut = null;
+            }
+            context.getMetrics().sendTime.record(System.nanoTime() - sendStarted);
+            lastActive = System.currentTimeMillis();
+            if (!keepAlive) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private boolean writing() {
+            return !pending.isEmpty();
+        }
+
+        /**
+         * close()
+         * Closes the socket and any file still open for this connection.
+        */
+        void close() {
+            if (!closed) {
+                closed = true;
+                openConnections.decrementAndGet();
+                context.getClientLimiter().closeConnection(limits);
+            }
+            key.cancel();
+            try { channel.close(); } catch (IOException ignored) {}
+            if (fileOut != null) {
+                try { fileOut.close(); } catch (IOException ignored) {}
+                fileOut = null;
+            }
+            pending.clear();
+        }
+    }
+}
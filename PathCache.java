@@ -0,0 +1,520 @@
+/**
+ * Name: PathCache
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Remembers what each URL path turned out to be on disk, so a repeated request costs one
+ *      hash lookup instead of a pile of file system calls (two getCanonicalPath() calls, several
+ *      exists()/isDirectory()/isFile() checks, the index.html lookup, a stat for the ETag and
+ *      stats for .gz/.br copies). Each decoded path maps to a Resolved record: the file to send
+ *      (index.html for a directory), its MIME type, size and modified time, its ready-made ETag
+ *      and Last-Modified, and any fresh pre-compressed copies. Paths that don't exist are
+ *      remembered too, so repeated 404s are just as cheap.
+ *      The records stay right because a WatchService (inotify on Linux) watches every directory
+ *      a record was built from. When something in one of them is created, deleted or modified,
+ *      the records that depend on that name are dropped (and the file's FileCache entries with
+ *      them), and the next request looks the path up again. On systems where the JDK only has
+ *      a polling WatchService (macOS), changes can take a few seconds to show up.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/file/WatchService.html
+ * https://docs.oracle.com/javase/tutorial/essential/io/notification.html
+ * https://man7.org/linux/man-pages/man7/inotify.7.html
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Path.html#startsWith-java.nio.file.Path-
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PathCache {
+    private final File root;
+    private final String canonicalRoot;
+    private final Path rootPath;
+    private final FileCache fileCache;
+    private final MimeTypes mimeTypes;
+    private final int maxEntries;
+    private final Map<String, Resolved> entries = new ConcurrentHashMap<>();
+    private final WatchService watcher; // null: no watching, so nothing is cached
+    // one WatchKey per directory, but a directory reached by two paths (a symlink) shares its key,
+    // so every path it was registered under is kept to match events against
+    private final Map<WatchKey, Set<Path>> watchedAs = new ConcurrentHashMap<>();
+    private final Set<Path> watched = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong(); // bumped before every invalidation
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * PathCache()
+     * Works out the document root's canonical path once and starts the watcher thread.
+     * With maxEntries 0, or if the file system can't be watched, every lookup goes to disk.
+     * @param root
+     * @param maxEntries
+     * @param fileCache
+     * @param mimeTypes
+    */
+    public PathCache(File root, int maxEntries, FileCache fileCache, MimeTypes mimeTypes) {
+        this.root = root;
+        this.fileCache = fileCache;
+        this.mimeTypes = mimeTypes;
+        this.maxEntries = maxEntries;
+        String canonical;
+        try {
+            canonical = root.getCanonicalPath();
+        } catch (IOException e) {
+            canonical = root.getAbsolutePath();
+        }
+        this.canonicalRoot = canonical;
+        this.rootPath = new File(canonical).toPath();
+        WatchService ws = null;
+        if (maxEntries > 0) {
+            try {
+                ws = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                System.err.println("Path cache off, can't watch the document root: " + e.getMessage());
+            }
+        }
+        this.watcher = ws;
+        if (watcher != null) {
+            Thread t = new Thread(this::watchLoop, "path-watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * resolve()
+     * The record for a decoded URL path, or null for "404 Not Found" (missing, outside the
+     * document root, or a directory without index.html).
+     * A record is only kept if nothing changed on disk between looking it up and storing it:
+     * the watcher bumps generation before it drops anything, so if generation moved the new
+     * record is thrown away instead of possibly hiding that change.
+     * @param path
+     * @return
+    */
+    Resolved resolve(String path) {
+        if (watcher == null || closed) {
+            return lookup(path).found();
+        }
+        Resolved r = entries.get(path);
+        if (r != null) {
+            hits.increment();
+            return r.found();
+        }
+        misses.increment();
+        long before = generation.get();
+        r = lookup(path);
+        if (r.watchable) {
+            if (entries.size() >= maxEntries) {
+                entries.clear(); // full (e.g. a scan of random 404s): start over rather than track age
+            }
+            entries.put(path, r);
+            if (generation.get() != before) {
+                entries.remove(path, r);
+            }
+        }
+        return r.found();
+    }
+
+    /**
+     * directory()
+     * The directory a decoded URL path names, if it is one inside the document root, else
+     * null. For --autoindex, once resolve() found no index.html in it; not cached, since a
+     * listing reads the directory anyway.
+     * @param path
+     * @return
+    */
+    File directory(String path) {
+        File dir = canonical(path);
+        return dir != null && dir.isDirectory() ? dir : null;
+    }
+
+    /**
+     * canonical()
+     * The canonical file a decoded URL path names, whether it exists or not, or null if it is
+     * outside the document root. Not cached.
+     * @param path
+     * @return
+    */
+    File canonical(String path) {
+        try {
+            return HTTPHandler.resolvePath(root, canonicalRoot, path);
+        } catch (IOException | RuntimeException e) { // RuntimeException: InvalidPathException, e.g. a NUL byte
+            return null;
+        }
+    }
+
+    /**
+     * changed()
+     * Drops the records that depend on file right away, for a change this server made itself
+     * (an upload), so the next request can't get the old record before the watcher catches up.
+     * @param file
+    */
+    void changed(File file) {
+        generation.incrementAndGet();
+        invalidate(file.toPath());
+    }
+
+    /**
+     * close()
+     * Stops the watcher thread (used when a reload moves the document root). Lookups still
+     * work afterwards, but nothing new is remembered.
+    */
+    void close() {
+        closed = true;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignored) {}
+        }
+        entries.clear();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * isFull()
+     * True when one more new path would clear the cache (or when it is off).
+     * @return
+    */
+    boolean isFull() {
+        return watcher == null || entries.size() >= maxEntries;
+    }
+
+    /**
+     * lookup()
+     * Does what route() used to do on every request: canonicalizes the path, checks it stays
+     * inside the document root, falls back to index.html for a directory, and reads the
+     * attributes. The directories along the way are watched first, so a change that happens
+     * while this runs is still seen.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Files.html#readAttributes-java.nio.file.Path-java.lang.Class-java.nio.file.LinkOption...-
+     * @param path
+     * @return
+    */
+    private Resolved lookup(String path) {
+        String relative = path.startsWith("/") ? path.substring(1) : path;
+        Path lexical;
+        try {
+            lexical = rootPath.resolve(relative).normalize();
+        } catch (RuntimeException e) { // InvalidPathException, e.g. a NUL byte
+            return new Resolved(false);
+        }
+        boolean watchable = watchAlong(lexical);
+        File file;
+        try {
+            file = HTTPHandler.resolvePath(root, canonicalRoot, path);
+        } catch (IOException e) {
+            file = null;
+        }
+        if (file == null) {
+            return new Resolved(watchable, lexical);
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if (attrs.isDirectory()) {
+                watchable &= watch(file.toPath());
+                file = new File(file, "index.html");
+                attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            } else {
+                watchable &= watch(file.toPath().getParent());
+            }
+            if (!attrs.isRegularFile()) {
+                return new Resolved(watchable, lexical, file.toPath());
+            }
+            return new Resolved(lexical, file, attrs, mimeTypes.lookup(file.getName()), watchable);
+        } catch (IOException e) {
+            // NoSuchFileException and friends; also a directory whose index.html is missing,
+            // which has to come back to life when index.html is created
+            return new Resolved(watchable, lexical, file.toPath());
+        }
+    }
+
+    /**
+     * watchAlong()
+     * Watches the document root and each existing directory on the way down to path, so
+     * creating, deleting or renaming any of them is noticed. Returns false if one couldn't
+     * be watched (then the record isn't cached).
+     * @param path
+     * @return
+    */
+    private boolean watchAlong(Path path) {
+        if (watcher == null || !path.startsWith(rootPath)) {
+            return watcher != null; // outside the root is always a 404; nothing there to watch
+        }
+        Path dir = rootPath;
+        if (!watch(dir)) {
+            return false;
+        }
+        Path rest = rootPath.relativize(path);
+        for (int i = 0; i < rest.getNameCount() - 1; i++) {
+            dir = dir.resolve(rest.getName(i));
+            if (!Files.isDirectory(dir)) {
+                break; // the rest doesn't exist; creating it shows up as an event in dir's parent
+            }
+            if (!watch(dir)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * watch()
+     * Registers one directory with the WatchService, once.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Path.html#register-java.nio.file.WatchService-java.nio.file.WatchEvent.Kind...-
+     * @param dir
+     * @return
+    */
+    private boolean watch(Path dir) {
+        if (watcher == null || dir == null) {
+            return false;
+        }
+        if (watched.contains(dir)) {
+            return true;
+        }
+        try {
+            WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedAs.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(dir);
+            watched.add(dir);
+            return true;
+        } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+            return false; // e.g. out of inotify watches
+        }
+    }
+
+    /**
+     * watchLoop()
+     * The watcher thread: waits for events and drops the records they affect. If the
+     * system lost events (OVERFLOW) everything is dropped. A directory that can't be watched
+     * any more (deleted) is forgotten, along with the records under it.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/StandardWatchEventKinds.html#OVERFLOW
+    */
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Set<Path> dirs = watchedAs.getOrDefault(key, Set.of());
+            generation.incrementAndGet();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    entries.clear();
+                    continue;
+                }
+                for (Path dir : dirs) {
+                    invalidate(dir.resolve((Path) event.context()));
+                }
+            }
+            if (!key.reset()) {
+                watchedAs.remove(key);
+                for (Path dir : dirs) {
+                    watched.remove(dir);
+                    invalidate(dir);
+                }
+            }
+        }
+    }
+
+    /**
+     * invalidate()
+     * Drops every record that depends on changed or anything under it.
+     * @param changed
+    */
+    private void invalidate(Path changed) {
+        List<String> stale = new ArrayList<>();
+        for (Map.Entry<String, Resolved> e : entries.entrySet()) {
+            if (e.getValue().dependsOn(changed)) {
+                stale.add(e.getKey());
+            }
+        }
+        for (String key : stale) {
+            Resolved old = entries.remove(key);
+            if (old != null && old.file != null) {
+                fileCache.invalidate(old.file);
+            }
+        }
+    }
+
+    /**
+     * Resolved
+     * What one URL path is on disk. Immutable, so request threads share it freely.
+     * For a 404 only the paths it was looked up under are kept.
+     */
+    static final class Resolved {
+        private final File file;
+        private final MimeTypes.Type type;
+        private final long size;
+        private final ConditionalGet plainValidators;
+        private final File[] siblings = new File[ContentEncoding.ENCODINGS.length];
+        private final ConditionalGet[] encodedValidators = new ConditionalGet[ContentEncoding.ENCODINGS.length];
+        private final ConditionalGet[] streamedValidators = new ConditionalGet[ContentEncoding.ENCODINGS.length];
+        private final Path[] dependsOn;
+        private final boolean watchable;
+
+        /**
+         * Resolved()
+         * A 404, which stays one until something changes at one of the paths it looked at.
+         * @param watchable
+         * @param dependsOn
+        */
+        private Resolved(boolean watchable, Path... dependsOn) {
+            this.file = null;
+            this.type = null;
+            this.size = 0;
+            this.plainValidators = null;
+            this.dependsOn = dependsOn;
+            this.watchable = watchable && dependsOn.length > 0;
+        }
+
+        /**
+         * Resolved()
+         * A file to send, with everything the response needs worked out now.
+         * @param lexical
+         * @param file
+         * @param attrs
+         * @param type
+         * @param watchable
+        */
+        private Resolved(Path lexical, File file, BasicFileAttributes attrs, MimeTypes.Type type, boolean watchable) {
+            this.file = file;
+            this.type = type;
+            this.size = attrs.size();
+            this.plainValidators = ConditionalGet.of(attrs, null);
+            List<Path> deps = new ArrayList<>();
+            deps.add(lexical);
+            deps.add(file.toPath());
+            if (type.isCompressible()) {
+                for (int i = 0; i < siblings.length; i++) {
+                    String encoding = ContentEncoding.ENCODINGS[i];
+                    siblings[i] = ContentEncoding.freshSibling(file, encoding);
+                    encodedValidators[i] = siblings[i] != null
+                            ? ConditionalGet.of(siblings[i], encoding)
+                            : ConditionalGet.of(attrs, encoding);
+                    streamedValidators[i] = ConditionalGet.of(attrs, encoding + "-s");
+                }
+                for (String suffix : ContentEncoding.SIBLING_SUFFIXES) {
+                    deps.add(new File(file.getPath() + suffix).toPath());
+                }
+            }
+            this.dependsOn = deps.toArray(new Path[0]);
+            this.watchable = watchable;
+        }
+
+        private Resolved found() {
+            return file != null ? this : null;
+        }
+
+        private boolean dependsOn(Path changed) {
+            for (Path p : dependsOn) {
+                if (p.startsWith(changed)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /** The Content-Type value, with its charset. */
+        public String getMime() {
+            return type.getContentType();
+        }
+
+        /**
+         * getType()
+         * The file's MIME type with its metadata (compressible, default Cache-Control) and its
+         * Content-Type header line already encoded, so responses for it don't build one.
+         * @return
+        */
+        public MimeTypes.Type getType() {
+            return type;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * sibling()
+         * The fresh pre-compressed copy for an encoding (file.gz, file.br), or null.
+         * @param encoding
+         * @return
+        */
+        File sibling(String encoding) {
+            int i = indexOf(encoding);
+            return i >= 0 ? siblings[i] : null;
+        }
+
+        /**
+         * validators()
+         * The ETag and Last-Modified of the bytes sent for this encoding (null for the plain
+         * file): the sibling's own when one is sent, otherwise the file's tagged with the encoding.
+         * @param encoding
+         * @return
+        */
+        ConditionalGet validators(String encoding) {
+            int i = encoding != null ? indexOf(encoding) : -1;
+            return i >= 0 && encodedValidators[i] != null ? encodedValidators[i] : plainValidators;
+        }
+
+        /**
+         * streamedValidators()
+         * The validators for a compressed copy made while it is sent (see ContentEncoding).
+         * That copy is made at another level than the cached one, so its bytes differ and it
+         * gets its own tag ("...-gzip-s"): a cache resize can move a file from one to the other,
+         * and the same strong ETag must never stand for two different bodies.
+         * @param encoding
+         * @return
+        */
+        ConditionalGet streamedValidators(String encoding) {
+            int i = indexOf(encoding);
+            return i >= 0 && streamedValidators[i] != null ? streamedValidators[i] : plainValidators;
+        }
+
+        private static int indexOf(String encoding) {
+            for (int i = 0; i < ContentEncoding.ENCODINGS.length; i++) {
+                if (ContentEncoding.ENCODINGS[i].equals(encoding)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
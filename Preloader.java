@@ -0,0 +1,142 @@
+/**
+ * Name: Preloader
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Warms the server up before it takes its first connection (--preload=true), so the first
+ *      requests after a deploy or restart are as fast as the millionth. It walks the whole
+ *      document root in parallel on a fork/join pool (one task per directory) and for every
+ *      file and directory:
+ *        - looks the URL path up in PathCache, so its record is ready,
+ *        - loads files up to --cache-max-file into FileCache, plus a gzip copy of text files,
+ *        - maps bigger files with a MappedByteBuffer while --mmap-bytes lasts, so they are sent
+ *          straight from the page cache.
+ *      MyHTTPServer prints the returned summary: how long it took and how many bytes ended up
+ *      in memory.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ForkJoinPool.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/RecursiveAction.html
+ * https://docs.oracle.com/javase/tutorial/essential/concurrency/forkjoin.html
+ */
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Preloader {
+    private final ServerContext context;
+    private final LongAdder paths = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder mapped = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Preloader()
+     * @param context the caches to fill
+    */
+    public Preloader(ServerContext context) {
+        this.context = context;
+    }
+
+    /**
+     * run()
+     * Walks the document root and returns a one-line summary. Disk reads dominate, so the
+     * pool has more threads than there are CPUs; it is shut down before returning.
+     * @return
+    */
+    public String run() {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        try {
+            pool.invoke(new Walk(context.getDocRoot(), "/"));
+        } finally {
+            pool.shutdown();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        FileCache cache = context.getFileCache();
+        return String.format("Preloaded %d paths in %d ms: %d files in memory (%.1f MB), %d files mapped (%.1f MB)%s",
+                paths.sum(), millis, loaded.sum(), cache.getTotalBytes() / (1024.0 * 1024.0),
+                mapped.sum(), cache.getMappedBytes() / (1024.0 * 1024.0),
+                skipped.sum() > 0 ? ", " + skipped.sum() + " paths skipped (path cache full)" : "");
+    }
+
+    /**
+     * warm()
+     * Does for one file what the first request for it would: resolve it, then cache, compress
+     * or map it through the same calls route() uses. Once a cache is full it stops adding to
+     * it, so preloading a big document root doesn't just churn through the LRU.
+     * @param urlPath
+    */
+    private void warm(String urlPath) {
+        if (context.getPathCache().isFull()) {
+            skipped.increment();
+            return;
+        }
+        PathCache.Resolved resolved = context.getPathCache().resolve(urlPath);
+        paths.increment();
+        if (resolved == null) {
+            return; // e.g. a directory without index.html
+        }
+        FileCache cache = context.getFileCache();
+        File file = resolved.getFile();
+        if (cache.canHold(resolved.getSize())) {
+            if (!cache.hasRoomFor(resolved.getSize())) {
+                return;
+            }
+            if (cache.get(file, resolved.getMime()) != null) {
+                loaded.increment();
+            }
+            if (ContentEncoding.choose(resolved, "gzip", cache, false) != null) {
+                ContentEncoding.encodedResponse(resolved, "gzip", cache, false, false);
+            }
+        } else if (cache.map(file, resolved.getMime()) != null) {
+            mapped.increment();
+        }
+    }
+
+    /**
+     * Walk
+     * One directory: warms its files itself and forks a task for each subdirectory.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private final class Walk extends RecursiveAction {
+        private final File dir;
+        private final String urlPath; // ends with "/"
+
+        Walk(File dir, String urlPath) {
+            this.dir = dir;
+            this.urlPath = urlPath;
+        }
+
+        @Override
+        protected void compute() {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            warm(urlPath); // the directory itself, i.e. its index.html
+            List<Walk> subdirs = new ArrayList<>();
+            for (File child : children) {
+                if (Files.isSymbolicLink(child.toPath())) {
+                    if (child.isFile()) {
+                        warm(urlPath + child.getName());
+                    }
+                    continue; // a linked directory could loop back on itself
+                }
+                if (child.isDirectory()) {
+                    subdirs.add(new Walk(child, urlPath + child.getName() + "/"));
+                } else if (child.isFile()) {
+                    warm(urlPath + child.getName());
+                }
+            }
+            invokeAll(subdirs);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * Name: RequestBody
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: The body of an HTTP/1.1 request, read straight from the connection as whoever handles
+ *      the request asks for it (an upload, see Uploads), never all at once. Its end is found
+ *      from Content-Length or by decoding "Transfer-Encoding: chunked" (see ChunkedCoding), and
+ *      nothing past it is read, so a pipelined request after it is still in HTTPHandler's
+ *      buffer. A client that sent "Expect: 100-continue" is waiting for permission before it
+ *      sends the body: "100 Continue" goes out on the first read, so a request that is turned
+ *      down before its body is wanted (too big, wrong place) never has it sent at all.
+ *      A body that isn't read to the end leaves the connection out of step, so HTTPHandler
+ *      closes it after the response.
+ *      HTTP/2 bodies arrive as DATA frames the connection's thread can't stop to wait for; one
+ *      for a proxied request is collected in a Spool first and then read back through here.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc9112#section-6
+ * https://www.rfc-editor.org/rfc/rfc9110#section-10.1.1
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Status/100
+ */
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class RequestBody extends InputStream {
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final InputStream source;
+    private final ChunkedCoding.Input chunked; // null for a Content-Length body
+    private final long length;                 // -1 when chunked
+    private long left;
+    private long count;
+    private OutputStream continueTo; // set until "100 Continue" has been sent
+    private boolean done;
+
+    /**
+     * RequestBody()
+     * @param source the connection, positioned just after the request head
+     * @param length the Content-Length, or -1 for a chunked body
+     * @param continueTo where to send "100 Continue" before the first read, or null
+     * @param maxTrailerBytes the most trailer bytes a chunked body may end with (--max-header-bytes)
+    */
+    RequestBody(InputStream source, long length, OutputStream continueTo, int maxTrailerBytes) {
+        this.source = source;
+        this.length = length;
+        this.left = length;
+        this.chunked = length < 0 ? new ChunkedCoding.Input(source, maxTrailerBytes) : null;
+        this.continueTo = continueTo;
+        this.done = length == 0;
+    }
+
+    /**
+     * framing()
+     * How long the body of an HTTP/1.x request is: its Content-Length, -1 when it is chunked,
+     * 0 when there is none. Throws IllegalArgumentException (400) for framing that could be
+     * read two ways, which is how request smuggling works: Transfer-Encoding together with
+     * Content-Length, anything but chunked last, chunked from an HTTP/1.0 client, or a
+     * Content-Length that isn't one number.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9112#section-6.3
+     * https://portswigger.net/web-security/request-smuggling
+     * @param request
+     * @return
+    */
+    static long framing(HTTPRequest request) {
+        String transfer = request.getHeader("transfer-encoding");
+        String length = request.getHeader("content-length");
+        if (transfer != null) {
+            String[] codings = transfer.split(",");
+            if (length != null || !codings[codings.length - 1].trim().equalsIgnoreCase("chunked")
+                    || !"HTTP/1.1".equalsIgnoreCase(request.getVersion())) {
+                throw new IllegalArgumentException("Unsupported Transfer-Encoding");
+            }
+            if (codings.length > 1) {
+                throw new IllegalArgumentException("Only chunked transfer coding is supported");
+            }
+            return -1;
+        }
+        if (length == null) {
+            return 0;
+        }
+        long n = parseLength(length);
+        if (n < 0) {
+            throw new IllegalArgumentException("Malformed Content-Length");
+        }
+        return n;
+    }
+
+    /**
+     * parseLength()
+     * A Content-Length value, or -1 if it isn't one. The same number repeated ("5, 5", from a
+     * header sent twice) is allowed, different ones aren't.
+     * @param value
+     * @return
+    */
+    static long parseLength(String value) {
+        long n = -1;
+        for (String part : value.split(",")) {
+            part = part.trim();
+            if (part.isEmpty() || part.length() > 18) {
+                return -1;
+            }
+            long v = 0;
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                v = v * 10 + (c - '0');
+            }
+            if (n >= 0 && v != n) {
+                return -1;
+            }
+            n = v;
+        }
+        return n;
+    }
+
+    /**
+     * wantsContinue()
+     * Whether the client is waiting for "100 Continue" before sending the body. Other
+     * expectations are ignored, which the RFC allows.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9110#section-10.1.1
+     * @param request
+     * @return
+    */
+    static boolean wantsContinue(HTTPRequest request) {
+        String expect = request.getHeader("expect");
+        return expect != null && expect.trim().equalsIgnoreCase("100-continue")
+                && "HTTP/1.1".equalsIgnoreCase(request.getVersion());
+    }
+
+    /**
+     * getLength()
+     * The Content-Length, or -1 for a chunked body whose length isn't known until its end.
+     * @return
+    */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * getCount()
+     * Body bytes read so far.
+     * @return
+    */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * isDone()
+     * True once the body has been read to its end, so the connection can carry on.
+     * @return
+    */
+    boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (done) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (continueTo != null) {
+            continueTo.write(CONTINUE);
+            continueTo.flush();
+            continueTo = null;
+        }
+        int n;
+        if (chunked != null) {
+            n = chunked.read(b, off, len);
+            if (n < 0) {
+                done = true;
+                return -1;
+            }
+        } else {
+            n = source.read(b, off, (int) Math.min(len, left));
+            if (n < 0) {
+                throw new EOFException("Request body ended early");
+            }
+            left -= n;
+            done = left == 0;
+        }
+        count += n;
+        return n;
+    }
+
+    /**
+     * close()
+     * Leaves the connection open; whatever wasn't read stays unread.
+    */
+    @Override
+    public void close() {}
+
+    /**
+     * Spool
+     * A body that arrives in pieces (HTTP/2 DATA frames) and is wanted whole, as a stream,
+     * once the last piece is in. The first 256 KB are kept in memory and anything bigger goes
+     * to a temp file, so a big body doesn't sit in the heap; --max-body-bytes is checked as
+     * the pieces come. body() reads it back, discard() frees it.
+     */
+    static final class Spool {
+        private static final int MEMORY_BYTES = 256 * 1024;
+
+        private final long maxBytes;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;          // once it outgrew memory
+        private OutputStream fileOut;
+        private InputStream fileIn;
+        private long size;
+
+        Spool(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * write()
+         * Adds the next piece. Throws Uploads.TooLarge once the body goes past the limit.
+         * @param b
+         * @param off
+         * @param len
+         * @throws IOException
+        */
+        void write(byte[] b, int off, int len) throws IOException {
+            if (maxBytes > 0 && size + len > maxBytes) {
+                throw new Uploads.TooLarge();
+            }
+            if (file == null && memory.size() + len > MEMORY_BYTES) {
+                file = Files.createTempFile("body-", ".tmp");
+                fileOut = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            (file != null ? fileOut : memory).write(b, off, len);
+            size += len;
+        }
+
+        /**
+         * body()
+         * The whole body, to be read like one that came with a Content-Length.
+         * @return
+         * @throws IOException
+        */
+        RequestBody body() throws IOException {
+            if (file == null) {
+                return new RequestBody(new ByteArrayInputStream(memory.toByteArray()), size, null, 0);
+            }
+            fileOut.close();
+            fileIn = Files.newInputStream(file);
+            return new RequestBody(fileIn, size, null, 0);
+        }
+
+        /**
+         * discard()
+         * Closes and deletes the temp file, if there is one.
+        */
+        void discard() {
+            if (file == null) {
+                return;
+            }
+            try {
+                fileOut.close();
+                if (fileIn != null) {
+                    fileIn.close();
+                }
+            } catch (IOException ignored) {}
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * ConnectionInput
+     * The connection as HTTPHandler reads it: first what is left in its read buffer after the
+     * request head, then the socket, refilling the same buffer. Reads at least as big as the
+     * buffer go straight into the caller's array once the buffer is empty, so a big upload
+     * isn't copied twice. Whatever is left in the buffer afterwards belongs to the next request.
+     */
+    static final class ConnectionInput extends InputStream {
+        private final ByteBuffer buf;
+        private final InputStream in;
+
+        ConnectionInput(ByteBuffer buf, InputStream in) {
+            this.buf = buf;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buf.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buf.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                if (len >= buf.capacity()) {
+                    return in.read(b, off, len);
+                }
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buf.remaining() + in.available();
+        }
+
+        @Override
+        public void close() {}
+
+        private boolean fill() throws IOException {
+            int n = in.read(buf.array(), 0, buf.capacity());
+            if (n < 0) {
+                return false;
+            }
+            buf.position(0).limit(n);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ * Name: RequestParser
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Reads a request head (request line plus headers) straight from raw bytes, one byte at a
+ *      time, as a small state machine. It can be fed a few bytes now and the rest later, so the
+ *      blocking HTTPHandler and the non-blocking NioServer both use it the same way: hand it a
+ *      ByteBuffer, and it either finishes a request or says it needs more. Nothing is split with
+ *      regular expressions and no String is made per header line; the head is copied into one
+ *      byte array the parser keeps for the life of the connection, and headers are remembered
+ *      as offsets into it. Header values only become Strings when route() asks for them. Common
+ *      methods and versions come back as constants. Request lines and header sections that are
+ *      too long are stopped early with 414 or 431 instead of being buffered.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc7230#section-3
+ * https://www.rfc-editor.org/rfc/rfc7230#section-3.2.4
+ * https://www.rfc-editor.org/rfc/rfc6585#section-5
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Status/414
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/ByteBuffer.html
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class RequestParser {
+    /** parse() results. */
+    static final int NEED_MORE = 0;
+    static final int DONE = 1;
+    static final int BAD_REQUEST = 2;
+    static final int URI_TOO_LONG = 3;
+    static final int HEADERS_TOO_LARGE = 4;
+
+    /** More header lines than this is treated like too many header bytes. */
+    private static final int MAX_HEADERS = 100;
+    private static final String[] METHODS = { "GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE", "CONNECT", "PRI" };
+    private static final String[] VERSIONS = { "HTTP/1.1", "HTTP/1.0", "HTTP/2.0" };
+    private static final boolean[] TOKEN = new boolean[256];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            TOKEN[c] = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || "!#$%&'*+-.^_`|~".indexOf(c) >= 0;
+        }
+    }
+
+    // states
+    private static final int START = 0;
+    private static final int METHOD = 1;
+    private static final int BEFORE_TARGET = 2;
+    private static final int TARGET = 3;
+    private static final int BEFORE_VERSION = 4;
+    private static final int VERSION = 5;
+    private static final int AFTER_VERSION = 6;
+    private static final int REQUEST_LINE_LF = 7;
+    private static final int HEADER_START = 8;
+    private static final int NAME = 9;
+    private static final int BEFORE_VALUE = 10;
+    private static final int VALUE = 11;
+    private static final int HEADER_LF = 12;
+    private static final int FINAL_LF = 13;
+    private static final int FINISHED = 14;
+
+    private final int maxRequestLine;
+    private final int maxHeaderBytes;
+
+    private byte[] head = new byte[512];
+    private int length;                      // bytes stored in head
+    private int consumed;                    // bytes read for this request, including CRLFs and spaces
+    private int requestLineBytes = -1;       // consumed at the end of the request line, -1 until then
+    private int state = START;
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int versionStart;
+    private int versionEnd;
+    private int[] fields = new int[4 * 16];  // nameStart, nameEnd, valueStart, valueEnd per header
+    private int headerCount;
+    private int nameStart;
+    private int nameEnd;
+    private int valueStart;
+    private int valueEnd;
+    private String method;
+    private String version;
+
+    /**
+     * RequestParser()
+     * One parser per connection, reused for every request on it.
+     * @param config
+    */
+    public RequestParser(ServerConfig config) {
+        this.maxRequestLine = config.getMaxRequestLine();
+        this.maxHeaderBytes = config.getMaxHeaderBytes();
+    }
+
+    /**
+     * parse()
+     * Consumes bytes from buf (position up to limit) until the request head is complete or
+     * turns out to be bad. On DONE the buffer's position is just past the blank line, so
+     * whatever follows (a body or the next pipelined request) is left in the buffer. On
+     * NEED_MORE every byte was used and the caller should read more and call again. Calling
+     * parse() after DONE or an error starts a new request, which also ends the previous
+     * request's header view.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7230#section-3.5
+     * @param buf
+     * @return
+    */
+    int parse(ByteBuffer buf) {
+        if (state == FINISHED) {
+            reset();
+        }
+        while (buf.hasRemaining()) {
+            int b = buf.get() & 0xff;
+            consumed++;
+            int result = step(b);
+            if (result != NEED_MORE) {
+                state = FINISHED;
+                return result;
+            }
+            if (requestLineBytes < 0 ? consumed > maxRequestLine : consumed - requestLineBytes > maxHeaderBytes) {
+                state = FINISHED;
+                return requestLineBytes < 0 ? URI_TOO_LONG : HEADERS_TOO_LARGE;
+            }
+        }
+        return NEED_MORE;
+    }
+
+    /**
+     * step()
+     * Moves the state machine along by one byte.
+     * @param b
+     * @return
+    */
+    private int step(int b) {
+        switch (state) {
+            case START:
+                if (b == '\r' || b == '\n') {
+                    consumed = 0; // stray CRLFs between pipelined requests are allowed
+                    return NEED_MORE;
+                }
+                if (!isToken(b)) {
+                    return BAD_REQUEST;
+                }
+                store(b);
+                state = METHOD;
+                return NEED_MORE;
+            case METHOD:
+                if (b == ' ') {
+                    methodEnd = length;
+                    state = BEFORE_TARGET;
+                } else if (isToken(b)) {
+                    store(b);
+                } else {
+                    return BAD_REQUEST;
+                }
+                return NEED_MORE;
+            case BEFORE_TARGET:
+                if (b == ' ') {
+                    return NEED_MORE;
+                }
+                targetStart = length;
+                state = TARGET;
+                return target(b);
+            case TARGET:
+                return target(b);
+            case BEFORE_VERSION:
+                if (b == ' ') {
+                    return NEED_MORE;
+                }
+                versionStart = length;
+                state = VERSION;
+                return version(b);
+            case VERSION:
+                return version(b);
+            case AFTER_VERSION:
+                if (b == ' ') {
+                    return NEED_MORE;
+                }
+                return endOfRequestLine(b);
+            case REQUEST_LINE_LF:
+                if (b != '\n') {
+                    return BAD_REQUEST;
+                }
+                return finishRequestLine();
+            case HEADER_START:
+                if (b == '\r') {
+                    state = FINAL_LF;
+                    return NEED_MORE;
+                }
+                if (b == '\n') {
+                    return DONE;
+                }
+                if (!isToken(b)) {
+                    return BAD_REQUEST; // includes obsolete line folding (a line starting with a space)
+                }
+                nameStart = length;
+                store(b);
+                state = NAME;
+                return NEED_MORE;
+            case NAME:
+                if (b == ':') {
+                    nameEnd = length;
+                    state = BEFORE_VALUE;
+                } else if (isToken(b)) {
+                    store(b);
+                } else {
+                    return BAD_REQUEST; // no space allowed before the colon
+                }
+                return NEED_MORE;
+            case BEFORE_VALUE:
+                if (b == ' ' || b == '\t') {
+                    return NEED_MORE;
+                }
+                valueStart = length;
+                valueEnd = length;
+                state = VALUE;
+                return value(b);
+            case VALUE:
+                return value(b);
+            case HEADER_LF:
+                if (b != '\n') {
+                    return BAD_REQUEST;
+                }
+                state = HEADER_START;
+                return NEED_MORE;
+            case FINAL_LF:
+                return b == '\n' ? DONE : BAD_REQUEST;
+            default:
+                return BAD_REQUEST;
+        }
+    }
+
+    private int target(int b) {
+        if (b == ' ') {
+            targetEnd = length;
+            state = BEFORE_VERSION;
+            return NEED_MORE;
+        }
+        if (b <= ' ' || b == 0x7f) {
+            return BAD_REQUEST; // includes "GET /" with no version (HTTP/0.9)
+        }
+        store(b);
+        return NEED_MORE;
+    }
+
+    private int version(int b) {
+        if (b == ' ' || b == '\r' || b == '\n') {
+            versionEnd = length;
+            return endOfRequestLine(b);
+        }
+        if (b < ' ' || b == 0x7f) {
+            return BAD_REQUEST;
+        }
+        store(b);
+        return NEED_MORE;
+    }
+
+    private int endOfRequestLine(int b) {
+        if (b == ' ') {
+            state = AFTER_VERSION;
+            return NEED_MORE;
+        }
+        if (b == '\r') {
+            state = REQUEST_LINE_LF;
+            return NEED_MORE;
+        }
+        if (b == '\n') {
+            return finishRequestLine();
+        }
+        return BAD_REQUEST;
+    }
+
+    /**
+     * finishRequestLine()
+     * Turns the method and version bytes into Strings (constants for the usual ones) and
+     * switches over to counting header bytes.
+     * @return
+    */
+    private int finishRequestLine() {
+        method = known(METHODS, 0, methodEnd);
+        version = known(VERSIONS, versionStart, versionEnd);
+        if (versionEnd - versionStart < 6 || !startsWith(versionStart, "HTTP/")) {
+            return BAD_REQUEST;
+        }
+        requestLineBytes = consumed;
+        state = HEADER_START;
+        return NEED_MORE;
+    }
+
+    private int value(int b) {
+        if (b == '\r' || b == '\n') {
+            addHeader();
+            if (headerCount > MAX_HEADERS) {
+                return HEADERS_TOO_LARGE;
+            }
+            state = b == '\r' ? HEADER_LF : HEADER_START;
+            return NEED_MORE;
+        }
+        if (b < ' ' && b != '\t' || b == 0x7f) {
+            return BAD_REQUEST;
+        }
+        store(b);
+        if (b != ' ' && b != '\t') {
+            valueEnd = length; // trailing spaces are not part of the value
+        }
+        return NEED_MORE;
+    }
+
+    private void addHeader() {
+        if (fields.length < 4 * (headerCount + 1)) {
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        }
+        int i = 4 * headerCount++;
+        fields[i] = nameStart;
+        fields[i + 1] = nameEnd;
+        fields[i + 2] = valueStart;
+        fields[i + 3] = valueEnd;
+    }
+
+    private void store(int b) {
+        if (length == head.length) {
+            head = Arrays.copyOf(head, head.length * 2); // bounded by the size limits in parse()
+        }
+        head[length++] = (byte) b;
+    }
+
+    /**
+     * isBetweenRequests()
+     * True if no part of a new request has been read yet, so closing the connection now
+     * (when the server is shutting down) can't cut a request in half.
+     * @return
+    */
+    boolean isBetweenRequests() {
+        return state == FINISHED || consumed == 0;
+    }
+
+    /**
+     * reset()
+     * Forgets the last request so the arrays can be reused for the next one.
+    */
+    void reset() {
+        length = 0;
+        consumed = 0;
+        requestLineBytes = -1;
+        headerCount = 0;
+        method = null;
+        version = null;
+        state = START;
+    }
+
+    /**
+     * toRequest()
+     * The finished request. Its headers are read from this parser, so it is only valid until
+     * the next call to parse(); both servers are done with a request by then.
+     * @return
+    */
+    HTTPRequest toRequest() {
+        String target = new String(head, targetStart, targetEnd - targetStart, StandardCharsets.ISO_8859_1);
+        return new HTTPRequest(method, target, version, this);
+    }
+
+    /**
+     * header()
+     * Looks up a header value by name, ignoring case, without making Strings for the headers
+     * that don't match. A header sent more than once is joined with ", ". Null if absent.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7230#section-3.2.2
+     * @param name
+     * @return
+    */
+    String header(String name) {
+        String found = null;
+        for (int i = 0; i < headerCount; i++) {
+            if (nameEquals(i, name)) {
+                String value = headerValue(i);
+                found = found == null ? value : found + ", " + value;
+            }
+        }
+        return found;
+    }
+
+    int getHeaderCount() {
+        return headerCount;
+    }
+
+    /**
+     * headerName()
+     * The i-th header's name as sent (not lower cased).
+     * @param i
+     * @return
+    */
+    String headerName(int i) {
+        return new String(head, fields[4 * i], fields[4 * i + 1] - fields[4 * i], StandardCharsets.ISO_8859_1);
+    }
+
+    String headerValue(int i) {
+        return new String(head, fields[4 * i + 2], fields[4 * i + 3] - fields[4 * i + 2], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * errorResponse()
+     * The response for a parse() result that isn't DONE or NEED_MORE. The connection is always
+     * closed afterwards since we can't tell where the next request would start.
+     * @param result
+     * @return
+    */
+    static HTTPResponse errorResponse(int result) {
+        HTTPResponse response;
+        if (result == URI_TOO_LONG) {
+            response = HTTPHandler.simpleResponse("414 URI Too Long", "text/plain", "Request line too long");
+        } else if (result == HEADERS_TOO_LARGE) {
+            response = HTTPHandler.simpleResponse("431 Request Header Fields Too Large", "text/plain", "Request header too large");
+        } else {
+            response = HTTPHandler.simpleResponse("400 Bad Request", "text/plain", "Malformed request");
+        }
+        return response.closeConnection();
+    }
+
+    private boolean nameEquals(int i, String name) {
+        int start = fields[4 * i];
+        int n = fields[4 * i + 1] - start;
+        if (n != name.length()) {
+            return false;
+        }
+        for (int k = 0; k < n; k++) {
+            if (lower(head[start + k]) != lower(name.charAt(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * known()
+     * The constant from table whose bytes equal head[from, to), or a new String if none does.
+     * @param table
+     * @param from
+     * @param to
+     * @return
+    */
+    private String known(String[] table, int from, int to) {
+        for (String candidate : table) {
+            if (candidate.length() == to - from && startsWith(from, candidate)) {
+                return candidate;
+            }
+        }
+        return new String(head, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean startsWith(int from, String text) {
+        for (int k = 0; k < text.length(); k++) {
+            if (head[from + k] != text.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    /**
+     * isToken()
+     * The characters allowed in methods and header names.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc7230#section-3.2.6
+     * @param b
+     * @return
+    */
+    private static boolean isToken(int b) {
+        return TOKEN[b];
+    }
+}
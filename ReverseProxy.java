@@ -0,0 +1,744 @@
+/**
+ * Name: ReverseProxy
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Sends requests for some path prefixes on to backend servers instead of the document
+ *      root, so an app running on a local port can sit behind this server without another
+ *      proxy in front. The routes come from --proxy: "prefix=host:port" rules separated by ';',
+ *      with several backends for one prefix separated by ',' (they take turns, skipping any
+ *      that are down). The longest matching prefix wins, and the request goes on with its
+ *      path unchanged. Example: --proxy="/api/=127.0.0.1:9000;/app/=127.0.0.1:8081,127.0.0.1:8082"
+ *      Requests go over kept-alive HTTP/1.1 connections from each backend's pool (see
+ *      Upstream), with the hop-by-hop headers taken out and X-Forwarded-For/-Proto added. A
+ *      request body is copied on as it is read from the client, with its Content-Length, or
+ *      chunked again when the client sent it chunked, so it is never held in memory either. The
+ *      response is streamed back as it arrives, never held in memory whole: its body becomes
+ *      the HTTPResponse's stream, and the connection goes back to the pool once the client has
+ *      been sent all of it. A backend that can't be reached, or a pooled connection the backend
+ *      had already closed, makes an idempotent request try again (--proxy-retries), unless some
+ *      of its body has gone out already (it can't be read from the client twice); a backend
+ *      that doesn't answer within --proxy-read-timeout gets a 504 rather than a second request.
+ *      Every proxied request records how long the backend took to start answering and how
+ *      much time the proxy added on top (http_proxy_upstream_seconds, http_proxy_added_seconds).
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc9110#section-7.6.1
+ * https://www.rfc-editor.org/rfc/rfc9110#section-9.2.2
+ * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/X-Forwarded-For
+ * https://nginx.org/en/docs/http/ngx_http_proxy_module.html#proxy_next_upstream
+ */
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReverseProxy {
+    /** Headers about one connection rather than the message; never passed on either way. */
+    private static final Set<String> HOP_BY_HOP = Set.of("connection", "keep-alive", "proxy-connection",
+            "te", "trailer", "transfer-encoding", "upgrade");
+    private static final int BODY_CHUNK_BYTES = 64 * 1024;
+    private static final Set<String> IDEMPOTENT = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE");
+
+    private final List<Route> routes = new ArrayList<>();
+    private final List<Upstream> upstreams = new ArrayList<>();
+    private final boolean pooling;
+    private final boolean healthChecks;
+    private final Thread healthChecker; // null when --proxy-health-interval=0
+    // HTTP/2 proxied streams, one thread each while they wait on their backend (see Http2Connection)
+    private final ExecutorService streamThreads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "proxy-stream");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean closed;
+
+    /**
+     * ReverseProxy()
+     * Builds the routes and one Upstream (with its pool) per distinct backend, and starts the
+     * health check thread if checks are on.
+     * @param config
+    */
+    public ReverseProxy(ServerConfig config) {
+        Map<String, Upstream> byName = new LinkedHashMap<>();
+        for (String[] rule : parseRoutes(config.getProxy())) {
+            String[] names = rule[1].split(",");
+            Upstream[] targets = new Upstream[names.length];
+            for (int i = 0; i < names.length; i++) {
+                targets[i] = byName.computeIfAbsent(names[i].trim(),
+                        n -> new Upstream(n, config.getProxyPoolSize(), config.getProxyIdleTimeoutMillis()));
+            }
+            routes.add(new Route(rule[0], targets));
+        }
+        upstreams.addAll(byName.values());
+        pooling = config.getProxyPoolSize() > 0;
+        int interval = config.getProxyHealthIntervalMillis();
+        healthChecks = interval > 0;
+        if (healthChecks) {
+            String path = config.getProxyHealthPath();
+            int connectTimeout = config.getProxyConnectTimeoutMillis();
+            int readTimeout = config.getProxyReadTimeoutMillis();
+            healthChecker = new Thread(() -> healthLoop(interval, path, connectTimeout, readTimeout), "proxy-health");
+            healthChecker.setDaemon(true);
+            healthChecker.start();
+        } else {
+            healthChecker = null;
+        }
+    }
+
+    /**
+     * parseRoutes()
+     * Splits the --proxy option into prefix/backends pairs, checking every backend looks like
+     * host:port so a typo fails at startup (or reload) instead of on the first request.
+     * @param spec
+     * @return
+    */
+    static List<String[]> parseRoutes(String spec) {
+        List<String[]> rules = new ArrayList<>();
+        for (String rule : spec.split(";")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int eq = rule.indexOf('=');
+            if (eq <= 0 || !rule.startsWith("/") || eq == rule.length() - 1) {
+                throw new IllegalArgumentException("Proxy rules look like /prefix=host:port[,host:port]: " + rule);
+            }
+            String backends = rule.substring(eq + 1).trim();
+            for (String backend : backends.split(",")) {
+                backend = backend.trim();
+                int colon = backend.lastIndexOf(':');
+                int port = -1;
+                try {
+                    port = colon > 0 ? Integer.parseInt(backend.substring(colon + 1)) : -1;
+                } catch (NumberFormatException ignored) {}
+                if (port < 1 || port > 65535) {
+                    throw new IllegalArgumentException("Proxy backends look like host:port: " + backend);
+                }
+            }
+            rules.add(new String[] { rule.substring(0, eq).trim(), backends });
+        }
+        return rules;
+    }
+
+    /**
+     * match()
+     * The route with the longest prefix the path starts with, or null if the path isn't
+     * proxied.
+     * @param path
+     * @return
+    */
+    Route match(String path) {
+        Route best = null;
+        for (int i = 0; i < routes.size(); i++) {
+            Route r = routes.get(i);
+            if (path.startsWith(r.prefix) && (best == null || r.prefix.length() > best.prefix.length())) {
+                best = r;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * forward()
+     * Sends the request to one of the route's backends and turns its answer into a response
+     * whose body streams from the backend connection. Failures become 502 (no answer), 503
+     * (every backend is down) or 504 (no answer in time). A request body goes to the backend
+     * right behind the head (see sendBody()); a body the client stops sending part way gets
+     * the client a 408 or 400 instead.
+     * A try fails before the backend has answered if it can't connect (tried again whatever
+     * the method, nothing was sent), or the connection drops or resets first; then only
+     * idempotent methods are tried again, since the backend may have acted on the request,
+     * and only while none of the body has been read from the client, since it can't be sent
+     * twice. A pooled connection the backend closed while it sat idle gets one extra try on
+     * top of --proxy-retries.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9110#section-9.2.2
+     * https://www.rfc-editor.org/rfc/rfc9112#section-9.3.1
+     * @param request
+     * @param route
+     * @param context
+     * @return
+    */
+    HTTPResponse forward(HTTPRequest request, Route route, ServerContext context) {
+        ServerConfig config = context.getConfig();
+        Metrics metrics = context.getMetrics();
+        metrics.proxyRequests.increment();
+        InputStream body = request.getBody();
+        if (body == null && request.hasBody()) {
+            return HTTPHandler.simpleResponse("501 Not Implemented", "text/plain",
+                    "Request bodies can't be read on this connection").closeConnection();
+        }
+        long bodyLength = body instanceof RequestBody ? ((RequestBody) body).getLength() : -1;
+        long start = System.nanoTime();
+        boolean idempotent = IDEMPOTENT.contains(request.getMethod());
+        int tries = 1 + config.getProxyRetries();
+        boolean staleRetry = true;
+        boolean tried = false; // some backend wasn't marked down
+        boolean bodyStarted = false;
+        for (int attempt = 0; attempt < tries; attempt++) {
+            Upstream upstream = route.next();
+            if (upstream == null) {
+                break;
+            }
+            tried = true;
+            if (attempt > 0) {
+                metrics.proxyRetries.increment();
+            }
+            Upstream.Connection c;
+            try {
+                c = upstream.acquire(config.getProxyConnectTimeoutMillis(), config.getProxyReadTimeoutMillis());
+            } catch (IOException e) {
+                if (healthChecks) {
+                    upstream.markDown(e.getMessage());
+                }
+                continue;
+            }
+            if (!c.reused) {
+                metrics.proxyConnects.increment();
+            }
+            long sent;
+            int first;
+            try {
+                c.out.write(requestHead(request, upstream, body != null ? bodyLength : 0));
+                if (body != null) {
+                    bodyStarted = true; // from here on the body may be partly read
+                    sendBody(body, bodyLength, c.out);
+                }
+                c.out.flush();
+                sent = System.nanoTime();
+                first = c.in.read(); // blocks until the backend starts answering
+            } catch (BodyError e) {
+                c.close();
+                return e.response;
+            } catch (SocketTimeoutException e) {
+                c.close();
+                return failed(metrics, "504 Gateway Timeout", "The upstream server didn't answer in time");
+            } catch (IOException e) {
+                sent = 0;
+                first = -1;
+            }
+            if (first < 0) {
+                c.close();
+                if (c.reused && staleRetry) {
+                    staleRetry = false; // the backend closed it while it was idle in the pool
+                    tries++;
+                }
+                if (!idempotent || bodyStarted) {
+                    break;
+                }
+                continue;
+            }
+            long upstreamNanos = System.nanoTime() - sent;
+            try {
+                HTTPResponse response = respond(request, upstream, c, first, config.getMaxHeaderBytes());
+                metrics.proxyUpstreamTime.record(upstreamNanos);
+                metrics.proxyAddedTime.record(System.nanoTime() - start - upstreamNanos);
+                return response;
+            } catch (SocketTimeoutException e) {
+                c.close();
+                return failed(metrics, "504 Gateway Timeout", "The upstream server didn't answer in time");
+            } catch (IOException e) {
+                c.close();
+                return failed(metrics, "502 Bad Gateway", "The upstream server sent a bad response");
+            }
+        }
+        if (!tried) {
+            return failed(metrics, "503 Service Unavailable", "No upstream server is available").header("Retry-After", "1");
+        }
+        return failed(metrics, "502 Bad Gateway", "The upstream server didn't answer");
+    }
+
+    private static HTTPResponse failed(Metrics metrics, String status, String message) {
+        metrics.proxyFailures.increment();
+        return HTTPHandler.simpleResponse(status, "text/plain", message);
+    }
+
+    /**
+     * sendBody()
+     * Copies the request body to the backend as it is read from the client: as it is when
+     * its length is known (the head carries it as Content-Length), otherwise in chunks with
+     * the last chunk at the end. Reading the body is what sends the client "100 Continue" if
+     * it asked for one, so that only happens once a backend has the request head. A body the
+     * client stops sending throws BodyError with the client's answer; a backend that stops
+     * taking it throws the plain IOException.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9112#section-7.1
+     * @param body
+     * @param length the body's length, or -1 to send it chunked
+     * @param out
+     * @throws IOException
+    */
+    private static void sendBody(InputStream body, long length, OutputStream out) throws IOException {
+        byte[] chunk = new byte[BODY_CHUNK_BYTES];
+        while (true) {
+            int n;
+            try {
+                n = body.read(chunk);
+            } catch (SocketTimeoutException e) {
+                throw new BodyError(HTTPHandler.simpleResponse("408 Request Timeout", "text/plain",
+                        "The body stopped arriving"));
+            } catch (IOException e) {
+                throw new BodyError(HTTPHandler.simpleResponse("400 Bad Request", "text/plain",
+                        e instanceof EOFException || e instanceof SocketException ? "Request body ended early"
+                                : "Malformed request body: " + e.getMessage()));
+            }
+            if (n < 0) {
+                break;
+            }
+            if (length < 0) {
+                ChunkedCoding.writeChunk(out, chunk, 0, n);
+            } else {
+                out.write(chunk, 0, n);
+            }
+        }
+        if (length < 0) {
+            out.write(ChunkedCoding.LAST_CHUNK);
+        }
+    }
+
+    /**
+     * BodyError
+     * The client's request body couldn't be read; carries the answer for the client. The
+     * rest of the body is still on its connection, so HTTPHandler closes it after the answer.
+     */
+    private static final class BodyError extends IOException {
+        private static final long serialVersionUID = 1L;
+        final transient HTTPResponse response;
+
+        BodyError(HTTPResponse response) {
+            super("Request body unreadable");
+            this.response = response;
+        }
+    }
+
+    /**
+     * requestHead()
+     * The request as the backend gets it: the same method and target over HTTP/1.1, the
+     * client's headers minus the hop-by-hop ones (and any the client listed in Connection),
+     * Host kept as the client sent it, and the client's address added to X-Forwarded-For.
+     * The body's framing is this hop's own: Content-Length or "Transfer-Encoding: chunked"
+     * as sendBody() will send it, and no Expect, since the body follows straight away.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9110#section-7.6.1
+     * https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/X-Forwarded-Proto
+     * @param request
+     * @param upstream
+     * @param bodyLength 0 for no body, -1 for a chunked one
+     * @return
+    */
+    private byte[] requestHead(HTTPRequest request, Upstream upstream, long bodyLength) {
+        Set<String> drop = connectionTokens(request.getHeader("connection"));
+        StringBuilder sb = new StringBuilder(512);
+        sb.append(request.getMethod()).append(' ').append(request.getTarget()).append(" HTTP/1.1\r\n");
+        String host = request.getHeader("host");
+        sb.append("Host: ").append(host != null ? host : upstream.getName()).append("\r\n");
+        request.forEachHeader((name, value) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (!HOP_BY_HOP.contains(lower) && !drop.contains(lower) && !lower.equals("host")
+                    && !lower.equals("x-forwarded-for") && !lower.equals("x-forwarded-proto")
+                    && !lower.equals("content-length") && !lower.equals("expect")) {
+                sb.append(name).append(": ").append(value).append("\r\n");
+            }
+        });
+        if (bodyLength > 0 || bodyLength == 0 && request.getHeader("content-length") != null) {
+            sb.append("Content-Length: ").append(bodyLength).append("\r\n");
+        } else if (bodyLength < 0) {
+            sb.append("Transfer-Encoding: chunked\r\n");
+        }
+        String forwardedFor = request.getHeader("x-forwarded-for");
+        InetAddress client = request.getRemoteAddress();
+        if (client != null) {
+            forwardedFor = (forwardedFor != null ? forwardedFor + ", " : "") + client.getHostAddress();
+        }
+        if (forwardedFor != null) {
+            sb.append("X-Forwarded-For: ").append(forwardedFor).append("\r\n");
+        }
+        sb.append("X-Forwarded-Proto: ").append(request.isSecure() ? "https" : "http").append("\r\n");
+        if (!pooling) {
+            sb.append("Connection: close\r\n");
+        }
+        sb.append("\r\n");
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * respond()
+     * Reads the backend's response head (its first byte already read) and builds the response
+     * for the client: the backend's status and headers, minus the hop-by-hop ones and the
+     * Date/Server this server writes itself, and a body that streams from the connection.
+     * 1xx interim responses are skipped. Responses that can't have a body (to HEAD, 204, 304)
+     * give the connection back right away.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9112#section-6.3
+     * @param request
+     * @param upstream
+     * @param c
+     * @param first
+     * @param maxHeaderBytes
+     * @return
+     * @throws IOException
+    */
+    private static HTTPResponse respond(HTTPRequest request, Upstream upstream, Upstream.Connection c, int first,
+                                        int maxHeaderBytes) throws IOException {
+        List<String> lines = readHead(c.in, first, maxHeaderBytes);
+        int code = statusCode(lines.get(0));
+        while (code >= 100 && code < 200) {
+            if (code == 101) {
+                throw new IOException("Upstream switched protocols");
+            }
+            int next = c.in.read();
+            if (next < 0) {
+                throw new EOFException("Upstream closed after an interim response");
+            }
+            lines = readHead(c.in, next, maxHeaderBytes);
+            code = statusCode(lines.get(0));
+        }
+        String statusLine = lines.get(0);
+        String status = statusLine.substring(statusLine.indexOf(' ') + 1).trim();
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1");
+        String contentType = null;
+        long length = -1;
+        boolean chunked = false;
+        boolean otherCoding = false;
+        Set<String> drop = new HashSet<>();
+        List<String[]> kept = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Bad upstream header line: " + line);
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "content-type":
+                    contentType = value;
+                    break;
+                case "content-length":
+                    try {
+                        length = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Bad upstream Content-Length: " + value);
+                    }
+                    break;
+                case "transfer-encoding":
+                    chunked = value.toLowerCase(Locale.ROOT).endsWith("chunked");
+                    otherCoding = !chunked;
+                    break;
+                case "connection":
+                    drop.addAll(connectionTokens(value));
+                    if (drop.contains("close")) {
+                        keepAlive = false;
+                    } else if (drop.contains("keep-alive")) {
+                        keepAlive = true;
+                    }
+                    break;
+                case "date":
+                case "server":
+                    break; // this server writes its own
+                default:
+                    kept.add(new String[] { name, value });
+            }
+        }
+
+        HTTPResponse response;
+        boolean noBody = "HEAD".equals(request.getMethod()) || code == 204 || code == 304;
+        if (noBody) {
+            response = code == 204 || code == 304
+                    ? HTTPResponse.empty(status)
+                    : HTTPResponse.streamed(status, contentType, chunked ? -1 : length, null).withoutBody();
+            if (keepAlive) {
+                upstream.release(c);
+            } else {
+                c.close();
+            }
+        } else if (chunked) {
+            response = HTTPResponse.streamed(status, contentType, -1, new ProxyBody(upstream, c, -1,
+                    new ChunkedCoding.Input(c.in, maxHeaderBytes), keepAlive));
+        } else if (length >= 0 && !otherCoding) {
+            response = HTTPResponse.streamed(status, contentType, length, new ProxyBody(upstream, c, length, null, keepAlive));
+        } else {
+            // no length: the body runs until the backend closes the connection
+            response = HTTPResponse.streamed(status, contentType, -1, new ProxyBody(upstream, c, -1, null, false));
+        }
+        for (String[] header : kept) {
+            if (!HOP_BY_HOP.contains(header[0].toLowerCase(Locale.ROOT)) && !drop.contains(header[0].toLowerCase(Locale.ROOT))) {
+                response.header(header[0], header[1]);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * readHead()
+     * Reads a response head, status line first, up to the blank line, as lines without
+     * their line endings. Heads bigger than maxBytes are refused.
+     * @param in
+     * @param first the first byte, already read
+     * @param maxBytes
+     * @return
+     * @throws IOException
+    */
+    private static List<String> readHead(InputStream in, int first, int maxBytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        int total = 0;
+        int b = first;
+        while (true) {
+            if (b < 0) {
+                throw new EOFException("Upstream closed in the response head");
+            }
+            if (++total > maxBytes) {
+                throw new IOException("Upstream response head too large");
+            }
+            if (b == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                if (line.length() == 0) {
+                    if (lines.isEmpty()) {
+                        throw new IOException("Upstream sent an empty response head");
+                    }
+                    return lines;
+                }
+                lines.add(line.toString());
+                line.setLength(0);
+            } else {
+                line.append((char) b);
+            }
+            b = in.read();
+        }
+    }
+
+    /**
+     * statusCode()
+     * The number from a status line like "HTTP/1.1 200 OK".
+     * @param statusLine
+     * @return
+     * @throws IOException
+    */
+    private static int statusCode(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        try {
+            if (parts.length >= 2 && parts[0].startsWith("HTTP/1.") && parts[1].length() == 3) {
+                return Integer.parseInt(parts[1]);
+            }
+        } catch (NumberFormatException ignored) {}
+        throw new IOException("Bad upstream status line: " + statusLine);
+    }
+
+    /**
+     * connectionTokens()
+     * The lower-cased names listed in a Connection header (close, keep-alive, or headers that
+     * only apply to this hop). Empty if there is no header.
+     * @param value
+     * @return
+    */
+    private static Set<String> connectionTokens(String value) {
+        if (value == null) {
+            return Set.of();
+        }
+        Set<String> tokens = new HashSet<>();
+        for (String token : value.split(",")) {
+            tokens.add(token.trim().toLowerCase(Locale.ROOT));
+        }
+        return tokens;
+    }
+
+    /**
+     * healthLoop()
+     * Runs on the health check thread: checks every backend once per interval until close().
+     * @param intervalMillis
+     * @param path
+     * @param connectTimeoutMillis
+     * @param readTimeoutMillis
+    */
+    private void healthLoop(int intervalMillis, String path, int connectTimeoutMillis, int readTimeoutMillis) {
+        while (!closed) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Upstream u : upstreams) {
+                if (!closed) {
+                    u.check(path, connectTimeoutMillis, readTimeoutMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * getIdleConnections()
+     * Kept-alive backend connections waiting in the pools right now.
+     * @return
+    */
+    long getIdleConnections() {
+        long n = 0;
+        for (Upstream u : upstreams) {
+            n += u.getIdleCount();
+        }
+        return n;
+    }
+
+    /**
+     * close()
+     * Stops the health checks and closes the pooled connections. Responses still streaming
+     * finish, and then their connections are closed instead of pooled.
+    */
+    void close() {
+        closed = true;
+        streamThreads.shutdown(); // streams already running finish
+        if (healthChecker != null) {
+            healthChecker.interrupt();
+        }
+        for (Upstream u : upstreams) {
+            u.close();
+        }
+    }
+
+    /**
+     * execute()
+     * Runs an HTTP/2 proxied stream on a thread of its own, so waiting on its backend doesn't
+     * stop the connection's other streams. Throws RejectedExecutionException once close()
+     * has been called.
+     * @param task
+    */
+    void execute(Runnable task) {
+        streamThreads.execute(task);
+    }
+
+    /**
+     * Route
+     * One path prefix and the backends it goes to, handed out in turn.
+     */
+    static final class Route {
+        final String prefix;
+        private final Upstream[] targets;
+        private final AtomicInteger turn = new AtomicInteger();
+
+        Route(String prefix, Upstream[] targets) {
+            this.prefix = prefix;
+            this.targets = targets;
+        }
+
+        /**
+         * next()
+         * The next backend in turn that isn't down, or null if they all are.
+         * @return
+        */
+        Upstream next() {
+            int start = Math.floorMod(turn.getAndIncrement(), targets.length);
+            for (int i = 0; i < targets.length; i++) {
+                Upstream u = targets[(start + i) % targets.length];
+                if (u.isHealthy()) {
+                    return u;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * ProxyBody
+     * A backend response body as a stream: it stops at the Content-Length, the last chunk,
+     * or the backend closing the connection, whichever the response uses. close() gives the
+     * connection back to the pool if the whole body was read and the backend keeps
+     * connections open; otherwise the connection is closed, since the rest of an unread body
+     * would still be on it.
+     */
+    private static final class ProxyBody extends InputStream {
+        private final Upstream upstream;
+        private final Upstream.Connection c;
+        private final ChunkedCoding.Input chunks; // null unless the body is chunked
+        private final boolean reusable;
+        private long remaining; // -1 when the length isn't known
+        private boolean done;
+        private boolean closed;
+
+        ProxyBody(Upstream upstream, Upstream.Connection c, long length, ChunkedCoding.Input chunks, boolean reusable) {
+            this.upstream = upstream;
+            this.c = c;
+            this.remaining = length;
+            this.chunks = chunks;
+            this.reusable = reusable;
+            this.done = length == 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            if (chunks != null) {
+                n = chunks.read(b, off, len);
+                done = n < 0;
+            } else if (remaining >= 0) {
+                n = c.in.read(b, off, (int) Math.min(len, remaining));
+                if (n < 0) {
+                    throw new EOFException("Upstream closed the connection in the middle of the body");
+                }
+                remaining -= n;
+                done = remaining == 0;
+            } else {
+                n = c.in.read(b, off, len);
+                done = n < 0;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (done) {
+                return 0;
+            }
+            if (chunks != null) {
+                return chunks.available();
+            }
+            int n = c.in.available();
+            return remaining >= 0 ? (int) Math.min(n, remaining) : n;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (done && reusable) {
+                upstream.release(c);
+            } else {
+                c.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,1020 @@
+/**
+ * Name: ServerConfig
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Holds the tunable settings for the server other than the port.
+ *      Settings are passed on the command line as "--name=value" options after the normal
+ *      arguments, and anything not given keeps its default. They can also go in a file named
+ *      with --config, one "name=value" per line; the file can also set the doc root
+ *      ("docroot=") and thread count ("threads="), and is read again when it changes (see
+ *      ConfigWatcher), so most settings can be changed without a restart. Options given on the
+ *      command line win over the file.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.w3schools.com/java/java_class_attributes.asp
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/IllegalArgumentException.html
+ */
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ServerConfig {
+    private int idleTimeoutMillis = 30_000;
+    private int maxRequestsPerConnection = 100;
+    private String mode = "threads";
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+    private int maxConnections = 10_000;
+    private int zeroCopyThreshold = 32 * 1024;
+    private long cacheBytes = 32L * 1024 * 1024;
+    private long cacheMaxFileBytes = 256 * 1024;
+    private CachePolicy cachePolicy = CachePolicy.parse("");
+    private MimeTypes mimeTypes = MimeTypes.DEFAULT;
+    private int maxRequestLine = 8 * 1024;
+    private int maxHeaderBytes = 64 * 1024;
+    private String metricsPath = "/metrics";
+    private String accessLog = "";
+    private String accessLogFormat = "combined";
+    private int accessLogBuffer = 16 * 1024;
+    private boolean accessLogBlockWhenFull = false;
+    private long accessLogRotateBytes = 0;
+    private int pathCacheEntries = 10_000;
+    private boolean preload = false;
+    private long mmapBytes = 0;
+    private boolean http2 = true;
+    private String docRoot = "";
+    private int threads = 50;
+    private int drainTimeoutMillis = 10_000;
+    private String configFile = "";
+    private int acceptors = 1;
+    private int backlog = 1024;
+    private boolean tcpNoDelay = true;
+    private int sendBuffer = 0;
+    private int receiveBuffer = 0;
+    private boolean soKeepAlive = false;
+    private int queueSize = 1000;
+    private int queueTargetMillis = 100;
+    private int queueIntervalMillis = 1000;
+    private int rateLimit = 0;
+    private int rateBurst = 20;
+    private int maxConnectionsPerIp = 0;
+    private int tlsPort = 0;
+    private String keystore = "";
+    private String keystorePassword = "changeit";
+    private int tlsSessionCache = 20_480;
+    private int tlsSessionTimeout = 86_400;
+    private boolean tlsTickets = true;
+    private String proxy = "";
+    private int proxyConnectTimeoutMillis = 1000;
+    private int proxyReadTimeoutMillis = 30_000;
+    private int proxyRetries = 1;
+    private int proxyPoolSize = 32;
+    private int proxyIdleTimeoutMillis = 30_000;
+    private int proxyHealthIntervalMillis = 5000;
+    private String proxyHealthPath = "/";
+    private boolean autoindex = false;
+    private int autoindexPageSize = 1000;
+    private long autoindexCacheBytes = 8L * 1024 * 1024;
+    private String uploadDir = "";
+    private long maxBodyBytes = 100L * 1024 * 1024;
+    private String corsOrigins = "";
+
+    /**
+     * getIdleTimeoutMillis()
+     * How long (in milliseconds) a kept-alive connection may sit with no request
+     * before the server closes it.
+     * @return
+    */
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * getMaxRequestsPerConnection()
+     * How many requests one connection may send before the server answers with
+     * "Connection: close". Zero means no limit.
+     * @return
+    */
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * getMode()
+     * Which server engine to run: "threads" (one pool thread per connection, HTTPHandler),
+     * "virtual" (one virtual thread per connection, HTTPHandler, Java 21+)
+     * or "nio" (a few selector event loops, NioServer).
+     * @return
+    */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * getEventLoops()
+     * How many selector threads NioServer spreads connections over.
+     * @return
+    */
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * getMaxConnections()
+     * How many connections may be open at once. Connections past this get a quick
+     * "503 Service Unavailable" instead of waiting in a queue. Zero means no limit.
+     * @return
+    */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * getZeroCopyThreshold()
+     * Files at least this many bytes are sent with FileChannel.transferTo (zero-copy);
+     * smaller ones are copied through the output buffer together with their headers.
+     * @return
+    */
+    public int getZeroCopyThreshold() {
+        return zeroCopyThreshold;
+    }
+
+    /**
+     * getCacheBytes()
+     * Memory budget for FileCache, in bytes. Zero turns the cache off.
+     * @return
+    */
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    /**
+     * getCacheMaxFileBytes()
+     * Files bigger than this are never cached; they are streamed from disk instead.
+     * @return
+    */
+    public long getCacheMaxFileBytes() {
+        return cacheMaxFileBytes;
+    }
+
+    /**
+     * getCachePolicy()
+     * The Cache-Control rules from --cache-control (see CachePolicy).
+     * @return
+    */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * getMimeTypes()
+     * The extension to MIME type table: the built-in one, plus the --mime-types file if
+     * there is one (read when the option is applied, so a reload re-reads it).
+     * @return
+    */
+    public MimeTypes getMimeTypes() {
+        return mimeTypes;
+    }
+
+    /**
+     * getMaxRequestLine()
+     * Longest request line ("GET /path HTTP/1.1") accepted, in bytes. Longer ones get
+     * "414 URI Too Long".
+     * @return
+    */
+    public int getMaxRequestLine() {
+        return maxRequestLine;
+    }
+
+    /**
+     * getMaxHeaderBytes()
+     * Most bytes of header lines accepted after the request line. More gets
+     * "431 Request Header Fields Too Large".
+     * @return
+    */
+    public int getMaxHeaderBytes() {
+        return maxHeaderBytes;
+    }
+
+    /**
+     * getMetricsPath()
+     * The URL path that serves the metrics in Prometheus format, or "" for none.
+     * @return
+    */
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * getAccessLog()
+     * File the access log is appended to, or "" for no access log.
+     * @return
+    */
+    public String getAccessLog() {
+        return accessLog;
+    }
+
+    /**
+     * getAccessLogFormat()
+     * "common" or "combined" (common plus the Referer and User-Agent).
+     * @return
+    */
+    public String getAccessLogFormat() {
+        return accessLogFormat;
+    }
+
+    /**
+     * getAccessLogBuffer()
+     * How many log entries can wait for the writer thread before the buffer counts as full.
+     * @return
+    */
+    public int getAccessLogBuffer() {
+        return accessLogBuffer;
+    }
+
+    /**
+     * isAccessLogBlockWhenFull()
+     * True if a connection should wait for room when the log buffer is full; false (the
+     * default) drops the entry and counts it instead.
+     * @return
+    */
+    public boolean isAccessLogBlockWhenFull() {
+        return accessLogBlockWhenFull;
+    }
+
+    /**
+     * getAccessLogRotateBytes()
+     * The access log is rolled over to access.log.1 once it reaches this size. Zero means never.
+     * @return
+    */
+    public long getAccessLogRotateBytes() {
+        return accessLogRotateBytes;
+    }
+
+    /**
+     * getPathCacheEntries()
+     * How many URL paths PathCache remembers. Zero turns it off (every request goes to disk).
+     * @return
+    */
+    public int getPathCacheEntries() {
+        return pathCacheEntries;
+    }
+
+    /**
+     * isPreload()
+     * True if the server should walk the document root and fill its caches before it starts
+     * accepting connections (see Preloader).
+     * @return
+    */
+    public boolean isPreload() {
+        return preload;
+    }
+
+    /**
+     * getMmapBytes()
+     * Budget for memory-mapping files too big for the file cache during preloading.
+     * Zero (the default) maps nothing.
+     * @return
+    */
+    public long getMmapBytes() {
+        return mmapBytes;
+    }
+
+    /**
+     * isHttp2()
+     * True if cleartext HTTP/2 is offered: connections that start with the HTTP/2 preface,
+     * or send "Upgrade: h2c", are handed to Http2Connection.
+     * @return
+    */
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * getDocRoot()
+     * The document root: the second command line argument, unless the config file names another.
+     * @return
+    */
+    public String getDocRoot() {
+        return docRoot;
+    }
+
+    /**
+     * getThreads()
+     * Pool threads for --mode=threads: the third command line argument or "threads=" in the
+     * config file (default 50).
+     * @return
+    */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * getDrainTimeoutMillis()
+     * How long shutting down waits for responses in progress to finish before closing
+     * whatever connections are left.
+     * @return
+    */
+    public int getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * getConfigFile()
+     * The file given with --config, or "" for none.
+     * @return
+    */
+    public String getConfigFile() {
+        return configFile;
+    }
+
+    /**
+     * getAcceptors()
+     * How many threads accept connections, each on its own SO_REUSEPORT listening socket
+     * where the OS has it (see Listeners).
+     * @return
+    */
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * getBacklog()
+     * How many finished handshakes the kernel queues for accept() per listening socket
+     * (Linux caps it at net.core.somaxconn).
+     * @return
+    */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * getSendBuffer()
+     * SO_SNDBUF for accepted connections in bytes, 0 = leave it to the OS.
+     * @return
+    */
+    public int getSendBuffer() {
+        return sendBuffer;
+    }
+
+    /**
+     * getReceiveBuffer()
+     * SO_RCVBUF in bytes, 0 = leave it to the OS. Set on the listening socket so accepted
+     * connections start with it (the TCP window scale is agreed during the handshake).
+     * @return
+    */
+    public int getReceiveBuffer() {
+        return receiveBuffer;
+    }
+
+    /**
+     * isSoKeepAlive()
+     * SO_KEEPALIVE: TCP probes that notice clients which vanished without closing. Not the
+     * same thing as HTTP keep-alive.
+     * @return
+    */
+    public boolean isSoKeepAlive() {
+        return soKeepAlive;
+    }
+
+    /**
+     * getTlsPort()
+     * The port HTTPS is served on (see TlsSocket), next to the plain port. 0 = no HTTPS.
+     * @return
+    */
+    public int getTlsPort() {
+        return tlsPort;
+    }
+
+    /**
+     * getKeystore()
+     * The PKCS12 (or .jks) file holding the server's certificate and private key.
+     * @return
+    */
+    public String getKeystore() {
+        return keystore;
+    }
+
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    /**
+     * getTlsSessionCache()
+     * TLS sessions remembered for session-ID resumption, 0 = no limit.
+     * @return
+    */
+    public int getTlsSessionCache() {
+        return tlsSessionCache;
+    }
+
+    /**
+     * getTlsSessionTimeout()
+     * Seconds a TLS session (cached or in a ticket) can be resumed for.
+     * @return
+    */
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    /**
+     * isTlsTickets()
+     * Whether clients get session tickets, which let them resume without the server keeping
+     * their session.
+     * @return
+    */
+    public boolean isTlsTickets() {
+        return tlsTickets;
+    }
+
+    /**
+     * getQueueSize()
+     * Most accepted connections that can wait for a pool thread; past that they get a 503
+     * right away. 0 = no limit.
+     * @return
+    */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * getQueueTargetMillis()
+     * The wait in the pool's queue that CoDel accepts; 0 turns CoDel off.
+     * @return
+    */
+    public int getQueueTargetMillis() {
+        return queueTargetMillis;
+    }
+
+    /**
+     * getQueueIntervalMillis()
+     * How long waits must stay above the target before CoDel starts shedding.
+     * @return
+    */
+    public int getQueueIntervalMillis() {
+        return queueIntervalMillis;
+    }
+
+    /**
+     * getRateLimit()
+     * Requests per second allowed from one IP address, 0 = no limit.
+     * @return
+    */
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * getRateBurst()
+     * How many requests an IP address can send at once above the rate.
+     * @return
+    */
+    public int getRateBurst() {
+        return rateBurst;
+    }
+
+    /**
+     * getMaxConnectionsPerIp()
+     * Connections one IP address may have open at once, 0 = no limit.
+     * @return
+    */
+    public int getMaxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+
+    /**
+     * getProxy()
+     * The --proxy routes, "prefix=host:port[,host:port]" separated by ';' (see ReverseProxy),
+     * empty when nothing is proxied.
+     * @return
+    */
+    public String getProxy() {
+        return proxy;
+    }
+
+    /**
+     * getProxyConnectTimeoutMillis()
+     * How long connecting to a backend may take before that try fails.
+     * @return
+    */
+    public int getProxyConnectTimeoutMillis() {
+        return proxyConnectTimeoutMillis;
+    }
+
+    /**
+     * getProxyReadTimeoutMillis()
+     * How long a backend may go quiet, before its answer starts or in the middle of it.
+     * @return
+    */
+    public int getProxyReadTimeoutMillis() {
+        return proxyReadTimeoutMillis;
+    }
+
+    /**
+     * getProxyRetries()
+     * Extra tries a proxied request gets when a backend can't be reached (only idempotent
+     * requests once they have been sent).
+     * @return
+    */
+    public int getProxyRetries() {
+        return proxyRetries;
+    }
+
+    /**
+     * getProxyPoolSize()
+     * Idle kept-alive connections kept per backend, 0 = a new connection for every request.
+     * @return
+    */
+    public int getProxyPoolSize() {
+        return proxyPoolSize;
+    }
+
+    /**
+     * getProxyIdleTimeoutMillis()
+     * How long a pooled backend connection may sit idle and still be used again.
+     * @return
+    */
+    public int getProxyIdleTimeoutMillis() {
+        return proxyIdleTimeoutMillis;
+    }
+
+    /**
+     * getProxyHealthIntervalMillis()
+     * Time between health checks of every backend, 0 = no checks.
+     * @return
+    */
+    public int getProxyHealthIntervalMillis() {
+        return proxyHealthIntervalMillis;
+    }
+
+    public String getProxyHealthPath() {
+        return proxyHealthPath;
+    }
+
+    /**
+     * isAutoindex()
+     * Whether a directory without index.html gets a listing of its files instead of a 404.
+     * @return
+    */
+    public boolean isAutoindex() {
+        return autoindex;
+    }
+
+    /**
+     * getAutoindexPageSize()
+     * Entries on one page of a directory listing, 0 = all of them on one page.
+     * @return
+    */
+    public int getAutoindexPageSize() {
+        return autoindexPageSize;
+    }
+
+    /**
+     * getAutoindexCacheBytes()
+     * Memory for rendered directory listings, 0 = render every time.
+     * @return
+    */
+    public long getAutoindexCacheBytes() {
+        return autoindexCacheBytes;
+    }
+
+    /**
+     * getUploadDir()
+     * The URL path (ending in /) under which PUT and POST store files, "" = no uploads.
+     * @return
+    */
+    public String getUploadDir() {
+        return uploadDir;
+    }
+
+    /**
+     * getMaxBodyBytes()
+     * The biggest request body accepted, 0 = no limit.
+     * @return
+    */
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * getCorsOrigins()
+     * Origins other sites' pages may call this server from ("*" for any), "" = none.
+     * @return
+    */
+    public String getCorsOrigins() {
+        return corsOrigins;
+    }
+
+    /**
+     * needsRestart()
+     * The settings that differ in next but can only take effect when the server starts: the
+     * server mode and its threads of its own, the connection limit, the access log,
+     * preloading, the listening sockets and TLS. Used by a reload to say what it left alone.
+     * @param next
+     * @return
+    */
+    List<String> needsRestart(ServerConfig next) {
+        List<String> names = new ArrayList<>();
+        if (!mode.equals(next.mode)) {
+            names.add("mode");
+        }
+        if (eventLoops != next.eventLoops) {
+            names.add("event-loops");
+        }
+        if (maxConnections != next.maxConnections) {
+            names.add("max-connections");
+        }
+        if (!accessLog.equals(next.accessLog) || !accessLogFormat.equals(next.accessLogFormat)
+                || accessLogBuffer != next.accessLogBuffer || accessLogBlockWhenFull != next.accessLogBlockWhenFull
+                || accessLogRotateBytes != next.accessLogRotateBytes) {
+            names.add("access-log");
+        }
+        if (preload != next.preload || mmapBytes != next.mmapBytes) {
+            names.add("preload");
+        }
+        if (queueSize != next.queueSize) {
+            names.add("queue-size");
+        }
+        if (tlsPort != next.tlsPort || !keystore.equals(next.keystore) || !keystorePassword.equals(next.keystorePassword)
+                || tlsSessionCache != next.tlsSessionCache || tlsSessionTimeout != next.tlsSessionTimeout
+                || tlsTickets != next.tlsTickets) {
+            names.add("tls");
+        }
+        if (acceptors != next.acceptors || backlog != next.backlog || receiveBuffer != next.receiveBuffer) {
+            names.add("listening sockets (acceptors, backlog, receive-buffer)");
+        }
+        return names;
+    }
+
+    /**
+     * apply()
+     * Sets one option by name. Throws if the name is unknown or the value isn't valid
+     * so that typos on the command line don't get silently ignored.
+     * References:
+     * https://www.w3schools.com/java/java_switch.asp
+     * @param name
+     * @param value
+    */
+    void apply(String name, String value) {
+        switch (name) {
+            case "idle-timeout":
+                idleTimeoutMillis = parseNonNegative(name, value);
+                break;
+            case "max-requests":
+                maxRequestsPerConnection = parseNonNegative(name, value);
+                break;
+            case "mode":
+                if (!value.equals("threads") && !value.equals("virtual") && !value.equals("nio")) {
+                    throw new IllegalArgumentException("Invalid value for --mode (threads, virtual or nio): " + value);
+                }
+                mode = value;
+                break;
+            case "event-loops":
+                eventLoops = Math.max(1, parseNonNegative(name, value));
+                break;
+            case "max-connections":
+                maxConnections = parseNonNegative(name, value);
+                break;
+            case "zero-copy-threshold":
+                zeroCopyThreshold = parseNonNegative(name, value);
+                break;
+            case "cache-bytes":
+                cacheBytes = parseNonNegative(name, value);
+                break;
+            case "cache-max-file":
+                cacheMaxFileBytes = parseNonNegative(name, value);
+                break;
+            case "cache-control":
+                cachePolicy = CachePolicy.parse(value);
+                break;
+            case "mime-types":
+                mimeTypes = value.isEmpty() ? MimeTypes.DEFAULT : MimeTypes.load(new File(value));
+                break;
+            case "max-request-line":
+                maxRequestLine = Math.max(64, parseNonNegative(name, value));
+                break;
+            case "metrics-path":
+                if (!value.isEmpty() && !value.startsWith("/")) {
+                    throw new IllegalArgumentException("--metrics-path must start with / (or be empty to turn it off): " + value);
+                }
+                metricsPath = value;
+                break;
+            case "max-header-bytes":
+                maxHeaderBytes = Math.max(256, parseNonNegative(name, value));
+                break;
+            case "access-log":
+                accessLog = value;
+                break;
+            case "access-log-format":
+                if (!value.equals("common") && !value.equals("combined")) {
+                    throw new IllegalArgumentException("Invalid value for --access-log-format (common or combined): " + value);
+                }
+                accessLogFormat = value;
+                break;
+            case "access-log-buffer":
+                accessLogBuffer = Math.max(2, parseNonNegative(name, value));
+                break;
+            case "access-log-when-full":
+                if (!value.equals("drop") && !value.equals("block")) {
+                    throw new IllegalArgumentException("Invalid value for --access-log-when-full (drop or block): " + value);
+                }
+                accessLogBlockWhenFull = value.equals("block");
+                break;
+            case "access-log-rotate-bytes":
+                accessLogRotateBytes = parseNonNegative(name, value);
+                break;
+            case "path-cache-entries":
+                pathCacheEntries = parseNonNegative(name, value);
+                break;
+            case "preload":
+                preload = parseBoolean(name, value);
+                break;
+            case "mmap-bytes":
+                mmapBytes = parseNonNegative(name, value);
+                break;
+            case "docroot":
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("--docroot can't be empty");
+                }
+                docRoot = value;
+                break;
+            case "threads":
+                threads = parseNonNegative(name, value);
+                if (threads == 0) {
+                    throw new IllegalArgumentException("--threads must be at least 1");
+                }
+                break;
+            case "drain-timeout":
+                drainTimeoutMillis = parseNonNegative(name, value);
+                break;
+            case "config":
+                configFile = value; // read by fromArgs() before the other options
+                break;
+            case "http2":
+                http2 = parseBoolean(name, value);
+                break;
+            case "acceptors":
+                acceptors = parseNonNegative(name, value);
+                if (acceptors == 0) {
+                    throw new IllegalArgumentException("--acceptors must be at least 1");
+                }
+                break;
+            case "backlog":
+                backlog = parseNonNegative(name, value);
+                break;
+            case "tcp-nodelay":
+                tcpNoDelay = parseBoolean(name, value);
+                break;
+            case "send-buffer":
+                sendBuffer = parseNonNegative(name, value);
+                break;
+            case "receive-buffer":
+                receiveBuffer = parseNonNegative(name, value);
+                break;
+            case "so-keepalive":
+                soKeepAlive = parseBoolean(name, value);
+                break;
+            case "queue-size":
+                queueSize = parseNonNegative(name, value);
+                break;
+            case "queue-target":
+                queueTargetMillis = parseNonNegative(name, value);
+                break;
+            case "queue-interval":
+                queueIntervalMillis = parseNonNegative(name, value);
+                if (queueIntervalMillis == 0) {
+                    throw new IllegalArgumentException("--queue-interval must be at least 1");
+                }
+                break;
+            case "rate-limit":
+                rateLimit = parseNonNegative(name, value);
+                break;
+            case "rate-burst":
+                rateBurst = parseNonNegative(name, value);
+                break;
+            case "max-connections-per-ip":
+                maxConnectionsPerIp = parseNonNegative(name, value);
+                break;
+            case "tls-port":
+                tlsPort = parseNonNegative(name, value);
+                if (tlsPort > 65535) {
+                    throw new IllegalArgumentException("Invalid value for --tls-port: " + value);
+                }
+                break;
+            case "keystore":
+                keystore = value;
+                break;
+            case "keystore-password":
+                keystorePassword = value;
+                break;
+            case "tls-session-cache":
+                tlsSessionCache = parseNonNegative(name, value);
+                break;
+            case "tls-session-timeout":
+                tlsSessionTimeout = parseNonNegative(name, value);
+                break;
+            case "tls-tickets":
+                tlsTickets = parseBoolean(name, value);
+                break;
+            case "proxy":
+                ReverseProxy.parseRoutes(value); // only to check it
+                proxy = value.trim();
+                break;
+            case "proxy-connect-timeout":
+                proxyConnectTimeoutMillis = parseNonNegative(name, value);
+                break;
+            case "proxy-read-timeout":
+                proxyReadTimeoutMillis = parseNonNegative(name, value);
+                break;
+            case "proxy-retries":
+                proxyRetries = parseNonNegative(name, value);
+                break;
+            case "proxy-pool-size":
+                proxyPoolSize = parseNonNegative(name, value);
+                break;
+            case "proxy-idle-timeout":
+                proxyIdleTimeoutMillis = parseNonNegative(name, value);
+                break;
+            case "proxy-health-interval":
+                proxyHealthIntervalMillis = parseNonNegative(name, value);
+                break;
+            case "proxy-health-path":
+                if (!value.startsWith("/")) {
+                    throw new IllegalArgumentException("--proxy-health-path must start with /: " + value);
+                }
+                proxyHealthPath = value;
+                break;
+            case "autoindex":
+                autoindex = parseBoolean(name, value);
+                break;
+            case "autoindex-page-size":
+                autoindexPageSize = parseNonNegative(name, value);
+                break;
+            case "autoindex-cache-bytes":
+                autoindexCacheBytes = parseNonNegative(name, value);
+                break;
+            case "upload-dir":
+                if (!value.isEmpty() && !value.startsWith("/")) {
+                    throw new IllegalArgumentException("--upload-dir must start with /: " + value);
+                }
+                uploadDir = value.isEmpty() || value.endsWith("/") ? value : value + "/";
+                break;
+            case "max-body-bytes":
+                maxBodyBytes = parseNonNegative(name, value);
+                break;
+            case "cors-origins":
+                corsOrigins = value.trim();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    /**
+     * parseNonNegative()
+     * Parses a whole number option, rejecting anything below zero.
+     * @param name
+     * @param value
+     * @return
+    */
+    private static int parseNonNegative(String name, String value) {
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n < 0) {
+                throw new NumberFormatException();
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+        }
+    }
+
+    /**
+     * parseBoolean()
+     * Parses a true/false option; anything else is an error rather than quietly false.
+     * @param name
+     * @param value
+     * @return
+    */
+    private static boolean parseBoolean(String name, String value) {
+        if (!value.equals("true") && !value.equals("false")) {
+            throw new IllegalArgumentException("Invalid value for --" + name + " (true or false): " + value);
+        }
+        return value.equals("true");
+    }
+
+    /**
+     * fromArgs()
+     * Builds a config from the command line. Every argument that isn't a "--name=value" option
+     * is copied into positional (in order) so main() can keep reading the port the same way it
+     * always has; the doc root and thread count are taken from the second and third ones. Then
+     * the --config file is read, if there is one, and finally the other options are applied,
+     * so the order is: defaults, positional arguments, config file, options. A reload runs this
+     * again with the same arguments.
+     * References:
+     * https://www.w3schools.com/java/ref_string_startswith.asp
+     * @param args
+     * @param positional
+     * @return
+    */
+    public static ServerConfig fromArgs(String[] args, List<String> positional) {
+        ServerConfig config = new ServerConfig();
+        List<String[]> options = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Options must look like --name=value: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            if (name.equals("config")) {
+                config.apply(name, value);
+            } else {
+                options.add(new String[] { name, value });
+            }
+        }
+        if (positional.size() >= 2) {
+            config.docRoot = positional.get(1);
+        }
+        if (positional.size() >= 3) {
+            try {
+                int n = Integer.parseInt(positional.get(2));
+                if (n > 0) {
+                    config.threads = n; // anything else keeps the default, as it always has
+                }
+            } catch (NumberFormatException ignored) {}
+        }
+        if (!config.configFile.isEmpty()) {
+            config.loadFile(new File(config.configFile));
+        }
+        for (String[] option : options) {
+            config.apply(option[0], option[1]);
+        }
+        return config;
+    }
+
+    /**
+     * loadFile()
+     * Applies a config file: one "name=value" per line, with the same names as the command
+     * line options (a leading "--" is allowed), blank lines and lines starting with # skipped.
+     * Errors name the file and line.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Files.html#readAllLines-java.nio.file.Path-java.nio.charset.Charset-
+     * @param file
+    */
+    private void loadFile(File file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read config file " + file + ": " + e.getMessage());
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("--")) {
+                line = line.substring(2);
+            }
+            int eq = line.indexOf('=');
+            String where = file + " line " + (i + 1) + ": ";
+            if (eq < 0) {
+                throw new IllegalArgumentException(where + "expected name=value: " + line);
+            }
+            String name = line.substring(0, eq).trim();
+            if (name.equals("config")) {
+                throw new IllegalArgumentException(where + "a config file can't name another one");
+            }
+            try {
+                apply(name, line.substring(eq + 1).trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(where + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * fromArgs()
+     * Same as above for callers that only want the options.
+     * @param args
+     * @return
+    */
+    public static ServerConfig fromArgs(String[] args) {
+        return fromArgs(args, new ArrayList<>());
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Name: ServerContext
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Bundles the things every connection needs to share: the document root, the server name
+ *      sent in the Server header, the settings, the shared caches (files and paths), the header writer, the metrics,
+ *      the access log, the per-client limits, the reverse proxy's backends and the kept
+ *      directory listings.
+ *      MyHTTPServer builds one at startup and hands the same object to every HTTPHandler and
+ *      to NioServer, so a cache filled by one connection helps all the others.
+ *      reload() swaps in a new config (and new caches if the doc root moved) while connections
+ *      keep running: the caches and header writer are looked up per request, so a request uses
+ *      either the old ones or the new ones, and a connection keeps the limits it started with. startDraining() tells connections to finish what
+ *      they are doing and close instead of waiting for another request.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.w3schools.com/java/java_encapsulation.asp
+ */
+import java.io.File;
+import java.io.IOException;
+
+public class ServerContext {
+    private volatile File docRoot;
+    private final String serverName;
+    private volatile ServerConfig config;
+    private volatile FileCache fileCache;
+    private volatile PathCache pathCache;
+    private volatile HeaderWriter headerWriter;
+    private final Metrics metrics = new Metrics();
+    private final AccessLog accessLog;
+    private final ClientLimiter clientLimiter;
+    private final boolean nio; // the mode the server started in; a reload can't change it
+    private volatile ReverseProxy proxy; // null without --proxy routes, and in nio mode
+    private volatile DirectoryListing listings;
+    private volatile boolean draining;
+
+    /**
+     * ServerContext()
+     * Stores the shared pieces and sets up the file cache from the config's limits. Opens the
+     * access log if one was asked for; throws IllegalStateException if it can't be opened.
+     * @param docRoot
+     * @param serverName
+     * @param config
+    */
+    public ServerContext(File docRoot, String serverName, ServerConfig config) {
+        this.docRoot = docRoot;
+        this.serverName = serverName;
+        this.config = config;
+        this.fileCache = new FileCache(config.getCacheBytes(), config.getCacheMaxFileBytes(), config.getMmapBytes());
+        this.pathCache = new PathCache(docRoot, config.getPathCacheEntries(), fileCache, config.getMimeTypes());
+        this.headerWriter = new HeaderWriter(serverName, config.getIdleTimeoutMillis());
+        this.clientLimiter = new ClientLimiter(config);
+        this.nio = "nio".equals(config.getMode());
+        this.proxy = newProxy(config);
+        this.listings = new DirectoryListing(config.getAutoindexCacheBytes());
+        // Lambdas rather than method references so the gauges follow the caches across a reload
+        metrics.gauge("http_cache_bytes", "Bytes of file bodies held in FileCache.", () -> this.fileCache.getTotalBytes());
+        metrics.gauge("http_cache_mapped_bytes", "Bytes of files memory-mapped by preloading.", () -> this.fileCache.getMappedBytes());
+        metrics.gauge("http_path_cache_entries", "URL paths remembered by PathCache.", () -> this.pathCache.size());
+        metrics.functionCounter("http_path_cache_hits_total", "Requests whose path PathCache already knew.", () -> this.pathCache.getHits());
+        metrics.functionCounter("http_path_cache_misses_total", "Requests whose path had to be looked up on disk.", () -> this.pathCache.getMisses());
+        metrics.gauge("http_proxy_idle_connections", "Kept-alive backend connections waiting in the proxy's pools.", () -> {
+            ReverseProxy p = this.proxy;
+            return p != null ? p.getIdleConnections() : 0;
+        });
+        metrics.gauge("http_autoindex_cache_bytes", "Bytes of rendered directory listings kept in memory.", () -> this.listings.getBytes());
+        if (config.getAccessLog().isEmpty()) {
+            this.accessLog = null;
+        } else {
+            try {
+                this.accessLog = new AccessLog(new File(config.getAccessLog()), config.getAccessLogFormat(),
+                        config.getAccessLogBuffer(), config.isAccessLogBlockWhenFull(), config.getAccessLogRotateBytes());
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't open access log " + config.getAccessLog() + ": " + e.getMessage());
+            }
+            metrics.functionCounter("http_access_log_dropped_total", "Access log entries dropped because the log buffer was full.", accessLog::getDropped);
+            metrics.functionCounter("http_access_log_written_total", "Access log entries written.", accessLog::getWritten);
+        }
+    }
+
+    /**
+     * newProxy()
+     * The reverse proxy for the config's --proxy routes, or null if there are none. NioServer
+     * can't wait on a backend without stopping its event loop, so nio mode has none (MyHTTPServer
+     * refuses to start that way).
+     * @param config
+     * @return
+    */
+    private ReverseProxy newProxy(ServerConfig config) {
+        return config.getProxy().isEmpty() || nio ? null : new ReverseProxy(config);
+    }
+
+    /**
+     * proxyChanged()
+     * Whether the proxy has to be rebuilt for next: its routes, pools or health checks differ.
+     * Timeouts and retries are read per request and need nothing.
+     * @param old
+     * @param next
+     * @return
+    */
+    private static boolean proxyChanged(ServerConfig old, ServerConfig next) {
+        return !old.getProxy().equals(next.getProxy()) || old.getProxyPoolSize() != next.getProxyPoolSize()
+                || old.getProxyIdleTimeoutMillis() != next.getProxyIdleTimeoutMillis()
+                || old.getProxyHealthIntervalMillis() != next.getProxyHealthIntervalMillis()
+                || !old.getProxyHealthPath().equals(next.getProxyHealthPath());
+    }
+
+    /**
+     * reload()
+     * Switches to a new config. A different doc root, path cache size or MIME type table gets
+     * fresh caches (both caches hold the Content-Type they worked out; the old path cache stops
+     * watching and its hit counts start over), new file cache limits are
+     * applied to the cache in place, and the header writer is rebuilt for the new idle timeout.
+     * New proxy routes or pool settings get a new ReverseProxy; the old one's idle connections
+     * are closed, and responses it is still streaming finish first. A new size for the kept
+     * directory listings starts them over.
+     * Settings that only matter at startup (see ServerConfig.needsRestart()) are ignored here.
+     * @param next
+     * @param nextDocRoot
+    */
+    void reload(ServerConfig next, File nextDocRoot) {
+        ServerConfig old = config;
+        PathCache oldPaths = pathCache;
+        if (!nextDocRoot.equals(docRoot) || next.getPathCacheEntries() != old.getPathCacheEntries()
+                || !next.getMimeTypes().sameAs(old.getMimeTypes())) {
+            FileCache files = new FileCache(next.getCacheBytes(), next.getCacheMaxFileBytes(), next.getMmapBytes());
+            PathCache paths = new PathCache(nextDocRoot, next.getPathCacheEntries(), files, next.getMimeTypes());
+            fileCache = files;
+            pathCache = paths;
+            docRoot = nextDocRoot;
+            oldPaths.close();
+        } else if (next.getCacheBytes() != old.getCacheBytes() || next.getCacheMaxFileBytes() != old.getCacheMaxFileBytes()) {
+            fileCache.setLimits(next.getCacheBytes(), next.getCacheMaxFileBytes());
+        }
+        headerWriter = new HeaderWriter(serverName, next.getIdleTimeoutMillis());
+        clientLimiter.setLimits(next);
+        if (proxyChanged(old, next)) {
+            ReverseProxy oldProxy = proxy;
+            proxy = newProxy(next);
+            if (oldProxy != null) {
+                oldProxy.close();
+            }
+        }
+        if (next.getAutoindexCacheBytes() != old.getAutoindexCacheBytes()) {
+            listings = new DirectoryListing(next.getAutoindexCacheBytes());
+        }
+        config = next;
+        metrics.configReloads.increment();
+    }
+
+    /**
+     * startDraining()
+     * From now on every connection closes after the response it is working on (HTTP/2
+     * connections send GOAWAY), so a shutdown can wait for them to finish.
+    */
+    void startDraining() {
+        draining = true;
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * close()
+     * The last step of shutting down: writes out what is left in the access log, stops
+     * watching the doc root and closes the proxy's backend connections.
+    */
+    void close() {
+        if (accessLog != null) {
+            accessLog.close();
+        }
+        pathCache.close();
+        if (proxy != null) {
+            proxy.close();
+        }
+    }
+
+    public File getDocRoot() {
+        return docRoot;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    public FileCache getFileCache() {
+        return fileCache;
+    }
+
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    public HeaderWriter getHeaderWriter() {
+        return headerWriter;
+    }
+
+    /**
+     * getClientLimiter()
+     * The per-IP connection and request rate limits.
+     * @return
+    */
+    public ClientLimiter getClientLimiter() {
+        return clientLimiter;
+    }
+
+    /**
+     * getProxy()
+     * The reverse proxy, or null when no path is proxied.
+     * @return
+    */
+    public ReverseProxy getProxy() {
+        return proxy;
+    }
+
+    /**
+     * getListings()
+     * The --autoindex directory listings and the pages kept of them.
+     * @return
+    */
+    public DirectoryListing getListings() {
+        return listings;
+    }
+
+    /**
+     * isNio()
+     * Whether the server runs --mode=nio, whose event loops can only write whole bodies.
+     * @return
+    */
+    public boolean isNio() {
+        return nio;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * getAccessLog()
+     * The access log, or null when --access-log isn't set.
+     * @return
+    */
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
+}
@@ -0,0 +1,681 @@
+/**
+ * Name: TlsSocket
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: HTTPS for the --tls-port connections, done with an SSLEngine over the accepted socket.
+ *      It is a Socket, so HTTPHandler and Http2Connection use it exactly like a plain one: its
+ *      streams decrypt what is read and encrypt what is written, and getChannel() returns null
+ *      so the zero-copy paths (which would put plain file bytes on the wire) are skipped.
+ *      The handshake runs on the connection's own thread the first time it reads or writes,
+ *      and answers with ALPN, so browsers that offer "h2" go straight to HTTP/2.
+ *      Writes are gathered into whole 16 KB records, and several records go to the socket in
+ *      one write, so a big file costs one encryption per record rather than one per write().
+ *      The buffers a connection needs (about 100 KB) come from a pool and go back to it when
+ *      the connection closes; encrypted records are written from a direct buffer, so the
+ *      socket doesn't copy them again.
+ *      Returning clients skip the full handshake: the SSLContext keeps a session cache
+ *      (--tls-session-cache, --tls-session-timeout) for session-ID resumption, and session
+ *      tickets (--tls-tickets) let a client resume from a ticket the server doesn't store.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/en/java/javase/17/security/java-secure-socket-extension-jsse-reference-guide.html
+ * https://docs.oracle.com/javase/8/docs/api/javax/net/ssl/SSLEngine.html
+ * https://www.rfc-editor.org/rfc/rfc8446
+ * https://www.rfc-editor.org/rfc/rfc5077
+ * https://www.rfc-editor.org/rfc/rfc7301
+ */
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+public class TlsSocket extends Socket {
+    /** Largest plaintext in one TLS record. */
+    private static final int RECORD_BYTES = 16 * 1024;
+    /** Encrypted records gathered before one write to the socket. */
+    private static final int RECORDS_PER_WRITE = 4;
+    /** Idle buffer sets kept for the next connections; past this they are left to the GC. */
+    private static final int MAX_POOLED = 256;
+
+    private static final Queue<Buffers> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Socket raw;
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final Metrics metrics;
+    private final InputStream rawIn;
+    private final ReentrantLock readLock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock handshakeLock = new ReentrantLock();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final InputStream in = new TlsInputStream();
+    private final OutputStream out = new TlsOutputStream();
+    private Buffers buffers;
+    private volatile boolean handshakeDone;
+
+    /**
+     * TlsSocket()
+     * Wraps an accepted connection in a server-side engine from sslContext. Nothing is sent or
+     * read until the connection is first used.
+     * References:
+     * https://docs.oracle.com/javase/9/docs/api/javax/net/ssl/SSLParameters.html#setApplicationProtocols-java.lang.String:A-
+     * @param raw
+     * @param sslContext
+     * @param http2 offer "h2" in ALPN
+     * @param metrics
+     * @throws IOException
+    */
+    public TlsSocket(Socket raw, SSLContext sslContext, boolean http2, Metrics metrics) throws IOException {
+        this.raw = raw;
+        this.channel = raw.getChannel();
+        this.metrics = metrics;
+        this.rawIn = raw.getInputStream(); // the socket's stream, not the channel, so SO_TIMEOUT applies
+        this.engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        SSLParameters params = engine.getSSLParameters();
+        params.setApplicationProtocols(http2 ? new String[] { "h2", "http/1.1" } : new String[] { "http/1.1" });
+        params.setUseCipherSuitesOrder(true);
+        engine.setSSLParameters(params);
+        this.buffers = Buffers.take(engine.getSession());
+    }
+
+    /**
+     * newContext()
+     * Builds the server's SSLContext from --keystore (PKCS12 or JKS) and sets up resumption:
+     * the session cache size and lifetime, and whether session tickets are used (a JSSE
+     * system property, so it is set before the first engine is made).
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/javax/net/ssl/SSLSessionContext.html
+     * https://docs.oracle.com/en/java/javase/17/security/java-secure-socket-extension-jsse-reference-guide.html
+     * @param config
+     * @return
+    */
+    static SSLContext newContext(ServerConfig config) {
+        if (config.getKeystore().isEmpty()) {
+            throw new IllegalStateException("--tls-port needs --keystore=<file>");
+        }
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", Boolean.toString(config.isTlsTickets()));
+        char[] password = config.getKeystorePassword().toCharArray();
+        try (InputStream file = new FileInputStream(new File(config.getKeystore()))) {
+            KeyStore keys = KeyStore.getInstance(config.getKeystore().endsWith(".jks") ? "JKS" : "PKCS12");
+            keys.load(file, password);
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keys, password);
+            SSLContext ssl = SSLContext.getInstance("TLS");
+            ssl.init(kmf.getKeyManagers(), null, null);
+            SSLSessionContext sessions = ssl.getServerSessionContext();
+            sessions.setSessionCacheSize(config.getTlsSessionCache());
+            sessions.setSessionTimeout(config.getTlsSessionTimeout());
+            return ssl;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Can't load keystore " + config.getKeystore() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * handshake()
+     * Runs the TLS handshake to the end the first time either side is used: unwraps what
+     * the client sends, wraps and sends our replies, and runs the engine's slow tasks
+     * (certificate signing, key exchange) on this thread. Counts it, and whether it was a
+     * resumption (a session that was made before this handshake began).
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/javax/net/ssl/SSLEngineResult.HandshakeStatus.html
+     * @throws IOException
+    */
+    private void handshake() throws IOException {
+        if (handshakeDone) {
+            return;
+        }
+        handshakeLock.lock();
+        readLock.lock();
+        writeLock.lock();
+        try {
+            if (handshakeDone) {
+                return;
+            }
+            checkOpen();
+            long startMillis = System.currentTimeMillis();
+            long t0 = System.nanoTime();
+            engine.beginHandshake();
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            while (status != SSLEngineResult.HandshakeStatus.FINISHED
+                    && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                switch (status) {
+                    case NEED_UNWRAP:
+                    case NEED_UNWRAP_AGAIN:
+                        SSLEngineResult r = unwrap();
+                        if (r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            if (!readMore()) {
+                                throw new EOFException("Connection closed during the TLS handshake");
+                            }
+                        } else if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new SSLException("Client closed the connection during the TLS handshake");
+                        }
+                        status = r.getHandshakeStatus();
+                        break;
+                    case NEED_WRAP:
+                        // a flight of several messages is gathered and sent in one write
+                        SSLEngineResult w = wrap(EMPTY);
+                        status = w.getHandshakeStatus();
+                        if (w.getStatus() != SSLEngineResult.Status.OK || status != SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                            sendWrapped();
+                        }
+                        if (w.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new SSLException("TLS handshake failed");
+                        }
+                        break;
+                    case NEED_TASK:
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                        status = engine.getHandshakeStatus();
+                        break;
+                    default:
+                        throw new SSLException("Unexpected TLS handshake state " + status);
+                }
+            }
+            handshakeDone = true;
+            metrics.tlsHandshakeTime.record(System.nanoTime() - t0);
+            SSLSession session = engine.getSession();
+            if (session.getCreationTime() < startMillis) {
+                metrics.tlsResumed.increment();
+            } else {
+                metrics.tlsFullHandshakes.increment();
+            }
+        } catch (SSLException e) {
+            metrics.tlsFailures.increment();
+            sendAlert();
+            throw e;
+        } finally {
+            writeLock.unlock();
+            readLock.unlock();
+            handshakeLock.unlock();
+        }
+    }
+
+    /**
+     * unwrap()
+     * Decrypts the next record in netIn into appIn (both kept ready for reading), growing
+     * appIn if the engine asks for more room. Caller holds readLock.
+     * @return
+     * @throws SSLException
+    */
+    private SSLEngineResult unwrap() throws SSLException {
+        Buffers b = buffers;
+        while (true) {
+            b.appIn.compact();
+            SSLEngineResult r;
+            try {
+                r = engine.unwrap(b.netIn, b.appIn);
+            } finally {
+                b.appIn.flip();
+            }
+            if (r.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return r;
+            }
+            b.appIn = grow(b.appIn, engine.getSession().getApplicationBufferSize(), false);
+        }
+    }
+
+    /**
+     * wrap()
+     * Encrypts as much of src as fits into netOut (filling it with records), growing netOut
+     * if not even one record fits. Caller holds writeLock.
+     * @param src
+     * @return
+     * @throws SSLException
+    */
+    private SSLEngineResult wrap(ByteBuffer src) throws SSLException {
+        Buffers b = buffers;
+        while (true) {
+            SSLEngineResult r = engine.wrap(src, b.netOut);
+            if (r.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return r;
+            }
+            if (b.netOut.position() > 0) {
+                return r; // full of records already; the caller sends them and comes back
+            }
+            b.netOut = grow(b.netOut, engine.getSession().getPacketBufferSize(), true);
+        }
+    }
+
+    /**
+     * sendWrapped()
+     * Writes everything gathered in netOut to the socket. Caller holds writeLock.
+     * @throws IOException
+    */
+    private void sendWrapped() throws IOException {
+        ByteBuffer netOut = buffers.netOut;
+        netOut.flip();
+        try {
+            while (netOut.hasRemaining()) {
+                channel.write(netOut);
+            }
+        } finally {
+            netOut.clear();
+        }
+    }
+
+    /**
+     * readMore()
+     * Reads more encrypted bytes from the socket onto the end of netIn. Blocks, up to the
+     * socket's SO_TIMEOUT. Returns false at the end of the stream. Caller holds readLock.
+     * @return
+     * @throws IOException
+    */
+    private boolean readMore() throws IOException {
+        Buffers b = buffers;
+        b.netIn.compact();
+        if (!b.netIn.hasRemaining()) {
+            b.netIn.flip();
+            b.netIn = grow(b.netIn, engine.getSession().getPacketBufferSize(), false);
+            b.netIn.compact();
+        }
+        int n;
+        try {
+            n = rawIn.read(b.netIn.array(), b.netIn.arrayOffset() + b.netIn.position(), b.netIn.remaining());
+            if (n > 0) {
+                b.netIn.position(b.netIn.position() + n);
+            }
+        } finally {
+            b.netIn.flip();
+        }
+        return n >= 0;
+    }
+
+    /**
+     * grow()
+     * A bigger copy of a buffer that is ready for reading.
+     * @param old
+     * @param atLeast
+     * @param direct
+     * @return
+    */
+    private static ByteBuffer grow(ByteBuffer old, int atLeast, boolean direct) {
+        int size = Math.max(atLeast, old.capacity() * 2);
+        ByteBuffer bigger = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        bigger.put(old);
+        if (!direct) {
+            bigger.flip();
+        }
+        return bigger;
+    }
+
+    /**
+     * replyIfNeeded()
+     * After an unwrap outside the handshake: sends what the engine wants sent (an answer to a
+     * key update or to the client's close_notify) and runs its tasks. Caller holds readLock.
+     * @param r
+     * @throws IOException
+    */
+    private void replyIfNeeded(SSLEngineResult r) throws IOException {
+        SSLEngineResult.HandshakeStatus status = r.getHandshakeStatus();
+        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            status = engine.getHandshakeStatus();
+        }
+        if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            writeLock.lock();
+            try {
+                wrap(EMPTY);
+                sendWrapped();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * sendAlert()
+     * After a failed handshake, sends the alert the engine has ready (so the client sees why
+     * rather than a reset), ignoring errors. Caller holds writeLock.
+    */
+    private void sendAlert() {
+        try {
+            engine.closeOutbound();
+            buffers.netOut.clear();
+            wrap(EMPTY);
+            sendWrapped();
+        } catch (IOException ignored) {
+            // the client may already be gone
+        }
+    }
+
+    private void checkOpen() throws SocketException {
+        if (closed.get()) {
+            throw new SocketException("Socket is closed");
+        }
+    }
+
+    /**
+     * getApplicationProtocol()
+     * What ALPN picked ("h2", "http/1.1"), or null before the handshake or if the client
+     * didn't ask.
+     * @return
+    */
+    String getApplicationProtocol() {
+        String p = engine.getApplicationProtocol();
+        return p == null || p.isEmpty() ? null : p;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /** No channel: writing to the real one would skip the encryption. */
+    @Override
+    public SocketChannel getChannel() {
+        return null;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return raw.getInetAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return raw.getPort();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return raw.getLocalPort();
+    }
+
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException {
+        raw.setSoTimeout(timeout);
+    }
+
+    @Override
+    public int getSoTimeout() throws SocketException {
+        return raw.getSoTimeout();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return raw.isConnected();
+    }
+
+    /** Ends a blocked read (used while draining); the read sees the end of the stream. */
+    @Override
+    public void shutdownInput() throws IOException {
+        raw.shutdownInput();
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        raw.shutdownOutput();
+    }
+
+    /**
+     * close()
+     * Sends close_notify if nothing else is writing, closes the socket (which ends any read
+     * still blocked on it), then puts the buffers back in the pool once no read or write can
+     * be using them.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc8446#section-6.1
+    */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (handshakeDone && writeLock.tryLock()) {
+            try {
+                engine.closeOutbound();
+                wrap(EMPTY);
+                sendWrapped();
+            } catch (IOException ignored) {
+                // the client may already be gone
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        try {
+            raw.close();
+        } finally {
+            readLock.lock();
+            writeLock.lock();
+            try {
+                Buffers.give(buffers);
+                buffers = null;
+            } finally {
+                writeLock.unlock();
+                readLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * TlsInputStream
+     * Hands out decrypted bytes, unwrapping more records as needed. A clean close_notify or
+     * the socket closing reads as the end of the stream.
+     */
+    private final class TlsInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            handshake();
+            readLock.lock();
+            try {
+                checkOpen();
+                Buffers bufs = buffers;
+                while (!bufs.appIn.hasRemaining()) {
+                    if (engine.isInboundDone()) {
+                        return -1;
+                    }
+                    SSLEngineResult r = bufs.netIn.hasRemaining() ? unwrap() : null;
+                    if (r == null || r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        if (!readMore()) {
+                            return -1;
+                        }
+                        continue;
+                    }
+                    replyIfNeeded(r);
+                    if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        return -1;
+                    }
+                }
+                int n = Math.min(len, bufs.appIn.remaining());
+                bufs.appIn.get(b, off, n);
+                return n;
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        /** Decrypted bytes waiting; records still encrypted in netIn aren't counted. */
+        @Override
+        public int available() {
+            Buffers bufs = buffers;
+            return bufs != null ? bufs.appIn.remaining() : 0;
+        }
+    }
+
+    /**
+     * TlsOutputStream
+     * Gathers plaintext into appOut and encrypts it a whole record at a time; flush() sends
+     * whatever is gathered.
+     */
+    private final class TlsOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            handshake();
+            writeLock.lock();
+            try {
+                checkOpen();
+                ByteBuffer appOut = buffers.appOut;
+                while (len > 0) {
+                    int n = Math.min(len, appOut.remaining());
+                    appOut.put(b, off, n);
+                    off += n;
+                    len -= n;
+                    if (!appOut.hasRemaining()) {
+                        encrypt(false);
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!handshakeDone) {
+                return; // nothing can have been written yet
+            }
+            writeLock.lock();
+            try {
+                checkOpen();
+                encrypt(true);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        /**
+         * encrypt()
+         * Wraps appOut into records in netOut, sending netOut each time it can't take another
+         * record. With all=false whatever doesn't make a whole record stays in appOut; with
+         * all=true everything goes out.
+         * @param all
+         * @throws IOException
+        */
+        private void encrypt(boolean all) throws IOException {
+            Buffers bufs = buffers;
+            ByteBuffer appOut = bufs.appOut;
+            appOut.flip();
+            try {
+                while (appOut.remaining() >= RECORD_BYTES || all && appOut.hasRemaining()) {
+                    SSLEngineResult r = wrap(appOut);
+                    if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SocketException("TLS connection closed");
+                    }
+                    if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        sendWrapped();
+                    }
+                }
+                if (all || bufs.netOut.remaining() < engine.getSession().getPacketBufferSize()) {
+                    sendWrapped();
+                }
+            } finally {
+                appOut.compact();
+            }
+        }
+    }
+
+    /**
+     * Buffers
+     * One connection's four buffers. netIn and appIn are heap buffers, kept ready for reading
+     * (netIn is filled through the socket's stream, which takes an array); appOut gathers
+     * plaintext; netOut is direct, so the encrypted records go to the socket without another
+     * copy.
+     */
+    private static final class Buffers {
+        ByteBuffer netIn;
+        ByteBuffer appIn;
+        ByteBuffer appOut;
+        ByteBuffer netOut;
+
+        /**
+         * take()
+         * A set from the pool, or a new one, big enough for session's record sizes.
+         * @param session
+         * @return
+        */
+        static Buffers take(SSLSession session) {
+            int packet = session.getPacketBufferSize();
+            int app = session.getApplicationBufferSize();
+            Buffers b = POOL.poll();
+            if (b != null) {
+                pooled.decrementAndGet();
+                if (b.netIn.capacity() >= packet && b.appIn.capacity() >= app) {
+                    return b;
+                }
+            }
+            b = new Buffers();
+            b.netIn = ByteBuffer.allocate(packet);
+            b.appIn = ByteBuffer.allocate(app);
+            b.appOut = ByteBuffer.allocate(RECORDS_PER_WRITE * RECORD_BYTES);
+            b.netOut = ByteBuffer.allocateDirect(RECORDS_PER_WRITE * packet);
+            b.netIn.flip();
+            b.appIn.flip();
+            return b;
+        }
+
+        /**
+         * give()
+         * Empties a set and puts it back for the next connection, unless the pool is full.
+         * @param b
+        */
+        static void give(Buffers b) {
+            if (b == null || pooled.incrementAndGet() > MAX_POOLED) {
+                pooled.decrementAndGet();
+                return;
+            }
+            b.netIn.clear().flip();
+            b.appIn.clear().flip();
+            b.appOut.clear();
+            b.netOut.clear();
+            POOL.offer(b);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * Name: Uploads
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: PUT and POST uploads into the --upload-dir part of the document root. PUT /uploads/a.txt
+ *      stores the body as that file (201 Created if it is new, 204 No Content if it replaced
+ *      one), POST does the same, and POST to a directory ("/uploads/") stores it under a new
+ *      name and says where in Location. Missing directories on the way are created.
+ *      The body goes from the socket to a hidden temp file next to the target through a
+ *      FileChannel, one fixed-size buffer at a time, so an upload takes the same memory
+ *      whatever its size. Only once it has all arrived is the temp file synced and renamed over
+ *      the target in one step, so a request for the file sees either the old one or the whole
+ *      new one, never half of it, and a failed upload leaves nothing behind. The file's
+ *      FileCache and PathCache entries are dropped right after.
+ *      --max-body-bytes is checked against Content-Length before anything is read (and before
+ *      "100 Continue"), and against the bytes that arrive for a chunked body.
+ *      HTTP/1.1 bodies come through RequestBody; Http2Connection feeds DATA frames to an
+ *      Upload itself, since its thread can't wait on one stream's body.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://www.rfc-editor.org/rfc/rfc9110#section-9.3.4
+ * https://www.rfc-editor.org/rfc/rfc9110#section-9.3.3
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/file/StandardCopyOption.html#ATOMIC_MOVE
+ */
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Uploads {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private Uploads() {}
+
+    /**
+     * accepts()
+     * Whether a request is an upload into the upload area (PUT or POST under --upload-dir,
+     * and not sent on by the reverse proxy).
+     * @param path the decoded URL path
+     * @param request
+     * @param context
+     * @return
+    */
+    static boolean accepts(String path, HTTPRequest request, ServerContext context) {
+        String method = request.getMethod();
+        String dir = context.getConfig().getUploadDir();
+        ReverseProxy proxy = context.getProxy();
+        return ("PUT".equalsIgnoreCase(method) || "POST".equalsIgnoreCase(method))
+                && !dir.isEmpty() && path.startsWith(dir) && (proxy == null || proxy.match(path) == null);
+    }
+
+    /**
+     * allow()
+     * The methods a path takes, for the Allow header of OPTIONS and 405.
+     * @param path
+     * @param context
+     * @return
+    */
+    static String allow(String path, ServerContext context) {
+        String dir = context.getConfig().getUploadDir();
+        return !dir.isEmpty() && (path.startsWith(dir) || path.equals("*")) ? "GET, HEAD, OPTIONS, PUT, POST" : "GET, HEAD, OPTIONS";
+    }
+
+    /**
+     * handle()
+     * Answers a PUT or POST on an HTTP/1.x connection: reads the body into a new Upload and
+     * commits it. A client that goes quiet gets a 408, a body over --max-body-bytes a 413, a
+     * broken chunked body a 400, and a disk error a 500; each closes the connection, since the
+     * rest of the body is still on it. A client that hangs up just ends the connection.
+     * @param path the decoded URL path
+     * @param request
+     * @param context
+     * @return
+     * @throws IOException when the connection fails
+    */
+    static HTTPResponse handle(String path, HTTPRequest request, ServerContext context) throws IOException {
+        InputStream body = request.getBody();
+        if (body == null && request.hasBody() && accepts(path, request, context)) {
+            return HTTPHandler.simpleResponse("501 Not Implemented", "text/plain",
+                    "Request bodies can't be read on this connection").closeConnection();
+        }
+        Upload upload = begin(path, request, context);
+        if (upload.refusal() != null) {
+            return upload.refusal();
+        }
+        try {
+            byte[] chunk = new byte[BUFFER_BYTES];
+            while (body != null) {
+                int n;
+                try {
+                    n = body.read(chunk);
+                } catch (SocketTimeoutException e) {
+                    return HTTPHandler.simpleResponse("408 Request Timeout", "text/plain", "The body stopped arriving")
+                            .closeConnection();
+                } catch (EOFException | SocketException e) {
+                    throw e; // the client is gone
+                } catch (IOException e) {
+                    return HTTPHandler.simpleResponse("400 Bad Request", "text/plain", "Malformed request body: " + e.getMessage())
+                            .closeConnection();
+                }
+                if (n < 0) {
+                    break;
+                }
+                try {
+                    upload.write(chunk, 0, n);
+                } catch (TooLarge e) {
+                    return tooLarge(context);
+                }
+            }
+            return upload.commit(context);
+        } catch (TooLarge e) {
+            return tooLarge(context);
+        } catch (IOException e) {
+            if (e instanceof EOFException || e instanceof SocketException) {
+                throw e;
+            }
+            System.err.println("Upload to " + path + " failed: " + e.getMessage());
+            return HTTPHandler.simpleResponse("500 Internal Server Error", "text/plain", "The upload couldn't be stored")
+                    .closeConnection();
+        } finally {
+            upload.abort(); // nothing left to do once committed
+        }
+    }
+
+    static HTTPResponse tooLarge(ServerContext context) {
+        return HTTPHandler.simpleResponse("413 Content Too Large", "text/plain",
+                "Request body larger than " + context.getConfig().getMaxBodyBytes() + " bytes").closeConnection();
+    }
+
+    /**
+     * begin()
+     * Checks an upload and opens its temp file. The Upload it returns carries a response
+     * instead when the upload is refused: 405 outside the upload area, 413 if Content-Length
+     * is already too big, 403 for hidden names or a path that leaves the upload area (through
+     * a symbolic link, say), 409 if the target is a directory or can't be created, 400 for a
+     * PUT to a directory.
+     * References:
+     * https://www.rfc-editor.org/rfc/rfc9110#section-15.5.6
+     * @param path the decoded URL path
+     * @param request
+     * @param context
+     * @return
+    */
+    static Upload begin(String path, HTTPRequest request, ServerContext context) {
+        ServerConfig config = context.getConfig();
+        if (!accepts(path, request, context)) {
+            return new Upload(HTTPHandler.simpleResponse("405 Method Not Allowed", "text/plain", "Method not allowed here")
+                    .header("Allow", allow(path, context)));
+        }
+        long max = config.getMaxBodyBytes();
+        String declared = request.getHeader("content-length");
+        if (max > 0 && declared != null && RequestBody.parseLength(declared) > max) {
+            return new Upload(tooLarge(context));
+        }
+        String location = null;
+        if (path.endsWith("/")) {
+            if (!"POST".equalsIgnoreCase(request.getMethod())) {
+                return new Upload(HTTPHandler.simpleResponse("400 Bad Request", "text/plain", "PUT needs a file name"));
+            }
+            String name = "upload-" + System.currentTimeMillis() + "-"
+                    + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x100000, 0x1000000));
+            location = request.getTarget().split("\\?", 2)[0] + URLEncoder.encode(name, StandardCharsets.UTF_8);
+            path += name;
+        }
+        for (String segment : path.split("/")) {
+            if (segment.startsWith(".")) {
+                return new Upload(HTTPHandler.simpleResponse("403 Forbidden", "text/plain", "Hidden names can't be uploaded"));
+            }
+        }
+        PathCache paths = context.getPathCache();
+        File area = paths.canonical(config.getUploadDir());
+        File target = paths.canonical(path);
+        if (area == null || target == null || !target.getPath().startsWith(area.getPath() + File.separator)) {
+            return new Upload(HTTPHandler.simpleResponse("403 Forbidden", "text/plain", "Outside the upload area"));
+        }
+        if (target.isDirectory()) {
+            return new Upload(HTTPHandler.simpleResponse("409 Conflict", "text/plain", "A directory is in the way"));
+        }
+        try {
+            Path dir = Files.createDirectories(target.toPath().getParent());
+            while (true) {
+                Path temp = dir.resolve(".upload-" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+                try {
+                    FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    return new Upload(target, temp, channel, max, location);
+                } catch (FileAlreadyExistsException e) {
+                    // pick another name
+                }
+            }
+        } catch (IOException e) {
+            return new Upload(HTTPHandler.simpleResponse("409 Conflict", "text/plain", "Can't create " + path));
+        }
+    }
+
+    /**
+     * TooLarge
+     * The body went past --max-body-bytes.
+     */
+    static final class TooLarge extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLarge() {
+            super("Request body too large");
+        }
+    }
+
+    /**
+     * Upload
+     * One upload in progress: the temp file being written and where it goes, or the response
+     * that refused it.
+     */
+    static final class Upload {
+        private final File target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final long maxBytes;
+        private final String location; // for a POST to a directory, the new file's URL
+        private final HTTPResponse refusal;
+        private long written;
+        private boolean finished;
+
+        Upload(HTTPResponse refusal) {
+            this.target = null;
+            this.temp = null;
+            this.channel = null;
+            this.maxBytes = 0;
+            this.location = null;
+            this.refusal = refusal;
+            this.finished = true;
+        }
+
+        Upload(File target, Path temp, FileChannel channel, long maxBytes, String location) {
+            this.target = target;
+            this.temp = temp;
+            this.channel = channel;
+            this.maxBytes = maxBytes;
+            this.location = location;
+            this.refusal = null;
+        }
+
+        /**
+         * refusal()
+         * The answer for an upload that was refused before it started, or null.
+         * @return
+        */
+        HTTPResponse refusal() {
+            return refusal;
+        }
+
+        /**
+         * write()
+         * Appends the next piece of the body to the temp file. Throws TooLarge once the body
+         * goes past the limit.
+         * @param b
+         * @param off
+         * @param len
+         * @throws IOException
+        */
+        void write(byte[] b, int off, int len) throws IOException {
+            if (maxBytes > 0 && written + len > maxBytes) {
+                throw new TooLarge();
+            }
+            ByteBuffer piece = ByteBuffer.wrap(b, off, len);
+            while (piece.hasRemaining()) {
+                channel.write(piece);
+            }
+            written += len;
+        }
+
+        /**
+         * commit()
+         * The whole body is in: syncs the temp file to disk, renames it over the target and
+         * drops what the caches knew about the target.
+         * References:
+         * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#force-boolean-
+         * https://docs.oracle.com/javase/8/docs/api/java/nio/file/Files.html#move-java.nio.file.Path-java.nio.file.Path-java.nio.file.CopyOption...-
+         * @param context
+         * @return 201 Created or 204 No Content
+         * @throws IOException
+        */
+        HTTPResponse commit(ServerContext context) throws IOException {
+            channel.force(false);
+            channel.close();
+            boolean existed = target.exists();
+            try {
+                Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finished = true;
+            context.getFileCache().invalidate(target);
+            context.getPathCache().changed(target);
+            Metrics metrics = context.getMetrics();
+            metrics.uploads.increment();
+            metrics.uploadBytes.add(written);
+            if (existed) {
+                return HTTPResponse.empty("204 No Content");
+            }
+            HTTPResponse created = HTTPHandler.simpleResponse("201 Created", "text/plain", "Created");
+            return location != null ? created.header("Location", location) : created;
+        }
+
+        /**
+         * abort()
+         * Throws the temp file away unless the upload was committed.
+        */
+        void abort() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {}
+        }
+    }
+}
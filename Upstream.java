@@ -0,0 +1,263 @@
+/**
+ * Name: Upstream
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: One backend server the reverse proxy sends requests to (host:port), with its pool of
+ *      kept-alive HTTP/1.1 connections. A request takes the most recently used idle connection
+ *      (the one least likely to have been closed by the backend) or opens a new one, and gives
+ *      it back when the response has been read to the end, so most requests skip the TCP
+ *      handshake. Connections idle longer than --proxy-idle-timeout are closed instead of
+ *      reused, and at most --proxy-pool-size idle ones are kept. The health check (and any
+ *      request that can't connect) marks the backend down; down backends get no requests
+ *      until a health check passes again.
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://nginx.org/en/docs/http/ngx_http_upstream_module.html#keepalive
+ * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html#connect-java.net.SocketAddress-int-
+ * https://docs.oracle.com/javase/8/docs/api/java/util/ArrayDeque.html
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Upstream {
+    private static final int BUFFER_BYTES = 16 * 1024;
+
+    private final String name; // host:port as configured
+    private final String host;
+    private final int port;
+    private final int maxIdle;
+    private final long idleTimeoutNanos;
+    private final ArrayDeque<Connection> idle = new ArrayDeque<>(); // most recently used first
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean healthy = true;
+    private boolean closed;
+
+    /**
+     * Upstream()
+     * @param name host:port
+     * @param maxIdle idle connections to keep, 0 = close every connection after one request
+     * @param idleTimeoutMillis
+    */
+    public Upstream(String name, int maxIdle, int idleTimeoutMillis) {
+        int colon = name.lastIndexOf(':');
+        this.name = name;
+        this.host = name.substring(0, colon);
+        this.port = Integer.parseInt(name.substring(colon + 1));
+        this.maxIdle = maxIdle;
+        this.idleTimeoutNanos = idleTimeoutMillis * 1_000_000L;
+    }
+
+    /**
+     * acquire()
+     * An idle connection from the pool if there is one young enough, otherwise a new one.
+     * Connections that sat idle too long are closed on the way. Throws if a new connection
+     * can't be made within the connect timeout.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/util/Deque.html#pollFirst--
+     * @param connectTimeoutMillis
+     * @param readTimeoutMillis
+     * @return
+     * @throws IOException
+    */
+    Connection acquire(int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        long now = System.nanoTime();
+        while (true) {
+            Connection c;
+            lock.lock();
+            try {
+                c = idle.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (c == null) {
+                break;
+            }
+            if (now - c.idleSince < idleTimeoutNanos && !c.socket.isClosed()) {
+                c.socket.setSoTimeout(readTimeoutMillis);
+                c.reused = true;
+                return c;
+            }
+            c.close(); // the backend has probably given up on it already
+        }
+        return open(connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    /**
+     * open()
+     * A new connection to the backend, with Nagle off (requests are written in one go).
+     * @param connectTimeoutMillis
+     * @param readTimeoutMillis
+     * @return
+     * @throws IOException
+    */
+    Connection open(int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new Connection(socket);
+    }
+
+    /**
+     * release()
+     * Gives a connection back after its response was read to the end. It is closed instead
+     * if the pool is full or the proxy has been replaced by a reload.
+     * @param c
+    */
+    void release(Connection c) {
+        lock.lock();
+        try {
+            if (!closed && idle.size() < maxIdle) {
+                c.idleSince = System.nanoTime();
+                idle.addFirst(c);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        c.close();
+    }
+
+    /**
+     * check()
+     * The health check: a "GET path" on a new connection. The backend is up if it answers
+     * with anything below 500 before the read timeout. Says so when the state changes.
+     * @param path
+     * @param connectTimeoutMillis
+     * @param readTimeoutMillis
+    */
+    void check(String path, int connectTimeoutMillis, int readTimeoutMillis) {
+        String problem;
+        try (Connection c = open(connectTimeoutMillis, readTimeoutMillis)) {
+            c.out.write(("GET " + path + " HTTP/1.1\r\nHost: " + name + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            c.out.flush();
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = c.in.read()) >= 0 && b != '\n' && line.length() < 256) {
+                line.append((char) b);
+            }
+            String[] parts = line.toString().trim().split(" ");
+            int status = parts.length >= 2 && parts[0].startsWith("HTTP/") ? Integer.parseInt(parts[1]) : 0;
+            problem = status == 0 ? "no HTTP response" : status >= 500 ? "health check got " + status : null;
+        } catch (IOException | NumberFormatException e) {
+            problem = e.getMessage();
+        }
+        if (problem == null) {
+            if (!healthy) {
+                System.out.println("Upstream " + name + " is up again");
+            }
+            healthy = true;
+        } else {
+            markDown(problem);
+        }
+    }
+
+    /**
+     * markDown()
+     * Takes the backend out of rotation until a health check passes, and drops its idle
+     * connections, which are most likely dead too.
+     * @param reason
+    */
+    void markDown(String reason) {
+        if (healthy) {
+            System.out.println("Upstream " + name + " is down: " + reason);
+        }
+        healthy = false;
+        closeIdle();
+    }
+
+    /**
+     * close()
+     * Closes the idle connections and makes release() close the ones still in use.
+    */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        closeIdle();
+    }
+
+    private void closeIdle() {
+        while (true) {
+            Connection c;
+            lock.lock();
+            try {
+                c = idle.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (c == null) {
+                return;
+            }
+            c.close();
+        }
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * getIdleCount()
+     * Connections waiting in the pool right now.
+     * @return
+    */
+    int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Connection
+     * One connection to the backend with its buffered streams.
+     */
+    static final class Connection implements AutoCloseable {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        long idleSince;
+        boolean reused; // came out of the pool, so the backend may have closed it meanwhile
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES);
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Name: AcceptBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Measures how many new connections per second the server can take as --acceptors goes
+ *      up. For each acceptor count it starts a server in this JVM on its own port, then a
+ *      number of client threads each open a connection, send one small request with
+ *      "Connection: close", read the answer to the end and start over, as fast as they can.
+ *      Prints connections/s and the p50/p99 time connect() took (that grows when the accept
+ *      queue backs up) for each count. The clients share the CPUs with the server, so run it on
+ *      a machine with several cores to see the acceptors spread out.
+ *      Run: java -cp out AcceptBench [--acceptors=1,2,4] [--mode=threads] [--clients=32]
+ *           [--duration=5] [--warmup=1] [--port=18080] [--docroot=www] [--path=/site.css]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://lwn.net/Articles/542629/
+ * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html#connect-java.net.SocketAddress-
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class AcceptBench {
+
+    /**
+     * main
+     * Runs one round per acceptor count and prints a line for each.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        String[] counts = { "1", "2", "4" };
+        String mode = "threads";
+        int clients = 32;
+        int duration = 5;
+        int warmup = 1;
+        int port = 18080;
+        String docRoot = "www";
+        String path = "/site.css";
+        for (String arg : args) {
+            String[] kv = arg.substring(2).split("=", 2);
+            switch (kv[0]) {
+                case "acceptors": counts = kv[1].split(","); break;
+                case "mode": mode = kv[1]; break;
+                case "clients": clients = Integer.parseInt(kv[1]); break;
+                case "duration": duration = Integer.parseInt(kv[1]); break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "port": port = Integer.parseInt(kv[1]); break;
+                case "docroot": docRoot = kv[1]; break;
+                case "path": path = kv[1]; break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        System.out.printf("%d CPUs, %s mode, %d clients%n", Runtime.getRuntime().availableProcessors(), mode, clients);
+        System.out.printf("%-10s %12s %14s %14s %8s%n", "acceptors", "conn/s", "connect p50 us", "connect p99 us", "errors");
+        for (String count : counts) {
+            int p = port++; // a fresh port per round, so TIME_WAIT from the last one doesn't matter
+            ServerConfig config = ServerConfig.fromArgs(new String[] { "--acceptors=" + count, "--mode=" + mode,
+                    "--path-cache-entries=10000", "--max-connections=0" }, new ArrayList<>());
+            MyHTTPServer server = new MyHTTPServer(p, new File(docRoot), 50, config);
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    System.err.println("Server failed: " + e.getMessage());
+                }
+            }, "bench-server");
+            serverThread.start();
+            waitForServer(p);
+            round(count, p, request, clients, duration, warmup);
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * round()
+     * Runs the clients against one server and prints its line.
+     * @param label
+     * @param port
+     * @param request
+     * @param clients
+     * @param duration
+     * @param warmup
+     * @throws InterruptedException
+    */
+    private static void round(String label, int port, byte[] request, int clients, int duration, int warmup)
+            throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmup * 1_000_000_000L;
+        long end = measureFrom + duration * 1_000_000_000L;
+        Client[] workers = new Client[clients];
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            workers[i] = new Client(port, request, measureFrom, end);
+            threads[i] = new Thread(workers[i], "client-" + i);
+            threads[i].start();
+        }
+        int total = 0;
+        long errors = 0;
+        for (int i = 0; i < clients; i++) {
+            threads[i].join();
+            total += workers[i].count;
+            errors += workers[i].errors;
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for (Client w : workers) {
+            System.arraycopy(w.connectTimes, 0, all, at, w.count);
+            at += w.count;
+        }
+        Arrays.sort(all);
+        System.out.printf("%-10s %12.0f %14.0f %14.0f %8d%n", label, total / (double) duration,
+                percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3, errors);
+    }
+
+    /**
+     * waitForServer()
+     * Polls until the server answers on port, for up to five seconds.
+     * @param port
+     * @throws InterruptedException
+    */
+    private static void waitForServer(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress("localhost", port));
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server on port " + port + " never came up");
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    /**
+     * Client
+     * One client thread: connect, request, read to EOF, repeat. Connect times of the measured
+     * period go into its own array.
+     */
+    private static final class Client implements Runnable {
+        private final int port;
+        private final byte[] request;
+        private final long measureFrom;
+        private final long end;
+        private final byte[] scratch = new byte[16 * 1024];
+        private long[] connectTimes = new long[1 << 14];
+        private int count;
+        private long errors;
+
+        Client(int port, byte[] request, long measureFrom, long end) {
+            this.port = port;
+            this.request = request;
+            this.measureFrom = measureFrom;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            while (now < end) {
+                long t0 = System.nanoTime();
+                try (Socket s = new Socket()) {
+                    s.setTcpNoDelay(true);
+                    s.connect(new InetSocketAddress("localhost", port));
+                    long connected = System.nanoTime();
+                    s.getOutputStream().write(request);
+                    InputStream in = s.getInputStream();
+                    while (in.read(scratch) >= 0) {
+                        // read the whole answer; the server closes the connection after it
+                    }
+                    now = System.nanoTime();
+                    if (t0 >= measureFrom && now <= end) {
+                        if (count == connectTimes.length) {
+                            connectTimes = Arrays.copyOf(connectTimes, count * 2);
+                        }
+                        connectTimes[count++] = connected - t0;
+                    }
+                } catch (IOException e) {
+                    now = System.nanoTime();
+                    if (now >= measureFrom) {
+                        errors++;
+                    }
+                }
+            }
+        }
+    }
+}
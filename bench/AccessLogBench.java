@@ -0,0 +1,142 @@
+/**
+ * Name: AccessLogBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Shows what access logging costs the connection thread. Each "request" logs one combined
+ *      format line, with 1, 2, 4 and 8 threads at once, first through AccessLog (claim a ring
+ *      slot, copy the fields, return) and then the obvious way: format the line and write it
+ *      through one shared, synchronized BufferedWriter. Prints CPU ns per request on the logging
+ *      threads. The loop logs far faster than any real server answers requests, so the ring
+ *      overflows and most entries are dropped (the cheap path); the "written/s" column shows how
+ *      many lines per second the writer thread really got to disk meanwhile, which is the
+ *      request rate the default drop policy can keep up with without losing lines.
+ *      Both write to temp files that are deleted at the end.
+ *      Run: javac -d out *.java bench/*.java && java -cp out AccessLogBench [millis-per-run]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://httpd.apache.org/docs/current/logs.html#combined
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/management/ThreadMXBean.html#getCurrentThreadCpuTime--
+ */
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+public class AccessLogBench {
+
+    /**
+     * main
+     * Parses one request to log, then runs both variants at each thread count.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        RequestParser parser = new RequestParser(new ServerConfig());
+        parser.parse(ByteBuffer.wrap(("GET /index.html HTTP/1.1\r\nHost: localhost\r\n"
+                + "Referer: http://localhost/\r\nUser-Agent: Mozilla/5.0 (X11; Linux x86_64)\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1)));
+        HTTPRequest request = parser.toRequest();
+        HTTPResponse response = HTTPResponse.bytes("200 OK", "text/html", new byte[838]);
+        InetAddress remote = InetAddress.getLoopbackAddress();
+
+        File ringFile = File.createTempFile("accesslog-ring", ".log");
+        File plainFile = File.createTempFile("accesslog-plain", ".log");
+        AccessLog log = new AccessLog(ringFile, "combined", 16 * 1024, false, 0);
+        Writer plain = new BufferedWriter(new FileWriter(plainFile), 64 * 1024);
+        SimpleDateFormat clf = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+
+        Runnable ring = () -> log.log(remote, request, response);
+        Runnable locked = () -> {
+            try {
+                synchronized (plain) { // one lock for the writer and the (not thread-safe) date format
+                    plain.write(remote.getHostAddress() + " - - [" + clf.format(new Date()) + "] \""
+                            + request.getMethod() + " " + request.getTarget() + " " + request.getVersion() + "\" "
+                            + 200 + " " + response.getContentLength() + " \"" + request.getHeader("referer")
+                            + "\" \"" + request.getHeader("user-agent") + "\"\n");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+
+        run(ring, 4, millis / 2);
+        run(locked, 4, millis / 2);
+        System.out.printf("%-8s %18s %12s %18s%n", "threads", "AccessLog ns/req", "written/s", "locked ns/req");
+        for (int threads : new int[] { 1, 2, 4, 8 }) {
+            long before = log.getWritten();
+            double fast = run(ring, threads, millis);
+            double perSecond = (log.getWritten() - before) * 1000.0 / millis;
+            double slow = run(locked, threads, millis);
+            System.out.printf("%-8d %18.1f %12.0f %18.1f%n", threads, fast, perSecond, slow);
+        }
+        log.close();
+        plain.close();
+        ringFile.delete();
+        plainFile.delete();
+    }
+
+    /**
+     * run()
+     * Runs the task on the given number of threads for the given time and returns the
+     * average CPU ns each thread spent per call (the same measure as MetricsBench).
+     * @param task
+     * @param threads
+     * @param millis
+     * @return
+     * @throws InterruptedException
+    */
+    private static double run(Runnable task, int threads, long millis) throws InterruptedException {
+        long[] calls = new long[threads];
+        long[] nanos = new long[threads];
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int id = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+                long deadline = System.nanoTime() + millis * 1_000_000L;
+                long cpu0 = cpu.getCurrentThreadCpuTime();
+                long n = 0;
+                do {
+                    for (int k = 0; k < 64; k++) {
+                        task.run();
+                    }
+                    n += 64;
+                } while (System.nanoTime() < deadline);
+                calls[id] = n;
+                nanos[id] = cpu.getCurrentThreadCpuTime() - cpu0;
+            });
+            workers[i].start();
+        }
+        go.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        double total = 0;
+        for (int i = 0; i < threads; i++) {
+            total += nanos[i] / (double) calls[i];
+        }
+        return total / threads;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Name: H2Bench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Compares page loads over HTTP/1.1 and HTTP/2 against a running server (threads or virtual
+ *      mode, --http2=true). Each simulated browser is its own java.net.http.HttpClient: it fetches
+ *      the page, then all of its assets at once, and counts the page as loaded when the last one
+ *      has arrived. Over HTTP/1.1 the client opens extra connections to fetch assets in parallel;
+ *      over HTTP/2 it upgrades one connection (Upgrade: h2c) and sends every asset as a stream on
+ *      it. Prints pages/s, the p50/p99 page load time and how many connections the server
+ *      accepted (from its /metrics) for each protocol.
+ *      Run: java -cp out H2Bench <host> <port> [--browsers=8] [--duration=10] [--warmup=2]
+ *           [--page=/] [--assets=/site.css,/images/kitten-thumbnail.jpeg,/images/kitten-large.jpeg]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/en/java/javase/17/docs/api/java.net.http/java/net/http/HttpClient.html
+ * https://docs.oracle.com/en/java/javase/17/docs/api/java.net.http/java/net/http/HttpClient.Version.html
+ */
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class H2Bench {
+
+    /**
+     * main
+     * Runs the same page-load loop once per protocol and prints one line for each.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java H2Bench <host> <port> [--browsers=8] [--duration=10] [--warmup=2] [--page=/] [--assets=a,b,c]");
+            return;
+        }
+        String base = "http://" + args[0] + ":" + args[1];
+        int browsers = 8;
+        int duration = 10;
+        int warmup = 2;
+        String page = "/";
+        String[] assets = { "/site.css", "/images/kitten-thumbnail.jpeg", "/images/kitten-large.jpeg" };
+        for (int i = 2; i < args.length; i++) {
+            String[] kv = args[i].substring(2).split("=", 2);
+            switch (kv[0]) {
+                case "browsers": browsers = Integer.parseInt(kv[1]); break;
+                case "duration": duration = Integer.parseInt(kv[1]); break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "page": page = kv[1]; break;
+                case "assets": assets = kv[1].split(","); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.out.printf("%-9s %10s %10s %10s %12s%n", "protocol", "pages/s", "p50 ms", "p99 ms", "connections");
+        for (HttpClient.Version version : new HttpClient.Version[] { HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_2 }) {
+            run(base, version, browsers, duration, warmup, page, assets);
+        }
+    }
+
+    /**
+     * run()
+     * Starts the browsers, lets them warm up, then counts page loads for the measured period.
+     * @param base
+     * @param version
+     * @param browsers
+     * @param duration
+     * @param warmup
+     * @param page
+     * @param assets
+     * @throws Exception
+    */
+    private static void run(String base, HttpClient.Version version, int browsers, int duration, int warmup,
+                            String page, String[] assets) throws Exception {
+        long accepted0 = connectionsAccepted(base);
+        long start = System.nanoTime() + warmup * 1_000_000_000L;
+        long end = start + duration * 1_000_000_000L;
+        List<long[]> results = new ArrayList<>();
+        Thread[] threads = new Thread[browsers];
+        for (int b = 0; b < browsers; b++) {
+            long[] times = new long[1 << 18];
+            results.add(times);
+            threads[b] = new Thread(() -> {
+                HttpClient client = HttpClient.newBuilder().version(version).build();
+                int n = 1; // times[0] holds the count
+                try {
+                    while (System.nanoTime() < end) {
+                        long t0 = System.nanoTime();
+                        loadPage(client, base, page, assets);
+                        long t1 = System.nanoTime();
+                        if (t0 >= start && t1 <= end && n < times.length) {
+                            times[n++] = t1 - t0;
+                        }
+                    }
+                } catch (Exception e) {
+                    System.out.println(version + ": " + e);
+                }
+                times[0] = n - 1;
+            });
+            threads[b].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        int total = 0;
+        for (long[] times : results) {
+            total += (int) times[0];
+        }
+        long[] all = new long[total];
+        int k = 0;
+        for (long[] times : results) {
+            System.arraycopy(times, 1, all, k, (int) times[0]);
+            k += (int) times[0];
+        }
+        Arrays.sort(all);
+        long accepted1 = connectionsAccepted(base);
+        long connections = accepted0 < 0 ? -1 : accepted1 - accepted0 - 1; // minus our own /metrics request
+        System.out.printf("%-9s %10.0f %10.2f %10.2f %12d%n", version == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1",
+                total / (double) duration, percentile(all, 0.50), percentile(all, 0.99), connections);
+    }
+
+    /**
+     * loadPage()
+     * The page first (a browser can't know the assets before it has the HTML), then every asset
+     * at once.
+     * @param client
+     * @param base
+     * @param page
+     * @param assets
+     * @throws Exception
+    */
+    private static void loadPage(HttpClient client, String base, String page, String[] assets) throws Exception {
+        client.send(HttpRequest.newBuilder(URI.create(base + page)).build(), HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[assets.length];
+        for (int i = 0; i < assets.length; i++) {
+            pending[i] = client.sendAsync(HttpRequest.newBuilder(URI.create(base + assets[i])).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+        }
+        CompletableFuture.allOf(pending).get();
+    }
+
+    /**
+     * connectionsAccepted()
+     * Reads http_connections_accepted_total from the server's /metrics, or -1 if it isn't there.
+     * @param base
+     * @return
+    */
+    private static long connectionsAccepted(String base) {
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String text = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            for (String line : text.split("\n")) {
+                if (line.startsWith("http_connections_accepted_total ")) {
+                    return (long) Double.parseDouble(line.substring(line.indexOf(' ') + 1).trim());
+                }
+            }
+        } catch (Exception ignored) {}
+        return -1;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1_000_000.0;
+    }
+}
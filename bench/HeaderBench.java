@@ -0,0 +1,130 @@
+/**
+ * Name: HeaderBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Measures what it costs to build one response's headers, in time and in bytes allocated
+ *      on the heap. It compares the old way (a new SimpleDateFormat for the Date, a StringBuilder
+ *      for the lines, then getBytes) with HeaderWriter.encode() writing into a reused buffer.
+ *      Allocation is read from the JVM's per-thread allocation counter, so no profiler is needed.
+ *      Run: javac -d out *.java bench/*.java && java -cp out HeaderBench [iterations] [rounds]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/jre/api/management/extension/com/sun/management/ThreadMXBean.html#getThreadAllocatedBytes-long-
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/System.html#nanoTime--
+ */
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class HeaderBench {
+    private static final String SERVER = "MyJavaHTTPServer/1.0";
+    private static volatile int sink; // keeps the JIT from throwing the work away
+
+    /**
+     * main
+     * Runs both ways on the same typical response (a small HTML page with ETag,
+     * Last-Modified and Vary) and prints the best ns per response and the bytes allocated
+     * per response for each.
+     * @param args
+    */
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        HTTPResponse response = HTTPResponse.bytes("200 OK", "text/html", new byte[838])
+                .header("ETag", "\"4fe14-199f357ca68-346\"")
+                .header("Last-Modified", "Fri, 17 Oct 2025 18:04:01 GMT")
+                .header("Vary", "Accept-Encoding");
+        HeaderWriter writer = new HeaderWriter(SERVER, 30_000);
+        ByteBuffer[] reused = { ByteBuffer.allocate(512) };
+
+        Runnable legacy = () -> sink += legacyHeaderBytes(response, true, 30_000).length;
+        Runnable encoded = () -> {
+            reused[0] = writer.encode(response, true, reused[0]);
+            sink += reused[0].limit();
+        };
+
+        for (int i = 0; i < 3; i++) { // warm up
+            measure(legacy, iterations);
+            measure(encoded, iterations);
+        }
+        double[] bestLegacy = { Double.MAX_VALUE, 0 };
+        double[] bestEncoded = { Double.MAX_VALUE, 0 };
+        for (int i = 0; i < rounds; i++) {
+            keepBest(bestLegacy, measure(legacy, iterations));
+            keepBest(bestEncoded, measure(encoded, iterations));
+        }
+        System.out.printf("%-28s %10s %12s%n", "headers", "ns/resp", "bytes/resp");
+        System.out.printf("%-28s %10.1f %12.1f%n", "StringBuilder + SimpleDate", bestLegacy[0], bestLegacy[1]);
+        System.out.printf("%-28s %10.1f %12.1f%n", "HeaderWriter.encode", bestEncoded[0], bestEncoded[1]);
+    }
+
+    /**
+     * measure()
+     * Runs the task and returns {ns per call, bytes allocated per call} for this thread.
+     * @param task
+     * @param iterations
+     * @return
+    */
+    private static double[] measure(Runnable task, int iterations) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long bytes0 = threads.getThreadAllocatedBytes(id);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        long t1 = System.nanoTime();
+        long bytes1 = threads.getThreadAllocatedBytes(id);
+        return new double[] { (t1 - t0) / (double) iterations, (bytes1 - bytes0) / (double) iterations };
+    }
+
+    private static void keepBest(double[] best, double[] result) {
+        if (result[0] < best[0]) {
+            best[0] = result[0];
+            best[1] = result[1];
+        }
+    }
+
+    /**
+     * legacyHeaderBytes()
+     * The header code HTTPResponse and HTTPHandler.rfc1123Date() used before HeaderWriter,
+     * kept here only to compare against.
+     * @param response
+     * @param keepAlive
+     * @param idleTimeoutMillis
+     * @return
+    */
+    private static byte[] legacyHeaderBytes(HTTPResponse response, boolean keepAlive, int idleTimeoutMillis) {
+        SimpleDateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+        df.setTimeZone(TimeZone.getTimeZone("GMT"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("HTTP/1.1 ").append(response.getStatus()).append("\r\n");
+        sb.append("Date: ").append(df.format(new Date())).append("\r\n");
+        sb.append("Server: ").append(SERVER).append("\r\n");
+        sb.append("Content-Type: ").append(response.getContentType()).append("\r\n");
+        sb.append("Content-Length: ").append(response.getContentLength()).append("\r\n");
+        for (String line : response.getExtraHeaders()) {
+            sb.append(line).append("\r\n");
+        }
+        if (keepAlive) {
+            sb.append("Connection: keep-alive").append("\r\n");
+            sb.append("Keep-Alive: timeout=").append(Math.max(1, idleTimeoutMillis / 1000)).append("\r\n");
+        } else {
+            sb.append("Connection: close").append("\r\n");
+        }
+        sb.append("\r\n");
+        out.writeBytes(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return out.toByteArray();
+    }
+}
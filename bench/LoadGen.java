@@ -0,0 +1,289 @@
+/**
+ * Name: LoadGen
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: A small load generator for a server that is already running (any mode). It opens a number
+ *      of connections, each driven by its own thread, and sends GET requests back to back for a
+ *      fixed time, either reusing the connection (keep-alive) or opening a new one for every
+ *      request (--keep-alive=false). Every response is read to the end, and its time from
+ *      sending the request to receiving the last body byte is recorded. After a warm-up period
+ *      that isn't counted, it prints the throughput and the p50/p90/p99/p99.9/max latency.
+ *      Each connection waits for its answer before sending the next request (a "closed loop"),
+ *      so when the server stalls fewer requests are sent; the latencies are service times
+ *      under this load, not what a fixed-rate stream of users would see.
+ *      Run: java -cp out LoadGen <host> <port> <path> [--connections=32] [--duration=10]
+ *           [--warmup=2] [--keep-alive=true]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://github.com/wg/wrk
+ * https://www.rfc-editor.org/rfc/rfc7230#section-3.3.3
+ * https://docs.oracle.com/javase/8/docs/api/java/util/Arrays.html#sort-long:A-
+ */
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class LoadGen {
+    private final String host;
+    private final int port;
+    private final byte[] request;
+    private final boolean keepAlive;
+
+    /**
+     * LoadGen()
+     * Builds the request bytes once; every connection sends the same request.
+     * @param host
+     * @param port
+     * @param path
+     * @param keepAlive
+    */
+    LoadGen(String host, int port, String path, boolean keepAlive) {
+        this.host = host;
+        this.port = port;
+        this.keepAlive = keepAlive;
+        this.request = ("GET " + path + " HTTP/1.1\r\n"
+                + "Host: " + host + ":" + port + "\r\n"
+                + "User-Agent: LoadGen\r\n"
+                + (keepAlive ? "" : "Connection: close\r\n")
+                + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * main
+     * Reads the arguments, runs the workers and prints the report.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java LoadGen <host> <port> <path> [--connections=32] [--duration=10] [--warmup=2] [--keep-alive=true]");
+            return;
+        }
+        int connections = 32;
+        int durationSeconds = 10;
+        int warmupSeconds = 2;
+        boolean keepAlive = true;
+        for (int i = 3; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(arg.substring(14));
+            } else if (arg.startsWith("--duration=")) {
+                durationSeconds = Integer.parseInt(arg.substring(11));
+            } else if (arg.startsWith("--warmup=")) {
+                warmupSeconds = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--keep-alive=")) {
+                keepAlive = Boolean.parseBoolean(arg.substring(13));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        LoadGen gen = new LoadGen(args[0], Integer.parseInt(args[1]), args[2], keepAlive);
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + durationSeconds * 1_000_000_000L;
+        Worker[] workers = new Worker[connections];
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            workers[i] = gen.new Worker(measureFrom, end);
+            threads[i] = new Thread(workers[i], "loadgen-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        report(workers, durationSeconds, connections, keepAlive);
+    }
+
+    /**
+     * report()
+     * Merges every worker's latencies, sorts them once and prints the summary.
+     * @param workers
+     * @param seconds
+     * @param connections
+     * @param keepAlive
+    */
+    private static void report(Worker[] workers, int seconds, int connections, boolean keepAlive) {
+        int total = 0;
+        long bytes = 0;
+        long badStatus = 0;
+        long ioErrors = 0;
+        for (Worker w : workers) {
+            total += w.count;
+            bytes += w.bytes;
+            badStatus += w.badStatus;
+            ioErrors += w.ioErrors;
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for (Worker w : workers) {
+            System.arraycopy(w.latencies, 0, all, at, w.count);
+            at += w.count;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("%d connections, %s, %d s measured%n", connections, keepAlive ? "keep-alive" : "new connection per request", seconds);
+        System.out.printf("requests   %d (%.1f req/s), %.1f MB/s%n", total, total / (double) seconds,
+                bytes / (1024.0 * 1024.0) / seconds);
+        System.out.printf("errors     %d bad status, %d I/O%n", badStatus, ioErrors);
+        if (total > 0) {
+            System.out.printf("latency us p50 %.0f  p90 %.0f  p99 %.0f  p99.9 %.0f  max %.0f%n",
+                    percentile(all, 50) / 1e3, percentile(all, 90) / 1e3, percentile(all, 99) / 1e3,
+                    percentile(all, 99.9) / 1e3, all[all.length - 1] / 1e3);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Worker
+     * One connection's loop. Latencies go into its own growing array, so workers never
+     * share anything while the test runs.
+     */
+    private final class Worker implements Runnable {
+        private final long measureFrom;
+        private final long end;
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private long bytes;
+        private long badStatus;
+        private long ioErrors;
+        private final byte[] scratch = new byte[64 * 1024];
+
+        Worker(long measureFrom, long end) {
+            this.measureFrom = measureFrom;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            Socket socket = null;
+            InputStream in = null;
+            OutputStream out = null;
+            long now = System.nanoTime();
+            while (now < end) {
+                try {
+                    if (socket == null) {
+                        socket = new Socket();
+                        socket.setTcpNoDelay(true);
+                        socket.connect(new InetSocketAddress(host, port));
+                        in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+                        out = socket.getOutputStream();
+                    }
+                    long t0 = System.nanoTime();
+                    out.write(request);
+                    out.flush();
+                    boolean serverKeepsOpen = readResponse(in, t0 >= measureFrom);
+                    now = System.nanoTime();
+                    if (t0 >= measureFrom) {
+                        record(now - t0);
+                    }
+                    if (!keepAlive || !serverKeepsOpen) {
+                        socket.close();
+                        socket = null;
+                    }
+                } catch (IOException e) {
+                    now = System.nanoTime();
+                    if (now >= measureFrom) {
+                        ioErrors++;
+                    }
+                    try { if (socket != null) socket.close(); } catch (IOException ignored) {}
+                    socket = null;
+                }
+            }
+            try { if (socket != null) socket.close(); } catch (IOException ignored) {}
+        }
+
+        /**
+         * readResponse()
+         * Reads one response: the status line, the headers (only Content-Length and
+         * Connection matter here) and the body. Returns whether the connection stays open.
+         * @param in
+         * @param counted
+         * @return
+         * @throws IOException
+        */
+        private boolean readResponse(InputStream in, boolean counted) throws IOException {
+            String status = readLine(in);
+            if (status == null) {
+                throw new IOException("connection closed before a response");
+            }
+            if (counted && !(status.startsWith("HTTP/1.1 2") || status.startsWith("HTTP/1.1 3"))) {
+                badStatus++;
+            }
+            long length = -1;
+            boolean open = true;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    length = Long.parseLong(value);
+                } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                    open = false;
+                }
+            }
+            long read = 0;
+            if (length >= 0) {
+                while (read < length) {
+                    int n = in.read(scratch, 0, (int) Math.min(scratch.length, length - read));
+                    if (n < 0) {
+                        throw new IOException("body cut short");
+                    }
+                    read += n;
+                }
+            } else {
+                int n;
+                while ((n = in.read(scratch)) >= 0) { // no length: the body runs to the close
+                    read += n;
+                }
+                open = false;
+            }
+            if (counted) {
+                bytes += read;
+            }
+            return open;
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    /**
+     * readLine()
+     * One header line without its CRLF, or null at the end of the stream.
+     * @param in
+     * @return
+     * @throws IOException
+    */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                sb.append((char) b);
+            }
+        }
+        return b == -1 && sb.length() == 0 ? null : sb.toString();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Name: MetricsBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Shows what the instrumentation costs per request. Each "request" does exactly what the
+ *      servers add around a real one: the nanoTime() reads, three histogram records and
+ *      recordResponse(). It runs that with 1, 2, 4 and 8 threads at once, because the point of
+ *      LongAdder is that the cost stays flat when many threads record together, and prints ns per
+ *      request next to the same work done with plain AtomicLong counters for comparison.
+ *      The number to compare it with is a request's own time (see MicroBench route.cachedFile
+ *      and LoadGen's p50), which is tens of microseconds.
+ *      Run: javac -d out *.java bench/*.java && java -cp out MetricsBench [millis-per-run]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/atomic/LongAdder.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/atomic/AtomicLong.html
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/management/ThreadMXBean.html#getCurrentThreadCpuTime--
+ */
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class MetricsBench {
+    private static volatile long sink;
+
+    /**
+     * main
+     * Warms up, then runs both variants at each thread count.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        Metrics metrics = new Metrics();
+        NaiveMetrics naive = new NaiveMetrics();
+        HTTPResponse response = HTTPResponse.bytes("200 OK", "text/html", new byte[838]);
+
+        Runnable instrumented = () -> {
+            long t0 = System.nanoTime();
+            long t1 = System.nanoTime();
+            metrics.parseTime.record(t1 - t0);
+            long t2 = System.nanoTime();
+            metrics.routeTime.record(t2 - t1);
+            metrics.recordResponse(response, 200);
+            metrics.sendTime.record(System.nanoTime() - t2);
+        };
+        Runnable atomic = () -> {
+            long t0 = System.nanoTime();
+            long t1 = System.nanoTime();
+            naive.record(t1 - t0);
+            long t2 = System.nanoTime();
+            naive.record(t2 - t1);
+            naive.requests.incrementAndGet();
+            naive.bytes.addAndGet(1038);
+            naive.record(System.nanoTime() - t2);
+        };
+
+        run(instrumented, 4, millis / 2);
+        run(atomic, 4, millis / 2);
+        System.out.printf("%-8s %18s %18s%n", "threads", "LongAdder ns/req", "AtomicLong ns/req");
+        for (int threads : new int[] { 1, 2, 4, 8 }) {
+            double adder = run(instrumented, threads, millis);
+            double plain = run(atomic, threads, millis);
+            System.out.printf("%-8d %18.1f %18.1f%n", threads, adder, plain);
+        }
+        sink += metrics.requests.sum() + naive.requests.get();
+    }
+
+    /**
+     * run()
+     * Runs the task on the given number of threads for the given time and returns the
+     * average CPU ns each thread spent per call. CPU time rather than wall-clock time, so the
+     * result means the same on a machine with fewer cores than threads.
+     * @param task
+     * @param threads
+     * @param millis
+     * @return
+     * @throws InterruptedException
+    */
+    private static double run(Runnable task, int threads, long millis) throws InterruptedException {
+        long[] calls = new long[threads];
+        long[] nanos = new long[threads];
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int id = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+                long deadline = System.nanoTime() + millis * 1_000_000L;
+                long cpu0 = cpu.getCurrentThreadCpuTime();
+                long n = 0;
+                do {
+                    for (int k = 0; k < 256; k++) {
+                        task.run();
+                    }
+                    n += 256;
+                } while (System.nanoTime() < deadline);
+                calls[id] = n;
+                nanos[id] = cpu.getCurrentThreadCpuTime() - cpu0;
+            });
+            workers[i].start();
+        }
+        go.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        double total = 0;
+        for (int i = 0; i < threads; i++) {
+            total += nanos[i] / (double) calls[i];
+        }
+        return total / threads;
+    }
+
+    /**
+     * NaiveMetrics
+     * The same counters and a same-shaped histogram on single AtomicLongs, the obvious
+     * way to write it, which makes every thread fight over the same cache lines.
+     */
+    private static final class NaiveMetrics {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogram.bucketCount());
+        final AtomicLong sum = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(LatencyHistogram.index(Math.max(0, nanos)));
+            sum.addAndGet(nanos);
+        }
+    }
+}
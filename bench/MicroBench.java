@@ -0,0 +1,283 @@
+/**
+ * Name: MicroBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Microbenchmarks for the pieces every request goes through: parsing the request head,
+ *      decoding and resolving the path, looking up the MIME type, writing the headers, the whole
+ *      route() for a cached file, and sending a small and a large file body. It works like a
+ *      (much smaller) JMH: each case is warmed up for a few timed iterations so the JIT settles,
+ *      then measured for a few more, and the result of every call is written to a volatile
+ *      field so the JIT can't skip the work. It prints the mean time per call with the spread
+ *      between iterations, and the heap bytes allocated per call.
+ *      The project is built with plain javac (no Maven or Gradle), so JMH itself can't be
+ *      pulled in; this harness keeps the same warm-up/measure/blackhole discipline without it.
+ *      Run: javac -d out *.java bench/*.java && java -cp out MicroBench [name-regex] [--warmup=3]
+ *           [--iterations=5] [--time=1000] [--docroot=www]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://github.com/openjdk/jmh
+ * https://shipilev.net/blog/2014/nanotrusting-nanotime/
+ * https://docs.oracle.com/javase/8/docs/jre/api/management/extension/com/sun/management/ThreadMXBean.html#getThreadAllocatedBytes-long-
+ */
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class MicroBench {
+    /** A typical browser request, about 500 bytes. */
+    private static final String REQUEST = "GET /images/kitten-large.jpeg HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "Connection: keep-alive\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36\r\n"
+            + "Accept: image/avif,image/webp,image/apng,image/svg+xml,image/*,*/*;q=0.8\r\n"
+            + "Sec-Fetch-Site: same-origin\r\n"
+            + "Sec-Fetch-Mode: no-cors\r\n"
+            + "Referer: http://localhost:8080/\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Accept-Language: en-US,en;q=0.9\r\n"
+            + "If-None-Match: \"4fe14-199f357ca68-346\"\r\n"
+            + "\r\n";
+
+    private static volatile Object sink; // the "blackhole"
+
+    private int warmup = 3;
+    private int iterations = 5;
+    private long iterationMillis = 1000;
+    private File docRoot = new File("www");
+    private Pattern filter = Pattern.compile(".*");
+
+    /**
+     * Op
+     * One benchmarked call. Whatever it returns is consumed so it can't be optimized away.
+     */
+    private interface Op {
+        Object run() throws Exception;
+    }
+
+    /**
+     * main
+     * Reads the options, sets up the cases and runs the ones whose name matches the filter.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        MicroBench bench = new MicroBench();
+        for (String arg : args) {
+            if (arg.startsWith("--warmup=")) {
+                bench.warmup = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--iterations=")) {
+                bench.iterations = Integer.parseInt(arg.substring(13));
+            } else if (arg.startsWith("--time=")) {
+                bench.iterationMillis = Long.parseLong(arg.substring(7));
+            } else if (arg.startsWith("--docroot=")) {
+                bench.docRoot = new File(arg.substring(10));
+            } else {
+                bench.filter = Pattern.compile(arg);
+            }
+        }
+        bench.runAll();
+    }
+
+    /**
+     * runAll()
+     * Builds every case. The send cases share one loopback connection whose other end is
+     * drained by a background thread, like SendFileBench.
+     * @throws Exception
+    */
+    private void runAll() throws Exception {
+        ServerConfig config = new ServerConfig();
+        ServerContext context = new ServerContext(docRoot, "MyJavaHTTPServer/1.0", config);
+        ServerContext uncachedPaths = new ServerContext(docRoot, "MyJavaHTTPServer/1.0",
+                ServerConfig.fromArgs(new String[] { "--path-cache-entries=0" }));
+        String canonicalRoot = docRoot.getCanonicalPath();
+        RequestParser parser = new RequestParser(config);
+        ByteBuffer requestBytes = ByteBuffer.wrap(REQUEST.getBytes(StandardCharsets.ISO_8859_1));
+        HeaderWriter headerWriter = context.getHeaderWriter();
+        ByteBuffer[] headerBuffer = { ByteBuffer.allocate(512) };
+        HTTPResponse response = HTTPResponse.bytes("200 OK", "text/html", new byte[838])
+                .header("ETag", "\"4fe14-199f357ca68-346\"")
+                .header("Last-Modified", "Fri, 17 Oct 2025 18:04:01 GMT");
+        RequestParser cssParser = new RequestParser(config);
+        ByteBuffer cssRequest = ByteBuffer.wrap("GET /site.css HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        List<String> names = new ArrayList<>();
+        List<Op> ops = new ArrayList<>();
+        names.add("parse.head");
+        ops.add(() -> {
+            requestBytes.clear();
+            return parser.parse(requestBytes);
+        });
+        names.add("parse.head+3 headers");
+        ops.add(() -> {
+            requestBytes.clear();
+            parser.parse(requestBytes);
+            HTTPRequest request = parser.toRequest();
+            request.getHeader("connection");
+            request.getHeader("if-none-match");
+            return request.getHeader("accept-encoding");
+        });
+        names.add("urlDecodePath");
+        ops.add(() -> HTTPHandler.urlDecodePath("/images/kitten%20large.jpeg?size=2"));
+        names.add("resolvePath");
+        ops.add(() -> HTTPHandler.resolvePath(docRoot, canonicalRoot, "/images/kitten-large.jpeg"));
+        names.add("pathCache.resolve");
+        ops.add(() -> context.getPathCache().resolve("/images/kitten-large.jpeg"));
+        names.add("mimeTypes.lookup");
+        ops.add(() -> MimeTypes.DEFAULT.lookup("kitten-large.JPEG"));
+        names.add("headers.encode");
+        ops.add(() -> headerBuffer[0] = headerWriter.encode(response, true, headerBuffer[0]));
+        names.add("route.cachedFile");
+        ops.add(() -> {
+            cssRequest.clear();
+            cssParser.parse(cssRequest);
+            return HTTPHandler.route(cssParser.toRequest(), context);
+        });
+        names.add("route.cachedFile.noPathCache");
+        ops.add(() -> {
+            cssRequest.clear();
+            cssParser.parse(cssRequest);
+            return HTTPHandler.route(cssParser.toRequest(), uncachedPaths);
+        });
+
+        File small = tempFile(4 * 1024);
+        File large = tempFile(1024 * 1024);
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread drain = new Thread(() -> drainForever(listener), "drain");
+            drain.setDaemon(true);
+            drain.start();
+            try (SocketChannel channel = SocketChannel.open(listener.getLocalAddress());
+                 FileChannel smallChannel = new RandomAccessFile(small, "r").getChannel();
+                 FileChannel largeChannel = new RandomAccessFile(large, "r").getChannel()) {
+                OutputStream out = new BufferedOutputStream(channel.socket().getOutputStream());
+                names.add("sendFile.4KB.copy");
+                ops.add(() -> {
+                    HTTPHandler.copyRegion(smallChannel, 0, small.length(), out);
+                    out.flush();
+                    return out;
+                });
+                names.add("sendFile.4KB.transferTo");
+                ops.add(() -> {
+                    HTTPHandler.transferRegion(smallChannel, 0, small.length(), channel);
+                    return channel;
+                });
+                names.add("sendFile.1MB.copy");
+                ops.add(() -> {
+                    HTTPHandler.copyRegion(largeChannel, 0, large.length(), out);
+                    out.flush();
+                    return out;
+                });
+                names.add("sendFile.1MB.transferTo");
+                ops.add(() -> {
+                    HTTPHandler.transferRegion(largeChannel, 0, large.length(), channel);
+                    return channel;
+                });
+
+                System.out.printf("%d warmup + %d measured iterations of %d ms each%n", warmup, iterations, iterationMillis);
+                System.out.printf("%-26s %12s %10s %12s%n", "benchmark", "ns/op", "+-", "bytes/op");
+                for (int i = 0; i < names.size(); i++) {
+                    if (filter.matcher(names.get(i)).find()) {
+                        run(names.get(i), ops.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * run()
+     * Warms a case up, measures it and prints one line: mean ns per call across the
+     * measured iterations, half the spread between the fastest and slowest iteration, and
+     * allocated bytes per call.
+     * @param name
+     * @param op
+     * @throws Exception
+    */
+    private void run(String name, Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            iteration(op);
+        }
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        double bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            double[] r = iteration(op);
+            sum += r[0];
+            min = Math.min(min, r[0]);
+            max = Math.max(max, r[0]);
+            bytes += r[1];
+        }
+        System.out.printf("%-26s %12.1f %10.1f %12.1f%n", name, sum / iterations, (max - min) / 2, bytes / iterations);
+    }
+
+    /**
+     * iteration()
+     * Calls op in batches until the iteration time is used up. Checking the clock only once
+     * per batch keeps nanoTime() itself out of the numbers for fast calls.
+     * References:
+     * https://docs.oracle.com/javase/8/docs/api/java/lang/System.html#nanoTime--
+     * @param op
+     * @return {ns per call, bytes allocated per call}
+     * @throws Exception
+    */
+    private double[] iteration(Op op) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long deadline = iterationMillis * 1_000_000L;
+        long calls = 0;
+        long bytes0 = threads.getThreadAllocatedBytes(id);
+        long t0 = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 64; i++) {
+                sink = op.run();
+            }
+            calls += 64;
+            elapsed = System.nanoTime() - t0;
+        } while (elapsed < deadline);
+        long bytes1 = threads.getThreadAllocatedBytes(id);
+        return new double[] { elapsed / (double) calls, (bytes1 - bytes0) / (double) calls };
+    }
+
+    private static File tempFile(int size) throws IOException {
+        File file = File.createTempFile("microbench", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) i;
+            }
+            raf.write(data);
+        }
+        return file;
+    }
+
+    private static void drainForever(ServerSocketChannel listener) {
+        try (Socket s = listener.accept().socket(); InputStream in = s.getInputStream()) {
+            byte[] scratch = new byte[256 * 1024];
+            while (in.read(scratch) != -1) {
+                // discard
+            }
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Name: ProxyBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Measures what going through the reverse proxy costs. It starts three servers in this
+ *      JVM: a stand-in backend serving a small file, a front server proxying /api/ to it with
+ *      pooled connections, and one with --proxy-pool-size=0 (a new backend connection for
+ *      every request). Each round runs kept-alive clients asking for the file as fast as they
+ *      can, straight from the backend and through both proxies, and prints requests per
+ *      second and the p50/p99 latency. The difference to the direct round is the latency the
+ *      proxy adds end to end; the front server's own http_proxy_added_seconds (its time
+ *      outside waiting for the backend) is printed next to it.
+ *      Run: java -cp out ProxyBench [--clients=4] [--duration=5] [--warmup=3] [--port=18500]
+ *           [--size=1024]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/net/Socket.html
+ * https://prometheus.io/docs/concepts/metric_types/#histogram
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ProxyBench {
+
+    /**
+     * main
+     * Sets up the document root and the three servers, runs every round and prints a line each.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        int clients = 4;
+        int duration = 5;
+        int warmup = 3; // the JIT has to settle in three servers and the clients
+        int port = 18500;
+        int size = 1024;
+        for (String arg : args) {
+            String[] kv = arg.substring(2).split("=", 2);
+            switch (kv[0]) {
+                case "clients": clients = Integer.parseInt(kv[1]); break;
+                case "duration": duration = Integer.parseInt(kv[1]); break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "port": port = Integer.parseInt(kv[1]); break;
+                case "size": size = Integer.parseInt(kv[1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        File dir = Files.createTempDirectory("proxybench").toFile();
+        dir.deleteOnExit();
+        File api = new File(dir, "api");
+        api.mkdir();
+        byte[] body = new byte[size];
+        Arrays.fill(body, (byte) 'x');
+        Files.write(new File(api, "data.txt").toPath(), body);
+
+        int backendPort = port + 1;
+        int unpooledPort = port + 2;
+        String route = "--proxy=/api/=127.0.0.1:" + backendPort;
+        List<MyHTTPServer> servers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            start(servers, threads, backendPort, dir);
+            start(servers, threads, port, dir, route);
+            start(servers, threads, unpooledPort, dir, route, "--proxy-pool-size=0");
+            System.out.printf("%d CPUs, %d clients, %d byte responses%n", Runtime.getRuntime().availableProcessors(),
+                    clients, size);
+            System.out.printf("%-26s %10s %10s %10s %14s%n", "", "req/s", "p50 us", "p99 us", "proxy adds us");
+            long[] direct = round("direct to backend", backendPort, -1, clients, duration, warmup);
+            round("proxy, pooled", port, direct[0], clients, duration, warmup);
+            round("proxy, new connections", unpooledPort, direct[0], clients, duration, warmup);
+        } finally {
+            for (MyHTTPServer server : servers) {
+                server.stop();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+    }
+
+    /**
+     * start()
+     * Starts a server in this JVM on its own thread and waits until it accepts connections.
+     * @param servers
+     * @param threads
+     * @param port
+     * @param docRoot
+     * @param options
+     * @throws InterruptedException
+    */
+    private static void start(List<MyHTTPServer> servers, List<Thread> threads, int port, File docRoot,
+                              String... options) throws InterruptedException {
+        String[] args = new String[options.length + 4];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = "--max-connections=0";
+        args[options.length + 1] = "--queue-size=0";
+        args[options.length + 2] = "--max-requests=0";
+        args[options.length + 3] = "--proxy-health-interval=0";
+        MyHTTPServer server = new MyHTTPServer(port, docRoot, 50, ServerConfig.fromArgs(args, new ArrayList<>()));
+        Thread t = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("Server failed: " + e.getMessage());
+            }
+        }, "bench-server-" + port);
+        t.start();
+        servers.add(server);
+        threads.add(t);
+        waitForServer(port);
+    }
+
+    /**
+     * round()
+     * Kept-alive clients request the file back to back for warmup seconds and then duration
+     * seconds, timing every request of the second part. Prints requests/s, p50 and p99, and
+     * for a proxy the p50 above the direct round's and the mean of the server's own
+     * http_proxy_added_seconds over the round.
+     * @param label
+     * @param port
+     * @param directP50 the direct round's p50 in nanoseconds, -1 for the direct round itself
+     * @param clients
+     * @param duration
+     * @param warmup
+     * @return p50 and p99 in nanoseconds
+     * @throws Exception
+    */
+    private static long[] round(String label, int port, long directP50, int clients, int duration, int warmup)
+            throws Exception {
+        double[] before = added(port);
+        byte[] request = ("GET /api/data.txt HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        long measureFrom = System.nanoTime() + warmup * 1_000_000_000L;
+        long end = measureFrom + duration * 1_000_000_000L;
+        List<long[]> samples = new ArrayList<>();
+        int[] counts = new int[clients];
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            long[] mine = new long[4_000_000];
+            samples.add(mine);
+            int id = i;
+            threads[i] = new Thread(() -> {
+                byte[] scratch = new byte[64 * 1024];
+                try (Socket s = new Socket()) {
+                    s.setTcpNoDelay(true);
+                    s.connect(new InetSocketAddress("localhost", port));
+                    OutputStream out = s.getOutputStream();
+                    InputStream in = s.getInputStream();
+                    long now = System.nanoTime();
+                    while (now < end) {
+                        out.write(request);
+                        out.flush();
+                        readResponse(in, scratch);
+                        long done = System.nanoTime();
+                        if (now >= measureFrom && counts[id] < mine.length) {
+                            mine[counts[id]++] = done - now;
+                        }
+                        now = done;
+                    }
+                } catch (IOException e) {
+                    System.err.println(label + ": " + e.getMessage());
+                }
+            }, "client-" + i);
+            threads[i].start();
+        }
+        int total = 0;
+        for (int i = 0; i < clients; i++) {
+            threads[i].join();
+            total += counts[i];
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for (int i = 0; i < clients; i++) {
+            System.arraycopy(samples.get(i), 0, all, at, counts[i]);
+            at += counts[i];
+        }
+        Arrays.sort(all);
+        long p50 = all.length > 0 ? all[all.length / 2] : 0;
+        long p99 = all.length > 0 ? all[(int) (all.length * 0.99)] : 0;
+        double[] after = added(port);
+        String adds = "";
+        if (directP50 >= 0) {
+            double serverMean = after[1] > before[1] ? (after[0] - before[0]) / (after[1] - before[1]) * 1e6 : 0;
+            adds = String.format("%.0f (server %.0f)", (p50 - directP50) / 1e3, serverMean);
+        }
+        System.out.printf("%-26s %10.0f %10.0f %10.0f %14s%n", label, total / (double) duration, p50 / 1e3, p99 / 1e3, adds);
+        return new long[] { p50, p99 };
+    }
+
+    /**
+     * readResponse()
+     * Reads one response head byte by byte, then its Content-Length worth of body.
+     * @param in
+     * @param scratch
+     * @throws IOException
+    */
+    private static void readResponse(InputStream in, byte[] scratch) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+            int c = in.read();
+            if (c < 0) {
+                throw new IOException("Connection closed in the headers");
+            }
+            head.append((char) c);
+        }
+        if (head.indexOf("HTTP/1.1 200") != 0) {
+            throw new IOException("Unexpected response: " + head);
+        }
+        Matcher m = Pattern.compile("(?i)content-length: *(\\d+)").matcher(head);
+        if (!m.find()) {
+            throw new IOException("No Content-Length in " + head);
+        }
+        long left = Long.parseLong(m.group(1));
+        while (left > 0) {
+            int n = in.read(scratch, 0, (int) Math.min(scratch.length, left));
+            if (n < 0) {
+                throw new IOException("Connection closed mid-body");
+            }
+            left -= n;
+        }
+    }
+
+    /**
+     * added()
+     * The sum (seconds) and count of the server's http_proxy_added_seconds so far.
+     * @param port
+     * @return
+     * @throws IOException
+    */
+    private static double[] added(int port) throws IOException {
+        String page;
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress("localhost", port));
+            s.getOutputStream().write("GET /metrics HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            page = new String(s.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+        return new double[] { metric(page, "http_proxy_added_seconds_sum"), metric(page, "http_proxy_added_seconds_count") };
+    }
+
+    private static double metric(String page, String name) {
+        Matcher m = Pattern.compile("(?m)^" + name + " (\\S+)").matcher(page);
+        return m.find() ? Double.parseDouble(m.group(1)) : 0;
+    }
+
+    private static void waitForServer(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress("localhost", port));
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server on port " + port + " never came up");
+    }
+}
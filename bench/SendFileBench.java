@@ -0,0 +1,110 @@
+/**
+ * Name: SendFileBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Compares the two ways HTTPHandler can send a file body over a loopback socket:
+ *      copyBuffered() (FileInputStream -> byte[] -> BufferedOutputStream) and transferFile()
+ *      (FileChannel.transferTo, zero-copy). A background thread reads and throws away
+ *      everything so only the sending side is being measured.
+ *      Run: javac -d out *.java bench/*.java && java -cp out SendFileBench [sizeMB] [rounds]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html
+ * https://docs.oracle.com/javase/8/docs/api/java/lang/System.html#nanoTime--
+ */
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class SendFileBench {
+
+    /**
+     * main
+     * Makes a temp file of the requested size, then sends it repeatedly both ways and
+     * prints the best MB/s seen for each (best-of-N keeps noise from other processes out).
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File file = File.createTempFile("sendfile-bench", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] chunk = new byte[1 << 20];
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = (byte) i;
+            }
+            for (int i = 0; i < sizeMb; i++) {
+                raf.write(chunk);
+            }
+        }
+        long length = file.length();
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread drain = new Thread(() -> drainForever(listener), "drain");
+            drain.setDaemon(true);
+            drain.start();
+
+            try (SocketChannel channel = SocketChannel.open(listener.getLocalAddress())) {
+                Socket socket = channel.socket();
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+                // warm up both paths so the JIT and page cache are settled
+                for (int i = 0; i < 3; i++) {
+                    HTTPHandler.copyBuffered(file, out);
+                    out.flush();
+                    HTTPHandler.transferFile(file, channel, length);
+                }
+
+                double bestBuffered = 0;
+                double bestZeroCopy = 0;
+                for (int i = 0; i < rounds; i++) {
+                    long t0 = System.nanoTime();
+                    HTTPHandler.copyBuffered(file, out);
+                    out.flush();
+                    long t1 = System.nanoTime();
+                    HTTPHandler.transferFile(file, channel, length);
+                    long t2 = System.nanoTime();
+                    bestBuffered = Math.max(bestBuffered, mbPerSecond(length, t1 - t0));
+                    bestZeroCopy = Math.max(bestZeroCopy, mbPerSecond(length, t2 - t1));
+                }
+                System.out.printf("file size            %d MB, best of %d rounds%n", sizeMb, rounds);
+                System.out.printf("buffered copy        %8.1f MB/s%n", bestBuffered);
+                System.out.printf("transferTo zero-copy %8.1f MB/s%n", bestZeroCopy);
+            }
+        }
+    }
+
+    /**
+     * drainForever()
+     * Accepts the one benchmark connection and reads into a scratch buffer until it closes.
+     * @param listener
+    */
+    private static void drainForever(ServerSocketChannel listener) {
+        try (Socket s = listener.accept().socket(); InputStream in = s.getInputStream()) {
+            byte[] sink = new byte[256 * 1024];
+            while (in.read(sink) != -1) {
+                // discard
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+}
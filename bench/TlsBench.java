@@ -0,0 +1,341 @@
+/**
+ * Name: TlsBench
+ * Author: esthergreene
+ * Project: Program 2
+ * Version: 10/17/2026
+ * Use: Measures what HTTPS costs next to plain HTTP. It starts the server in this JVM with both
+ *      a plain and a --tls-port listener, then runs:
+ *        - new connections per second, each sending one small request with "Connection: close":
+ *          plain, TLS with a full handshake every time, and TLS resuming the session;
+ *        - bulk throughput: one kept-alive connection downloading a big file over and over,
+ *          plain (which uses sendfile) and TLS.
+ *      The resumed share comes from the server's own http_tls_resumed_total, so it shows the
+ *      resumption really happened. Without --keystore a self-signed one is made with keytool.
+ *      The client trusts any certificate; that is only acceptable because it is a benchmark
+ *      talking to itself.
+ *      Run: java -cp out TlsBench [--clients=4] [--duration=5] [--warmup=1] [--port=18443]
+ *           [--size=64] [--keystore=server.p12] [--keystore-password=changeit] [--mode=threads]
+ * Note: Sources have been cited and appear above respective code (e.g., "References:")
+ */
+
+/**
+ * References:
+ * https://docs.oracle.com/javase/8/docs/api/javax/net/ssl/SSLSocket.html
+ * https://docs.oracle.com/javase/8/docs/technotes/tools/unix/keytool.html
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+public class TlsBench {
+
+    /**
+     * main
+     * Sets up the document root, keystore and server, runs every round and prints a line each.
+     * @param args
+     * @throws Exception
+    */
+    public static void main(String[] args) throws Exception {
+        int clients = 4;
+        int duration = 5;
+        int warmup = 1;
+        int port = 18443;
+        int sizeMB = 64;
+        String keystore = null;
+        String password = "changeit";
+        String mode = "threads";
+        for (String arg : args) {
+            String[] kv = arg.substring(2).split("=", 2);
+            switch (kv[0]) {
+                case "clients": clients = Integer.parseInt(kv[1]); break;
+                case "duration": duration = Integer.parseInt(kv[1]); break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "port": port = Integer.parseInt(kv[1]); break;
+                case "size": sizeMB = Integer.parseInt(kv[1]); break;
+                case "keystore": keystore = kv[1]; break;
+                case "keystore-password": password = kv[1]; break;
+                case "mode": mode = kv[1]; break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        File dir = Files.createTempDirectory("tlsbench").toFile();
+        dir.deleteOnExit();
+        File docRoot = new File(dir, "www");
+        docRoot.mkdir();
+        Files.write(new File(docRoot, "small.txt").toPath(), "hello\n".getBytes(StandardCharsets.US_ASCII));
+        File big = new File(docRoot, "big.bin");
+        try (RandomAccessFile f = new RandomAccessFile(big, "rw")) {
+            f.setLength(sizeMB * 1024L * 1024L);
+        }
+        if (keystore == null) {
+            keystore = makeKeystore(dir, password);
+        }
+
+        int tlsPort = port + 1;
+        ServerConfig config = ServerConfig.fromArgs(new String[] { "--mode=" + mode, "--tls-port=" + tlsPort,
+                "--keystore=" + keystore, "--keystore-password=" + password, "--max-connections=0",
+                "--queue-size=0", "--cache-max-file=0", "--max-requests=0" }, new ArrayList<>());
+        MyHTTPServer server = new MyHTTPServer(port, docRoot, 50, config);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("Server failed: " + e.getMessage());
+            }
+        }, "bench-server");
+        serverThread.start();
+        waitForServer(port);
+        waitForServer(tlsPort);
+
+        SSLContext trustAll = SSLContext.getInstance("TLS");
+        trustAll.init(null, new TrustManager[] { new TrustAll() }, null);
+        byte[] small = request("/small.txt", true);
+        System.out.printf("%d CPUs, %s mode, %d clients, %d MB file%n", Runtime.getRuntime().availableProcessors(),
+                mode, clients, sizeMB);
+        try {
+            System.out.printf("%-22s %12s %10s%n", "new connections", "conn/s", "resumed");
+            connections("plain", port, null, false, small, clients, duration, warmup);
+            connections("tls full handshake", tlsPort, trustAll, false, small, clients, duration, warmup);
+            connections("tls resumed", tlsPort, trustAll, true, small, clients, duration, warmup);
+            System.out.printf("%-22s %12s%n", "bulk download", "MB/s");
+            bulk("plain (sendfile)", port, null, duration, warmup);
+            bulk("tls", tlsPort, trustAll, duration, warmup);
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * connections()
+     * One round of new-connection-per-request clients, printing connections/s and the share
+     * of TLS handshakes the server says were resumptions.
+     * @param label
+     * @param port
+     * @param tls null for plain
+     * @param resume keep the client's session cache; otherwise each session is thrown away
+     * @param request
+     * @param clients
+     * @param duration
+     * @param warmup
+     * @throws Exception
+    */
+    private static void connections(String label, int port, SSLContext tls, boolean resume, byte[] request,
+                                    int clients, int duration, int warmup) throws Exception {
+        long[] before = tlsCounts(port - (tls != null ? 1 : 0));
+        long measureFrom = System.nanoTime() + warmup * 1_000_000_000L;
+        long end = measureFrom + duration * 1_000_000_000L;
+        long[] counts = new long[clients];
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            int id = i;
+            threads[i] = new Thread(() -> {
+                byte[] scratch = new byte[16 * 1024];
+                long now = System.nanoTime();
+                while (now < end) {
+                    try (Socket s = connect(port, tls)) {
+                        s.getOutputStream().write(request);
+                        InputStream in = s.getInputStream();
+                        while (in.read(scratch) >= 0) {
+                            // read the whole answer; the server closes the connection after it
+                        }
+                        if (tls != null && !resume) {
+                            ((SSLSocket) s).getSession().invalidate(); // so the next one can't resume it
+                        }
+                    } catch (IOException e) {
+                        System.err.println(label + ": " + e.getMessage());
+                    }
+                    now = System.nanoTime();
+                    if (now >= measureFrom && now <= end) {
+                        counts[id]++;
+                    }
+                }
+            }, "client-" + i);
+            threads[i].start();
+        }
+        long total = 0;
+        for (int i = 0; i < clients; i++) {
+            threads[i].join();
+            total += counts[i];
+        }
+        long[] after = tlsCounts(port - (tls != null ? 1 : 0));
+        long full = after[0] - before[0];
+        long resumed = after[1] - before[1];
+        System.out.printf("%-22s %12.0f %9.0f%%%n", label, total / (double) duration,
+                full + resumed == 0 ? 0.0 : 100.0 * resumed / (full + resumed));
+    }
+
+    /**
+     * bulk()
+     * Downloads the big file over one kept-alive connection, for warmup seconds (so the JIT
+     * has compiled both ends' crypto) and then duration seconds, and prints the rate of the
+     * second part.
+     * @param label
+     * @param port
+     * @param tls
+     * @param duration
+     * @param warmup
+     * @throws IOException
+    */
+    private static void bulk(String label, int port, SSLContext tls, int duration, int warmup) throws IOException {
+        byte[] request = request("/big.bin", false);
+        byte[] scratch = new byte[64 * 1024];
+        long bytes = 0;
+        long measureFrom = System.nanoTime() + warmup * 1_000_000_000L;
+        long t0 = 0;
+        long end = measureFrom + duration * 1_000_000_000L;
+        try (Socket s = connect(port, tls)) {
+            OutputStream out = s.getOutputStream();
+            InputStream in = s.getInputStream();
+            while (System.nanoTime() < end) {
+                if (t0 == 0 && System.nanoTime() >= measureFrom) {
+                    t0 = System.nanoTime();
+                }
+                out.write(request);
+                out.flush();
+                long body = skipHeaders(in);
+                long left = body;
+                while (left > 0) {
+                    int n = in.read(scratch, 0, (int) Math.min(scratch.length, left));
+                    if (n < 0) {
+                        throw new IOException("Connection closed mid-body");
+                    }
+                    left -= n;
+                }
+                if (t0 != 0) {
+                    bytes += body;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%-22s %12.0f%n", label, bytes / seconds / (1024 * 1024));
+    }
+
+    /**
+     * skipHeaders()
+     * Reads a response head byte by byte and returns its Content-Length.
+     * @param in
+     * @return
+     * @throws IOException
+    */
+    private static long skipHeaders(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int c = in.read();
+            if (c < 0) {
+                throw new IOException("Connection closed in the headers");
+            }
+            head.append((char) c);
+        }
+        Matcher m = Pattern.compile("(?i)content-length: *(\\d+)").matcher(head);
+        if (!m.find()) {
+            throw new IOException("No Content-Length in " + head);
+        }
+        return Long.parseLong(m.group(1));
+    }
+
+    private static Socket connect(int port, SSLContext tls) throws IOException {
+        Socket s = new Socket();
+        s.setTcpNoDelay(true);
+        s.connect(new InetSocketAddress("localhost", port));
+        if (tls == null) {
+            return s;
+        }
+        SSLSocket ssl = (SSLSocket) tls.getSocketFactory().createSocket(s, "localhost", port, true);
+        ssl.startHandshake();
+        return ssl;
+    }
+
+    private static byte[] request(String path, boolean close) {
+        return ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + (close ? "Connection: close\r\n" : "") + "\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * tlsCounts()
+     * Full and resumed handshakes so far, read from the server's metrics page.
+     * @param plainPort
+     * @return
+     * @throws IOException
+    */
+    private static long[] tlsCounts(int plainPort) throws IOException {
+        String page;
+        try (Socket s = connect(plainPort, null)) {
+            s.getOutputStream().write(request("/metrics", true));
+            page = new String(s.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+        return new long[] { metric(page, "http_tls_handshakes_total"), metric(page, "http_tls_resumed_total") };
+    }
+
+    private static long metric(String page, String name) {
+        Matcher m = Pattern.compile("(?m)^" + name + " (\\d+)").matcher(page);
+        return m.find() ? Long.parseLong(m.group(1)) : 0;
+    }
+
+    /**
+     * makeKeystore()
+     * Creates a self-signed EC certificate for localhost with the JDK's keytool.
+     * @param dir
+     * @param password
+     * @return the keystore's path
+     * @throws IOException
+     * @throws InterruptedException
+    */
+    private static String makeKeystore(File dir, String password) throws IOException, InterruptedException {
+        File keystore = new File(dir, "server.p12");
+        keystore.deleteOnExit();
+        String keytool = new File(System.getProperty("java.home"), "bin/keytool").getPath();
+        Process p = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+                "-groupname", "secp256r1", "-dname", "CN=localhost", "-ext", "san=dns:localhost,ip:127.0.0.1",
+                "-validity", "30", "-storetype", "PKCS12", "-keystore", keystore.getPath(),
+                "-storepass", password).redirectErrorStream(true).start();
+        String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (p.waitFor() != 0) {
+            throw new IOException("keytool failed: " + output);
+        }
+        return keystore.getPath();
+    }
+
+    private static void waitForServer(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress("localhost", port));
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server on port " + port + " never came up");
+    }
+
+    /**
+     * TrustAll
+     * Accepts any server certificate (the benchmark's own self-signed one).
+     */
+    private static final class TrustAll implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}